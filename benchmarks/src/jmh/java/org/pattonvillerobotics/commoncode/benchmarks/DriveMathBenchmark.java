@@ -0,0 +1,64 @@
+package org.pattonvillerobotics.commoncode.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.DriveMath;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.MecanumKinematics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The math {@code MecanumEncoderDrive.moveFreely} and the {@code AbstractComplexDrive} unit conversions run every
+ * loop, without the motors.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DriveMathBenchmark {
+
+    /**
+     * A 4 inch wheel on a 1440 tick encoder, 9 inches from the center of the robot
+     */
+    private static final double TICKS_PER_REVOLUTION = 1440, WHEEL_CIRCUMFERENCE = 4 * Math.PI, WHEEL_BASE_CIRCUMFERENCE = 18 * Math.PI;
+
+    // Not final, so the JIT can't fold the math into constants
+    public double angle = 1.1, speed = .8, rotation = .2;
+    public double inches = 37.5, degrees = 92;
+    public int ticks = 4321;
+
+    private final double[] wheelPowers = new double[4];
+
+    @Benchmark
+    public double[] mecanumWheelPowers() {
+        MecanumKinematics.wheelPowers(angle, speed, rotation, wheelPowers);
+        return wheelPowers;
+    }
+
+    @Benchmark
+    public double inchesToTicks() {
+        return DriveMath.inchesToTicks(inches, TICKS_PER_REVOLUTION, WHEEL_CIRCUMFERENCE);
+    }
+
+    @Benchmark
+    public double ticksToInches() {
+        return DriveMath.ticksToInches(ticks, TICKS_PER_REVOLUTION, WHEEL_CIRCUMFERENCE);
+    }
+
+    @Benchmark
+    public double degreesToInches() {
+        return DriveMath.degreesToInches(degrees, WHEEL_BASE_CIRCUMFERENCE);
+    }
+
+    @Benchmark
+    public double inchesToDegrees() {
+        return DriveMath.inchesToDegrees(inches, WHEEL_BASE_CIRCUMFERENCE);
+    }
+}
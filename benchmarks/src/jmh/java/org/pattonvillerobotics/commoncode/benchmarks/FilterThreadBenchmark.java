@@ -0,0 +1,96 @@
+package org.pattonvillerobotics.commoncode.benchmarks;
+
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FastKalmanFilter;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterNoiseParameters;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.KalmanFilterRunner;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.MeasurementSource;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How much CPU the {@link KalmanFilterRunner}'s thread uses and how long a measurement waits to be fused, with one
+ * producer submitting gyro readings at a steady rate like a sensor would. JMH times the caller's thread, but the cost
+ * here is on the filter thread, so this is a plain program measuring that thread with {@link ThreadMXBean}.
+ * <p>
+ * Run it with {@code ./gradlew :benchmarks:filterThreadBenchmark}, optionally with {@code -Pargs="seconds rate..."},
+ * e.g. {@code -Pargs="5 50 200"}, the default.
+ */
+public final class FilterThreadBenchmark {
+
+    private static final long WARMUP_MS = 1000;
+
+    private FilterThreadBenchmark() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 5;
+        double[] rates = args.length > 1 ? new double[args.length - 1] : new double[]{50, 200};
+        for (int i = 1; i < args.length; i++)
+            rates[i - 1] = Double.parseDouble(args[i]);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!threads.isCurrentThreadCpuTimeSupported())
+            throw new IllegalStateException("This JVM can't measure thread CPU time");
+        threads.setThreadCpuTimeEnabled(true);
+
+        System.out.println(String.format(Locale.US, "%8s %8s %10s %10s %10s %12s", "Rate", "CPU", "p50 us", "p99 us", "Max us", "Snapshots/s"));
+        for (double rate : rates) {
+            // Once to warm up the JIT, then for real
+            run(threads, rate, WARMUP_MS / 1000.0);
+            System.out.println(run(threads, rate, seconds));
+        }
+    }
+
+    /**
+     * @return a row of the results table
+     */
+    private static String run(ThreadMXBean threads, double rate, double seconds) throws InterruptedException {
+        FilterNoiseParameters noiseParameters = new FilterNoiseParameters.Builder().build();
+        MeasurementModel gyroModel = noiseParameters.getMeasurementModel(MeasurementSource.GYRO);
+        KalmanFilterRunner runner = new KalmanFilterRunner(new FastKalmanFilter(noiseParameters.getProcessNoiseMatrix(),
+                new ArrayRealVector(FastKalmanFilter.STATE_DIMENSION)));
+        Thread filterThread = new Thread(runner, "Kalman Filter Thread");
+        filterThread.start();
+
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        int count = (int) (seconds * rate);
+        long[] latencies = new long[count];
+        double[] measurement = new double[1];
+
+        long startVersion = runner.getSnapshot().getVersion();
+        long startCpuNanos = threads.getThreadCpuTime(filterThread.getId());
+        long startNanos = System.nanoTime(), nextNanos = startNanos;
+        for (int i = 0; i < count; i++) {
+            LockSupport.parkNanos(nextNanos - System.nanoTime());
+            nextNanos += periodNanos;
+
+            measurement[0] = i % 90;
+            long fused = runner.getMeasurementCount(MeasurementSource.GYRO);
+            long submitNanos = System.nanoTime();
+            runner.submit(MeasurementSource.GYRO, gyroModel, submitNanos, measurement, 1);
+            // Waits for the filter thread without taking a core from it
+            while (runner.getMeasurementCount(MeasurementSource.GYRO) == fused)
+                Thread.yield();
+            latencies[i] = System.nanoTime() - submitNanos;
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        long cpuNanos = threads.getThreadCpuTime(filterThread.getId()) - startCpuNanos;
+        long snapshots = runner.getSnapshot().getVersion() - startVersion;
+
+        runner.stop();
+        filterThread.join();
+
+        Arrays.sort(latencies);
+        return String.format(Locale.US, "%6.0fHz %7.2f%% %10.0f %10.0f %10.0f %12.1f", rate,
+                100.0 * cpuNanos / elapsedNanos,
+                latencies[count / 2] / 1e3, latencies[count * 99 / 100] / 1e3, latencies[count - 1] / 1e3,
+                snapshots / (elapsedNanos / 1e9));
+    }
+}
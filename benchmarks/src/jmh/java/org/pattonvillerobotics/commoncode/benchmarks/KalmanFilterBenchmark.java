@@ -0,0 +1,101 @@
+package org.pattonvillerobotics.commoncode.benchmarks;
+
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FastKalmanFilter;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterNoiseParameters;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.KalmanFilter;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.KalmanFilterEngine;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.MeasurementSource;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.UDKalmanFilter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One step of each filter engine: a 5 ms predict, and a measurement from each sensor the guidance reads, with the
+ * models and noise {@link FilterNoiseParameters} gives it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class KalmanFilterBenchmark {
+
+    private static final double DT = .005;
+
+    @Benchmark
+    public RealVector predictNextState(EngineState state) {
+        return state.kalmanFilter.predictNextState(DT);
+    }
+
+    /**
+     * Predicts each time so the covariance stays where the 200 Hz loop keeps it instead of collapsing
+     */
+    @Benchmark
+    public RealVector predictAndMeasure(MeasurementState state) {
+        state.kalmanFilter.predictNextState(DT);
+        return state.kalmanFilter.measureAndGetState(state.measurementModel, state.measurement);
+    }
+
+    /**
+     * A filter for each engine, all a predict needs
+     */
+    @State(Scope.Thread)
+    public static class EngineState {
+
+        @Param({"KalmanFilter", "FastKalmanFilter", "UDKalmanFilter"})
+        public String engine;
+
+        final FilterNoiseParameters noiseParameters = new FilterNoiseParameters.Builder().build();
+        KalmanFilterEngine kalmanFilter;
+
+        @Setup(Level.Trial)
+        public void setUpFilter() {
+            RealVector initialState = new ArrayRealVector(FastKalmanFilter.STATE_DIMENSION);
+            switch (engine) {
+                case "KalmanFilter":
+                    kalmanFilter = new KalmanFilter(noiseParameters.getProcessNoiseMatrix(), initialState);
+                    break;
+                case "FastKalmanFilter":
+                    kalmanFilter = new FastKalmanFilter(noiseParameters.getProcessNoiseMatrix(), initialState);
+                    break;
+                case "UDKalmanFilter":
+                    kalmanFilter = new UDKalmanFilter(noiseParameters.getProcessNoiseMatrix(), initialState);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown engine " + engine);
+            }
+        }
+    }
+
+    /**
+     * A filter for each engine and a measurement from each source
+     */
+    @State(Scope.Thread)
+    public static class MeasurementState extends EngineState {
+
+        @Param({"ENCODER", "GYRO", "ACCELEROMETER", "MAGNETOMETER", "VUFORIA"})
+        public MeasurementSource source;
+
+        MeasurementModel measurementModel;
+        RealVector measurement;
+
+        @Setup(Level.Trial)
+        public void setUpMeasurement() {
+            measurementModel = noiseParameters.getMeasurementModel(source);
+            measurement = new ArrayRealVector(measurementModel.getMeasurementMatrix().getRowDimension(), 1);
+        }
+    }
+}
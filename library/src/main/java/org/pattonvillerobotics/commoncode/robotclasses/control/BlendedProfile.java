@@ -0,0 +1,128 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.Arrays;
+
+/**
+ * A trapezoidal profile over several segments driven back to back, each with its own max velocity, that only slows
+ * down at a boundary as much as it has to instead of stopping. It stops at the boundaries it's told to and at the
+ * end.
+ * <p>
+ * The velocity at each boundary is the lower of the two segments' max velocities, then lowered until it can be
+ * reached from the previous boundary and the next one can be reached from it at the max acceleration. Each segment
+ * is then a trapezoid between its boundary velocities.
+ */
+public class BlendedProfile {
+
+    private final double[] lengths, maxVelocities, boundaryVelocities;
+    private final double acceleration;
+    private final double[] peakVelocities, accelerationTimes, cruiseTimes, decelerationTimes, startTimes;
+
+    /**
+     * @param lengths       the length of each segment, all positive
+     * @param maxVelocities the max velocity in each segment
+     * @param stops         whether to stop after each segment but the last, may be null to never stop early
+     */
+    public BlendedProfile(double[] lengths, double[] maxVelocities, boolean[] stops, double maxAcceleration) {
+        int n = lengths.length;
+        if (n == 0 || maxVelocities.length != n || stops != null && stops.length < n - 1)
+            throw new IllegalArgumentException("Need a length and max velocity for every segment, and a stop for every boundary");
+        for (int i = 0; i < n; i++) {
+            if (!(lengths[i] > 0) || Double.isInfinite(lengths[i]))
+                throw new IllegalArgumentException("Segment lengths must be > 0, was " + lengths[i]);
+            MotionProfile.checkLimit("maxVelocity", maxVelocities[i]);
+        }
+        MotionProfile.checkLimit("maxAcceleration", maxAcceleration);
+
+        this.lengths = lengths.clone();
+        this.maxVelocities = maxVelocities.clone();
+        this.acceleration = maxAcceleration;
+
+        // Boundary i is the start of segment i, boundary n the end
+        double[] v = new double[n + 1];
+        for (int i = 1; i < n; i++)
+            v[i] = stops != null && stops[i - 1] ? 0 : FastMath.min(maxVelocities[i - 1], maxVelocities[i]);
+        for (int i = 1; i <= n; i++)
+            v[i] = FastMath.min(v[i], FastMath.sqrt(v[i - 1] * v[i - 1] + 2 * maxAcceleration * lengths[i - 1]));
+        for (int i = n - 1; i >= 0; i--)
+            v[i] = FastMath.min(v[i], FastMath.sqrt(v[i + 1] * v[i + 1] + 2 * maxAcceleration * lengths[i]));
+        this.boundaryVelocities = v;
+
+        this.peakVelocities = new double[n];
+        this.accelerationTimes = new double[n];
+        this.cruiseTimes = new double[n];
+        this.decelerationTimes = new double[n];
+        this.startTimes = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            double start = v[i], end = v[i + 1];
+            // The velocity reached speeding up from start and slowing to end over the whole segment
+            double peak = FastMath.min(maxVelocities[i], FastMath.sqrt(maxAcceleration * lengths[i] + (start * start + end * end) / 2));
+            peak = FastMath.max(peak, FastMath.max(start, end));
+            double accelerationDistance = (peak * peak - start * start) / (2 * maxAcceleration);
+            double decelerationDistance = (peak * peak - end * end) / (2 * maxAcceleration);
+            peakVelocities[i] = peak;
+            accelerationTimes[i] = (peak - start) / maxAcceleration;
+            decelerationTimes[i] = (peak - end) / maxAcceleration;
+            cruiseTimes[i] = FastMath.max(0, lengths[i] - accelerationDistance - decelerationDistance) / peak;
+            startTimes[i + 1] = startTimes[i] + accelerationTimes[i] + cruiseTimes[i] + decelerationTimes[i];
+        }
+    }
+
+    public int getSegmentCount() {
+        return lengths.length;
+    }
+
+    public double getDuration() {
+        return startTimes[lengths.length];
+    }
+
+    /**
+     * @return when segment {@code i} starts, and with {@code i} the segment count, when the profile ends
+     */
+    public double getStartTime(int i) {
+        return startTimes[i];
+    }
+
+    /**
+     * @return the velocity between segment {@code i - 1} and {@code i}, 0 for the very start and end
+     */
+    public double getBoundaryVelocity(int i) {
+        return boundaryVelocities[i];
+    }
+
+    public double getLength(int i) {
+        return lengths[i];
+    }
+
+    /**
+     * @param t   seconds since the start, clamped to the profile
+     * @param out set to the state within the segment at {@code t}, its position counted from the segment's start
+     * @return the segment {@code t} falls in
+     */
+    public int getState(double t, MotionState out) {
+        int n = lengths.length;
+        if (t >= startTimes[n]) {
+            out.set(lengths[n - 1], 0, 0, 0);
+            return n - 1;
+        }
+        int i = Arrays.binarySearch(startTimes, FastMath.max(t, 0));
+        if (i < 0)
+            i = -i - 2;
+        i = FastMath.min(i, n - 1);
+
+        double tau = FastMath.max(t, 0) - startTimes[i];
+        double start = boundaryVelocities[i], peak = peakVelocities[i];
+        double accelerationDistance = (start + peak) / 2 * accelerationTimes[i];
+        if (tau < accelerationTimes[i]) {
+            out.set(start * tau + acceleration * tau * tau / 2, start + acceleration * tau, acceleration, 0);
+        } else if (tau < accelerationTimes[i] + cruiseTimes[i]) {
+            out.set(accelerationDistance + peak * (tau - accelerationTimes[i]), peak, 0, 0);
+        } else {
+            double s = tau - accelerationTimes[i] - cruiseTimes[i];
+            out.set(FastMath.min(lengths[i], accelerationDistance + peak * cruiseTimes[i] + peak * s - acceleration * s * s / 2),
+                    peak - acceleration * s, -acceleration, 0);
+        }
+        return i;
+    }
+}
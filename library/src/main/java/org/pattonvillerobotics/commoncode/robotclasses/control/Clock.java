@@ -0,0 +1,30 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The time a {@link ControlScheduler} runs on, replaced in tests to step through ticks without waiting.
+ */
+interface Clock {
+
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleepUntil(long deadlineNanos) throws InterruptedException {
+            long remainingNanos;
+            while ((remainingNanos = deadlineNanos - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(remainingNanos);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+        }
+    };
+
+    long nanoTime();
+
+    void sleepUntil(long deadlineNanos) throws InterruptedException;
+}
@@ -0,0 +1,256 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs every registered {@link ControlTask} on one thread at a fixed rate, so controllers see the same period no
+ * matter how busy the phone is.
+ * <p>
+ * Ticks are due at whole multiples of the period from the start, so the rate doesn't drift when a tick runs long.
+ * A tick that runs past the next one's deadline is an overrun, and the ticks it ran over are skipped rather than run
+ * back to back. The thread sleeps while no tasks are registered.
+ */
+public class ControlScheduler {
+
+    public static final long DEFAULT_PERIOD_MS = 5;
+    private static final long STOP_TIMEOUT_MS = 1000;
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
+    private static final long NEVER = Long.MIN_VALUE;
+
+    private static ControlScheduler defaultScheduler;
+
+    private final long periodNanos;
+    private final Clock clock;
+    private final CopyOnWriteArrayList<Entry> entries = new CopyOnWriteArrayList<>();
+    private final AtomicLong tickCount = new AtomicLong(), overrunCount = new AtomicLong(), missedTickCount = new AtomicLong();
+    private final AtomicLong totalExecutionNanos = new AtomicLong(), errorCount = new AtomicLong();
+
+    private volatile long lastExecutionNanos, maxExecutionNanos;
+    private volatile RuntimeException lastError;
+    private volatile boolean running;
+    private volatile Thread thread;
+
+    public ControlScheduler() {
+        this(DEFAULT_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param period the time between ticks, e.g. 5 ms for 200 Hz
+     */
+    public ControlScheduler(long period, TimeUnit unit) {
+        this(unit.toNanos(period), Clock.SYSTEM);
+    }
+
+    ControlScheduler(long periodNanos, Clock clock) {
+        if (periodNanos <= 0)
+            throw new IllegalArgumentException("Period must be positive, was " + periodNanos + " ns");
+        this.periodNanos = periodNanos;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the scheduler shared by every drive and mechanism, started on first use
+     */
+    public static synchronized ControlScheduler getDefault() {
+        if (defaultScheduler == null) {
+            defaultScheduler = new ControlScheduler();
+            defaultScheduler.start();
+        }
+        return defaultScheduler;
+    }
+
+    /**
+     * Runs {@code task} every tick, starting with the next one. Tasks run in the order they were added.
+     */
+    public void addTask(ControlTask task) {
+        entries.add(new Entry(task));
+        Thread thread = this.thread;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * @return false if the task wasn't registered
+     */
+    public boolean removeTask(ControlTask task) {
+        for (Entry entry : entries)
+            if (entry.task == task)
+                return entries.remove(entry);
+        return false;
+    }
+
+    public synchronized void start() {
+        if (thread != null)
+            throw new IllegalStateException("The scheduler can only be started once");
+
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                loop();
+            }
+        }, "Control Scheduler Thread");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops ticking and waits for a tick in progress to finish.
+     */
+    public void stop() {
+        running = false;
+        Thread thread = this.thread;
+        if (thread == null || thread == Thread.currentThread())
+            return;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        Thread thread = this.thread;
+        return thread != null && thread.isAlive();
+    }
+
+    private void loop() {
+        long deadlineNanos = clock.nanoTime();
+        try {
+            while (running) {
+                if (entries.isEmpty()) {
+                    LockSupport.park(this);
+                    // Start a fresh schedule instead of counting the idle time as missed ticks
+                    deadlineNanos = clock.nanoTime();
+                    continue;
+                }
+                deadlineNanos = runTick(deadlineNanos);
+                clock.sleepUntil(deadlineNanos);
+            }
+        } catch (InterruptedException e) {
+            // Stopped
+        }
+    }
+
+    /**
+     * Runs the tick due at {@code deadlineNanos} and keeps the statistics.
+     *
+     * @return when the next tick is due
+     */
+    long runTick(long deadlineNanos) {
+        long startNanos = clock.nanoTime();
+        for (Entry entry : entries) {
+            double dt = entry.lastTickNanos == NEVER ? periodNanos / S_TO_NS : (deadlineNanos - entry.lastTickNanos) / S_TO_NS;
+            entry.lastTickNanos = deadlineNanos;
+            try {
+                entry.task.update(deadlineNanos, dt);
+            } catch (RuntimeException e) {
+                errorCount.incrementAndGet();
+                lastError = e;
+            }
+        }
+        long endNanos = clock.nanoTime();
+
+        long executionNanos = endNanos - startNanos;
+        lastExecutionNanos = executionNanos;
+        if (executionNanos > maxExecutionNanos)
+            maxExecutionNanos = executionNanos;
+        totalExecutionNanos.addAndGet(executionNanos);
+        tickCount.incrementAndGet();
+
+        long nextDeadlineNanos = deadlineNanos + periodNanos;
+        if (endNanos - nextDeadlineNanos > 0) {
+            long missed = (endNanos - nextDeadlineNanos) / periodNanos + 1;
+            overrunCount.incrementAndGet();
+            missedTickCount.addAndGet(missed);
+            nextDeadlineNanos += missed * periodNanos;
+        }
+        return nextDeadlineNanos;
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    public long getTickCount() {
+        return tickCount.get();
+    }
+
+    /**
+     * @return how many ticks ran past the next tick's deadline
+     */
+    public long getOverrunCount() {
+        return overrunCount.get();
+    }
+
+    /**
+     * @return how many ticks were skipped because of overruns
+     */
+    public long getMissedTickCount() {
+        return missedTickCount.get();
+    }
+
+    /**
+     * @return how long the last tick took to run every task
+     */
+    public long getLastExecutionNanos() {
+        return lastExecutionNanos;
+    }
+
+    public long getMaxExecutionNanos() {
+        return maxExecutionNanos;
+    }
+
+    public long getAverageExecutionNanos() {
+        long ticks = tickCount.get();
+        return ticks == 0 ? 0 : totalExecutionNanos.get() / ticks;
+    }
+
+    /**
+     * @return how many times a task threw, the task keeps running on the next tick
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public RuntimeException getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Zeroes the counters and timings, e.g. after the op mode's init so only the run is measured.
+     */
+    public void resetStatistics() {
+        tickCount.set(0);
+        overrunCount.set(0);
+        missedTickCount.set(0);
+        totalExecutionNanos.set(0);
+        errorCount.set(0);
+        lastExecutionNanos = 0;
+        maxExecutionNanos = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "ControlScheduler{%.0f Hz, ticks=%d, overruns=%d, missed=%d, avg=%d us, max=%d us}",
+                S_TO_NS / periodNanos, getTickCount(), getOverrunCount(), getMissedTickCount(),
+                TimeUnit.NANOSECONDS.toMicros(getAverageExecutionNanos()), TimeUnit.NANOSECONDS.toMicros(getMaxExecutionNanos()));
+    }
+
+    private static class Entry {
+        final ControlTask task;
+        /**
+         * Only touched on the scheduler thread
+         */
+        long lastTickNanos = NEVER;
+
+        Entry(ControlTask task) {
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+/**
+ * A controller run once a tick by a {@link ControlScheduler}.
+ */
+public interface ControlTask {
+
+    /**
+     * One pass of the controller, should return well within the scheduler's period.
+     *
+     * @param tickNanos when this tick was due, in {@link System#nanoTime()} time
+     * @param dt        seconds since the task's last tick, the scheduler's period on its first tick
+     */
+    void update(long tickNanos, double dt);
+}
@@ -0,0 +1,192 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Turns to a heading with a {@link PIDFController}, along a {@link TrapezoidProfile} when a max turn rate is set so
+ * the feedforward can do most of the work. The static friction term also pushes toward the target while settling.
+ * Headings are in degrees and unwrapped, so a turn can go past 180 and the error is never the long way around;
+ * {@link #unwrapDegrees(double, double)} turns a gyro's readings into that.
+ * <p>
+ * A turn is settled once the heading has stayed within the tolerance, turning slower than the rate tolerance, for
+ * the settle time. It times out the timeout after the profile ends, so every turn takes a bounded time.
+ */
+public class HeadingController {
+
+    public static final double DEFAULT_TOLERANCE = 1, DEFAULT_RATE_TOLERANCE = 10;
+    public static final double DEFAULT_SETTLE_TIME = .1, DEFAULT_TIMEOUT = 1;
+    /**
+     * The integral only has to work out the last few degrees static friction leaves, winding it up over the whole
+     * turn just overshoots
+     */
+    public static final double DEFAULT_INTEGRAL_ZONE = 5;
+
+    private final PIDFCoefficients coefficients;
+    private final PIDFController controller;
+    private double maxPower = 1;
+    private double maxRate, maxAcceleration;
+    private double tolerance = DEFAULT_TOLERANCE, rateTolerance = DEFAULT_RATE_TOLERANCE;
+    private double settleTime = DEFAULT_SETTLE_TIME, timeout = DEFAULT_TIMEOUT;
+
+    private MotionProfile profile;
+    private final MotionState state = new MotionState();
+    private double startHeading, targetHeading, setpoint, error;
+    private double time, settledTime;
+
+    /**
+     * @param coefficients in power per degree, the velocity and acceleration terms per degree per second
+     */
+    public HeadingController(PIDFCoefficients coefficients) {
+        this.coefficients = coefficients;
+        this.controller = new PIDFController(coefficients);
+        controller.setIntegralZone(DEFAULT_INTEGRAL_ZONE);
+    }
+
+    /**
+     * @return {@code degrees} in [-180, 180)
+     */
+    public static double wrapDegrees(double degrees) {
+        return degrees - 360 * FastMath.floor((degrees + 180) / 360);
+    }
+
+    /**
+     * @param previous the last unwrapped heading
+     * @param reading  a heading in any range, e.g. the gyro's [-180, 180]
+     * @return the heading nearest {@code previous} that is the same angle as {@code reading}
+     */
+    public static double unwrapDegrees(double previous, double reading) {
+        return previous + wrapDegrees(reading - previous);
+    }
+
+    /**
+     * @param maxRate         in degrees per second, 0 to step straight to the target
+     * @param maxAcceleration in degrees per second squared
+     */
+    public void setTurnProfile(double maxRate, double maxAcceleration) {
+        if (maxRate < 0 || maxRate > 0 && !(maxAcceleration > 0))
+            throw new IllegalArgumentException("maxRate must be >= 0, and maxAcceleration > 0 with it");
+        this.maxRate = maxRate;
+        this.maxAcceleration = maxAcceleration;
+    }
+
+    /**
+     * @param tolerance     in degrees
+     * @param rateTolerance in degrees per second
+     */
+    public void setTolerance(double tolerance, double rateTolerance) {
+        if (!(tolerance > 0) || !(rateTolerance > 0))
+            throw new IllegalArgumentException("Tolerances must be > 0");
+        this.tolerance = tolerance;
+        this.rateTolerance = rateTolerance;
+    }
+
+    /**
+     * @param settleTime seconds to stay within the tolerance
+     * @param timeout    seconds after the profile ends to give up
+     */
+    public void setSettleTime(double settleTime, double timeout) {
+        if (settleTime < 0 || !(timeout >= 0))
+            throw new IllegalArgumentException("settleTime and timeout must be >= 0");
+        this.settleTime = settleTime;
+        this.timeout = timeout;
+    }
+
+    /**
+     * @param integralZone in degrees, from the setpoint
+     */
+    public void setIntegralZone(double integralZone) {
+        controller.setIntegralZone(integralZone);
+    }
+
+    /**
+     * @param maxPower the most power to turn with
+     */
+    public void setMaxPower(double maxPower) {
+        controller.setOutputRange(-maxPower, maxPower);
+        this.maxPower = maxPower;
+    }
+
+    /**
+     * Starts a turn, forgetting the last one.
+     */
+    public void start(double heading, double targetHeading) {
+        this.startHeading = heading;
+        this.targetHeading = targetHeading;
+        this.profile = maxRate > 0 ? new TrapezoidProfile(targetHeading - heading, maxRate, maxAcceleration) : null;
+        controller.reset();
+        time = settledTime = 0;
+        setpoint = profile == null ? targetHeading : heading;
+        error = targetHeading - heading;
+    }
+
+    /**
+     * @param heading the unwrapped heading
+     * @param rate    how fast the heading is changing in degrees per second, from the gyro rather than differenced
+     * @param dt      seconds since the last update
+     * @return the turn power, positive to turn toward higher headings
+     */
+    public double update(double heading, double rate, double dt) {
+        time += dt;
+        double velocity = 0, acceleration = 0;
+        if (profile != null) {
+            profile.getState(time, state);
+            setpoint = startHeading + state.getPosition();
+            velocity = state.getVelocity();
+            acceleration = state.getAcceleration();
+        }
+
+        error = targetHeading - heading;
+        if (time >= getProfileDuration() && FastMath.abs(error) <= tolerance && FastMath.abs(rate) <= rateTolerance)
+            settledTime += dt;
+        else
+            settledTime = 0;
+
+        // Measured from the setpoint, so the derivative is of the error and doesn't fight the profile's feedforward
+        double output = controller.update(0, heading - setpoint, rate - velocity, velocity, acceleration, dt);
+        // Without a profile velocity to push along, static friction would stall the last few degrees
+        if (velocity == 0 && FastMath.abs(setpoint - heading) > tolerance / 2)
+            output += coefficients.getS() * FastMath.signum(setpoint - heading);
+        return FastMath.max(-maxPower, FastMath.min(output, maxPower));
+    }
+
+    private double getProfileDuration() {
+        return profile == null ? 0 : profile.getDuration();
+    }
+
+    public boolean isSettled() {
+        return settledTime >= settleTime && settledTime > 0;
+    }
+
+    public boolean isTimedOut() {
+        return time > getProfileDuration() + timeout;
+    }
+
+    /**
+     * @return whether the turn has settled or timed out
+     */
+    public boolean isDone() {
+        return isSettled() || isTimedOut();
+    }
+
+    /**
+     * @return the longest a turn can take, in seconds
+     */
+    public double getTimeLimit() {
+        return getProfileDuration() + timeout;
+    }
+
+    public double getTargetHeading() {
+        return targetHeading;
+    }
+
+    public double getSetpoint() {
+        return setpoint;
+    }
+
+    /**
+     * @return how far the heading was from the target at the last update
+     */
+    public double getError() {
+        return error;
+    }
+}
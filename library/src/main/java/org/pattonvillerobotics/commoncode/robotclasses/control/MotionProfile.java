@@ -0,0 +1,64 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * A move of a set distance that starts and ends at rest, as position, velocity and acceleration over time. Profiles are
+ * worked out for the distance's magnitude and mirrored for negative distances.
+ */
+public abstract class MotionProfile {
+
+    private final double distance;
+
+    protected MotionProfile(double distance) {
+        if (Double.isNaN(distance) || Double.isInfinite(distance))
+            throw new IllegalArgumentException("Distance must be finite, was " + distance);
+        this.distance = distance;
+    }
+
+    static void checkLimit(String name, double value) {
+        if (!(value > 0) || Double.isInfinite(value))
+            throw new IllegalArgumentException(name + " must be > 0 and finite, was " + value);
+    }
+
+    /**
+     * @return a jerk limited {@link SCurveProfile}, or a {@link TrapezoidProfile} if {@code maxJerk} is 0
+     */
+    public static MotionProfile create(double distance, double maxVelocity, double maxAcceleration, double maxJerk) {
+        return maxJerk == 0
+                ? new TrapezoidProfile(distance, maxVelocity, maxAcceleration)
+                : new SCurveProfile(distance, maxVelocity, maxAcceleration, maxJerk);
+    }
+
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * @return how long the move takes in seconds
+     */
+    public abstract double getDuration();
+
+    /**
+     * @return the fastest the move goes, never more than the max velocity
+     */
+    public abstract double getPeakVelocity();
+
+    /**
+     * @param t   seconds since the start, clamped to the profile
+     * @param out set to the state at {@code t}
+     * @return {@code out}
+     */
+    public MotionState getState(double t, MotionState out) {
+        calculate(FastMath.max(0, FastMath.min(t, getDuration())), out);
+        if (distance < 0)
+            out.set(-out.getPosition(), -out.getVelocity(), -out.getAcceleration(), -out.getJerk());
+        return out;
+    }
+
+    /**
+     * @param t in [0, {@link #getDuration()}]
+     * @param out set to the state at {@code t} for a move of {@code |distance|}
+     */
+    protected abstract void calculate(double t, MotionState out);
+}
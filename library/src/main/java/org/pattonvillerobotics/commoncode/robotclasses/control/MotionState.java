@@ -0,0 +1,39 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import java.util.Locale;
+
+/**
+ * Where a {@link MotionProfile} says the mechanism should be at one moment. Mutable so a control loop can reuse one.
+ */
+public class MotionState {
+
+    private double position, velocity, acceleration, jerk;
+
+    public void set(double position, double velocity, double acceleration, double jerk) {
+        this.position = position;
+        this.velocity = velocity;
+        this.acceleration = acceleration;
+        this.jerk = jerk;
+    }
+
+    public double getPosition() {
+        return position;
+    }
+
+    public double getVelocity() {
+        return velocity;
+    }
+
+    public double getAcceleration() {
+        return acceleration;
+    }
+
+    public double getJerk() {
+        return jerk;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "MotionState{p=%.3f, v=%.3f, a=%.3f, j=%.3f}", position, velocity, acceleration, jerk);
+    }
+}
@@ -0,0 +1,98 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import java.util.Locale;
+
+/**
+ * Gains for a {@link PIDFController}: proportional, integral and derivative feedback, plus static, velocity and
+ * acceleration feedforward. Output is motor power, so e.g. {@code kV} is power per unit of velocity.
+ */
+public class PIDFCoefficients {
+
+    private final double kP, kI, kD, kS, kV, kA;
+
+    private PIDFCoefficients(double kP, double kI, double kD, double kS, double kV, double kA) {
+        this.kP = kP;
+        this.kI = kI;
+        this.kD = kD;
+        this.kS = kS;
+        this.kV = kV;
+        this.kA = kA;
+    }
+
+    public double getP() {
+        return kP;
+    }
+
+    public double getI() {
+        return kI;
+    }
+
+    public double getD() {
+        return kD;
+    }
+
+    /**
+     * @return the power it takes to get moving at all, added in the direction of motion
+     */
+    public double getS() {
+        return kS;
+    }
+
+    public double getV() {
+        return kV;
+    }
+
+    public double getA() {
+        return kA;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "PIDFCoefficients{kP=%g, kI=%g, kD=%g, kS=%g, kV=%g, kA=%g}", kP, kI, kD, kS, kV, kA);
+    }
+
+    public static class Builder {
+        private double kP, kI, kD, kS, kV, kA;
+
+        public Builder() {
+        }
+
+        public Builder p(double kP) {
+            this.kP = kP;
+            return this;
+        }
+
+        public Builder i(double kI) {
+            this.kI = kI;
+            return this;
+        }
+
+        public Builder d(double kD) {
+            this.kD = kD;
+            return this;
+        }
+
+        public Builder s(double kS) {
+            this.kS = kS;
+            return this;
+        }
+
+        public Builder v(double kV) {
+            this.kV = kV;
+            return this;
+        }
+
+        public Builder a(double kA) {
+            this.kA = kA;
+            return this;
+        }
+
+        public PIDFCoefficients build() {
+            double[] gains = {kP, kI, kD, kS, kV, kA};
+            for (double gain : gains)
+                if (!(gain >= 0) || Double.isInfinite(gain))
+                    throw new IllegalArgumentException("Gains must be >= 0 and finite, was " + gain);
+            return new PIDFCoefficients(kP, kI, kD, kS, kV, kA);
+        }
+    }
+}
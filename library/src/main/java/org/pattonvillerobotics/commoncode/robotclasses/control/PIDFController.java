@@ -0,0 +1,118 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * PID feedback on the error between a setpoint and a measurement, plus feedforward from the reference velocity and
+ * acceleration, clamped to the output range. The feedforward does most of the work when it's tuned, the feedback only
+ * corrects what it gets wrong.
+ * <p>
+ * The derivative is taken of the measurement rather than the error, so a jump in the setpoint doesn't kick the
+ * output. The integral stops growing while the output is held at a limit, so it doesn't wind up, and can be limited to
+ * small errors with an integral zone.
+ */
+public class PIDFController {
+
+    private final PIDFCoefficients coefficients;
+    private double minOutput = -1, maxOutput = 1;
+    private double integralZone = Double.POSITIVE_INFINITY;
+
+    private double integral, lastMeasurement, lastError, lastOutput;
+    private boolean hasLastMeasurement;
+
+    public PIDFController(PIDFCoefficients coefficients) {
+        this.coefficients = coefficients;
+    }
+
+    public PIDFCoefficients getCoefficients() {
+        return coefficients;
+    }
+
+    /**
+     * @param minOutput the lowest output, -1 unless set
+     * @param maxOutput the highest output, 1 unless set
+     */
+    public void setOutputRange(double minOutput, double maxOutput) {
+        if (!(minOutput < maxOutput))
+            throw new IllegalArgumentException("minOutput must be < maxOutput, was " + minOutput + " and " + maxOutput);
+        this.minOutput = minOutput;
+        this.maxOutput = maxOutput;
+    }
+
+    /**
+     * @param integralZone the largest error the integral grows at, it's dropped past it. Unlimited unless set.
+     */
+    public void setIntegralZone(double integralZone) {
+        if (!(integralZone > 0))
+            throw new IllegalArgumentException("integralZone must be > 0, was " + integralZone);
+        this.integralZone = integralZone;
+    }
+
+    /**
+     * Feedback only, for holding a setpoint.
+     */
+    public double update(double setpoint, double measurement, double dt) {
+        return update(setpoint, measurement, 0, 0, dt);
+    }
+
+    /**
+     * @param velocity     the reference velocity for the feedforward
+     * @param acceleration the reference acceleration for the feedforward
+     * @param dt           seconds since the last update
+     * @return the output, e.g. motor power
+     */
+    public double update(double setpoint, double measurement, double velocity, double acceleration, double dt) {
+        double derivative = hasLastMeasurement && dt > 0 ? -(measurement - lastMeasurement) / dt : 0;
+        return updateError(setpoint - measurement, derivative, velocity, acceleration, dt, measurement);
+    }
+
+    /**
+     * Takes the measurement's rate of change rather than working it out from the last measurement, which is noisy
+     * when the sensor updates slower than the loop runs.
+     *
+     * @param measurementRate how fast the measurement is changing, e.g. a gyro's turn rate
+     */
+    public double update(double setpoint, double measurement, double measurementRate, double velocity, double acceleration, double dt) {
+        return updateError(setpoint - measurement, -measurementRate, velocity, acceleration, dt, measurement);
+    }
+
+    private double updateError(double error, double derivative, double velocity, double acceleration, double dt, double measurement) {
+        double nextIntegral = FastMath.abs(error) > integralZone ? 0 : integral + error * dt;
+
+        double output = coefficients.getS() * FastMath.signum(velocity) + coefficients.getV() * velocity + coefficients.getA() * acceleration
+                + coefficients.getP() * error + coefficients.getI() * nextIntegral + coefficients.getD() * derivative;
+        double clamped = FastMath.max(minOutput, FastMath.min(output, maxOutput));
+
+        // Keep the integral if the error pushes the same way the output is already clipped
+        if (clamped == output || FastMath.signum(error) != FastMath.signum(output - clamped))
+            integral = nextIntegral;
+
+        lastMeasurement = measurement;
+        hasLastMeasurement = true;
+        lastError = error;
+        lastOutput = clamped;
+        return clamped;
+    }
+
+    /**
+     * Forgets the integral and the last measurement, call it before reusing the controller for a new move.
+     */
+    public void reset() {
+        integral = 0;
+        hasLastMeasurement = false;
+        lastError = 0;
+        lastOutput = 0;
+    }
+
+    public double getLastError() {
+        return lastError;
+    }
+
+    public double getLastOutput() {
+        return lastOutput;
+    }
+
+    public double getIntegral() {
+        return integral;
+    }
+}
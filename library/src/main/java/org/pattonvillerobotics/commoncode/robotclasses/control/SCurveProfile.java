@@ -0,0 +1,109 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * A jerk limited profile: acceleration ramps up and down at the max jerk instead of switching on and off, which is
+ * easier on the wheels' grip than a {@link TrapezoidProfile}. Up to seven phases, ramp up, hold and ramp down the
+ * acceleration, cruise, then the same backwards to stop. Phases the move is too short for are left out.
+ */
+public class SCurveProfile extends MotionProfile {
+
+    private final double distance, jerk, peakVelocity;
+    /**
+     * Time spent ramping the acceleration, holding it, and accelerating in total
+     */
+    private final double jerkTime, constantAccelerationTime, accelerationTime;
+    private final double cruiseTime;
+
+    public SCurveProfile(double distance, double maxVelocity, double maxAcceleration, double maxJerk) {
+        super(distance);
+        checkLimit("maxVelocity", maxVelocity);
+        checkLimit("maxAcceleration", maxAcceleration);
+        checkLimit("maxJerk", maxJerk);
+
+        this.distance = FastMath.abs(distance);
+        this.jerk = maxJerk;
+
+        // Try the max velocity first, if speeding up to it and back down doesn't fit, find the velocity that just fits
+        double velocity = maxVelocity;
+        if (2 * accelerationDistance(velocity, maxAcceleration, maxJerk) > this.distance) {
+            // Reaching the max acceleration: d = v (v / A + A / J)
+            velocity = maxAcceleration * (-maxAcceleration / maxJerk
+                    + FastMath.sqrt(maxAcceleration * maxAcceleration / (maxJerk * maxJerk) + 4 * this.distance / maxAcceleration)) / 2;
+            // Too short to reach it: d = 2 v^(3/2) / sqrt(J)
+            if (velocity < maxAcceleration * maxAcceleration / maxJerk)
+                velocity = FastMath.pow(this.distance * FastMath.sqrt(maxJerk) / 2, 2.0 / 3);
+        }
+        this.peakVelocity = velocity;
+
+        if (velocity >= maxAcceleration * maxAcceleration / maxJerk) {
+            this.jerkTime = maxAcceleration / maxJerk;
+            this.constantAccelerationTime = velocity / maxAcceleration - jerkTime;
+        } else {
+            this.jerkTime = FastMath.sqrt(velocity / maxJerk);
+            this.constantAccelerationTime = 0;
+        }
+        this.accelerationTime = 2 * jerkTime + constantAccelerationTime;
+        this.cruiseTime = velocity == 0 ? 0 : FastMath.max(0, this.distance - velocity * accelerationTime) / velocity;
+    }
+
+    /**
+     * @return the distance covered speeding up from rest to {@code velocity}
+     */
+    private static double accelerationDistance(double velocity, double maxAcceleration, double maxJerk) {
+        // The speed up is symmetric, so the average velocity is half the final one
+        if (velocity >= maxAcceleration * maxAcceleration / maxJerk)
+            return velocity * (velocity / maxAcceleration + maxAcceleration / maxJerk) / 2;
+        return velocity * FastMath.sqrt(velocity / maxJerk);
+    }
+
+    @Override
+    public double getDuration() {
+        return 2 * accelerationTime + cruiseTime;
+    }
+
+    @Override
+    public double getPeakVelocity() {
+        return peakVelocity;
+    }
+
+    @Override
+    protected void calculate(double t, MotionState out) {
+        if (t < accelerationTime) {
+            speedUp(t, out);
+        } else if (t < accelerationTime + cruiseTime) {
+            out.set(peakVelocity * accelerationTime / 2 + peakVelocity * (t - accelerationTime), peakVelocity, 0, 0);
+        } else {
+            // Slowing down is speeding up played backwards from the end
+            speedUp(getDuration() - t, out);
+            out.set(distance - out.getPosition(), out.getVelocity(), -out.getAcceleration(), out.getJerk());
+        }
+    }
+
+    /**
+     * @param t in [0, accelerationTime]
+     */
+    private void speedUp(double t, MotionState out) {
+        double peakAcceleration = jerk * jerkTime;
+        if (t < jerkTime) {
+            out.set(jerk * t * t * t / 6, jerk * t * t / 2, jerk * t, jerk);
+            return;
+        }
+
+        double v1 = jerk * jerkTime * jerkTime / 2, p1 = jerk * jerkTime * jerkTime * jerkTime / 6;
+        if (t < jerkTime + constantAccelerationTime) {
+            double s = t - jerkTime;
+            out.set(p1 + v1 * s + peakAcceleration * s * s / 2, v1 + peakAcceleration * s, peakAcceleration, 0);
+            return;
+        }
+
+        double v2 = v1 + peakAcceleration * constantAccelerationTime;
+        double p2 = p1 + v1 * constantAccelerationTime + peakAcceleration * constantAccelerationTime * constantAccelerationTime / 2;
+        double s = t - jerkTime - constantAccelerationTime;
+        out.set(p2 + v2 * s + peakAcceleration * s * s / 2 - jerk * s * s * s / 6,
+                v2 + peakAcceleration * s - jerk * s * s / 2,
+                peakAcceleration - jerk * s,
+                -jerk);
+    }
+}
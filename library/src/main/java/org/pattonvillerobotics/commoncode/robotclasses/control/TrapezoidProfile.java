@@ -0,0 +1,51 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Accelerates at the max acceleration, cruises at the max velocity and decelerates at the max acceleration. Moves too
+ * short to reach the max velocity are triangles.
+ */
+public class TrapezoidProfile extends MotionProfile {
+
+    private final double distance, acceleration, peakVelocity, accelerationTime, cruiseTime;
+
+    public TrapezoidProfile(double distance, double maxVelocity, double maxAcceleration) {
+        super(distance);
+        checkLimit("maxVelocity", maxVelocity);
+        checkLimit("maxAcceleration", maxAcceleration);
+
+        this.distance = FastMath.abs(distance);
+        this.acceleration = maxAcceleration;
+        // The velocity reached accelerating for half the distance, if that's less than the max it's a triangle
+        this.peakVelocity = FastMath.min(maxVelocity, FastMath.sqrt(this.distance * maxAcceleration));
+        this.accelerationTime = peakVelocity / maxAcceleration;
+        double accelerationDistance = peakVelocity * accelerationTime / 2;
+        this.cruiseTime = peakVelocity == 0 ? 0 : FastMath.max(0, this.distance - 2 * accelerationDistance) / peakVelocity;
+    }
+
+    @Override
+    public double getDuration() {
+        return 2 * accelerationTime + cruiseTime;
+    }
+
+    @Override
+    public double getPeakVelocity() {
+        return peakVelocity;
+    }
+
+    @Override
+    protected void calculate(double t, MotionState out) {
+        if (distance == 0) {
+            out.set(0, 0, 0, 0);
+        } else if (t < accelerationTime) {
+            out.set(acceleration * t * t / 2, acceleration * t, acceleration, 0);
+        } else if (t < accelerationTime + cruiseTime) {
+            out.set(peakVelocity * accelerationTime / 2 + peakVelocity * (t - accelerationTime), peakVelocity, 0, 0);
+        } else {
+            // Deceleration is acceleration played backwards from the end
+            double remaining = getDuration() - t;
+            out.set(distance - acceleration * remaining * remaining / 2, acceleration * remaining, -acceleration, 0);
+        }
+    }
+}
@@ -5,6 +5,9 @@ import com.qualcomm.robotcore.hardware.DcMotor;
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
 import org.pattonvillerobotics.commoncode.enums.Direction;
+import org.pattonvillerobotics.commoncode.robotclasses.recorder.FlightRecorder;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by skaggsm on 9/27/16.
@@ -12,8 +15,14 @@ import org.pattonvillerobotics.commoncode.enums.Direction;
 
 public abstract class AbstractComplexDrive extends AbstractDrive {
 
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
+
     protected final RobotParameters robotParameters;
 
+    private MotionExecutor motionExecutor;
+    private MotionHandle currentMotion;
+    private volatile FlightRecorder.Channel loopChannel;
+
     public AbstractComplexDrive(LinearOpMode linearOpMode, HardwareMap hardwareMap, RobotParameters robotParameters) {
         super(linearOpMode, hardwareMap);
         this.robotParameters = robotParameters;
@@ -32,14 +41,14 @@ public abstract class AbstractComplexDrive extends AbstractDrive {
      *
      * @param inches the number of inches to be covered by a single wheel
      * @return the number of encoder ticks to achieve that
-     * @see AbstractComplexDrive#inchesToTicksInverse(int)
+     * @see AbstractComplexDrive#inchesToTicksInverse(double)
      */
     public double inchesToTicks(double inches) {
-        return robotParameters.getAdjustedTicksPerRevolution() * inches / robotParameters.getWheelCircumference();
+        return DriveMath.inchesToTicks(inches, robotParameters.getAdjustedTicksPerRevolution(), robotParameters.getWheelCircumference());
     }
 
-    public double inchesToTicksInverse(int ticks) {
-        return ticks * robotParameters.getWheelCircumference() / robotParameters.getAdjustedTicksPerRevolution();
+    public double inchesToTicksInverse(double ticks) {
+        return DriveMath.ticksToInches(ticks, robotParameters.getAdjustedTicksPerRevolution(), robotParameters.getWheelCircumference());
     }
 
     /**
@@ -50,14 +59,143 @@ public abstract class AbstractComplexDrive extends AbstractDrive {
      * @see AbstractComplexDrive#degreesToInchesInverse(double)
      */
     public double degreesToInches(double degrees) {
-        return robotParameters.getWheelBaseCircumference() * degrees / 360;
+        return DriveMath.degreesToInches(degrees, robotParameters.getWheelBaseCircumference());
     }
 
     public double degreesToInchesInverse(double inches) {
-        return 360 * inches / robotParameters.getWheelBaseCircumference();
+        return DriveMath.inchesToDegrees(inches, robotParameters.getWheelBaseCircumference());
     }
 
     public abstract void moveInches(Direction direction, double inches, double power);
 
     public abstract void rotateDegrees(Direction direction, double degrees, double power);
+
+    /**
+     * Starts {@link #moveInches(Direction, double, double)} in the background and returns right away, cancelling any
+     * motion this drive is already running.
+     */
+    public MotionHandle moveInchesAsync(Direction direction, double inches, double power) {
+        return runAsync(moveInchesMotion(direction, inches, power));
+    }
+
+    /**
+     * Starts {@link #rotateDegrees(Direction, double, double)} in the background and returns right away, cancelling
+     * any motion this drive is already running.
+     */
+    public MotionHandle rotateDegreesAsync(Direction direction, double degrees, double power) {
+        return runAsync(rotateDegreesMotion(direction, degrees, power));
+    }
+
+    /**
+     * @throws UnsupportedOperationException unless the drive supports {@link #moveInchesAsync(Direction, double, double)}
+     */
+    protected Motion moveInchesMotion(Direction direction, double inches, double power) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't move in the background");
+    }
+
+    /**
+     * @throws UnsupportedOperationException unless the drive supports {@link #rotateDegreesAsync(Direction, double, double)}
+     */
+    protected Motion rotateDegreesMotion(Direction direction, double degrees, double power) {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't rotate in the background");
+    }
+
+    /**
+     * @param motionExecutor where to run the background motions, {@link MotionExecutor#getDefault()} unless set
+     */
+    public synchronized void setMotionExecutor(MotionExecutor motionExecutor) {
+        this.motionExecutor = motionExecutor;
+    }
+
+    /**
+     * Cancels the background motion if there is one, and waits for it to stop the motors.
+     */
+    public void cancelMotion() throws InterruptedException {
+        MotionHandle running;
+        synchronized (this) {
+            running = currentMotion;
+            currentMotion = null;
+        }
+        if (running != null) {
+            running.cancel();
+            running.await();
+        }
+    }
+
+    /**
+     * @return whether the motion last started by {@link #runAsync(Motion)} is still running
+     */
+    protected synchronized boolean isRunningMotion() {
+        return currentMotion != null && !currentMotion.isDone();
+    }
+
+    /**
+     * Runs {@code motion} in the background, after the motion already running has stopped. The motion also ends
+     * when the op mode is stopped.
+     */
+    protected synchronized MotionHandle runAsync(final Motion motion) {
+        if (motionExecutor == null)
+            motionExecutor = MotionExecutor.getDefault();
+        if (currentMotion != null)
+            currentMotion.cancel();
+
+        currentMotion = motionExecutor.submit(new Motion() {
+            private long lastNanos;
+
+            @Override
+            protected void start() {
+                motion.start();
+                lastNanos = System.nanoTime();
+            }
+
+            @Override
+            protected boolean update() {
+                long startNanos = System.nanoTime();
+                boolean done = linearOpMode.isStopRequested() || motion.update();
+
+                FlightRecorder.Channel loopChannel = AbstractComplexDrive.this.loopChannel;
+                if (loopChannel != null)
+                    loopChannel.record((startNanos - lastNanos) / S_TO_NS, (System.nanoTime() - startNanos) / S_TO_NS);
+                lastNanos = startNanos;
+                return done;
+            }
+
+            @Override
+            protected void end(boolean interrupted) {
+                motion.end(interrupted || linearOpMode.isStopRequested());
+            }
+        }, currentMotion);
+        return currentMotion;
+    }
+
+    /**
+     * Runs {@code motion} on the control loop like {@link #runAsync(Motion)}, and waits for it to end. If the calling
+     * thread is interrupted, e.g. by the op mode stopping, the motion is cancelled. The calling thread sends the
+     * drive's telemetry while it waits, so call it from the op mode's thread.
+     *
+     * @throws RuntimeException whatever the motion threw
+     */
+    protected void runBlocking(Motion motion) {
+        MotionHandle handle = runAsync(motion);
+        try {
+            // The op mode can't update its telemetry while it waits here, so do it for it
+            while (!handle.await(telemetryPipeline.getPeriodNanos(), TimeUnit.NANOSECONDS))
+                telemetryPipeline.flush();
+        } catch (InterruptedException e) {
+            handle.cancel();
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (handle.getFailure() != null)
+            throw handle.getFailure();
+    }
+
+    /**
+     * Also records each pass of the drive's motions: the seconds since the last pass and how long the pass took.
+     */
+    @Override
+    protected void addRecorderChannels(FlightRecorder recorder) {
+        super.addRecorderChannels(recorder);
+        loopChannel = recorder.addChannel("loop", "period", "duration");
+    }
 }
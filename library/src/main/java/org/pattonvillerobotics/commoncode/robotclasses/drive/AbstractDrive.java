@@ -8,6 +8,8 @@ import com.qualcomm.robotcore.hardware.HardwareMap;
 
 import org.firstinspires.ftc.robotcore.external.Telemetry;
 import org.pattonvillerobotics.commoncode.enums.Direction;
+import org.pattonvillerobotics.commoncode.robotclasses.recorder.FlightRecorder;
+import org.pattonvillerobotics.commoncode.robotclasses.telemetry.TelemetryPipeline;
 
 /**
  * Created by Mitchell on 9/9/2016.
@@ -36,6 +38,11 @@ public abstract class AbstractDrive implements Drive {
     public final DcMotor leftDriveMotor, rightDriveMotor;
     public final LinearOpMode linearOpMode;
     public final HardwareMap hardwareMap;
+    /**
+     * Sends what the wait loops write to the Driver Station off the control thread
+     */
+    protected final TelemetryPipeline telemetryPipeline;
+    private volatile FlightRecorder.Channel powerChannel;
 
     public AbstractDrive(LinearOpMode linearOpMode, HardwareMap hardwareMap) {
         this.leftDriveMotor = hardwareMap.dcMotor.get("left_drive_motor");
@@ -43,7 +50,7 @@ public abstract class AbstractDrive implements Drive {
 
         this.linearOpMode = linearOpMode;
         this.hardwareMap = hardwareMap;
-
+        this.telemetryPipeline = new TelemetryPipeline(linearOpMode.telemetry);
 
         ZERO_POWER_BEHAVIOR_SETTER.accept(this.leftDriveMotor);
         ZERO_POWER_BEHAVIOR_SETTER.accept(this.rightDriveMotor);
@@ -57,6 +64,26 @@ public abstract class AbstractDrive implements Drive {
     public void moveFreely(double leftPower, double rightPower) {
         leftDriveMotor.setPower(leftPower);
         rightDriveMotor.setPower(rightPower);
+
+        FlightRecorder.Channel powerChannel = this.powerChannel;
+        if (powerChannel != null)
+            powerChannel.record(leftPower, rightPower);
+    }
+
+    /**
+     * Records what the drive does from now on, e.g. its motor powers, into {@code recorder}. Call it once, before
+     * driving.
+     */
+    public void setFlightRecorder(FlightRecorder recorder) {
+        addRecorderChannels(recorder);
+    }
+
+    /**
+     * Adds a channel to {@code recorder} for everything the drive records, subclasses add their own after calling
+     * this.
+     */
+    protected void addRecorderChannels(FlightRecorder recorder) {
+        powerChannel = recorder.addChannel("power", "left", "right");
     }
 
     public void move(Direction direction, double power) {
@@ -105,6 +132,13 @@ public abstract class AbstractDrive implements Drive {
         this.linearOpMode.sleep(milli);
     }
 
+    /**
+     * @return the pipeline the drive's telemetry goes through, to add the op mode's own slots to it
+     */
+    public TelemetryPipeline getTelemetryPipeline() {
+        return telemetryPipeline;
+    }
+
     public Telemetry.Item telemetry(String tag, String message) {
         return this.linearOpMode.telemetry.addData(tag, message);
     }
@@ -0,0 +1,35 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+/**
+ * The unit conversions behind {@link AbstractComplexDrive}, free of any hardware so they can run anywhere.
+ */
+public final class DriveMath {
+
+    private DriveMath() {
+    }
+
+    /**
+     * @param inches             the number of inches to be covered by a single wheel
+     * @param ticksPerRevolution encoder ticks per wheel revolution, after gearing
+     * @return the number of encoder ticks to achieve that
+     */
+    public static double inchesToTicks(double inches, double ticksPerRevolution, double wheelCircumference) {
+        return ticksPerRevolution * inches / wheelCircumference;
+    }
+
+    public static double ticksToInches(double ticks, double ticksPerRevolution, double wheelCircumference) {
+        return ticks * wheelCircumference / ticksPerRevolution;
+    }
+
+    /**
+     * @param degrees the number of degrees to turn the robot
+     * @return the number of inches each wheel has to travel
+     */
+    public static double degreesToInches(double degrees, double wheelBaseCircumference) {
+        return wheelBaseCircumference * degrees / 360;
+    }
+
+    public static double inchesToDegrees(double inches, double wheelBaseCircumference) {
+        return 360 * inches / wheelBaseCircumference;
+    }
+}
@@ -1,7 +1,5 @@
 package org.pattonvillerobotics.commoncode.robotclasses.drive;
 
-import android.util.Log;
-
 import com.annimon.stream.function.Consumer;
 import com.annimon.stream.function.Function;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
@@ -11,10 +9,44 @@ import com.qualcomm.robotcore.hardware.HardwareMap;
 import org.apache.commons.math3.util.FastMath;
 import org.firstinspires.ftc.robotcore.external.Telemetry;
 import org.pattonvillerobotics.commoncode.enums.Direction;
+import org.pattonvillerobotics.commoncode.robotclasses.control.BlendedProfile;
+import org.pattonvillerobotics.commoncode.robotclasses.control.ControlScheduler;
+import org.pattonvillerobotics.commoncode.robotclasses.control.ControlTask;
+import org.pattonvillerobotics.commoncode.robotclasses.control.MotionProfile;
+import org.pattonvillerobotics.commoncode.robotclasses.control.MotionState;
+import org.pattonvillerobotics.commoncode.robotclasses.control.PIDFController;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.characterization.CharacterizationLog;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.characterization.CharacterizationTest;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.characterization.DriveCharacterization;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory.PoseSource;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory.RamseteFollower;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory.Trajectory;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory.TrajectoryState;
+import org.pattonvillerobotics.commoncode.robotclasses.logging.Logger;
+import org.pattonvillerobotics.commoncode.robotclasses.recorder.FlightRecorder;
+import org.pattonvillerobotics.commoncode.robotclasses.telemetry.TelemetryPipeline;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 
 public class EncoderDrive extends AbstractComplexDrive {
 
     public static final int TARGET_REACHED_THRESHOLD = 16;
+    /**
+     * How long a profiled move keeps correcting after the profile ends before giving up on the threshold
+     */
+    public static final long PROFILE_SETTLE_TIMEOUT_MS = 500;
+    /**
+     * How fast a profiled move closes the gap between where the profile says a side should be and where it is, in
+     * inches per second per inch, so the wheels end on the target rather than wherever the velocity tracking left them
+     */
+    public static final double PROFILE_POSITION_GAIN = 4;
+    /**
+     * How far from the end a move holding its heading without a profile starts slowing down, and the least power it
+     * slows to
+     */
+    public static final double HELD_MOVE_SLOWDOWN_INCHES = 6, HELD_MOVE_MIN_POWER = .15;
     protected static final Consumer<DcMotor> RUN_MODE_RUN_USING_ENCODER_SETTER = new Consumer<DcMotor>() {
         @Override
         public void accept(DcMotor dcMotor) {
@@ -40,7 +72,32 @@ public class EncoderDrive extends AbstractComplexDrive {
         }
     };
     private static final String TAG = "EncoderDrive";
+    private static final Logger LOG = Logger.get(TAG);
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * Reads the drive motors once per pass of the wait loops, the rear motors of a {@link QuadEncoderDrive} are added
+     * after the left and right
+     */
+    protected final MotorSnapshot motorSnapshot = new MotorSnapshot();
+    protected final int leftDriveIndex, rightDriveIndex;
+    /**
+     * What the wait loops show while they run, written every pass and sent at the pipeline's rate
+     */
+    protected final TelemetryPipeline.Slot distanceSlot;
+    private final TelemetryPipeline.Slot heldProgressSlot, trajectoryErrorSlot;
     private DcMotor.RunMode leftDriveSavedMotorMode, rightDriveSavedMotorMode;
+    /**
+     * The encoder position each drive motor's move targets count from, indexed like {@link #motorSnapshot}
+     */
+    private int[] motorZeros = new int[0];
+    private volatile boolean relativeTargets = true;
+    /**
+     * Whether the last move left the drive motors in RUN_TO_POSITION instead of restoring their modes
+     */
+    private volatile boolean holdingRunToPosition;
+    private volatile RamseteFollower trajectoryFollower = new RamseteFollower();
+    private volatile Odometry odometry;
+    private volatile HeadingHold headingHold;
 
     /**
      * sets up Drive object with custom RobotParameters useful for doing calculations with encoders
@@ -54,14 +111,69 @@ public class EncoderDrive extends AbstractComplexDrive {
         super(linearOpMode, hardwareMap, robotParameters);
         if (!robotParameters.areEncodersEnabled())
             throw new IllegalArgumentException("Robot must have encoders enabled to use EncoderDrive! If encoders are present, call encodersEnabled(true) when building.");
+        leftDriveIndex = motorSnapshot.addMotor(leftDriveMotor);
+        rightDriveIndex = motorSnapshot.addMotor(rightDriveMotor);
+
+        distanceSlot = telemetryPipeline.addSlot(TAG, "DistanceL: %.0f DistanceR: %.0f", 2);
+        heldProgressSlot = telemetryPipeline.addSlot(TAG, "Distance: %.0f/%.0f Heading error: %.1f", 3);
+        trajectoryErrorSlot = telemetryPipeline.addSlot(TAG, "Error: %.1f in", 1);
+    }
+
+    /**
+     * @return the cached encoder readings of the drive motors, e.g. to change the {@link MotorSnapshot.CachePolicy}
+     */
+    public MotorSnapshot getMotorSnapshot() {
+        return motorSnapshot;
     }
 
     public Telemetry.Item telemetry(String message) {
         return super.telemetry("EncoderDrive", message);
     }
 
+    /**
+     * Adds lines for a motion to show while it runs. They're retained, so the op mode's updates don't clear them
+     * before they are sent, until {@link #releaseTelemetry(Telemetry.Item[])}.
+     */
+    protected Telemetry.Item[] retainedTelemetry(String... messages) {
+        Telemetry.Item[] items = new Telemetry.Item[messages.length];
+        for (int i = 0; i < messages.length; i++)
+            items[i] = telemetry(messages[i]).setRetained(true);
+        return items;
+    }
+
+    /**
+     * Lets the next update clear lines from {@link #retainedTelemetry(String...)}.
+     *
+     * @param items may be null, if the motion never started
+     */
+    protected static void releaseTelemetry(Telemetry.Item[] items) {
+        if (items != null)
+            for (Telemetry.Item item : items)
+                item.setRetained(false);
+    }
+
+    /**
+     * Also records the encoder positions each time they are read.
+     */
+    @Override
+    protected void addRecorderChannels(FlightRecorder recorder) {
+        super.addRecorderChannels(recorder);
+        String[] columns = new String[Math.min(motorSnapshot.getMotorCount(), FlightRecorder.MAX_VALUES)];
+        for (int i = 0; i < columns.length; i++)
+            columns[i] = getMotorName(i);
+        motorSnapshot.setRecorderChannel(recorder.addChannel("encoders", columns));
+    }
+
+    /**
+     * @param index an index into {@link #motorSnapshot}
+     * @return what to call the motor in recordings
+     */
+    protected String getMotorName(int index) {
+        return index == leftDriveIndex ? "left" : index == rightDriveIndex ? "right" : "motor" + index;
+    }
+
     protected boolean isMovingToPosition() {
-        return leftDriveMotor.isBusy() || rightDriveMotor.isBusy();
+        return motorSnapshot.isBusy(leftDriveIndex) || motorSnapshot.isBusy(rightDriveIndex);
     }
 
     /**
@@ -73,17 +185,22 @@ public class EncoderDrive extends AbstractComplexDrive {
      */
     @Override
     public void moveInches(Direction direction, double inches, double power) {
-        //Move Specified Inches Using Motor Encoders
+        Motion motion = moveInchesMotion(direction, inches, power);
+        runBlocking(motion);
 
-        int targetPositionLeft;
-        int targetPositionRight;
+        // A profiled move has already settled, and without an encoder reset there is nothing to settle
+        if (!(motion instanceof ProfiledMotion) && !relativeTargets)
+            sleep(100);
+    }
 
-        Log.e(TAG, "Getting motor modes");
-        storeMotorModes();
+    @Override
+    protected Motion moveInchesMotion(Direction direction, final double inches, final double power) {
+        //Move Specified Inches Using Motor Encoders
 
-        resetMotorEncoders();
+        final int targetPositionLeft;
+        final int targetPositionRight;
 
-        int deltaPosition = (int) FastMath.round(inchesToTicks(inches));
+        final int deltaPosition = (int) FastMath.round(inchesToTicks(inches));
 
         switch (direction) {
             case FORWARD: {
@@ -100,51 +217,263 @@ public class EncoderDrive extends AbstractComplexDrive {
                 throw new IllegalArgumentException("Direction must be Direction.FORWARDS or Direction.BACKWARDS!");
         }
 
-        Log.e(TAG, "Setting motor modes");
-        setMotorsRunToPosition();
+        if (robotParameters.isMotionProfilingEnabled())
+            return profiledMotion(targetPositionLeft, targetPositionRight, power);
 
-        Log.e(TAG, "Setting motor power high");
-        move(Direction.FORWARD, power); // To keep power in [0.0, 1.0]. Encoders control direction
+        final HeadingHold headingHold = this.headingHold;
+        if (headingHold != null) {
+            return new HeldMotion(headingHold, new int[]{leftDriveIndex, rightDriveIndex}, new int[]{targetPositionLeft, targetPositionRight}, power) {
+                @Override
+                protected void steer(double power, double correction) {
+                    double direction = FastMath.signum(targetPositionLeft);
+                    moveFreely(direction * power - correction, direction * power + correction);
+                }
+            };
+        }
 
-        Log.e(TAG, "Setting target position");
-        setMotorTargets(targetPositionLeft, targetPositionRight);
+        return new Motion() {
+            private Telemetry.Item[] items;
 
-        telemetry("Moving " + inches + " inches at power " + power);
-        telemetry("LMotorT: " + targetPositionLeft);
-        telemetry("RMotorT: " + targetPositionRight);
-        telemetry("EncoderDelta: " + deltaPosition);
-        Telemetry.Item distance = telemetry("DistanceL: N/A DistanceR: N/A");
+            @Override
+            protected void start() {
+                LOG.log(Logger.Level.DEBUG, "Getting motor modes");
+                storeMotorModes();
 
-        //int oldLeftPosition = leftDriveMotor.getCurrentPosition();
-        //int oldRightPosition = rightDriveMotor.getCurrentPosition();
+                zeroMotorEncoders();
 
-        while ((leftDriveMotor.isBusy() || rightDriveMotor.isBusy()) || !reachedTarget(leftDriveMotor.getCurrentPosition(), targetPositionLeft, rightDriveMotor.getCurrentPosition(), targetPositionRight) && !linearOpMode.isStopRequested() && linearOpMode.opModeIsActive()) {
-            Thread.yield();
-            distance.setValue("DistanceL: " + leftDriveMotor.getCurrentPosition() + " DistanceR: " + rightDriveMotor.getCurrentPosition());
-            linearOpMode.telemetry.update();
-        }
-        Log.e(TAG, "Setting motor power low");
-        stop();
+                LOG.log(Logger.Level.DEBUG, "Setting motor modes");
+                setMotorsRunToPosition();
 
-        Log.e(TAG, "Restoring motor mode");
-        restoreMotorModes();
+                LOG.log(Logger.Level.DEBUG, "Setting motor power high");
+                move(Direction.FORWARD, power); // To keep power in [0.0, 1.0]. Encoders control direction
 
-        sleep(100);
+                LOG.log(Logger.Level.DEBUG, "Setting target position");
+                setMotorTargets(targetPositionLeft, targetPositionRight);
+
+                items = retainedTelemetry(
+                        "Moving " + inches + " inches at power " + power,
+                        "LMotorT: " + targetPositionLeft,
+                        "RMotorT: " + targetPositionRight,
+                        "EncoderDelta: " + deltaPosition);
+            }
+
+            @Override
+            protected boolean update() {
+                motorSnapshot.nextCycle();
+                boolean moving = (motorSnapshot.isBusy(leftDriveIndex) || motorSnapshot.isBusy(rightDriveIndex)) || !reachedTarget(getMotorPosition(leftDriveIndex), targetPositionLeft, getMotorPosition(rightDriveIndex), targetPositionRight) && !linearOpMode.isStopRequested() && linearOpMode.opModeIsActive();
+                if (!moving)
+                    return true;
+                distanceSlot.set(getMotorPosition(leftDriveIndex), getMotorPosition(rightDriveIndex));
+                return false;
+            }
+
+            @Override
+            protected void end(boolean interrupted) {
+                LOG.log(Logger.Level.DEBUG, "Setting motor power low");
+                stop();
+
+                LOG.log(Logger.Level.DEBUG, "Holding or restoring motor mode");
+                endPositionMove();
+                distanceSlot.clear();
+                releaseTelemetry(items);
+            }
+        };
     }
 
+    /**
+     * Puts the drive motors back in the modes {@link #storeMotorModes()} saved.
+     */
     protected void restoreMotorModes() {
-        leftDriveMotor.setMode(leftDriveSavedMotorMode);
-        rightDriveMotor.setMode(rightDriveSavedMotorMode);
+        holdingRunToPosition = false;
+        setRunMode(leftDriveMotor, leftDriveSavedMotorMode);
+        setRunMode(rightDriveMotor, rightDriveSavedMotorMode);
     }
 
+    /**
+     * Saves the drive motors' modes at the start of a motion, for {@link #restoreMotorModes()}. After moves that left
+     * the motors in RUN_TO_POSITION, the modes from before those moves are kept instead.
+     */
     protected void storeMotorModes() {
-        leftDriveSavedMotorMode = leftDriveMotor.getMode();
-        rightDriveSavedMotorMode = rightDriveMotor.getMode();
+        if (holdingRunToPosition) {
+            holdingRunToPosition = false;
+            return;
+        }
+        saveMotorModes();
+    }
+
+    protected void saveMotorModes() {
+        leftDriveSavedMotorMode = getRunMode(leftDriveMotor);
+        rightDriveSavedMotorMode = getRunMode(rightDriveMotor);
+    }
+
+    /**
+     * Ends a move that ran the motors to position. With relative targets the motors stay in RUN_TO_POSITION, so the
+     * next move doesn't have to switch them out of it and back, until something drives them another way.
+     */
+    protected void endPositionMove() {
+        if (relativeTargets)
+            holdingRunToPosition = true;
+        else
+            restoreMotorModes();
+    }
+
+    /**
+     * Puts the drive motors back in the modes they had before the last moves left them in RUN_TO_POSITION. The drive's
+     * own power commands do it, an op mode that sets the motors' powers or modes itself should call it first.
+     */
+    public void releaseMotorModes() {
+        if (holdingRunToPosition)
+            restoreMotorModes();
+    }
+
+    /**
+     * Also puts the motors back in their modes if moves left them in RUN_TO_POSITION, see
+     * {@link #releaseMotorModes()}.
+     */
+    @Override
+    public void moveFreely(double leftPower, double rightPower) {
+        releaseMotorModes();
+        super.moveFreely(leftPower, rightPower);
+    }
+
+    /**
+     * Sets {@code motor}'s mode, unless it's already in it. A mode change is slower than reading the mode, since the
+     * motor controller has to act on it. The mode is read from the motor every time, so an op mode can still call
+     * {@link DcMotor#setMode(DcMotor.RunMode)} itself.
+     */
+    protected void setRunMode(DcMotor motor, DcMotor.RunMode mode) {
+        if (motor.getMode() != mode)
+            motor.setMode(mode);
+    }
+
+    protected DcMotor.RunMode getRunMode(DcMotor motor) {
+        return motor.getMode();
+    }
+
+    /**
+     * With relative targets, the default, moves don't reset the encoders, so they keep counting across moves. The
+     * motors also stay in RUN_TO_POSITION between moves, until a motion or power command that drives them another way
+     * puts them back in their modes.
+     *
+     * @param relativeTargets true to count each move from where the encoders are, false to reset them before every
+     *                        move and restore the motors' modes after it like older versions did
+     */
+    public void setRelativeTargets(boolean relativeTargets) {
+        this.relativeTargets = relativeTargets;
+    }
+
+    public boolean isUsingRelativeTargets() {
+        return relativeTargets;
+    }
+
+    /**
+     * Makes where the drive motors are now the zero the next move's targets and positions count from. With relative
+     * targets this only reads the encoders, otherwise it resets them.
+     */
+    protected void zeroMotorEncoders() {
+        if (motorZeros.length != motorSnapshot.getMotorCount())
+            motorZeros = new int[motorSnapshot.getMotorCount()];
+        if (!relativeTargets) {
+            resetMotorEncoders();
+            Arrays.fill(motorZeros, 0);
+            return;
+        }
+        motorSnapshot.invalidate();
+        for (int i = 0; i < motorZeros.length; i++)
+            motorZeros[i] = motorSnapshot.getPosition(i);
+    }
+
+    /**
+     * @param motor an index into {@link #motorSnapshot}
+     * @return the motor's position since the last {@link #zeroMotorEncoders()}
+     */
+    protected int getMotorPosition(int motor) {
+        return motorSnapshot.getPosition(motor) - (motor < motorZeros.length ? motorZeros[motor] : 0);
+    }
+
+    /**
+     * @param motor          an index into {@link #motorSnapshot}
+     * @param targetPosition counted from the last {@link #zeroMotorEncoders()}
+     */
+    protected void setMotorTarget(int motor, DcMotor dcMotor, int targetPosition) {
+        dcMotor.setTargetPosition(targetPosition + (motor < motorZeros.length ? motorZeros[motor] : 0));
     }
 
     protected void resetMotorEncoders() {
-        leftDriveMotor.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
-        rightDriveMotor.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
+        Odometry odometry = this.odometry;
+        if (odometry == null) {
+            stopAndResetEncoders();
+        } else {
+            odometry.resetEncoders(new Runnable() {
+                @Override
+                public void run() {
+                    stopAndResetEncoders();
+                }
+            });
+        }
+        motorSnapshot.reset();
+    }
+
+    /**
+     * Zeroes the encoders of every drive motor.
+     */
+    protected void stopAndResetEncoders() {
+        resetEncoder(leftDriveMotor);
+        resetEncoder(rightDriveMotor);
+    }
+
+    /**
+     * Always goes to the hardware, even if the motor was reset last.
+     */
+    protected void resetEncoder(DcMotor motor) {
+        motor.setMode(DcMotor.RunMode.STOP_AND_RESET_ENCODER);
+    }
+
+    /**
+     * Starts tracking the robot's pose on {@link ControlScheduler#getDefault()}, see
+     * {@link #startOdometry(ControlScheduler)}.
+     */
+    public Odometry startOdometry() {
+        return startOdometry(ControlScheduler.getDefault());
+    }
+
+    /**
+     * Starts tracking the robot's pose from the drive encoders, updated every tick of {@code scheduler} until the op
+     * mode stops. Moves keep working as before, and the pose carries across them.
+     * <p>
+     * The odometry shares the drive's {@link MotorSnapshot} with its motions, so {@code scheduler} has to be the one
+     * the motions run on, see {@link #setMotionExecutor(MotionExecutor)}.
+     *
+     * @return the odometry, which is also the pose source to follow trajectories with
+     */
+    public synchronized Odometry startOdometry(final ControlScheduler scheduler) {
+        if (odometry != null)
+            return odometry;
+
+        final Odometry odometry = createOdometry();
+        scheduler.addTask(new ControlTask() {
+            @Override
+            public void update(long tickNanos, double dt) {
+                if (linearOpMode.isStopRequested()) {
+                    scheduler.removeTask(this);
+                    return;
+                }
+                odometry.update(tickNanos, dt);
+            }
+        });
+        this.odometry = odometry;
+        return odometry;
+    }
+
+    /**
+     * @return the odometry started by {@link #startOdometry()}, or null
+     */
+    public Odometry getOdometry() {
+        return odometry;
+    }
+
+    protected Odometry createOdometry() {
+        return new TankOdometry(robotParameters, motorSnapshot, leftDriveIndex, rightDriveIndex);
     }
 
     /**
@@ -156,18 +485,23 @@ public class EncoderDrive extends AbstractComplexDrive {
      */
     @Override
     public void rotateDegrees(Direction direction, double degrees, double speed) {
-        //Move specified degrees using motor encoders
+        Motion motion = rotateDegreesMotion(direction, degrees, speed);
+        runBlocking(motion);
 
-        int targetPositionLeft;
-        int targetPositionRight;
+        // A profiled move has already settled, and without an encoder reset there is nothing to settle
+        if (!(motion instanceof ProfiledMotion) && !relativeTargets)
+            sleep(100);
+    }
 
-        Log.e(TAG, "Getting motor modes");
-        storeMotorModes();
+    @Override
+    protected Motion rotateDegreesMotion(Direction direction, final double degrees, final double speed) {
+        //Move specified degrees using motor encoders
 
-        resetMotorEncoders();
+        final int targetPositionLeft;
+        final int targetPositionRight;
 
         double inches = degreesToInches(degrees);
-        int deltaPosition = (int) FastMath.round(inchesToTicks(inches));
+        final int deltaPosition = (int) FastMath.round(inchesToTicks(inches));
 
         switch (direction) {
             case LEFT: {
@@ -184,47 +518,227 @@ public class EncoderDrive extends AbstractComplexDrive {
                 throw new IllegalArgumentException("Direction must be Direction.LEFT or Direction.RIGHT!");
         }
 
-        Log.e(TAG, "Setting motor modes");
-        setMotorsRunToPosition();
+        if (robotParameters.isMotionProfilingEnabled())
+            return profiledMotion(targetPositionLeft, targetPositionRight, speed);
+
+        return new Motion() {
+            private Telemetry.Item[] items;
+
+            @Override
+            protected void start() {
+                LOG.log(Logger.Level.DEBUG, "Getting motor modes");
+                storeMotorModes();
+
+                zeroMotorEncoders();
+
+                LOG.log(Logger.Level.DEBUG, "Setting motor modes");
+                setMotorsRunToPosition();
+
+                setMotorTargets(targetPositionLeft, targetPositionRight);
+
+                items = retainedTelemetry(
+                        "Rotating " + degrees + " degrees at speed " + speed,
+                        "LMotorT: " + targetPositionLeft,
+                        "RMotorT: " + targetPositionRight,
+                        "EncoderDelta: " + deltaPosition);
 
-        setMotorTargets(targetPositionLeft, targetPositionRight);
+                move(Direction.FORWARD, speed); // To keep speed in [0.0, 1.0]. Encoders control direction
+            }
+
+            @Override
+            protected boolean update() {
+                motorSnapshot.nextCycle();
+                boolean moving = !reachedTarget(getMotorPosition(leftDriveIndex), targetPositionLeft, getMotorPosition(rightDriveIndex), targetPositionRight) && !linearOpMode.isStopRequested() && linearOpMode.opModeIsActive();
+                if (!moving)
+                    return true;
+                distanceSlot.set(getMotorPosition(leftDriveIndex), getMotorPosition(rightDriveIndex));
+                return false;
+            }
 
-        Telemetry.Item[] items = new Telemetry.Item[]{
-                telemetry("Rotating " + degrees + " degrees at speed " + speed).setRetained(true),
-                telemetry("LMotorT: " + targetPositionLeft).setRetained(true),
-                telemetry("RMotorT: " + targetPositionRight).setRetained(true),
-                telemetry("EncoderDelta: " + deltaPosition).setRetained(true),
-                telemetry("DistanceL: DistanceR:")
+            @Override
+            protected void end(boolean interrupted) {
+                stop();
+
+                LOG.log(Logger.Level.DEBUG, "Holding or restoring motor mode");
+                endPositionMove();
+                distanceSlot.clear();
+                releaseTelemetry(items);
+            }
         };
-        Telemetry.Item distance = items[4];
+    }
+
+    /**
+     * Moves each side to its target along a motion profile from {@link RobotParameters}, with a velocity controller
+     * per side. The feedforward drives the wheels at the profile's velocity and acceleration, and the feedback
+     * corrects for what it gets wrong. The integral of the velocity error is how far a side is behind the profile, so
+     * the I gain is what pulls it onto the target. Both targets have to be the same distance.
+     *
+     * @param power scales the profile's max velocity
+     */
+    protected Motion profiledMotion(int targetPositionLeft, int targetPositionRight, double power) {
+        if (!(FastMath.abs(power) > 0))
+            throw new IllegalArgumentException("Power must not be 0");
+
+        MotionProfile profile = MotionProfile.create(inchesToTicksInverse(FastMath.abs(targetPositionLeft)),
+                FastMath.min(FastMath.abs(power), 1) * robotParameters.getMaxVelocity(),
+                robotParameters.getMaxAcceleration(), robotParameters.getMaxJerk());
+        return new ProfiledMotion(profile, targetPositionLeft, targetPositionRight,
+                targetPositionLeft == targetPositionRight ? headingHold : null);
+    }
+
+    /**
+     * @param headingHold what straight moves, strafes and profiled moves keep the heading with, or null to leave it
+     *                    to the encoders, the default. It's read when each move is made.
+     */
+    public void setHeadingHold(HeadingHold headingHold) {
+        this.headingHold = headingHold;
+    }
+
+    public HeadingHold getHeadingHold() {
+        return headingHold;
+    }
 
-        move(Direction.FORWARD, speed); // To keep speed in [0.0, 1.0]. Encoders control direction
-        while (!reachedTarget(leftDriveMotor.getCurrentPosition(), targetPositionLeft, rightDriveMotor.getCurrentPosition(), targetPositionRight) && !linearOpMode.isStopRequested() && linearOpMode.opModeIsActive()) {
-            Thread.yield();
-            distance.setValue("DistanceL: " + leftDriveMotor.getCurrentPosition() + " DistanceR: " + rightDriveMotor.getCurrentPosition());
-            linearOpMode.telemetry.update();
+    /**
+     * Drives several segments back to back along one {@link BlendedProfile}, carrying speed across the boundaries
+     * where both sides keep turning the same way and stopping at the others. Each segment moves both sides the same
+     * distance, forwards or backwards, so it can be a straight move or a turn in place.
+     *
+     * @param leftInches  how far the left side moves in each segment
+     * @param rightInches how far the right side moves in each segment
+     * @param powers      scales the profile's max velocity in each segment
+     * @param stops       whether to stop after each segment but the last, may be null
+     */
+    protected BlendedMotion blendedMotion(double[] leftInches, double[] rightInches, double[] powers, boolean[] stops) {
+        int n = leftInches.length;
+        if (rightInches.length != n || powers.length != n)
+            throw new IllegalArgumentException("Need a left distance, right distance and power for every segment");
+
+        double[] lengths = new double[n], maxVelocities = new double[n];
+        boolean[] blendedStops = new boolean[FastMath.max(n - 1, 0)];
+        for (int i = 0; i < n; i++) {
+            if (FastMath.abs(FastMath.abs(leftInches[i]) - FastMath.abs(rightInches[i])) > 1e-6)
+                throw new IllegalArgumentException("Both sides must move the same distance in a segment");
+            if (!(FastMath.abs(powers[i]) > 0))
+                throw new IllegalArgumentException("Power must not be 0");
+            lengths[i] = FastMath.abs(leftInches[i]);
+            maxVelocities[i] = FastMath.min(FastMath.abs(powers[i]), 1) * robotParameters.getMaxVelocity();
+            // A side that reverses has to stop first
+            if (i > 0)
+                blendedStops[i - 1] = stops != null && stops[i - 1]
+                        || FastMath.signum(leftInches[i]) != FastMath.signum(leftInches[i - 1])
+                        || FastMath.signum(rightInches[i]) != FastMath.signum(rightInches[i - 1]);
         }
-        stop();
+        return new BlendedMotion(new BlendedProfile(lengths, maxVelocities, blendedStops, robotParameters.getMaxAcceleration()),
+                leftInches, rightInches, headingHold);
+    }
+
+    /**
+     * @param trajectoryFollower the gains to follow trajectories with, {@link RamseteFollower#RamseteFollower()}
+     *                           unless set
+     */
+    public void setTrajectoryFollower(RamseteFollower trajectoryFollower) {
+        this.trajectoryFollower = trajectoryFollower;
+    }
+
+    /**
+     * Drives along {@code trajectory} without stopping, steering back onto it from where {@code poseSource} says the
+     * robot is. The robot should start near the trajectory's start, facing along it.
+     */
+    public void followTrajectory(Trajectory trajectory, PoseSource poseSource) {
+        runBlocking(followTrajectoryMotion(trajectory, poseSource));
+    }
+
+    /**
+     * Starts {@link #followTrajectory(Trajectory, PoseSource)} in the background and returns right away, cancelling
+     * any motion this drive is already running.
+     */
+    public MotionHandle followTrajectoryAsync(Trajectory trajectory, PoseSource poseSource) {
+        return runAsync(followTrajectoryMotion(trajectory, poseSource));
+    }
+
+    protected Motion followTrajectoryMotion(Trajectory trajectory, PoseSource poseSource) {
+        if (robotParameters.getDriveVelocityCoefficients() == null)
+            throw new IllegalStateException("Following a trajectory needs driveVelocityCoefficients in the RobotParameters");
+        return new TrajectoryMotion(trajectory, poseSource, trajectoryFollower);
+    }
+
+    /**
+     * Drives open loop at the powers {@code test} calls for, taking a sample every tick of the control loop, for
+     * {@link DriveCharacterization} to fit the feedforward and wheel base to.
+     *
+     * @param headingSource where to log the heading from, needed to fit the wheel base from a turning test, or null
+     */
+    public CharacterizationLog characterize(CharacterizationTest test, HeadingSource headingSource) {
+        CharacterizationLog log = new CharacterizationLog((int) (test.getDuration() * 1000 / ControlScheduler.DEFAULT_PERIOD_MS) + 16);
+        runBlocking(characterizationMotion(test, headingSource, log));
+        return log;
+    }
+
+    protected Motion characterizationMotion(final CharacterizationTest test, final HeadingSource headingSource, final CharacterizationLog log) {
+        return new Motion() {
+            private long startNanos;
+            private double leftPower, rightPower;
+
+            @Override
+            protected void start() {
+                storeMotorModes();
+                zeroMotorEncoders();
+                setMotorsRunWithoutEncoder();
+                leftPower = rightPower = 0;
+                startNanos = System.nanoTime();
+            }
 
-        Log.e(TAG, "Restoring motor mode");
-        restoreMotorModes();
+            @Override
+            protected boolean update() {
+                double t = (System.nanoTime() - startNanos) / S_TO_NS;
+                motorSnapshot.nextCycle();
+                double left = inchesToTicksInverse(getMotorPosition(leftDriveIndex));
+                double right = inchesToTicksInverse(getMotorPosition(rightDriveIndex));
+                // The powers set last tick are the ones the velocities were measured at
+                log.add(t, leftPower, rightPower, left, right,
+                        inchesToTicksInverse(motorSnapshot.getVelocity(leftDriveIndex)),
+                        inchesToTicksInverse(motorSnapshot.getVelocity(rightDriveIndex)),
+                        headingSource == null ? Double.NaN : headingSource.getHeading());
+                if (t >= test.getDuration() || FastMath.max(FastMath.abs(left), FastMath.abs(right)) >= test.getMaxDistance()
+                        || !linearOpMode.opModeIsActive())
+                    return true;
 
-        for (Telemetry.Item i : items)
-            i.setRetained(false);
+                rightPower = test.getPower(t);
+                leftPower = test.isTurning() ? -rightPower : rightPower;
+                moveFreely(leftPower, rightPower);
+                return false;
+            }
+
+            @Override
+            protected void end(boolean interrupted) {
+                stop();
+                restoreMotorModes();
+            }
+        };
+    }
 
-        sleep(100);
+    protected void setMotorsRunUsingEncoder() {
+        setRunMode(leftDriveMotor, DcMotor.RunMode.RUN_USING_ENCODER);
+        setRunMode(rightDriveMotor, DcMotor.RunMode.RUN_USING_ENCODER);
+    }
+
+    protected void setMotorsRunWithoutEncoder() {
+        setRunMode(leftDriveMotor, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+        setRunMode(rightDriveMotor, DcMotor.RunMode.RUN_WITHOUT_ENCODER);
     }
 
     protected void setMotorsRunToPosition() {
-        if (leftDriveMotor.getMode() != DcMotor.RunMode.RUN_TO_POSITION)
-            leftDriveMotor.setMode(DcMotor.RunMode.RUN_TO_POSITION);
-        if (rightDriveMotor.getMode() != DcMotor.RunMode.RUN_TO_POSITION)
-            rightDriveMotor.setMode(DcMotor.RunMode.RUN_TO_POSITION);
+        setRunMode(leftDriveMotor, DcMotor.RunMode.RUN_TO_POSITION);
+        setRunMode(rightDriveMotor, DcMotor.RunMode.RUN_TO_POSITION);
     }
 
+    /**
+     * @param targetPositionLeft  counted from the last {@link #zeroMotorEncoders()}
+     * @param targetPositionRight counted from the last {@link #zeroMotorEncoders()}
+     */
     protected void setMotorTargets(int targetPositionLeft, int targetPositionRight) {
-        leftDriveMotor.setTargetPosition(targetPositionLeft);
-        rightDriveMotor.setTargetPosition(targetPositionRight);
+        setMotorTarget(leftDriveIndex, leftDriveMotor, targetPositionLeft);
+        setMotorTarget(rightDriveIndex, rightDriveMotor, targetPositionRight);
     }
 
     /**
@@ -240,4 +754,382 @@ public class EncoderDrive extends AbstractComplexDrive {
     protected boolean reachedTarget(int currentPositionLeft, int targetPositionLeft, int currentPositionRight, int targetPositionRight) {
         return FastMath.abs(currentPositionLeft - targetPositionLeft) < TARGET_REACHED_THRESHOLD && FastMath.abs(currentPositionRight - targetPositionRight) < TARGET_REACHED_THRESHOLD;
     }
+
+    /**
+     * @param average whether only the average of the sides has to reach its target, for moves that steered by
+     *                driving one side further than the other
+     */
+    protected boolean reachedTarget(int currentPositionLeft, int targetPositionLeft, int currentPositionRight, int targetPositionRight, boolean average) {
+        if (!average)
+            return reachedTarget(currentPositionLeft, targetPositionLeft, currentPositionRight, targetPositionRight);
+        return FastMath.abs(currentPositionLeft + currentPositionRight - targetPositionLeft - targetPositionRight) < 2 * TARGET_REACHED_THRESHOLD;
+    }
+
+    /**
+     * @param t seconds since a profiled move started
+     * @return whether the move is done: its profile has ended and the wheels reached their targets, or they still
+     * haven't {@link #PROFILE_SETTLE_TIMEOUT_MS} later, which is logged
+     */
+    private boolean profiledMoveDone(double t, double duration, int currentPositionLeft, int targetPositionLeft, int currentPositionRight, int targetPositionRight, boolean average) {
+        if (t < duration)
+            return false;
+        if (reachedTarget(currentPositionLeft, targetPositionLeft, currentPositionRight, targetPositionRight, average))
+            return true;
+        if (t - duration <= PROFILE_SETTLE_TIMEOUT_MS / 1000.0)
+            return false;
+        LOG.log(Logger.Level.WARN, "Profiled move timed out %.0f, %.0f ticks short of its target",
+                targetPositionLeft - currentPositionLeft, targetPositionRight - currentPositionRight);
+        return true;
+    }
+
+    /**
+     * Turns how far each side is behind its profile into the velocity it should add to catch up, with
+     * {@link #PROFILE_POSITION_GAIN}.
+     *
+     * @param leftError  inches the left side is short of where the profile says it should be
+     * @param rightError inches the right side is short
+     * @param average    whether to only correct the sides' average progress, for moves that steer by driving one side
+     *                   further than the other
+     * @param out        set to the left and right velocities in inches per second
+     */
+    private static void getCatchUpVelocities(double leftError, double rightError, double leftDirection, double rightDirection, boolean average, double[] out) {
+        if (average) {
+            double progressError = (leftDirection * leftError + rightDirection * rightError) / 2;
+            leftError = leftDirection * progressError;
+            rightError = rightDirection * progressError;
+        }
+        out[0] = PROFILE_POSITION_GAIN * leftError;
+        out[1] = PROFILE_POSITION_GAIN * rightError;
+    }
+
+    private class ProfiledMotion extends Motion {
+
+        private final MotionProfile profile;
+        private final int targetPositionLeft, targetPositionRight;
+        private final double leftDirection, rightDirection;
+        private final PIDFController leftController = new PIDFController(robotParameters.getDriveVelocityCoefficients());
+        private final PIDFController rightController = new PIDFController(robotParameters.getDriveVelocityCoefficients());
+        private final MotionState state = new MotionState();
+        private final HeadingHold headingHold;
+        private final double[] catchUpVelocities = new double[2];
+        private long startNanos, lastNanos;
+        private Telemetry.Item[] items;
+
+        /**
+         * @param headingHold for a straight move, or null
+         */
+        ProfiledMotion(MotionProfile profile, int targetPositionLeft, int targetPositionRight, HeadingHold headingHold) {
+            this.profile = profile;
+            this.targetPositionLeft = targetPositionLeft;
+            this.targetPositionRight = targetPositionRight;
+            this.leftDirection = FastMath.signum(targetPositionLeft);
+            this.rightDirection = FastMath.signum(targetPositionRight);
+            this.headingHold = headingHold;
+        }
+
+        @Override
+        protected void start() {
+            storeMotorModes();
+            zeroMotorEncoders();
+            setMotorsRunWithoutEncoder();
+
+            items = retainedTelemetry(String.format(Locale.US, "Profiled move to %d, %d in %.2f s", targetPositionLeft, targetPositionRight, profile.getDuration()));
+            if (headingHold != null)
+                headingHold.start();
+            startNanos = lastNanos = System.nanoTime();
+        }
+
+        @Override
+        protected boolean update() {
+            long nowNanos = System.nanoTime();
+            double t = (nowNanos - startNanos) / S_TO_NS, dt = (nowNanos - lastNanos) / S_TO_NS;
+            lastNanos = nowNanos;
+
+            motorSnapshot.nextCycle();
+            int leftPosition = getMotorPosition(leftDriveIndex), rightPosition = getMotorPosition(rightDriveIndex);
+            if (profiledMoveDone(t, profile.getDuration(), leftPosition, targetPositionLeft, rightPosition, targetPositionRight, headingHold != null))
+                return true;
+
+            profile.getState(t, state);
+            getCatchUpVelocities(leftDirection * state.getPosition() - inchesToTicksInverse(leftPosition),
+                    rightDirection * state.getPosition() - inchesToTicksInverse(rightPosition),
+                    leftDirection, rightDirection, headingHold != null, catchUpVelocities);
+            // Steer by speeding one side up and slowing the other, so each side's controller tracks its share
+            double correction = headingHold == null ? 0 : headingHold.update(dt) * robotParameters.getMaxVelocity();
+            moveFreely(
+                    update(leftController, leftDirection, catchUpVelocities[0] - correction, motorSnapshot.getVelocity(leftDriveIndex), dt),
+                    update(rightController, rightDirection, catchUpVelocities[1] + correction, motorSnapshot.getVelocity(rightDriveIndex), dt));
+
+            distanceSlot.set(leftPosition, rightPosition);
+            return false;
+        }
+
+        /**
+         * @param adjustment inches per second to add to the profile's velocity, to catch up with it and to steer
+         * @param velocity   the side's measured velocity in ticks per second
+         * @return the side's power
+         */
+        private double update(PIDFController controller, double direction, double adjustment, double velocity, double dt) {
+            double targetVelocity = direction * state.getVelocity() + adjustment;
+            return controller.update(targetVelocity, inchesToTicksInverse(velocity), targetVelocity, direction * state.getAcceleration(), dt);
+        }
+
+        @Override
+        protected void end(boolean interrupted) {
+            stop();
+            restoreMotorModes();
+            distanceSlot.clear();
+            releaseTelemetry(items);
+        }
+    }
+
+    /**
+     * Drives a set of motors at a constant power, slowing down near the end, while a {@link HeadingHold} steers. It
+     * runs the motors on their encoders rather than to position, so the sides can cover different distances to steer,
+     * and ends when the motors have gone as far as their targets on average.
+     */
+    protected abstract class HeldMotion extends Motion {
+
+        private final HeadingHold headingHold;
+        private final int[] motors, directions;
+        private final double distance, power;
+        private long lastNanos;
+
+        /**
+         * @param motors  indices into {@link #motorSnapshot}
+         * @param targets each motor's target, all the same distance
+         */
+        protected HeldMotion(HeadingHold headingHold, int[] motors, int[] targets, double power) {
+            this.headingHold = headingHold;
+            this.motors = motors.clone();
+            this.directions = new int[targets.length];
+            for (int i = 0; i < targets.length; i++)
+                directions[i] = (int) FastMath.signum(targets[i]);
+            this.distance = FastMath.abs(targets[0]);
+            this.power = FastMath.min(FastMath.abs(power), 1);
+        }
+
+        /**
+         * Sets the motor powers.
+         *
+         * @param power      how fast to go, in [0, 1]
+         * @param correction how much to turn, positive counterclockwise
+         */
+        protected abstract void steer(double power, double correction);
+
+        @Override
+        protected void start() {
+            storeMotorModes();
+            zeroMotorEncoders();
+            setMotorsRunUsingEncoder();
+            headingHold.start();
+            lastNanos = System.nanoTime();
+        }
+
+        @Override
+        protected boolean update() {
+            long nowNanos = System.nanoTime();
+            double dt = (nowNanos - lastNanos) / S_TO_NS;
+            lastNanos = nowNanos;
+
+            motorSnapshot.nextCycle();
+            double travelled = 0;
+            for (int i = 0; i < motors.length; i++)
+                travelled += directions[i] * getMotorPosition(motors[i]);
+            travelled /= motors.length;
+            if (travelled >= distance - TARGET_REACHED_THRESHOLD || !linearOpMode.opModeIsActive())
+                return true;
+
+            double slowdown = inchesToTicksInverse(distance - travelled) / HELD_MOVE_SLOWDOWN_INCHES;
+            steer(FastMath.max(HELD_MOVE_MIN_POWER, power * FastMath.min(slowdown, 1)), headingHold.update(dt));
+
+            heldProgressSlot.set(travelled, distance, headingHold.getError());
+            return false;
+        }
+
+        @Override
+        protected void end(boolean interrupted) {
+            stop();
+            restoreMotorModes();
+            heldProgressSlot.clear();
+        }
+    }
+
+    /**
+     * Like {@link ProfiledMotion} over several segments, see {@link #blendedMotion(double[], double[], double[], boolean[])}.
+     * Segments are counted as done when the wheels get to their end, not when the profile does.
+     */
+    protected class BlendedMotion extends Motion {
+
+        private final BlendedProfile profile;
+        private final double[] leftDirections, rightDirections;
+        /**
+         * Where each side should be at the start of each segment and, at the end, where it stops, in inches
+         */
+        private final double[] leftStarts, rightStarts;
+        private final int targetPositionLeft, targetPositionRight;
+        private final double tolerance = inchesToTicksInverse(TARGET_REACHED_THRESHOLD);
+        private final PIDFController leftController = new PIDFController(robotParameters.getDriveVelocityCoefficients());
+        private final PIDFController rightController = new PIDFController(robotParameters.getDriveVelocityCoefficients());
+        private final MotionState state = new MotionState();
+        private final HeadingHold headingHold;
+        private final double[] catchUpVelocities = new double[2];
+        private long startNanos, lastNanos;
+        private int segment, plannedSegment;
+
+        BlendedMotion(BlendedProfile profile, double[] leftInches, double[] rightInches, HeadingHold headingHold) {
+            int n = profile.getSegmentCount();
+            this.profile = profile;
+            this.headingHold = headingHold;
+            this.leftDirections = new double[n];
+            this.rightDirections = new double[n];
+            this.leftStarts = new double[n + 1];
+            this.rightStarts = new double[n + 1];
+            for (int i = 0; i < n; i++) {
+                leftDirections[i] = FastMath.signum(leftInches[i]);
+                rightDirections[i] = FastMath.signum(rightInches[i]);
+                leftStarts[i + 1] = leftStarts[i] + leftInches[i];
+                rightStarts[i + 1] = rightStarts[i] + rightInches[i];
+            }
+            this.targetPositionLeft = (int) FastMath.round(inchesToTicks(leftStarts[n]));
+            this.targetPositionRight = (int) FastMath.round(inchesToTicks(rightStarts[n]));
+        }
+
+        public BlendedProfile getProfile() {
+            return profile;
+        }
+
+        /**
+         * @return the segment the wheels are in, only meaningful on the thread running the motion
+         */
+        public int getSegment() {
+            return segment;
+        }
+
+        @Override
+        protected void start() {
+            storeMotorModes();
+            zeroMotorEncoders();
+            setMotorsRunWithoutEncoder();
+            leftController.reset();
+            rightController.reset();
+            segment = plannedSegment = 0;
+            if (headingHold != null)
+                headingHold.start();
+            startNanos = lastNanos = System.nanoTime();
+        }
+
+        @Override
+        protected boolean update() {
+            long nowNanos = System.nanoTime();
+            double t = (nowNanos - startNanos) / S_TO_NS, dt = (nowNanos - lastNanos) / S_TO_NS;
+            lastNanos = nowNanos;
+
+            motorSnapshot.nextCycle();
+            int leftPosition = getMotorPosition(leftDriveIndex), rightPosition = getMotorPosition(rightDriveIndex);
+            double left = inchesToTicksInverse(leftPosition), right = inchesToTicksInverse(rightPosition);
+            while (segment < profile.getSegmentCount() - 1
+                    && ((left - leftStarts[segment]) * leftDirections[segment] + (right - rightStarts[segment]) * rightDirections[segment]) / 2
+                    >= profile.getLength(segment) - tolerance)
+                segment++;
+
+            if (profiledMoveDone(t, profile.getDuration(), leftPosition, targetPositionLeft, rightPosition, targetPositionRight, headingHold != null))
+                return true;
+
+            int planned = profile.getState(t, state);
+            getCatchUpVelocities(leftStarts[planned] + leftDirections[planned] * state.getPosition() - left,
+                    rightStarts[planned] + rightDirections[planned] * state.getPosition() - right,
+                    leftDirections[planned], rightDirections[planned], headingHold != null, catchUpVelocities);
+            double correction = 0;
+            if (headingHold != null && leftDirections[planned] == rightDirections[planned]) {
+                // Hold the heading a turn in place ended on
+                if (planned != plannedSegment && leftDirections[plannedSegment] != rightDirections[plannedSegment])
+                    headingHold.start();
+                correction = headingHold.update(dt) * robotParameters.getMaxVelocity();
+            }
+            plannedSegment = planned;
+            double leftVelocity = leftDirections[planned] * state.getVelocity() + catchUpVelocities[0] - correction;
+            double rightVelocity = rightDirections[planned] * state.getVelocity() + catchUpVelocities[1] + correction;
+            moveFreely(
+                    leftController.update(leftVelocity, inchesToTicksInverse(motorSnapshot.getVelocity(leftDriveIndex)),
+                            leftVelocity, leftDirections[planned] * state.getAcceleration(), dt),
+                    rightController.update(rightVelocity, inchesToTicksInverse(motorSnapshot.getVelocity(rightDriveIndex)),
+                            rightVelocity, rightDirections[planned] * state.getAcceleration(), dt));
+            return false;
+        }
+
+        @Override
+        protected void end(boolean interrupted) {
+            segment = profile.getSegmentCount() - 1;
+            stop();
+            restoreMotorModes();
+        }
+    }
+
+    /**
+     * Turns the {@link RamseteFollower}'s speeds into wheel speeds, and drives each side at its speed with a
+     * velocity controller.
+     */
+    private class TrajectoryMotion extends Motion {
+
+        private final Trajectory trajectory;
+        private final PoseSource poseSource;
+        private final RamseteFollower follower;
+        private final PIDFController leftController = new PIDFController(robotParameters.getDriveVelocityCoefficients());
+        private final PIDFController rightController = new PIDFController(robotParameters.getDriveVelocityCoefficients());
+        private final TrajectoryState reference = new TrajectoryState();
+        private final double[] pose = new double[3], command = new double[2];
+        private final double halfTrackWidth = robotParameters.getWheelBaseRadius();
+        private long startNanos, lastNanos;
+        private Telemetry.Item[] items;
+
+        TrajectoryMotion(Trajectory trajectory, PoseSource poseSource, RamseteFollower follower) {
+            this.trajectory = trajectory;
+            this.poseSource = poseSource;
+            this.follower = follower;
+        }
+
+        @Override
+        protected void start() {
+            storeMotorModes();
+            setMotorsRunWithoutEncoder();
+            motorSnapshot.reset();
+
+            items = retainedTelemetry(String.format(Locale.US, "Following %.1f in trajectory in %.2f s", trajectory.getLength(), trajectory.getDuration()));
+            startNanos = lastNanos = System.nanoTime();
+        }
+
+        @Override
+        protected boolean update() {
+            long nowNanos = System.nanoTime();
+            double t = (nowNanos - startNanos) / S_TO_NS, dt = (nowNanos - lastNanos) / S_TO_NS;
+            lastNanos = nowNanos;
+            if (t >= trajectory.getDuration())
+                return true;
+
+            trajectory.getState(t, reference);
+            poseSource.getPose(pose);
+            follower.update(pose, reference, command);
+
+            // Turning counterclockwise speeds up the right side, with ω = v κ the wheel accelerations scale the same
+            double turn = command[1] * halfTrackWidth, curvatureScale = reference.getCurvature() * halfTrackWidth;
+            motorSnapshot.nextCycle();
+            double leftPower = leftController.update(command[0] - turn, inchesToTicksInverse(motorSnapshot.getVelocity(leftDriveIndex)),
+                    command[0] - turn, reference.getAcceleration() * (1 - curvatureScale), dt);
+            double rightPower = rightController.update(command[0] + turn, inchesToTicksInverse(motorSnapshot.getVelocity(rightDriveIndex)),
+                    command[0] + turn, reference.getAcceleration() * (1 + curvatureScale), dt);
+            moveFreely(leftPower, rightPower);
+
+            trajectoryErrorSlot.set(FastMath.hypot(reference.getX() - pose[0], reference.getY() - pose[1]));
+            return false;
+        }
+
+        @Override
+        protected void end(boolean interrupted) {
+            stop();
+            restoreMotorModes();
+            trajectoryErrorSlot.clear();
+            releaseTelemetry(items);
+        }
+    }
 }
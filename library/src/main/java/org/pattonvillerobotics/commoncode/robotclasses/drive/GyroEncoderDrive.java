@@ -1,7 +1,5 @@
 package org.pattonvillerobotics.commoncode.robotclasses.drive;
 
-import android.util.Log;
-
 import com.qualcomm.hardware.bosch.BNO055IMU;
 import com.qualcomm.hardware.bosch.JustLoggingAccelerationIntegrator;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
@@ -14,13 +12,36 @@ import org.firstinspires.ftc.robotcore.external.navigation.AxesOrder;
 import org.firstinspires.ftc.robotcore.external.navigation.AxesReference;
 import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
 import org.pattonvillerobotics.commoncode.enums.Direction;
+import org.pattonvillerobotics.commoncode.robotclasses.control.HeadingController;
+import org.pattonvillerobotics.commoncode.robotclasses.control.PIDFCoefficients;
+import org.pattonvillerobotics.commoncode.robotclasses.logging.Logger;
+import org.pattonvillerobotics.commoncode.robotclasses.recorder.FlightRecorder;
+import org.pattonvillerobotics.commoncode.robotclasses.telemetry.TelemetryPipeline;
+import java.util.concurrent.TimeUnit;
 
 public class GyroEncoderDrive extends EncoderDrive {
 
-    private static final double ANGLE_THRESHOLD = 1;
+    /**
+     * The BNO055 only updates its fused heading at 100 Hz, reading it faster just ties up the I2C bus
+     */
+    public static final long IMU_POLL_PERIOD_MS = 10;
+    public static final PIDFCoefficients DEFAULT_HEADING_COEFFICIENTS = new PIDFCoefficients.Builder()
+            .p(.03)
+            .i(.02)
+            .d(.002)
+            .s(.05)
+            .build();
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
+    private static final Logger LOG = Logger.get("GyroHeading");
 
     private BNO055IMU imu = null;
     private Orientation angles;
+    private final TelemetryPipeline.Slot headingsSlot = telemetryPipeline.addSlot("Headings", "Current Heading: %.2f & Target Heading: %.2f", 2);
+    private volatile HeadingController headingController = new HeadingController(DEFAULT_HEADING_COEFFICIENTS);
+    private double heading, headingRate;
+    private long lastPollNanos;
+    private volatile FlightRecorder.Channel imuChannel;
+
     public GyroEncoderDrive(HardwareMap hardwareMap, LinearOpMode linearOpMode, RobotParameters robotParameters) {
         super(hardwareMap, linearOpMode, robotParameters);
 
@@ -36,7 +57,8 @@ public class GyroEncoderDrive extends EncoderDrive {
         imu.initialize(parameters);
 
         angles = imu.getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.DEGREES);
-
+        heading = angles.firstAngle;
+        lastPollNanos = System.nanoTime();
     }
 
     @Override
@@ -44,51 +66,158 @@ public class GyroEncoderDrive extends EncoderDrive {
         return super.telemetry("GyroEncoderDrive", message);
     }
 
+    /**
+     * @param headingController what turns use, one with {@link #DEFAULT_HEADING_COEFFICIENTS} unless set. Tune it
+     *                          off the robot against a simulated turn first.
+     */
+    public void setHeadingController(HeadingController headingController) {
+        this.headingController = headingController;
+    }
+
+    public HeadingController getHeadingController() {
+        return headingController;
+    }
+
+    /**
+     * Reads the IMU, unless it was read less than {@link #IMU_POLL_PERIOD_MS} ago.
+     *
+     * @return the heading in degrees, unwrapped so it counts whole turns instead of jumping at 180
+     */
+    public synchronized double getHeading() {
+        long nowNanos = System.nanoTime();
+        if (nowNanos - lastPollNanos >= TimeUnit.MILLISECONDS.toNanos(IMU_POLL_PERIOD_MS)) {
+            angles = imu.getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.DEGREES);
+            double next = HeadingController.unwrapDegrees(heading, angles.firstAngle);
+            headingRate = (next - heading) / ((nowNanos - lastPollNanos) / S_TO_NS);
+            heading = next;
+            lastPollNanos = nowNanos;
+
+            FlightRecorder.Channel imuChannel = this.imuChannel;
+            if (imuChannel != null)
+                imuChannel.record(heading, headingRate);
+        }
+        return heading;
+    }
+
+    /**
+     * Also records the heading and its rate every time the IMU is read.
+     */
     @Override
-    public void rotateDegrees(Direction direction, double degrees, double speed) {
-        this.gyroTurnDegrees(direction, degrees, speed);
+    protected void addRecorderChannels(FlightRecorder recorder) {
+        super.addRecorderChannels(recorder);
+        imuChannel = recorder.addChannel("imu", "heading", "rate");
     }
 
-    private void gyroTurnDegrees(Direction direction, double angle, double speed) {
-        //Turn Specified Degrees Using Gyro Sensor
+    /**
+     * @return the IMU's heading for a {@link HeadingHold}, which counts counterclockwise where {@link #getHeading()}
+     * grows turning right
+     */
+    public HeadingSource getHeadingSource() {
+        return new HeadingSource() {
+            @Override
+            public double getHeading() {
+                return -GyroEncoderDrive.this.getHeading();
+            }
+        };
+    }
 
-        angles = imu.getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.DEGREES);
-        double currentHeading = angles.firstAngle;
-        double targetHeading;
-        Direction currentDirection = direction;
-        int numOvershoots = 0;
-
-        switch (direction) {
-            case LEFT:
-                targetHeading = currentHeading - angle;
-                break;
-            case RIGHT:
-                targetHeading = currentHeading + angle;
-                break;
-            default:
-                throw new IllegalArgumentException();
+    /**
+     * Keeps straight moves on their heading with the IMU, see {@link #setHeadingHold(HeadingHold)}.
+     */
+    public void enableHeadingHold() {
+        setHeadingHold(new HeadingHold(getHeadingSource()));
+    }
 
-        }
+    /**
+     * @return how fast the heading changed between the last two IMU reads, in degrees per second
+     */
+    public synchronized double getHeadingRate() {
+        return headingRate;
+    }
 
-        Telemetry.Item headingsTelemetryItem = telemetry("Headings", "Current Heading: " + currentHeading + "& Target Heading: " + targetHeading);
+    @Override
+    public void rotateDegrees(Direction direction, double degrees, double speed) {
+        runBlocking(rotateDegreesMotion(direction, degrees, speed));
+    }
 
-        while (FastMath.abs(currentHeading - targetHeading) > .01) {
-            Direction newDirection = FastMath.signum(currentHeading - targetHeading) > 0 ? Direction.LEFT : Direction.RIGHT;
-            if (newDirection != currentDirection)
-                numOvershoots++;
-            turn(currentDirection, speed / (numOvershoots + 1));
+    @Override
+    protected Motion rotateDegreesMotion(final Direction direction, final double angle, final double speed) {
+        //Turn Specified Degrees Using Gyro Sensor
 
-            angles = imu.getAngularOrientation(AxesReference.INTRINSIC, AxesOrder.ZYX, AngleUnit.DEGREES);
-            currentHeading = angles.firstAngle;
-            headingsTelemetryItem.setValue("Headings", "Current Heading: " + currentHeading + "& Target Heading: " + targetHeading);
+        if (direction != Direction.LEFT && direction != Direction.RIGHT)
+            throw new IllegalArgumentException();
 
-            if (numOvershoots > 5)
-                break;
-        }
+        return headingMotion(new HeadingTarget() {
+            @Override
+            public double getTargetHeading(double heading) {
+                return direction == Direction.LEFT ? heading - angle : heading + angle;
+            }
+        }, speed);
+    }
+
+    /**
+     * Turns in place to the absolute {@code heading} the IMU reads, the short way around.
+     */
+    public void turnToHeading(double heading, double speed) {
+        runBlocking(turnToHeadingMotion(heading, speed));
+    }
 
-        telemetry("Drive", "Angle obtained, stopping motors.");
-        Log.i("GyroHeading", Double.toString(currentHeading));
+    protected Motion turnToHeadingMotion(final double targetHeading, double speed) {
+        return headingMotion(new HeadingTarget() {
+            @Override
+            public double getTargetHeading(double heading) {
+                return HeadingController.unwrapDegrees(heading, targetHeading);
+            }
+        }, speed);
+    }
+
+    /**
+     * @param speed the most power to turn with
+     */
+    private Motion headingMotion(final HeadingTarget target, final double speed) {
+        final HeadingController controller = headingController;
+
+        return new Motion() {
+            private long lastNanos;
+
+            @Override
+            protected void start() {
+                double currentHeading = getHeading();
+                controller.setMaxPower(FastMath.abs(speed));
+                controller.start(currentHeading, target.getTargetHeading(currentHeading));
+                lastNanos = System.nanoTime();
+            }
+
+            @Override
+            protected boolean update() {
+                long nowNanos = System.nanoTime();
+                double currentHeading = getHeading();
+                // Headings grow turning right
+                double power = controller.update(currentHeading, getHeadingRate(), (nowNanos - lastNanos) / S_TO_NS);
+                lastNanos = nowNanos;
+                if (controller.isDone())
+                    return true;
+                turn(Direction.RIGHT, power);
+                headingsSlot.set(currentHeading, controller.getTargetHeading());
+                return false;
+            }
+
+            @Override
+            protected void end(boolean interrupted) {
+                telemetry("Drive", "Angle obtained, stopping motors.");
+                LOG.log(Logger.Level.INFO, controller.isSettled() ? "%.2f off %.2f, settled" : interrupted ? "%.2f off %.2f, interrupted" : "%.2f off %.2f, timed out",
+                        controller.getError(), controller.getTargetHeading());
+
+                stop();
+                headingsSlot.clear();
+            }
+        };
+    }
 
-        stop();
+    private interface HeadingTarget {
+        /**
+         * @param heading the unwrapped heading the turn starts from
+         */
+        double getTargetHeading(double heading);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,126 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import org.apache.commons.math3.util.FastMath;
+import org.pattonvillerobotics.commoncode.robotclasses.control.HeadingController;
+import org.pattonvillerobotics.commoncode.robotclasses.control.PIDFCoefficients;
+import org.pattonvillerobotics.commoncode.robotclasses.control.PIDFController;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory.PoseSource;
+
+/**
+ * Keeps the robot facing the way it was when a move started, by working out a turn correction from a
+ * {@link HeadingSource} that the drive mixes into its wheel powers. Set it on an {@link EncoderDrive} with
+ * {@link EncoderDrive#setHeadingHold(HeadingHold)}.
+ * <p>
+ * The correction is a fraction of full power, positive to turn counterclockwise. The heading's rate is worked out
+ * from when the reading last changed, since gyros update slower than the control loop runs.
+ */
+public class HeadingHold {
+
+    public static final PIDFCoefficients DEFAULT_COEFFICIENTS = new PIDFCoefficients.Builder()
+            .p(.03)
+            .i(.05)
+            .d(.001)
+            .build();
+    public static final double DEFAULT_MAX_CORRECTION = .3;
+    /**
+     * How many seconds a reading can stay the same before the robot counts as not turning
+     */
+    private static final double STILL_TIME = .05;
+
+    private final HeadingSource source;
+    private final PIDFController controller;
+    private double targetHeading, lastHeading, rate, timeSinceChange;
+
+    public HeadingHold(HeadingSource source) {
+        this(source, DEFAULT_COEFFICIENTS);
+    }
+
+    /**
+     * @param coefficients in power per degree
+     */
+    public HeadingHold(HeadingSource source, PIDFCoefficients coefficients) {
+        this.source = source;
+        this.controller = new PIDFController(coefficients);
+        controller.setIntegralZone(HeadingController.DEFAULT_INTEGRAL_ZONE);
+        setMaxCorrection(DEFAULT_MAX_CORRECTION);
+    }
+
+    /**
+     * @return the heading of a pose, e.g. from {@link Odometry} or a
+     * {@link org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory.KalmanFilterPoseSource}
+     */
+    public static HeadingSource fromPose(final PoseSource poseSource) {
+        return new HeadingSource() {
+            private final ThreadLocal<double[]> pose = new ThreadLocal<double[]>() {
+                @Override
+                protected double[] initialValue() {
+                    return new double[3];
+                }
+            };
+
+            @Override
+            public double getHeading() {
+                double[] pose = this.pose.get();
+                poseSource.getPose(pose);
+                return FastMath.toDegrees(pose[2]);
+            }
+        };
+    }
+
+    /**
+     * @param maxCorrection the most power the correction takes from one side and gives the other
+     */
+    public void setMaxCorrection(double maxCorrection) {
+        controller.setOutputRange(-maxCorrection, maxCorrection);
+    }
+
+    public HeadingSource getSource() {
+        return source;
+    }
+
+    /**
+     * Holds the heading the robot is facing now.
+     */
+    public void start() {
+        start(source.getHeading());
+    }
+
+    /**
+     * @param targetHeading the heading to hold, in degrees counterclockwise
+     */
+    public void start(double targetHeading) {
+        this.targetHeading = targetHeading;
+        this.lastHeading = HeadingController.unwrapDegrees(targetHeading, source.getHeading());
+        this.rate = 0;
+        this.timeSinceChange = 0;
+        controller.reset();
+    }
+
+    /**
+     * @param dt seconds since the last update
+     * @return the turn correction, positive to turn counterclockwise
+     */
+    public double update(double dt) {
+        double heading = HeadingController.unwrapDegrees(lastHeading, source.getHeading());
+        timeSinceChange += dt;
+        if (heading != lastHeading) {
+            rate = timeSinceChange > 0 ? (heading - lastHeading) / timeSinceChange : 0;
+            lastHeading = heading;
+            timeSinceChange = 0;
+        } else if (timeSinceChange > STILL_TIME) {
+            rate = 0;
+        }
+        return controller.update(targetHeading, heading, rate, 0, 0, dt);
+    }
+
+    public double getTargetHeading() {
+        return targetHeading;
+    }
+
+    /**
+     * @return how far the robot was turned from the target at the last update, in degrees counterclockwise
+     */
+    public double getError() {
+        return -controller.getLastError();
+    }
+}
@@ -0,0 +1,14 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+/**
+ * Which way the robot is facing, for a {@link HeadingHold}.
+ */
+public interface HeadingSource {
+
+    /**
+     * Safe to call from any thread.
+     *
+     * @return the heading in degrees counterclockwise, unwrapped so it counts whole turns instead of jumping at 180
+     */
+    double getHeading();
+}
@@ -1,7 +1,5 @@
 package org.pattonvillerobotics.commoncode.robotclasses.drive;
 
-import android.util.Log;
-
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 import com.qualcomm.robotcore.hardware.DcMotor;
 import com.qualcomm.robotcore.hardware.DcMotorSimple;
@@ -11,12 +9,14 @@ import org.apache.commons.math3.geometry.euclidean.twod.Vector2D;
 import org.apache.commons.math3.util.FastMath;
 import org.firstinspires.ftc.robotcore.external.Telemetry;
 import org.pattonvillerobotics.commoncode.enums.Direction;
+import org.pattonvillerobotics.commoncode.robotclasses.control.MotionProfile;
+import org.pattonvillerobotics.commoncode.robotclasses.control.MotionState;
+import org.pattonvillerobotics.commoncode.robotclasses.logging.Logger;
+import org.pattonvillerobotics.commoncode.robotclasses.recorder.FlightRecorder;
+import org.pattonvillerobotics.commoncode.robotclasses.telemetry.TelemetryPipeline;
 
 import java.util.Locale;
-
-import static org.apache.commons.math3.util.FastMath.PI;
-import static org.apache.commons.math3.util.FastMath.cos;
-import static org.apache.commons.math3.util.FastMath.sin;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by greg on 10/2/2017.
@@ -25,10 +25,14 @@ import static org.apache.commons.math3.util.FastMath.sin;
 public class MecanumEncoderDrive extends QuadEncoderDrive {
 
     private static final String TAG = "MecanumEncoderDrive";
-    private static final double COS_135 = cos(3 * PI / 4);
-    private static final double SIN_135 = -COS_135;
-    private static final double DEG_45 = PI / 4;
+    private static final Logger LOG = Logger.get(TAG);
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
     public DcMotor leftRearMotor, rightRearMotor;
+    private final double[] wheelPowers = new double[4], wheelTargets = new double[4];
+    private volatile FlightRecorder.Channel wheelPowerChannel;
+    private volatile MecanumVelocityController velocityController;
+    private MotionHandle velocityMotion;
+    private final TelemetryPipeline.Slot rearDistanceSlot = telemetryPipeline.addSlot(TAG, "DistanceLR: %.0f DistanceRR: %.0f", 2);
 
     public MecanumEncoderDrive(HardwareMap hardwareMap, LinearOpMode linearOpMode, RobotParameters robotParameters) {
         super(hardwareMap, linearOpMode, robotParameters);
@@ -56,49 +60,159 @@ public class MecanumEncoderDrive extends QuadEncoderDrive {
     }
 
     /**
-     * used to drive a mecanum drive train
+     * used to drive a mecanum drive train. With {@link #setVelocityControl(boolean)} on, each wheel's power is taken
+     * as a share of the max velocity, and the wheels are held at those speeds in the background.
      *
      * @param angle    direction to go in radians
      * @param speed    speed to go
      * @param rotation rate of rotation
+     * @throws IllegalStateException with velocity control on, if another motion, like a move, is running
      */
     public void moveFreely(double angle, double speed, double rotation) {
-        double xcomponent = COS_135 * (cos(angle + DEG_45));
-        double ycomponent = SIN_135 * (sin(angle + DEG_45));
+        MecanumVelocityController velocityController = this.velocityController;
+        if (velocityController == null) {
+            moveOpenLoop(angle, speed, rotation);
+            return;
+        }
 
+        MecanumKinematics.wheelPowers(angle, speed, rotation, wheelTargets);
+        for (int i = 0; i < wheelTargets.length; i++)
+            wheelTargets[i] *= robotParameters.getMaxVelocity();
+        velocityController.setWheelTargets(wheelTargets);
+        holdVelocity(velocityController);
+    }
+
+    private void moveOpenLoop(double angle, double speed, double rotation) {
+        releaseMotorModes();
+        MecanumKinematics.wheelPowers(angle, speed, rotation, wheelPowers);
+        setWheelPowers(wheelPowers);
+    }
 
-//        double scale = 1. / FastMath.max(FastMath.abs(xcomponent), FastMath.abs(ycomponent));
-//        xcomponent *= scale;
-//        ycomponent *= scale;
+    /**
+     * @param powers indexed by {@link MecanumKinematics#FRONT_LEFT} etc.
+     */
+    private void setWheelPowers(double[] powers) {
+        super.leftDriveMotor.setPower(powers[MecanumKinematics.FRONT_LEFT]);
+        super.rightDriveMotor.setPower(powers[MecanumKinematics.FRONT_RIGHT]);
+        this.leftRearMotor.setPower(powers[MecanumKinematics.REAR_LEFT]);
+        this.rightRearMotor.setPower(powers[MecanumKinematics.REAR_RIGHT]);
+
+        FlightRecorder.Channel wheelPowerChannel = this.wheelPowerChannel;
+        if (wheelPowerChannel != null)
+            wheelPowerChannel.record(powers, powers.length);
+    }
 
-        super.leftDriveMotor.setPower((speed * ycomponent) - rotation);
-        super.rightDriveMotor.setPower((speed * xcomponent) + rotation);
-        this.leftRearMotor.setPower((speed * xcomponent) - rotation);
-        this.rightRearMotor.setPower((speed * ycomponent) + rotation);
+    /**
+     * Drives at a velocity, holding each wheel at its share of it in the background until the next command. Needs
+     * {@link #setVelocityControl(boolean)} on.
+     *
+     * @param forward  inches per second forwards
+     * @param left     inches per second to the left
+     * @param turnRate radians per second counterclockwise
+     * @throws IllegalStateException if another motion, like a move, is running
+     */
+    public void setVelocity(double forward, double left, double turnRate) {
+        MecanumVelocityController velocityController = this.velocityController;
+        if (velocityController == null)
+            throw new IllegalStateException("Velocity control is off, see setVelocityControl(boolean)");
+        velocityController.setTarget(forward, left, turnRate);
+        holdVelocity(velocityController);
     }
 
     /**
-     * drives a specific number of inches in a given direction
+     * Turns on closed loop velocity control of each wheel, with the drive velocity gains and motion profile from the
+     * {@link RobotParameters}. While it's on, {@link #moveFreely(double, double, double)}, {@link #move(Direction, double)}
+     * and {@link #turn(Direction, double)} set wheel velocities instead of powers, and {@link #moveInches(Direction, double, double)}
+     * follows a motion profile on every wheel, strafes included. Turning it off stops the wheels.
      *
-     * @param direction the direction (forward or backward) to drive in
-     * @param inches    the number of inches to drive
-     * @param power     the power with which to drive
+     * @throws IllegalStateException if the RobotParameters have no motion profile
+     */
+    public void setVelocityControl(boolean enabled) {
+        if (enabled && !robotParameters.isMotionProfilingEnabled())
+            throw new IllegalStateException("Velocity control needs a motion profile and driveVelocityCoefficients in the RobotParameters");
+        if (enabled == isVelocityControlEnabled())
+            return;
+
+        if (enabled) {
+            velocityController = new MecanumVelocityController(robotParameters.getDriveVelocityCoefficients(), robotParameters.getWheelBaseRadius());
+        } else {
+            velocityController = null;
+            synchronized (this) {
+                if (velocityMotion != null)
+                    velocityMotion.cancel();
+                velocityMotion = null;
+            }
+        }
+    }
+
+    public boolean isVelocityControlEnabled() {
+        return velocityController != null;
+    }
+
+    /**
+     * Starts holding the wheels at the controller's targets, unless they already are. Never cancels another motion,
+     * so a teleop command can't cut a move short.
+     */
+    private synchronized void holdVelocity(MecanumVelocityController velocityController) {
+        if (velocityMotion != null && !velocityMotion.isDone())
+            return;
+        if (isRunningMotion())
+            throw new IllegalStateException("The drive is running a motion, wait for it or cancelMotion() before driving at a velocity");
+        velocityMotion = runAsync(new VelocityMotion(velocityController));
+    }
+
+    /**
+     * Also brings the wheels to a stop if they are being held at a velocity.
      */
     @Override
-    public void moveInches(Direction direction, double inches, double power) {
-        //Move Specified Inches Using Motor Encoders
+    public void stop() {
+        MecanumVelocityController velocityController = this.velocityController;
+        if (velocityController != null)
+            velocityController.setTarget(0, 0, 0);
+        super.stop();
+    }
+
+    /**
+     * @param velocities filled with each wheel's speed in inches per second, indexed by {@link MecanumKinematics#FRONT_LEFT} etc.
+     */
+    private void readWheelVelocities(double[] velocities) {
+        velocities[MecanumKinematics.FRONT_LEFT] = inchesToTicksInverse(motorSnapshot.getVelocity(leftDriveIndex));
+        velocities[MecanumKinematics.FRONT_RIGHT] = inchesToTicksInverse(motorSnapshot.getVelocity(rightDriveIndex));
+        velocities[MecanumKinematics.REAR_LEFT] = inchesToTicksInverse(motorSnapshot.getVelocity(secondaryLeftDriveIndex));
+        velocities[MecanumKinematics.REAR_RIGHT] = inchesToTicksInverse(motorSnapshot.getVelocity(secondaryRightDriveIndex));
+    }
 
-        int targetPositionLeft;
-        int targetPositionRight;
-        int targetPositionLeftRear;
-        int targetPositionRightRear;
+    /**
+     * Also records the four wheel powers {@link #moveFreely(double, double, double)} works out.
+     */
+    @Override
+    protected void addRecorderChannels(FlightRecorder recorder) {
+        super.addRecorderChannels(recorder);
+        // In MecanumKinematics order
+        wheelPowerChannel = recorder.addChannel("wheel_power", "front_left", "front_right", "rear_left", "rear_right");
+    }
+
+    @Override
+    protected Odometry createOdometry() {
+        return new MecanumOdometry(robotParameters, motorSnapshot, leftDriveIndex, rightDriveIndex, secondaryLeftDriveIndex, secondaryRightDriveIndex);
+    }
 
-        Log.e(TAG, "Getting motor modes");
-        storeMotorModes();
+    /**
+     * drives a specific number of inches in a given direction, which can also be {@link Direction#LEFT} or
+     * {@link Direction#RIGHT} to strafe
+     */
+    @Override
+    protected Motion moveInchesMotion(Direction direction, final double inches, final double power) {
+        //Move Specified Inches Using Motor Encoders
+        if (velocityController != null)
+            return new ProfiledWheelMotion(moveAngle(direction), inches, power, getHeadingHold());
 
-        resetMotorEncoders();
+        final int targetPositionLeft;
+        final int targetPositionRight;
+        final int targetPositionLeftRear;
+        final int targetPositionRightRear;
 
-        int deltaPosition = (int) FastMath.round(inchesToTicks(inches));
+        final int deltaPosition = (int) FastMath.round(inchesToTicks(inches));
 
         switch (direction) {
             case FORWARD: {
@@ -133,56 +247,84 @@ public class MecanumEncoderDrive extends QuadEncoderDrive {
                 throw new IllegalArgumentException("Direction must be Direction.FORWARDS, Direction.BACKWARDS, Direction.LEFT, or Direction.RIGHT!");
         }
 
-        Log.e(TAG, "Setting motor modes");
-        setMotorsRunToPosition();
-
-        Log.e(TAG, "Setting motor power high");
-        move(Direction.FORWARD, power); // To keep power in [0.0, 1.0]. Encoders control direction
-
-        Log.e(TAG, "Setting target position");
-        setMotorTargets(targetPositionLeft, targetPositionRight, targetPositionLeftRear, targetPositionRightRear);
-
-        telemetry("Moving " + inches + " inches at power " + power);
-        telemetry("LFMotorT: " + targetPositionLeft);
-        telemetry("RFMotorT: " + targetPositionRight);
-        telemetry("LRMotorT: " + targetPositionLeftRear);
-        telemetry("RRMotorT: " + targetPositionRightRear);
-        telemetry("EncoderDelta: " + deltaPosition);
-        Telemetry.Item distance = telemetry("DistanceL: N/A DistanceR: N/A");
-        Telemetry.Item distanceRear = telemetry("DistanceLR: N/A DistanceRR: N/A");
-
-        while (isMovingToPosition()
-                || !motorsReachedTarget(targetPositionLeft, targetPositionRight, targetPositionLeftRear, targetPositionRightRear)
-                && linearOpMode.opModeIsActive()) {
-            distance.setValue(String.format(Locale.getDefault(), "DistanceL: %d DistanceR: %d", leftDriveMotor.getCurrentPosition(), rightDriveMotor.getCurrentPosition()));
-            distanceRear.setValue(String.format(Locale.getDefault(), "DistanceLR: %d DistanceRR: %d", secondaryLeftDriveMotor.get().getCurrentPosition(), secondaryRightDriveMotor.get().getCurrentPosition()));
-            linearOpMode.telemetry.update();
+        HeadingHold headingHold = getHeadingHold();
+        if (headingHold != null) {
+            final double angle = moveAngle(direction);
+            return new HeldMotion(headingHold, new int[]{leftDriveIndex, rightDriveIndex, secondaryLeftDriveIndex, secondaryRightDriveIndex},
+                    new int[]{targetPositionLeft, targetPositionRight, targetPositionLeftRear, targetPositionRightRear}, power) {
+                @Override
+                protected void steer(double power, double correction) {
+                    moveOpenLoop(angle, power, correction);
+                }
+            };
         }
-        Log.e(TAG, "Setting motor power low");
-        stop();
 
-        Log.e(TAG, "Restoring motor mode");
-        restoreMotorModes();
+        return new Motion() {
+            private Telemetry.Item[] items;
+
+            @Override
+            protected void start() {
+                LOG.log(Logger.Level.DEBUG, "Getting motor modes");
+                storeMotorModes();
+
+                zeroMotorEncoders();
+
+                LOG.log(Logger.Level.DEBUG, "Setting motor modes");
+                setMotorsRunToPosition();
+
+                LOG.log(Logger.Level.DEBUG, "Setting motor power high");
+                moveOpenLoop(moveAngle(Direction.FORWARD), power, 0); // To keep power in [0.0, 1.0]. Encoders control direction
+
+                LOG.log(Logger.Level.DEBUG, "Setting target position");
+                setMotorTargets(targetPositionLeft, targetPositionRight, targetPositionLeftRear, targetPositionRightRear);
+
+                items = retainedTelemetry(
+                        "Moving " + inches + " inches at power " + power,
+                        "LFMotorT: " + targetPositionLeft,
+                        "RFMotorT: " + targetPositionRight,
+                        "LRMotorT: " + targetPositionLeftRear,
+                        "RRMotorT: " + targetPositionRightRear,
+                        "EncoderDelta: " + deltaPosition);
+            }
+
+            @Override
+            protected boolean update() {
+                motorSnapshot.nextCycle();
+                boolean moving = isMovingToPosition()
+                        || !motorsReachedTarget(targetPositionLeft, targetPositionRight, targetPositionLeftRear, targetPositionRightRear)
+                        && linearOpMode.opModeIsActive();
+                if (!moving)
+                    return true;
+                distanceSlot.set(getMotorPosition(leftDriveIndex), getMotorPosition(rightDriveIndex));
+                rearDistanceSlot.set(getMotorPosition(secondaryLeftDriveIndex), getMotorPosition(secondaryRightDriveIndex));
+                return false;
+            }
+
+            @Override
+            protected void end(boolean interrupted) {
+                LOG.log(Logger.Level.DEBUG, "Setting motor power low");
+                stop();
 
-        sleep(100);
+                LOG.log(Logger.Level.DEBUG, "Holding or restoring motor mode");
+                endPositionMove();
+                distanceSlot.clear();
+                rearDistanceSlot.clear();
+                releaseTelemetry(items);
+            }
+        };
     }
 
     @Override
-    public void rotateDegrees(Direction direction, double degrees, double speed) {
+    protected Motion rotateDegreesMotion(Direction direction, final double degrees, final double speed) {
         //Move specified degrees using motor encoders
         //TODO: use the IMU on the REV module for more accurate turns
-        int targetPositionLeft;
-        int targetPositionRight;
-        int targetPositionLeftRear;
-        int targetPositionRightRear;
-
-        Log.e(TAG, "Getting motor modes");
-        storeMotorModes();
-
-        resetMotorEncoders();
+        final int targetPositionLeft;
+        final int targetPositionRight;
+        final int targetPositionLeftRear;
+        final int targetPositionRightRear;
 
         double inches = degreesToInches(degrees);
-        int deltaPosition = (int) FastMath.round(inchesToTicks(inches));
+        final int deltaPosition = (int) FastMath.round(inchesToTicks(inches));
 
         switch (direction) {
             case COUNTERCLOCKWISE: {
@@ -203,64 +345,79 @@ public class MecanumEncoderDrive extends QuadEncoderDrive {
                 throw new IllegalArgumentException("Direction must be Direction.CLOCKWISE or Direction.COUNTERCLOCKWISE!");
         }
 
-        Log.e(TAG, "Setting motor modes");
-        setMotorsRunToPosition();
+        return new Motion() {
+            private Telemetry.Item[] items;
 
-        setMotorTargets(targetPositionLeft, targetPositionRight);
+            @Override
+            protected void start() {
+                LOG.log(Logger.Level.DEBUG, "Getting motor modes");
+                storeMotorModes();
 
-        Telemetry.Item[] items = new Telemetry.Item[]{
-                telemetry("Rotating " + degrees + " degrees at speed " + speed).setRetained(true),
-                telemetry("LFMotorT: " + targetPositionLeft).setRetained(true),
-                telemetry("RFMotorT: " + targetPositionRight).setRetained(true),
-                telemetry("LRMotorT: " + targetPositionLeftRear).setRetained(true),
-                telemetry("RRMotorT: " + targetPositionRightRear).setRetained(true),
-                telemetry("EncoderDelta: " + deltaPosition).setRetained(true),
-                telemetry("DistanceLF: DistanceRF:").setRetained(true),
-                telemetry("DistanceLR: DistanceRR:").setRetained(true)
-        };
-        Telemetry.Item distance = items[6];
-        Telemetry.Item distanceRear = items[7];
-
-        move(Direction.FORWARD, speed); // To keep speed in [0.0, 1.0]. Encoders control direction
-        while (isMovingToPosition()
-                || !motorsReachedTarget(targetPositionLeft, targetPositionRight, targetPositionLeftRear, targetPositionRightRear)
-                && linearOpMode.opModeIsActive()) {
-            distance.setValue("DistanceLF: " + leftDriveMotor.getCurrentPosition() + " DistanceRF: " + rightDriveMotor.getCurrentPosition());
-            distanceRear.setValue("DistanceLR: " + leftRearMotor.getCurrentPosition() + " DistanceRR: " + rightRearMotor.getCurrentPosition());
-            linearOpMode.telemetry.update();
-        }
-        stop();
+                zeroMotorEncoders();
+
+                LOG.log(Logger.Level.DEBUG, "Setting motor modes");
+                setMotorsRunToPosition();
+
+                setMotorTargets(targetPositionLeft, targetPositionRight, targetPositionLeftRear, targetPositionRightRear);
+
+                items = retainedTelemetry(
+                        "Rotating " + degrees + " degrees at speed " + speed,
+                        "LFMotorT: " + targetPositionLeft,
+                        "RFMotorT: " + targetPositionRight,
+                        "LRMotorT: " + targetPositionLeftRear,
+                        "RRMotorT: " + targetPositionRightRear,
+                        "EncoderDelta: " + deltaPosition);
 
-        Log.e(TAG, "Restoring motor mode");
-        restoreMotorModes();
+                moveOpenLoop(moveAngle(Direction.FORWARD), speed, 0); // To keep speed in [0.0, 1.0]. Encoders control direction
+            }
+
+            @Override
+            protected boolean update() {
+                motorSnapshot.nextCycle();
+                boolean moving = isMovingToPosition()
+                        || !motorsReachedTarget(targetPositionLeft, targetPositionRight, targetPositionLeftRear, targetPositionRightRear)
+                        && linearOpMode.opModeIsActive();
+                if (!moving)
+                    return true;
+                distanceSlot.set(getMotorPosition(leftDriveIndex), getMotorPosition(rightDriveIndex));
+                rearDistanceSlot.set(getMotorPosition(secondaryLeftDriveIndex), getMotorPosition(secondaryRightDriveIndex));
+                return false;
+            }
 
-        for (Telemetry.Item i : items)
-            i.setRetained(false);
+            @Override
+            protected void end(boolean interrupted) {
+                stop();
 
-        sleep(100);
+                LOG.log(Logger.Level.DEBUG, "Holding or restoring motor mode");
+                endPositionMove();
+                distanceSlot.clear();
+                rearDistanceSlot.clear();
+                releaseTelemetry(items);
+            }
+        };
     }
 
     @Override
     public void move(Direction direction, double power) {
-        double angle;
+        moveFreely(moveAngle(direction), power, 0);
+    }
 
+    /**
+     * @return the angle to pass {@link #moveFreely(double, double, double)} to go in {@code direction}
+     */
+    private static double moveAngle(Direction direction) {
         switch (direction) {
             case FORWARD:
-                angle = FastMath.toRadians(90);
-                break;
+                return FastMath.toRadians(90);
             case BACKWARD:
-                angle = FastMath.toRadians(270);
-                break;
+                return FastMath.toRadians(270);
             case LEFT:
-                angle = FastMath.toRadians(180);
-                break;
+                return FastMath.toRadians(180);
             case RIGHT:
-                angle = 0;
-                break;
+                return 0;
             default:
                 throw new IllegalArgumentException("Direction must be FORWARD, BACKWARD, LEFT, or RIGHT");
         }
-        moveFreely(angle, power, 0);
     }
 
     @Override
@@ -281,14 +438,144 @@ public class MecanumEncoderDrive extends QuadEncoderDrive {
     }
 
     protected void setMotorTargets(int targetPositionLeft, int targetPositionRight, int targetPositionLeftRear, int targetPositionRightRear) {
-        leftDriveMotor.setTargetPosition(targetPositionLeft);
-        rightDriveMotor.setTargetPosition(targetPositionRight);
-        leftRearMotor.setTargetPosition(targetPositionLeftRear);
-        rightRearMotor.setTargetPosition(targetPositionRightRear);
+        setMotorTarget(leftDriveIndex, leftDriveMotor, targetPositionLeft);
+        setMotorTarget(rightDriveIndex, rightDriveMotor, targetPositionRight);
+        setMotorTarget(secondaryLeftDriveIndex, leftRearMotor, targetPositionLeftRear);
+        setMotorTarget(secondaryRightDriveIndex, rightRearMotor, targetPositionRightRear);
     }
 
     protected boolean motorsReachedTarget(int targetPositionLeft, int targetPositionRight, int targetPositionLeftRear, int targetPositionRightRear) {
-        return reachedTarget(leftDriveMotor.getCurrentPosition(), targetPositionLeft, rightDriveMotor.getCurrentPosition(), targetPositionRight) &&
-                reachedTarget(leftRearMotor.getCurrentPosition(), targetPositionLeftRear, rightRearMotor.getCurrentPosition(), targetPositionRightRear);
+        return reachedTarget(getMotorPosition(leftDriveIndex), targetPositionLeft, getMotorPosition(rightDriveIndex), targetPositionRight) &&
+                reachedTarget(getMotorPosition(secondaryLeftDriveIndex), targetPositionLeftRear, getMotorPosition(secondaryRightDriveIndex), targetPositionRightRear);
+    }
+
+    /**
+     * Holds the wheels at a {@link MecanumVelocityController}'s targets until it's cancelled, while the targets are
+     * changed from the op mode.
+     */
+    private class VelocityMotion extends Motion {
+
+        private final MecanumVelocityController controller;
+        private final double[] velocities = new double[4], powers = new double[4];
+        private long lastNanos;
+
+        VelocityMotion(MecanumVelocityController controller) {
+            this.controller = controller;
+        }
+
+        @Override
+        protected void start() {
+            storeMotorModes();
+            setMotorsRunWithoutEncoder();
+            lastNanos = System.nanoTime();
+        }
+
+        @Override
+        protected boolean update() {
+            long nowNanos = System.nanoTime();
+            double dt = (nowNanos - lastNanos) / S_TO_NS;
+            lastNanos = nowNanos;
+
+            motorSnapshot.nextCycle();
+            readWheelVelocities(velocities);
+            controller.update(velocities, dt, powers);
+            setWheelPowers(powers);
+            return false;
+        }
+
+        @Override
+        protected void end(boolean interrupted) {
+            stop();
+            restoreMotorModes();
+        }
+    }
+
+    /**
+     * Moves in a straight line along a motion profile from {@link RobotParameters}, with a velocity controller on
+     * each wheel, so strafes come out as straight as forward moves. Like {@link HeldMotion}, a {@link HeadingHold}
+     * steers if there is one, and the move ends when the wheels have gone as far as their targets on average.
+     */
+    private class ProfiledWheelMotion extends Motion {
+
+        private final MotionProfile profile;
+        private final double forward, left, distance;
+        private final double[] directions = new double[4];
+        private final HeadingHold headingHold;
+        private final MecanumVelocityController controller = new MecanumVelocityController(
+                robotParameters.getDriveVelocityCoefficients(), robotParameters.getWheelBaseRadius());
+        private final MotionState state = new MotionState();
+        private final double[] velocities = new double[4], powers = new double[4];
+        private long startNanos, lastNanos;
+        private Telemetry.Item[] items;
+
+        /**
+         * @param angle       as for {@link #moveFreely(double, double, double)}
+         * @param headingHold or null
+         */
+        ProfiledWheelMotion(double angle, double inches, double power, HeadingHold headingHold) {
+            if (!(FastMath.abs(power) > 0))
+                throw new IllegalArgumentException("Power must not be 0");
+            double sign = FastMath.signum(inches);
+            // Rounded, so a strafe doesn't creep forwards
+            this.forward = FastMath.rint(sign * FastMath.sin(angle));
+            this.left = FastMath.rint(-sign * FastMath.cos(angle));
+            this.distance = inchesToTicks(FastMath.abs(inches));
+            this.headingHold = headingHold;
+            this.profile = MotionProfile.create(FastMath.abs(inches), FastMath.min(FastMath.abs(power), 1) * robotParameters.getMaxVelocity(),
+                    robotParameters.getMaxAcceleration(), robotParameters.getMaxJerk());
+            MecanumKinematics.wheelVelocities(forward, left, 0, robotParameters.getWheelBaseRadius(), directions);
+        }
+
+        @Override
+        protected void start() {
+            storeMotorModes();
+            zeroMotorEncoders();
+            setMotorsRunWithoutEncoder();
+
+            items = retainedTelemetry(String.format(Locale.US, "Profiled wheel move of %.0f ticks in %.2f s", distance, profile.getDuration()));
+            if (headingHold != null)
+                headingHold.start();
+            controller.reset();
+            startNanos = lastNanos = System.nanoTime();
+        }
+
+        @Override
+        protected boolean update() {
+            long nowNanos = System.nanoTime();
+            double t = (nowNanos - startNanos) / S_TO_NS, dt = (nowNanos - lastNanos) / S_TO_NS;
+            lastNanos = nowNanos;
+
+            motorSnapshot.nextCycle();
+            double travelled = (directions[MecanumKinematics.FRONT_LEFT] * getMotorPosition(leftDriveIndex)
+                    + directions[MecanumKinematics.FRONT_RIGHT] * getMotorPosition(rightDriveIndex)
+                    + directions[MecanumKinematics.REAR_LEFT] * getMotorPosition(secondaryLeftDriveIndex)
+                    + directions[MecanumKinematics.REAR_RIGHT] * getMotorPosition(secondaryRightDriveIndex)) / 4;
+            if (t >= profile.getDuration() && (travelled >= distance - TARGET_REACHED_THRESHOLD
+                    || t - profile.getDuration() > PROFILE_SETTLE_TIMEOUT_MS / 1000.0) || !linearOpMode.opModeIsActive())
+                return true;
+
+            profile.getState(t, state);
+            // Same scale as ProfiledMotion: the correction is a share of the max velocity at the wheels
+            double turnRate = headingHold == null ? 0
+                    : headingHold.update(dt) * robotParameters.getMaxVelocity() / robotParameters.getWheelBaseRadius();
+            controller.setTarget(forward * state.getVelocity(), left * state.getVelocity(), turnRate,
+                    forward * state.getAcceleration(), left * state.getAcceleration(), 0);
+            readWheelVelocities(velocities);
+            controller.update(velocities, dt, powers);
+            setWheelPowers(powers);
+
+            distanceSlot.set(getMotorPosition(leftDriveIndex), getMotorPosition(rightDriveIndex));
+            rearDistanceSlot.set(getMotorPosition(secondaryLeftDriveIndex), getMotorPosition(secondaryRightDriveIndex));
+            return false;
+        }
+
+        @Override
+        protected void end(boolean interrupted) {
+            stop();
+            restoreMotorModes();
+            distanceSlot.clear();
+            rearDistanceSlot.clear();
+            releaseTelemetry(items);
+        }
     }
 }
@@ -0,0 +1,59 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import static org.apache.commons.math3.util.FastMath.PI;
+import static org.apache.commons.math3.util.FastMath.cos;
+import static org.apache.commons.math3.util.FastMath.sin;
+
+/**
+ * The wheel powers behind {@link MecanumEncoderDrive#moveFreely(double, double, double)}, and the wheel speeds for a
+ * body velocity, free of any hardware so they can run anywhere.
+ */
+public final class MecanumKinematics {
+
+    public static final int FRONT_LEFT = 0, FRONT_RIGHT = 1, REAR_LEFT = 2, REAR_RIGHT = 3;
+
+    private static final double COS_135 = cos(3 * PI / 4);
+    private static final double SIN_135 = -COS_135;
+    private static final double DEG_45 = PI / 4;
+
+    private MecanumKinematics() {
+    }
+
+    /**
+     * @param angle       direction to go in radians
+     * @param speed       speed to go
+     * @param rotation    rate of rotation
+     * @param wheelPowers filled with the power of each wheel, indexed by {@link #FRONT_LEFT} etc.
+     */
+    public static void wheelPowers(double angle, double speed, double rotation, double[] wheelPowers) {
+        double xcomponent = COS_135 * (cos(angle + DEG_45));
+        double ycomponent = SIN_135 * (sin(angle + DEG_45));
+
+//        double scale = 1. / FastMath.max(FastMath.abs(xcomponent), FastMath.abs(ycomponent));
+//        xcomponent *= scale;
+//        ycomponent *= scale;
+
+        wheelPowers[FRONT_LEFT] = (speed * ycomponent) - rotation;
+        wheelPowers[FRONT_RIGHT] = (speed * xcomponent) + rotation;
+        wheelPowers[REAR_LEFT] = (speed * xcomponent) - rotation;
+        wheelPowers[REAR_RIGHT] = (speed * ycomponent) + rotation;
+    }
+
+    /**
+     * The inverse of {@link MecanumOdometry}: how fast each wheel's rim has to move for the robot to move at a
+     * velocity. Also works for accelerations.
+     *
+     * @param forward         inches per second forwards
+     * @param left            inches per second to the left
+     * @param turnRate        radians per second counterclockwise
+     * @param turningRadius   how far the wheels are from the center, e.g. {@link RobotParameters#getWheelBaseRadius()}
+     * @param wheelVelocities filled with the speed of each wheel in inches per second, indexed by {@link #FRONT_LEFT} etc.
+     */
+    public static void wheelVelocities(double forward, double left, double turnRate, double turningRadius, double[] wheelVelocities) {
+        double turn = turnRate * turningRadius;
+        wheelVelocities[FRONT_LEFT] = forward - left - turn;
+        wheelVelocities[FRONT_RIGHT] = forward + left + turn;
+        wheelVelocities[REAR_LEFT] = forward + left - turn;
+        wheelVelocities[REAR_RIGHT] = forward - left + turn;
+    }
+}
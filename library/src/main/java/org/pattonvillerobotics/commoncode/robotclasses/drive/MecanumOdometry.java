@@ -0,0 +1,28 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+/**
+ * {@link Odometry} for a mecanum drive, from all four wheels. Strafing slips more than driving forward, so the strafe
+ * distance is less trustworthy.
+ */
+public class MecanumOdometry extends Odometry {
+
+    private final double turningRadius;
+
+    /**
+     * The indices of the motors in {@code motorSnapshot}, in the order of {@link MecanumKinematics#FRONT_LEFT} etc.
+     */
+    public MecanumOdometry(RobotParameters robotParameters, MotorSnapshot motorSnapshot, int frontLeft, int frontRight, int rearLeft, int rearRight) {
+        super(robotParameters, motorSnapshot, frontLeft, frontRight, rearLeft, rearRight);
+        this.turningRadius = robotParameters.getWheelBaseRadius();
+    }
+
+    @Override
+    protected void getBodyDelta(double[] wheelDeltas, double[] out) {
+        double frontLeft = wheelDeltas[MecanumKinematics.FRONT_LEFT], frontRight = wheelDeltas[MecanumKinematics.FRONT_RIGHT];
+        double rearLeft = wheelDeltas[MecanumKinematics.REAR_LEFT], rearRight = wheelDeltas[MecanumKinematics.REAR_RIGHT];
+        // The inverse of MecanumKinematics, where strafing left turns the front left and rear right wheels backwards
+        out[0] = (frontLeft + frontRight + rearLeft + rearRight) / 4;
+        out[1] = (-frontLeft + frontRight + rearLeft - rearRight) / 4;
+        out[2] = (-frontLeft + frontRight - rearLeft + rearRight) / (4 * turningRadius);
+    }
+}
@@ -0,0 +1,100 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import org.pattonvillerobotics.commoncode.robotclasses.control.PIDFCoefficients;
+import org.pattonvillerobotics.commoncode.robotclasses.control.PIDFController;
+
+/**
+ * A velocity controller per mecanum wheel, so each wheel turns at its share of the robot's velocity whatever the
+ * others are doing. The feedforward drives a wheel at its target velocity and acceleration, and the feedback corrects
+ * what it gets wrong, e.g. a wheel carrying more weight. Nothing here allocates, so it can run on all four wheels in
+ * every tick of the control loop.
+ * <p>
+ * Targets can be set from one thread and the controllers updated on another.
+ */
+public class MecanumVelocityController {
+
+    private final PIDFController[] controllers = new PIDFController[4];
+    private final double turningRadius;
+    private final double[] targetVelocities = new double[4], targetAccelerations = new double[4];
+
+    /**
+     * @param coefficients  each wheel's gains, with velocity in inches per second
+     * @param turningRadius how far the wheels are from the center, e.g. {@link RobotParameters#getWheelBaseRadius()}
+     */
+    public MecanumVelocityController(PIDFCoefficients coefficients, double turningRadius) {
+        if (coefficients == null)
+            throw new IllegalArgumentException("coefficients must not be null");
+        if (!(turningRadius > 0))
+            throw new IllegalArgumentException("turningRadius must be > 0, was " + turningRadius);
+        for (int i = 0; i < controllers.length; i++)
+            controllers[i] = new PIDFController(coefficients);
+        this.turningRadius = turningRadius;
+    }
+
+    /**
+     * @param forward  inches per second forwards
+     * @param left     inches per second to the left
+     * @param turnRate radians per second counterclockwise
+     */
+    public void setTarget(double forward, double left, double turnRate) {
+        setTarget(forward, left, turnRate, 0, 0, 0);
+    }
+
+    /**
+     * Also takes the robot's acceleration, e.g. from a motion profile, for the acceleration feedforward.
+     */
+    public synchronized void setTarget(double forward, double left, double turnRate,
+                                       double forwardAcceleration, double leftAcceleration, double turnAcceleration) {
+        MecanumKinematics.wheelVelocities(forward, left, turnRate, turningRadius, targetVelocities);
+        MecanumKinematics.wheelVelocities(forwardAcceleration, leftAcceleration, turnAcceleration, turningRadius, targetAccelerations);
+    }
+
+    /**
+     * Sets each wheel's velocity directly, with no acceleration.
+     *
+     * @param wheelVelocities inches per second, indexed by {@link MecanumKinematics#FRONT_LEFT} etc.
+     */
+    public synchronized void setWheelTargets(double[] wheelVelocities) {
+        for (int i = 0; i < targetVelocities.length; i++) {
+            targetVelocities[i] = wheelVelocities[i];
+            targetAccelerations[i] = 0;
+        }
+    }
+
+    /**
+     * @param wheelVelocities the measured speed of each wheel in inches per second
+     * @param dt              seconds since the last update
+     * @param wheelPowers     filled with the power for each wheel
+     */
+    public synchronized void update(double[] wheelVelocities, double dt, double[] wheelPowers) {
+        for (int i = 0; i < controllers.length; i++) {
+            double target = targetVelocities[i];
+            wheelPowers[i] = controllers[i].update(target, wheelVelocities[i], target, targetAccelerations[i], dt);
+        }
+    }
+
+    /**
+     * Zeroes the targets and forgets each wheel's integral, call it before reusing the controller for a new move.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < controllers.length; i++) {
+            controllers[i].reset();
+            targetVelocities[i] = 0;
+            targetAccelerations[i] = 0;
+        }
+    }
+
+    /**
+     * @param wheel {@link MecanumKinematics#FRONT_LEFT} etc.
+     */
+    public synchronized double getTargetVelocity(int wheel) {
+        return targetVelocities[wheel];
+    }
+
+    /**
+     * @param wheel {@link MecanumKinematics#FRONT_LEFT} etc.
+     */
+    public synchronized double getLastError(int wheel) {
+        return controllers[wheel].getLastError();
+    }
+}
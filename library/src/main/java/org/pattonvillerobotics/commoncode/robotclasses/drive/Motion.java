@@ -0,0 +1,27 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+/**
+ * A drive command broken into the steps of its control loop, so the same command can block the calling thread or
+ * run in the background on a {@link MotionExecutor}.
+ */
+public abstract class Motion {
+
+    /**
+     * Sets the motors going, called once before the first {@link #update()}.
+     */
+    protected abstract void start();
+
+    /**
+     * One pass of the control loop.
+     *
+     * @return true once the motion is done
+     */
+    protected abstract boolean update();
+
+    /**
+     * Stops the motors, called once after the last {@link #update()}, also if the motion was cancelled or threw.
+     *
+     * @param interrupted true if the motion did not finish on its own
+     */
+    protected abstract void end(boolean interrupted);
+}
@@ -0,0 +1,92 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import org.pattonvillerobotics.commoncode.robotclasses.control.ControlScheduler;
+import org.pattonvillerobotics.commoncode.robotclasses.control.ControlTask;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs {@link Motion}s in the background on a {@link ControlScheduler}, so the op mode thread is free to command
+ * other subsystems while the robot drives and every motion is updated at the same fixed rate.
+ * <p>
+ * The executor only registers with the scheduler while it has motions running.
+ */
+public class MotionExecutor {
+
+    private static MotionExecutor defaultExecutor;
+
+    private final ControlScheduler scheduler;
+    private final List<MotionHandle> handles = new ArrayList<>();
+    /**
+     * Only touched on the scheduler thread
+     */
+    private final List<MotionHandle> running = new ArrayList<>();
+    private final ControlTask task = new ControlTask() {
+        @Override
+        public void update(long tickNanos, double dt) {
+            step();
+        }
+    };
+    private boolean registered;
+
+    public MotionExecutor() {
+        this(ControlScheduler.getDefault());
+    }
+
+    /**
+     * @param scheduler the scheduler to update the motions on, once a tick
+     */
+    public MotionExecutor(ControlScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return the executor shared by every drive, created on first use
+     */
+    public static synchronized MotionExecutor getDefault() {
+        if (defaultExecutor == null)
+            defaultExecutor = new MotionExecutor();
+        return defaultExecutor;
+    }
+
+    public MotionHandle submit(Motion motion) {
+        return submit(motion, null);
+    }
+
+    /**
+     * @param previous a motion on the same motors that has to end before this one starts, or null
+     */
+    public synchronized MotionHandle submit(Motion motion, MotionHandle previous) {
+        MotionHandle handle = new MotionHandle(motion, previous);
+        handles.add(handle);
+        if (!registered) {
+            registered = true;
+            scheduler.addTask(task);
+        }
+        return handle;
+    }
+
+    private void step() {
+        synchronized (this) {
+            running.addAll(handles);
+            handles.clear();
+        }
+
+        for (int i = running.size() - 1; i >= 0; i--)
+            if (running.get(i).step())
+                running.remove(i);
+
+        synchronized (this) {
+            // Submitted motions wait in handles, so the task stays registered for them
+            if (running.isEmpty() && handles.isEmpty() && registered) {
+                registered = false;
+                scheduler.removeTask(task);
+            }
+        }
+    }
+
+    public ControlScheduler getScheduler() {
+        return scheduler;
+    }
+}
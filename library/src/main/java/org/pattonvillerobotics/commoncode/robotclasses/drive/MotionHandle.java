@@ -0,0 +1,116 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Motion} running on a {@link MotionExecutor}, used to wait for it or cancel it.
+ */
+public class MotionHandle {
+
+    private final Motion motion;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile boolean cancelRequested, cancelled;
+    private volatile RuntimeException failure;
+
+    /**
+     * Only touched on the executor thread. The previous handle is dropped once it's done, so a chain of motions
+     * doesn't keep every handle before it alive.
+     */
+    private boolean started;
+    private MotionHandle previous;
+
+    /**
+     * @param previous a motion on the same motors that has to end before this one starts, or null
+     */
+    MotionHandle(Motion motion, MotionHandle previous) {
+        this.motion = motion;
+        this.previous = previous;
+    }
+
+    /**
+     * Runs one pass of the motion. Only called from the executor thread.
+     *
+     * @return true once the motion has ended
+     */
+    boolean step() {
+        if (previous != null) {
+            if (!previous.isDone())
+                return false;
+            previous = null;
+        }
+
+        boolean ended = true;
+        try {
+            if (cancelRequested) {
+                cancelled = true;
+                if (started)
+                    motion.end(true);
+            } else {
+                if (!started) {
+                    started = true;
+                    motion.start();
+                }
+                ended = motion.update();
+                if (ended)
+                    motion.end(false);
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            try {
+                motion.end(true);
+            } catch (RuntimeException ignored) {
+                // The first failure is the one worth reporting
+            }
+        }
+
+        if (ended)
+            done.countDown();
+        return ended;
+    }
+
+    /**
+     * Asks the motion to stop, it stops the motors on the next pass of the control loop.
+     *
+     * @return false if the motion had already ended
+     */
+    public boolean cancel() {
+        if (isDone())
+            return false;
+        cancelRequested = true;
+        return true;
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * @return whether the motion ended because it was cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return what the motion threw, or null
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits for the motion to end.
+     */
+    public void await() throws InterruptedException {
+        done.await();
+    }
+
+    /**
+     * @return false if the motion was still running when the time ran out
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+}
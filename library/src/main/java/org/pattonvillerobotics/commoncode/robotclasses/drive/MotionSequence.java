@@ -0,0 +1,507 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import org.apache.commons.math3.util.FastMath;
+import org.pattonvillerobotics.commoncode.enums.Direction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An autonomous routine as a list of drive segments and mechanism actions, run as one {@link Motion} so there is no
+ * gap between steps.
+ * <p>
+ * With motion profiling on in the {@link RobotParameters}, consecutive moves and turns are driven along one
+ * {@link org.pattonvillerobotics.commoncode.robotclasses.control.BlendedProfile}: the robot only slows down at a
+ * boundary as much as the next segment needs, and only stops where a side reverses or {@link Builder#stop()} asks it
+ * to. Actions between them run as the wheels cross the boundary. Everything is planned when the sequence is built, so
+ * starting the next segment costs nothing. Without profiling each segment is an ordinary move that stops at its end.
+ * <p>
+ * Each run records when every segment started and how long it took, next to the planned durations, see
+ * {@link #getReport()}.
+ */
+public class MotionSequence {
+
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private final EncoderDrive drive;
+    private final List<Step> steps;
+    private final List<Segment> segments;
+    private volatile double duration = Double.NaN;
+
+    private MotionSequence(EncoderDrive drive, List<Step> steps, List<Segment> segments) {
+        this.drive = drive;
+        this.steps = steps;
+        this.segments = Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * Runs the sequence and waits for it and every {@link Builder#parallel(String, Motion)} motion to end.
+     */
+    public void run() {
+        drive.runBlocking(new Runner());
+    }
+
+    /**
+     * Starts the sequence in the background and returns right away, cancelling any motion the drive is already
+     * running.
+     */
+    public MotionHandle runAsync() {
+        return drive.runAsync(new Runner());
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return the sum of the planned durations in seconds, leaving out segments without one
+     */
+    public double getPlannedDuration() {
+        double total = 0;
+        for (Segment segment : segments)
+            if (!Double.isNaN(segment.plannedDuration))
+                total += segment.plannedDuration;
+        return total;
+    }
+
+    /**
+     * @return how long the last run took in seconds, or NaN until a run has ended
+     */
+    public double getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return a line per segment with its start, planned and actual duration and the speed it was entered at, to
+     * tune the routine's length with
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder(String.format(Locale.US, "%-28s %8s %8s %8s %8s%n", "Segment", "Start", "Planned", "Actual", "Entry"));
+        for (Segment segment : segments)
+            report.append(String.format(Locale.US, "%-28s %8.3f %8.3f %8.3f %8.1f%n", segment.name,
+                    segment.startTime, segment.plannedDuration, segment.duration, segment.entryVelocity));
+        report.append(String.format(Locale.US, "%-28s %8s %8.3f %8.3f%n", "Total", "", getPlannedDuration(), duration));
+        return report.toString();
+    }
+
+    /**
+     * A drive segment or action and how it went on the last run. Times are in seconds.
+     */
+    public static class Segment {
+
+        private final String name;
+        private final double plannedDuration, entryVelocity;
+        private volatile double startTime = Double.NaN, duration = Double.NaN;
+
+        Segment(String name, double plannedDuration, double entryVelocity) {
+            this.name = name;
+            this.plannedDuration = plannedDuration;
+            this.entryVelocity = entryVelocity;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return how long the plan says the segment takes, 0 for actions and NaN when it can't be known ahead
+         */
+        public double getPlannedDuration() {
+            return plannedDuration;
+        }
+
+        /**
+         * @return the planned speed the wheels cross into the segment at in inches per second, 0 unless blended
+         */
+        public double getEntryVelocity() {
+            return entryVelocity;
+        }
+
+        /**
+         * @return when the segment started since the sequence did, or NaN if it hasn't run
+         */
+        public double getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return how long the segment took, or NaN if it hasn't finished
+         */
+        public double getDuration() {
+            return duration;
+        }
+
+        @Override
+        public String toString() {
+            return "Segment{" +
+                    "name='" + name + '\'' +
+                    ", plannedDuration=" + plannedDuration +
+                    ", startTime=" + startTime +
+                    ", duration=" + duration +
+                    '}';
+        }
+    }
+
+    /**
+     * Adds segments in the order they run.
+     */
+    public static class Builder {
+
+        private final EncoderDrive drive;
+        private final List<Item> items = new ArrayList<>();
+
+        public Builder(EncoderDrive drive) {
+            this.drive = drive;
+        }
+
+        /**
+         * Drives forward or backward. On a {@link MecanumEncoderDrive} left and right strafe, but strafes always
+         * stop at their end.
+         */
+        public Builder moveInches(Direction direction, double inches, double power) {
+            String name = String.format(Locale.US, "Move %s %.1f in", direction, inches);
+            switch (direction) {
+                case FORWARD:
+                    return drive(name, direction, inches, false, inches, inches, power);
+                case BACKWARD:
+                    return drive(name, direction, inches, false, -inches, -inches, power);
+                default:
+                    return motion(name, drive.moveInchesMotion(direction, inches, power));
+            }
+        }
+
+        /**
+         * Turns in place.
+         */
+        public Builder rotateDegrees(Direction direction, double degrees, double power) {
+            String name = String.format(Locale.US, "Rotate %s %.1f deg", direction, degrees);
+            double inches = drive.degreesToInches(degrees);
+            switch (direction) {
+                case LEFT:
+                    return drive(name, direction, degrees, true, -inches, inches, power);
+                case RIGHT:
+                    return drive(name, direction, degrees, true, inches, -inches, power);
+                default:
+                    throw new IllegalArgumentException("Direction must be Direction.LEFT or Direction.RIGHT!");
+            }
+        }
+
+        private Builder drive(String name, Direction direction, double amount, boolean rotation, double leftInches, double rightInches, double power) {
+            if (!(FastMath.abs(leftInches) > 0))
+                throw new IllegalArgumentException("Segments must move, " + name + " doesn't");
+            Item item = new Item(name);
+            item.direction = direction;
+            item.amount = amount;
+            item.rotation = rotation;
+            item.leftInches = leftInches;
+            item.rightInches = rightInches;
+            item.power = power;
+            items.add(item);
+            return this;
+        }
+
+        /**
+         * Comes to a full stop at the end of the last move or turn added, before any segment after it.
+         *
+         * @throws IllegalStateException if no move or turn has been added yet
+         */
+        public Builder stop() {
+            for (int i = items.size() - 1; i >= 0; i--) {
+                if (items.get(i).isDrive()) {
+                    items.get(i).stopAfter = true;
+                    return this;
+                }
+            }
+            throw new IllegalStateException("stop() needs a move or turn before it");
+        }
+
+        /**
+         * Runs {@code action} on the control loop between the segments around it, without slowing the drive down.
+         * It should return quickly, e.g. setting a servo's position.
+         */
+        public Builder action(String name, Runnable action) {
+            Item item = new Item(name);
+            item.action = action;
+            items.add(item);
+            return this;
+        }
+
+        /**
+         * Runs a mechanism's {@code motion} and waits for it to end before the next segment, the drive stops first.
+         */
+        public Builder motion(String name, Motion motion) {
+            Item item = new Item(name);
+            item.motion = motion;
+            items.add(item);
+            return this;
+        }
+
+        /**
+         * Starts a mechanism's {@code motion} on {@link MotionExecutor#getDefault()} and carries on with the next
+         * segment right away. The sequence ends once the motion has too, and cancels it if the sequence is cancelled.
+         */
+        public Builder parallel(String name, Motion motion) {
+            Item item = new Item(name);
+            item.motion = motion;
+            item.parallel = true;
+            items.add(item);
+            return this;
+        }
+
+        /**
+         * Plans every segment.
+         */
+        public MotionSequence build() {
+            boolean blend = drive.robotParameters.isMotionProfilingEnabled();
+            List<Step> steps = new ArrayList<>();
+            List<Segment> segments = new ArrayList<>();
+
+            int i = 0;
+            while (i < items.size()) {
+                Item item = items.get(i);
+                if (!item.isDrive()) {
+                    Segment segment = new Segment(item.name, item.motion == null || item.parallel ? 0 : Double.NaN, 0);
+                    steps.add(new Step(segment, item));
+                    segments.add(segment);
+                    i++;
+                } else if (!blend) {
+                    Item drive = new Item(item.name);
+                    drive.motion = item.rotation ? this.drive.rotateDegreesMotion(item.direction, item.amount, item.power)
+                            : this.drive.moveInchesMotion(item.direction, item.amount, item.power);
+                    Segment segment = new Segment(item.name, Double.NaN, 0);
+                    steps.add(new Step(segment, drive));
+                    segments.add(segment);
+                    i++;
+                } else {
+                    i = addRun(i, steps, segments);
+                }
+            }
+            return new MotionSequence(drive, steps, segments);
+        }
+
+        /**
+         * Plans the drive segments from {@code from} on, and the actions between them, as one blended motion.
+         *
+         * @return the index of the first item after the run
+         */
+        private int addRun(int from, List<Step> steps, List<Segment> segments) {
+            // The run ends after the last drive segment that only has instant actions before the next
+            int to = from, end = from + 1;
+            while (to < items.size() && (items.get(to).isDrive() || items.get(to).action != null || items.get(to).parallel)) {
+                if (items.get(to).isDrive())
+                    end = to + 1;
+                to++;
+            }
+
+            List<Item> drives = new ArrayList<>();
+            for (int i = from; i < end; i++)
+                if (items.get(i).isDrive())
+                    drives.add(items.get(i));
+            int n = drives.size();
+            double[] left = new double[n], right = new double[n], powers = new double[n];
+            boolean[] stops = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                left[i] = drives.get(i).leftInches;
+                right[i] = drives.get(i).rightInches;
+                powers[i] = drives.get(i).power;
+                stops[i] = drives.get(i).stopAfter;
+            }
+            EncoderDrive.BlendedMotion motion = drive.blendedMotion(left, right, powers, stops);
+
+            Segment[] driveSegments = new Segment[n];
+            List<List<Step>> boundaryActions = new ArrayList<>();
+            for (int i = 0; i < n; i++)
+                boundaryActions.add(new ArrayList<Step>());
+            int index = -1;
+            List<Segment> runSegments = new ArrayList<>();
+            for (int i = from; i < end; i++) {
+                Item item = items.get(i);
+                if (item.isDrive()) {
+                    index++;
+                    double planned = motion.getProfile().getStartTime(index + 1) - motion.getProfile().getStartTime(index);
+                    driveSegments[index] = new Segment(item.name, planned, motion.getProfile().getBoundaryVelocity(index));
+                    runSegments.add(driveSegments[index]);
+                } else {
+                    Segment segment = new Segment(item.name, 0, 0);
+                    // Runs as the wheels cross into the next drive segment
+                    boundaryActions.get(index + 1).add(new Step(segment, item));
+                    runSegments.add(segment);
+                }
+            }
+            steps.add(new RunStep(motion, driveSegments, boundaryActions));
+            segments.addAll(runSegments);
+            return end;
+        }
+    }
+
+    private static class Item {
+        final String name;
+        Direction direction;
+        double amount, leftInches, rightInches, power;
+        boolean rotation, stopAfter, parallel;
+        Runnable action;
+        Motion motion;
+
+        Item(String name) {
+            this.name = name;
+        }
+
+        boolean isDrive() {
+            return action == null && motion == null;
+        }
+    }
+
+    /**
+     * One action or motion in the sequence, with the segment it records its timing in.
+     */
+    private static class Step {
+        final Segment segment;
+        final Item item;
+
+        Step(Segment segment, Item item) {
+            this.segment = segment;
+            this.item = item;
+        }
+
+        Motion getMotion() {
+            return item == null ? null : item.motion;
+        }
+    }
+
+    /**
+     * Blended drive segments, with the actions to run as the wheels enter each one.
+     */
+    private static class RunStep extends Step {
+        final EncoderDrive.BlendedMotion motion;
+        final Segment[] driveSegments;
+        final List<List<Step>> boundaryActions;
+
+        RunStep(EncoderDrive.BlendedMotion motion, Segment[] driveSegments, List<List<Step>> boundaryActions) {
+            super(null, null);
+            this.motion = motion;
+            this.driveSegments = driveSegments;
+            this.boundaryActions = boundaryActions;
+        }
+
+        @Override
+        Motion getMotion() {
+            return motion;
+        }
+    }
+
+    /**
+     * Steps through the sequence, starting the next step in the same pass the last one ended.
+     */
+    private class Runner extends Motion {
+
+        private final List<MotionHandle> parallelHandles = new ArrayList<>();
+        private long startNanos;
+        private int index, segment;
+        private boolean stepStarted;
+
+        @Override
+        protected void start() {
+            for (Segment segment : segments)
+                segment.startTime = segment.duration = Double.NaN;
+            duration = Double.NaN;
+            startNanos = System.nanoTime();
+        }
+
+        @Override
+        protected boolean update() {
+            while (index < steps.size()) {
+                Step step = steps.get(index);
+                if (!stepStarted) {
+                    stepStarted = true;
+                    startStep(step);
+                }
+                if (!updateStep(step))
+                    return false;
+                index++;
+                stepStarted = false;
+            }
+
+            for (MotionHandle handle : parallelHandles) {
+                if (!handle.isDone())
+                    return false;
+                if (handle.getFailure() != null)
+                    throw handle.getFailure();
+            }
+            duration = elapsedTime();
+            return true;
+        }
+
+        private double elapsedTime() {
+            return (System.nanoTime() - startNanos) / S_TO_NS;
+        }
+
+        private void startStep(Step step) {
+            if (step instanceof RunStep) {
+                segment = 0;
+                step.getMotion().start();
+                enterSegment((RunStep) step);
+                return;
+            }
+
+            step.segment.startTime = elapsedTime();
+            if (step.item.action != null)
+                step.item.action.run();
+            else if (step.item.parallel)
+                parallelHandles.add(MotionExecutor.getDefault().submit(step.item.motion));
+            else
+                step.item.motion.start();
+        }
+
+        /**
+         * @return true once the step is done
+         */
+        private boolean updateStep(Step step) {
+            if (!isWaitedOn(step)) {
+                step.segment.duration = 0;
+                return true;
+            }
+            boolean done = step.getMotion().update();
+            if (done)
+                step.getMotion().end(false);
+
+            if (step instanceof RunStep) {
+                RunStep run = (RunStep) step;
+                int reached = done ? run.driveSegments.length : run.motion.getSegment();
+                while (segment < reached) {
+                    Segment finished = run.driveSegments[segment];
+                    finished.duration = elapsedTime() - finished.startTime;
+                    if (++segment < run.driveSegments.length)
+                        enterSegment(run);
+                }
+            } else if (done) {
+                step.segment.duration = elapsedTime() - step.segment.startTime;
+            }
+            return done;
+        }
+
+        private boolean isWaitedOn(Step step) {
+            return step.getMotion() != null && (step.item == null || !step.item.parallel);
+        }
+
+        private void enterSegment(RunStep run) {
+            run.driveSegments[segment].startTime = elapsedTime();
+            for (Step action : run.boundaryActions.get(segment)) {
+                startStep(action);
+                action.segment.duration = 0;
+            }
+        }
+
+        @Override
+        protected void end(boolean interrupted) {
+            if (interrupted) {
+                if (index < steps.size() && stepStarted && isWaitedOn(steps.get(index)))
+                    steps.get(index).getMotion().end(true);
+                for (MotionHandle handle : parallelHandles)
+                    handle.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+
+import org.pattonvillerobotics.commoncode.robotclasses.recorder.FlightRecorder;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the encoder positions and busy flags of a set of drive motors, so a control loop pass reads each value from
+ * the hardware once instead of on every call. Every {@code getCurrentPosition()} and {@code isBusy()} is its own
+ * transaction with the motor controller, and the drive loops used to make several of each per pass.
+ * <p>
+ * The SDK has no public bulk read, so a refresh reads all the motors back to back, and only the values that are asked
+ * for: positions and busy flags are refreshed separately. Velocities are worked out from the change in position
+ * between refreshes rather than read.
+ * <p>
+ * Not thread-safe, use one snapshot per thread.
+ */
+public class MotorSnapshot {
+
+    public static final long DEFAULT_MAX_AGE_MS = 5;
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private DcMotor[] motors = new DcMotor[0];
+    private int[] positions = new int[0], previousPositions = new int[0];
+    private boolean[] busy = new boolean[0];
+    private double[] velocities = new double[0];
+    private double[] recordedPositions = new double[0];
+    private FlightRecorder.Channel recorderChannel;
+
+    private CachePolicy cachePolicy;
+    private long maxAgeNanos;
+    private boolean positionsValid, busyValid, hasPreviousPositions;
+    private long positionsTimeNanos, busyTimeNanos, previousPositionsTimeNanos;
+    private long readCount;
+
+    public MotorSnapshot() {
+        this(CachePolicy.PER_CYCLE);
+    }
+
+    public MotorSnapshot(CachePolicy cachePolicy) {
+        this.cachePolicy = cachePolicy;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_AGE_MS);
+    }
+
+    /**
+     * @return the index to read {@code motor} with
+     */
+    public int addMotor(DcMotor motor) {
+        int index = motors.length;
+        motors = Arrays.copyOf(motors, index + 1);
+        positions = Arrays.copyOf(positions, index + 1);
+        previousPositions = Arrays.copyOf(previousPositions, index + 1);
+        busy = Arrays.copyOf(busy, index + 1);
+        velocities = Arrays.copyOf(velocities, index + 1);
+        recordedPositions = Arrays.copyOf(recordedPositions, index + 1);
+        motors[index] = motor;
+        reset();
+        return index;
+    }
+
+    public int getMotorCount() {
+        return motors.length;
+    }
+
+    /**
+     * @param channel records the positions every time they are read from the hardware, or null
+     */
+    public void setRecorderChannel(FlightRecorder.Channel channel) {
+        this.recorderChannel = channel;
+    }
+
+    public CachePolicy getCachePolicy() {
+        return cachePolicy;
+    }
+
+    public void setCachePolicy(CachePolicy cachePolicy) {
+        this.cachePolicy = cachePolicy;
+        invalidate();
+    }
+
+    /**
+     * @param maxAge how old cached values can get under {@link CachePolicy#TIMED}
+     */
+    public void setMaxAge(long maxAge, TimeUnit unit) {
+        this.maxAgeNanos = unit.toNanos(maxAge);
+    }
+
+    /**
+     * Starts a new control loop pass, call it once at the top of every pass. Under {@link CachePolicy#PER_CYCLE} the
+     * next read goes to the hardware, under the other policies this does nothing.
+     */
+    public void nextCycle() {
+        if (cachePolicy == CachePolicy.PER_CYCLE)
+            invalidate();
+    }
+
+    /**
+     * Makes the next read of each value go to the hardware.
+     */
+    public void invalidate() {
+        positionsValid = false;
+        busyValid = false;
+    }
+
+    /**
+     * Forgets everything read so far, call it after the encoders are reset so the jump back to zero doesn't show up as
+     * a velocity.
+     */
+    public void reset() {
+        invalidate();
+        hasPreviousPositions = false;
+        Arrays.fill(velocities, 0);
+    }
+
+    public int getPosition(int motor) {
+        if (cachePolicy == CachePolicy.OFF || !positionsValid || isExpired(positionsTimeNanos))
+            readPositions();
+        return positions[motor];
+    }
+
+    public boolean isBusy(int motor) {
+        if (cachePolicy == CachePolicy.OFF)
+            return motors[motor].isBusy();
+        if (!busyValid || isExpired(busyTimeNanos))
+            readBusy();
+        return busy[motor];
+    }
+
+    /**
+     * @return whether any of the motors is still moving to its target
+     */
+    public boolean isAnyBusy() {
+        for (int i = 0; i < motors.length; i++)
+            if (isBusy(i))
+                return true;
+        return false;
+    }
+
+    /**
+     * @return the average speed between the last two position reads in ticks per second, or 0 before there are two
+     */
+    public double getVelocity(int motor) {
+        if (cachePolicy == CachePolicy.OFF || !positionsValid || isExpired(positionsTimeNanos))
+            readPositions();
+        return velocities[motor];
+    }
+
+    /**
+     * @return when the cached positions were read, in {@link System#nanoTime()} time
+     */
+    public long getPositionsTimeNanos() {
+        return positionsTimeNanos;
+    }
+
+    /**
+     * @return how many times the snapshot has gone to the hardware
+     */
+    public long getReadCount() {
+        return readCount;
+    }
+
+    private boolean isExpired(long timeNanos) {
+        return cachePolicy == CachePolicy.TIMED && System.nanoTime() - timeNanos > maxAgeNanos;
+    }
+
+    private void readPositions() {
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < motors.length; i++)
+            positions[i] = motors[i].getCurrentPosition();
+        long timeNanos = startNanos + (System.nanoTime() - startNanos) / 2;
+
+        if (hasPreviousPositions && timeNanos > previousPositionsTimeNanos) {
+            double elapsedTimeS = (timeNanos - previousPositionsTimeNanos) / S_TO_NS;
+            for (int i = 0; i < motors.length; i++)
+                velocities[i] = (positions[i] - previousPositions[i]) / elapsedTimeS;
+        }
+        System.arraycopy(positions, 0, previousPositions, 0, motors.length);
+        previousPositionsTimeNanos = timeNanos;
+        hasPreviousPositions = true;
+
+        positionsTimeNanos = timeNanos;
+        positionsValid = true;
+        readCount++;
+
+        if (recorderChannel != null) {
+            for (int i = 0; i < motors.length; i++)
+                recordedPositions[i] = positions[i];
+            recorderChannel.recordAt(timeNanos, recordedPositions, motors.length);
+        }
+    }
+
+    private void readBusy() {
+        for (int i = 0; i < motors.length; i++)
+            busy[i] = motors[i].isBusy();
+        busyTimeNanos = System.nanoTime();
+        busyValid = true;
+        readCount++;
+    }
+
+    /**
+     * When a {@link MotorSnapshot} goes back to the hardware.
+     */
+    public enum CachePolicy {
+        /**
+         * Once per control loop pass, marked by {@link MotorSnapshot#nextCycle()}
+         */
+        PER_CYCLE,
+        /**
+         * Whenever the cached values are older than the max age, see {@link MotorSnapshot#setMaxAge(long, TimeUnit)}
+         */
+        TIMED,
+        /**
+         * On every read, like calling the motors directly. A position or velocity read still reads all the motors,
+         * so the velocities and the recorder stay in step.
+         */
+        OFF
+    }
+}
@@ -0,0 +1,203 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import org.apache.commons.math3.util.FastMath;
+import org.pattonvillerobotics.commoncode.robotclasses.control.ControlTask;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.StateSnapshot;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory.PoseSource;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of where the robot is on the field by adding up how far the wheels turn, read every tick of a
+ * {@link org.pattonvillerobotics.commoncode.robotclasses.control.ControlScheduler}. Start one with
+ * {@link EncoderDrive#startOdometry()}.
+ * <p>
+ * Each tick's wheel movement is turned into a movement of the robot by the drive's kinematics, and the robot is
+ * assumed to have driven a constant curvature arc, which is exact for a constant speed and turn rate over the tick
+ * rather than a straight line then a turn. Only the change in each encoder is used, so the pose carries across moves.
+ * <p>
+ * The encoders are read through the drive's {@link MotorSnapshot}, so the odometry uses the positions the drive's
+ * motions already read each tick and only goes to the hardware itself when nothing else has since its last update.
+ * The snapshot isn't thread-safe, so the odometry has to run on the same scheduler as the drive's motions.
+ * <p>
+ * The state is [x y θ v<sub>forward</sub> v<sub>strafe</sub> ω], like the
+ * {@link org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.ExtendedKalmanFilter}: field inches, θ in
+ * radians counterclockwise from the field x axis, and robot frame velocities with strafe positive to the left. It's
+ * published through a {@link StateSnapshot}, so any thread can read it without locking. Nothing allocates per tick.
+ */
+public abstract class Odometry implements ControlTask, PoseSource {
+
+    public static final int STATE_DIMENSION = 6;
+    public static final int X = 0, Y = 1, HEADING = 2, FORWARD_VELOCITY = 3, STRAFE_VELOCITY = 4, ANGULAR_VELOCITY = 5;
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private final MotorSnapshot motorSnapshot;
+    private final int[] motors;
+    private final int[] positions, lastPositions;
+    private final double[] wheelDeltas;
+    private final double inchesPerTick;
+
+    private final double[] state = new double[STATE_DIMENSION], bodyDelta = new double[3];
+    private final StateSnapshot snapshot = new StateSnapshot(STATE_DIMENSION);
+    private final ThreadLocal<double[]> readBuffer = new ThreadLocal<double[]>() {
+        @Override
+        protected double[] initialValue() {
+            return new double[STATE_DIMENSION];
+        }
+    };
+
+    private boolean started;
+    private long lastTimeNanos;
+
+    /**
+     * @param motorSnapshot the drive's snapshot, read on the same thread as the odometry
+     * @param motors        indices into {@code motorSnapshot} of the encoders to read, in the order
+     *                      {@link #getBodyDelta(double[], double[])} expects them
+     */
+    protected Odometry(RobotParameters robotParameters, MotorSnapshot motorSnapshot, int... motors) {
+        this.motorSnapshot = motorSnapshot;
+        this.motors = motors.clone();
+        this.positions = new int[motors.length];
+        this.lastPositions = new int[motors.length];
+        this.wheelDeltas = new double[motors.length];
+        this.inchesPerTick = DriveMath.ticksToInches(1, robotParameters.getAdjustedTicksPerRevolution(), robotParameters.getWheelCircumference());
+    }
+
+    /**
+     * Moves {@code pose} along an arc, exactly for a constant speed and turn rate.
+     *
+     * @param pose    x, y and θ, updated in place
+     * @param forward the distance driven forward in the robot's frame at the start
+     * @param strafe  the distance driven to the left
+     * @param turn    the change in θ in radians
+     */
+    static void integrate(double[] pose, double forward, double strafe, double turn) {
+        // sin(turn) / turn and (1 - cos(turn)) / turn, as series near 0 where they'd divide by zero
+        double sinc, cosc;
+        if (FastMath.abs(turn) < 1e-6) {
+            sinc = 1 - turn * turn / 6;
+            cosc = turn / 2;
+        } else {
+            sinc = FastMath.sin(turn) / turn;
+            cosc = (1 - FastMath.cos(turn)) / turn;
+        }
+        double dx = sinc * forward - cosc * strafe;
+        double dy = cosc * forward + sinc * strafe;
+
+        double cos = FastMath.cos(pose[HEADING]), sin = FastMath.sin(pose[HEADING]);
+        pose[X] += dx * cos - dy * sin;
+        pose[Y] += dx * sin + dy * cos;
+        pose[HEADING] += turn;
+    }
+
+    /**
+     * @param wheelDeltas how far each wheel moved in inches, in the order the motors were given
+     * @param out         set to the distance moved forward and to the left in inches, and the turn in radians
+     */
+    protected abstract void getBodyDelta(double[] wheelDeltas, double[] out);
+
+    @Override
+    public synchronized void update(long tickNanos, double dt) {
+        // Reuses what a motion read since the last update, otherwise starts a cycle of its own
+        if (!started || motorSnapshot.getPositionsTimeNanos() == lastTimeNanos)
+            motorSnapshot.nextCycle();
+        readEncoders();
+    }
+
+    /**
+     * Counts the movement since the last read, timed by when the snapshot read the encoders.
+     */
+    private void readEncoders() {
+        boolean first = !started;
+        for (int i = 0; i < motors.length; i++)
+            positions[i] = motorSnapshot.getPosition(motors[i]);
+        long timeNanos = motorSnapshot.getPositionsTimeNanos();
+        if (!first && timeNanos == lastTimeNanos)
+            return;
+
+        for (int i = 0; i < motors.length; i++) {
+            int position = positions[i];
+            wheelDeltas[i] = (position - lastPositions[i]) * inchesPerTick;
+            lastPositions[i] = position;
+        }
+        started = true;
+
+        double elapsedTimeS = (timeNanos - lastTimeNanos) / S_TO_NS;
+        lastTimeNanos = timeNanos;
+        if (first) {
+            // Only sets where the encoders start from
+            snapshot.write(state, timeNanos);
+            return;
+        }
+
+        getBodyDelta(wheelDeltas, bodyDelta);
+        integrate(state, bodyDelta[0], bodyDelta[1], bodyDelta[2]);
+        if (elapsedTimeS > 0) {
+            state[FORWARD_VELOCITY] = bodyDelta[0] / elapsedTimeS;
+            state[STRAFE_VELOCITY] = bodyDelta[1] / elapsedTimeS;
+            state[ANGULAR_VELOCITY] = bodyDelta[2] / elapsedTimeS;
+        }
+        snapshot.write(state, timeNanos);
+    }
+
+    /**
+     * Counts the movement up to now, runs {@code reset}, which zeroes the encoders, and carries on from zero.
+     */
+    synchronized void resetEncoders(Runnable reset) {
+        if (started) {
+            motorSnapshot.invalidate();
+            readEncoders();
+        }
+        reset.run();
+        Arrays.fill(lastPositions, 0);
+    }
+
+    /**
+     * Moves the robot to a known pose, e.g. its starting position or a Vuforia fix.
+     *
+     * @param heading in radians counterclockwise from the field x axis
+     */
+    public synchronized void setPose(double x, double y, double heading) {
+        state[X] = x;
+        state[Y] = y;
+        state[HEADING] = heading;
+        snapshot.write(state, lastTimeNanos);
+    }
+
+    /**
+     * Lock-free, safe to call from any thread.
+     *
+     * @param out set to x, y and θ
+     */
+    @Override
+    public void getPose(double[] out) {
+        double[] buffer = readBuffer.get();
+        snapshot.read(buffer);
+        System.arraycopy(buffer, 0, out, 0, 3);
+    }
+
+    /**
+     * Lock-free, safe to call from any thread.
+     *
+     * @param out set to the whole state, at least {@link #STATE_DIMENSION} long
+     * @return when the encoders were read, in {@link System#nanoTime()} time
+     */
+    public long getState(double[] out) {
+        return snapshot.read(out);
+    }
+
+    /**
+     * @return the heading in degrees, for telemetry
+     */
+    public double getHeadingDegrees() {
+        return FastMath.toDegrees(snapshot.get(HEADING));
+    }
+
+    /**
+     * @return the number of times the pose has been updated
+     */
+    public long getUpdateCount() {
+        return snapshot.getVersion();
+    }
+}
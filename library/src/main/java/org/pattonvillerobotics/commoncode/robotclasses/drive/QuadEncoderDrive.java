@@ -14,6 +14,11 @@ public class QuadEncoderDrive extends EncoderDrive {
     private static final String LEFT_REAR_MOTOR_NAME = "left_rear_motor";
     private static final String RIGHT_REAR_MOTOR_NAME = "right_rear_motor";
     public final Optional<DcMotor> secondaryLeftDriveMotor, secondaryRightDriveMotor;
+    /**
+     * Indices into {@link #motorSnapshot}, -1 if the motor isn't present
+     */
+    protected final int secondaryLeftDriveIndex, secondaryRightDriveIndex;
+    private DcMotor.RunMode secondaryLeftDriveSavedMotorMode, secondaryRightDriveSavedMotorMode;
 
     /**
      * Sets up Drive object with custom RobotParameters useful for doing calculations with encoders
@@ -27,6 +32,8 @@ public class QuadEncoderDrive extends EncoderDrive {
 
         this.secondaryLeftDriveMotor = hardwareMap.dcMotor.contains(LEFT_REAR_MOTOR_NAME) ? Optional.of(hardwareMap.dcMotor.get(LEFT_REAR_MOTOR_NAME)) : Optional.<DcMotor>empty();
         this.secondaryRightDriveMotor = hardwareMap.dcMotor.contains(RIGHT_REAR_MOTOR_NAME) ? Optional.of(hardwareMap.dcMotor.get(RIGHT_REAR_MOTOR_NAME)) : Optional.<DcMotor>empty();
+        this.secondaryLeftDriveIndex = secondaryLeftDriveMotor.isPresent() ? motorSnapshot.addMotor(secondaryLeftDriveMotor.get()) : -1;
+        this.secondaryRightDriveIndex = secondaryRightDriveMotor.isPresent() ? motorSnapshot.addMotor(secondaryRightDriveMotor.get()) : -1;
 
         this.secondaryLeftDriveMotor.ifPresent(ZERO_POWER_BEHAVIOR_SETTER);
         this.secondaryRightDriveMotor.ifPresent(ZERO_POWER_BEHAVIOR_SETTER);
@@ -56,42 +63,79 @@ public class QuadEncoderDrive extends EncoderDrive {
         });
     }
 
+    @Override
+    protected String getMotorName(int index) {
+        return index == secondaryLeftDriveIndex ? "left_rear" : index == secondaryRightDriveIndex ? "right_rear" : super.getMotorName(index);
+    }
+
     @Override
     protected boolean isMovingToPosition() {
         return super.isMovingToPosition()
-                && this.secondaryLeftDriveMotor.map(IS_BUSY_FUNCTION).orElse(true)
-                && this.secondaryRightDriveMotor.map(IS_BUSY_FUNCTION).orElse(true);
+                && (secondaryLeftDriveIndex < 0 || motorSnapshot.isBusy(secondaryLeftDriveIndex))
+                && (secondaryRightDriveIndex < 0 || motorSnapshot.isBusy(secondaryRightDriveIndex));
+    }
+
+    @Override
+    protected void saveMotorModes() {
+        super.saveMotorModes();
+        if (secondaryLeftDriveMotor.isPresent())
+            secondaryLeftDriveSavedMotorMode = getRunMode(secondaryLeftDriveMotor.get());
+        if (secondaryRightDriveMotor.isPresent())
+            secondaryRightDriveSavedMotorMode = getRunMode(secondaryRightDriveMotor.get());
+    }
+
+    @Override
+    protected void restoreMotorModes() {
+        super.restoreMotorModes();
+        if (secondaryLeftDriveMotor.isPresent())
+            setRunMode(secondaryLeftDriveMotor.get(), secondaryLeftDriveSavedMotorMode);
+        if (secondaryRightDriveMotor.isPresent())
+            setRunMode(secondaryRightDriveMotor.get(), secondaryRightDriveSavedMotorMode);
     }
 
     @Override
     protected void setMotorsRunToPosition() {
         super.setMotorsRunToPosition();
-        this.secondaryLeftDriveMotor.ifPresent(RUN_MODE_RUN_TO_POSITION_SETTER);
-        this.secondaryRightDriveMotor.ifPresent(RUN_MODE_RUN_TO_POSITION_SETTER);
+        if (secondaryLeftDriveMotor.isPresent())
+            setRunMode(secondaryLeftDriveMotor.get(), DcMotor.RunMode.RUN_TO_POSITION);
+        if (secondaryRightDriveMotor.isPresent())
+            setRunMode(secondaryRightDriveMotor.get(), DcMotor.RunMode.RUN_TO_POSITION);
+    }
+
+    @Override
+    protected void setMotorsRunUsingEncoder() {
+        super.setMotorsRunUsingEncoder();
+        if (secondaryLeftDriveMotor.isPresent())
+            setRunMode(secondaryLeftDriveMotor.get(), DcMotor.RunMode.RUN_USING_ENCODER);
+        if (secondaryRightDriveMotor.isPresent())
+            setRunMode(secondaryRightDriveMotor.get(), DcMotor.RunMode.RUN_USING_ENCODER);
     }
 
     @Override
-    protected void resetMotorEncoders() {
-        super.resetMotorEncoders();
-        this.secondaryLeftDriveMotor.ifPresent(RUN_MODE_STOP_AND_RESET_ENCODER_SETTER);
-        this.secondaryRightDriveMotor.ifPresent(RUN_MODE_STOP_AND_RESET_ENCODER_SETTER);
+    protected void setMotorsRunWithoutEncoder() {
+        super.setMotorsRunWithoutEncoder();
+        if (secondaryLeftDriveMotor.isPresent())
+            setRunMode(secondaryLeftDriveMotor.get(), DcMotor.RunMode.RUN_WITHOUT_ENCODER);
+        if (secondaryRightDriveMotor.isPresent())
+            setRunMode(secondaryRightDriveMotor.get(), DcMotor.RunMode.RUN_WITHOUT_ENCODER);
     }
 
     @Override
-    protected void setMotorTargets(final int targetPositionLeft, final int targetPositionRight) {
+    protected void stopAndResetEncoders() {
+        super.stopAndResetEncoders();
+        if (secondaryLeftDriveMotor.isPresent())
+            resetEncoder(secondaryLeftDriveMotor.get());
+        if (secondaryRightDriveMotor.isPresent())
+            resetEncoder(secondaryRightDriveMotor.get());
+    }
+
+    @Override
+    protected void setMotorTargets(int targetPositionLeft, int targetPositionRight) {
         super.setMotorTargets(targetPositionLeft, targetPositionRight);
-        this.secondaryLeftDriveMotor.ifPresent(new Consumer<DcMotor>() {
-            @Override
-            public void accept(DcMotor dcMotor) {
-                dcMotor.setTargetPosition(targetPositionLeft);
-            }
-        });
-        this.secondaryRightDriveMotor.ifPresent(new Consumer<DcMotor>() {
-            @Override
-            public void accept(DcMotor dcMotor) {
-                dcMotor.setTargetPosition(targetPositionRight);
-            }
-        });
+        if (secondaryLeftDriveMotor.isPresent())
+            setMotorTarget(secondaryLeftDriveIndex, secondaryLeftDriveMotor.get(), targetPositionLeft);
+        if (secondaryRightDriveMotor.isPresent())
+            setMotorTarget(secondaryRightDriveIndex, secondaryRightDriveMotor.get(), targetPositionRight);
     }
 
     @Override
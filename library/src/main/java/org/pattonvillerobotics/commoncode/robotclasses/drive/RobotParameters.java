@@ -3,6 +3,20 @@ package org.pattonvillerobotics.commoncode.robotclasses.drive;
 import com.qualcomm.robotcore.hardware.DcMotorSimple;
 
 import org.apache.commons.math3.util.FastMath;
+import org.pattonvillerobotics.commoncode.robotclasses.control.PIDFCoefficients;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Properties;
 
 /**
  * Created by skaggsm on 9/22/16.
@@ -12,6 +26,7 @@ import org.apache.commons.math3.util.FastMath;
 
 public class RobotParameters {
     public static final int TICKS_PER_REVOLUTION = 1440;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
 
     /**
      * Provided values
@@ -19,13 +34,19 @@ public class RobotParameters {
     private final double wheelBaseRadius, wheelRadius, driveGearRatio;
     private final boolean gyroEnabled, encodersEnabled;
     private final DcMotorSimple.Direction leftDriveMotorDirection, rightDriveMotorDirection;
+    /**
+     * Motion profiling limits in inches per second, per second squared and per second cubed, 0 if not set
+     */
+    private final double maxVelocity, maxAcceleration, maxJerk;
+    private final PIDFCoefficients driveVelocityCoefficients;
 
     /**
      * Cached computed values, never change since the class is final
      */
     private final double wheelCircumference, wheelBaseCircumference, adjustedTicksPerRevolution;
 
-    private RobotParameters(double wheelBaseRadius, double wheelRadius, double driveGearRatio, boolean gyroEnabled, boolean encodersEnabled, DcMotorSimple.Direction leftDriveMotorDirection, DcMotorSimple.Direction rightDriveMotorDirection) {
+    private RobotParameters(double wheelBaseRadius, double wheelRadius, double driveGearRatio, boolean gyroEnabled, boolean encodersEnabled, DcMotorSimple.Direction leftDriveMotorDirection, DcMotorSimple.Direction rightDriveMotorDirection,
+                            double maxVelocity, double maxAcceleration, double maxJerk, PIDFCoefficients driveVelocityCoefficients) {
         this.wheelBaseRadius = wheelBaseRadius;
         this.wheelRadius = wheelRadius;
         this.driveGearRatio = driveGearRatio;
@@ -37,6 +58,10 @@ public class RobotParameters {
         this.adjustedTicksPerRevolution = TICKS_PER_REVOLUTION / driveGearRatio;
         this.leftDriveMotorDirection = leftDriveMotorDirection;
         this.rightDriveMotorDirection = rightDriveMotorDirection;
+        this.maxVelocity = maxVelocity;
+        this.maxAcceleration = maxAcceleration;
+        this.maxJerk = maxJerk;
+        this.driveVelocityCoefficients = driveVelocityCoefficients;
     }
 
     public double getWheelBaseRadius() {
@@ -79,6 +104,128 @@ public class RobotParameters {
         return encodersEnabled;
     }
 
+    /**
+     * @return the fastest a wheel should go in inches per second
+     */
+    public double getMaxVelocity() {
+        return maxVelocity;
+    }
+
+    /**
+     * @return in inches per second squared
+     */
+    public double getMaxAcceleration() {
+        return maxAcceleration;
+    }
+
+    /**
+     * @return in inches per second cubed, 0 for trapezoidal profiles
+     */
+    public double getMaxJerk() {
+        return maxJerk;
+    }
+
+    /**
+     * @return the gains of each side's velocity controller, in power per inch per second
+     */
+    public PIDFCoefficients getDriveVelocityCoefficients() {
+        return driveVelocityCoefficients;
+    }
+
+    /**
+     * @return whether encoder moves follow a motion profile instead of running to position at a constant power
+     */
+    public boolean isMotionProfilingEnabled() {
+        return maxVelocity > 0;
+    }
+
+    /**
+     * Reads parameters saved by {@link #write(Writer)}. Values that weren't saved get the {@link Builder}'s defaults.
+     *
+     * @throws IOException if a value is malformed or the parameters are invalid
+     */
+    public static RobotParameters read(Reader reader) throws IOException {
+        Properties properties = new Properties();
+        properties.load(reader);
+        try {
+            Builder builder = new Builder()
+                    .wheelBaseRadius(getDouble(properties, "wheelBaseRadius", 0))
+                    .wheelRadius(getDouble(properties, "wheelRadius", 0))
+                    .driveGearRatio(getDouble(properties, "driveGearRatio", 1))
+                    .gyroEnabled(Boolean.parseBoolean(properties.getProperty("gyroEnabled", "false")))
+                    .encodersEnabled(Boolean.parseBoolean(properties.getProperty("encodersEnabled", "false")))
+                    .leftDriveMotorDirection(DcMotorSimple.Direction.valueOf(properties.getProperty("leftDriveMotorDirection", "FORWARD")))
+                    .rightDriveMotorDirection(DcMotorSimple.Direction.valueOf(properties.getProperty("rightDriveMotorDirection", "REVERSE")))
+                    .motionProfile(getDouble(properties, "maxVelocity", 0), getDouble(properties, "maxAcceleration", 0), getDouble(properties, "maxJerk", 0));
+            if (properties.containsKey("driveVelocity.kV"))
+                builder.driveVelocityCoefficients(new PIDFCoefficients.Builder()
+                        .p(getDouble(properties, "driveVelocity.kP", 0))
+                        .i(getDouble(properties, "driveVelocity.kI", 0))
+                        .d(getDouble(properties, "driveVelocity.kD", 0))
+                        .s(getDouble(properties, "driveVelocity.kS", 0))
+                        .v(getDouble(properties, "driveVelocity.kV", 0))
+                        .a(getDouble(properties, "driveVelocity.kA", 0))
+                        .build());
+            return builder.build();
+        } catch (IllegalArgumentException e) {
+            // Includes NumberFormatException and unknown directions
+            throw new IOException("Bad robot parameters: " + e.getMessage(), e);
+        }
+    }
+
+    public static RobotParameters read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(new InputStreamReader(in, UTF_8));
+        }
+    }
+
+    /**
+     * @return the parameters in {@code file}, or {@code defaults} if the file doesn't exist yet
+     */
+    public static RobotParameters readIfExists(File file, RobotParameters defaults) throws IOException {
+        return file.exists() ? read(file) : defaults;
+    }
+
+    private static double getDouble(Properties properties, String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultValue : Double.parseDouble(value.trim());
+    }
+
+    /**
+     * Saves the parameters as a properties file, e.g. so a characterization run on the robot can be loaded by every
+     * op mode after it.
+     */
+    public void write(Writer writer) throws IOException {
+        Properties properties = new Properties();
+        // Double.toString round trips exactly and ignores the locale
+        properties.setProperty("wheelBaseRadius", Double.toString(wheelBaseRadius));
+        properties.setProperty("wheelRadius", Double.toString(wheelRadius));
+        properties.setProperty("driveGearRatio", Double.toString(driveGearRatio));
+        properties.setProperty("gyroEnabled", Boolean.toString(gyroEnabled));
+        properties.setProperty("encodersEnabled", Boolean.toString(encodersEnabled));
+        properties.setProperty("leftDriveMotorDirection", leftDriveMotorDirection.name());
+        properties.setProperty("rightDriveMotorDirection", rightDriveMotorDirection.name());
+        properties.setProperty("maxVelocity", Double.toString(maxVelocity));
+        properties.setProperty("maxAcceleration", Double.toString(maxAcceleration));
+        properties.setProperty("maxJerk", Double.toString(maxJerk));
+        if (driveVelocityCoefficients != null) {
+            properties.setProperty("driveVelocity.kP", Double.toString(driveVelocityCoefficients.getP()));
+            properties.setProperty("driveVelocity.kI", Double.toString(driveVelocityCoefficients.getI()));
+            properties.setProperty("driveVelocity.kD", Double.toString(driveVelocityCoefficients.getD()));
+            properties.setProperty("driveVelocity.kS", Double.toString(driveVelocityCoefficients.getS()));
+            properties.setProperty("driveVelocity.kV", Double.toString(driveVelocityCoefficients.getV()));
+            properties.setProperty("driveVelocity.kA", Double.toString(driveVelocityCoefficients.getA()));
+        }
+        properties.store(writer, "RobotParameters");
+        writer.flush();
+    }
+
+    public void write(File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(new OutputStreamWriter(out, UTF_8));
+        }
+    }
+
     public static class Builder {
         private double wheelBaseRadius;
         private double wheelRadius;
@@ -87,10 +234,29 @@ public class RobotParameters {
         private boolean encodersEnabled = false;
         private DcMotorSimple.Direction leftDriveMotorDirection = DcMotorSimple.Direction.FORWARD;
         private DcMotorSimple.Direction rightDriveMotorDirection = DcMotorSimple.Direction.REVERSE;
+        private double maxVelocity, maxAcceleration, maxJerk;
+        private PIDFCoefficients driveVelocityCoefficients;
 
         public Builder() {
         }
 
+        /**
+         * Starts from a copy of {@code parameters}, e.g. to change a few of them.
+         */
+        public Builder(RobotParameters parameters) {
+            this.wheelBaseRadius = parameters.wheelBaseRadius;
+            this.wheelRadius = parameters.wheelRadius;
+            this.driveGearRatio = parameters.driveGearRatio;
+            this.gyroEnabled = parameters.gyroEnabled;
+            this.encodersEnabled = parameters.encodersEnabled;
+            this.leftDriveMotorDirection = parameters.leftDriveMotorDirection;
+            this.rightDriveMotorDirection = parameters.rightDriveMotorDirection;
+            this.maxVelocity = parameters.maxVelocity;
+            this.maxAcceleration = parameters.maxAcceleration;
+            this.maxJerk = parameters.maxJerk;
+            this.driveVelocityCoefficients = parameters.driveVelocityCoefficients;
+        }
+
         public Builder wheelBaseRadius(double wheelBaseRadius) {
             this.wheelBaseRadius = wheelBaseRadius;
             return this;
@@ -126,12 +292,45 @@ public class RobotParameters {
             return this;
         }
 
+        /**
+         * Turns on motion profiled encoder moves, {@link #driveVelocityCoefficients(PIDFCoefficients)} has to be set too.
+         *
+         * @param maxVelocity     in inches per second, the power passed to a move scales it
+         * @param maxAcceleration in inches per second squared
+         */
+        public Builder motionProfile(double maxVelocity, double maxAcceleration) {
+            return motionProfile(maxVelocity, maxAcceleration, 0);
+        }
+
+        /**
+         * @param maxJerk in inches per second cubed, 0 for a trapezoidal profile instead of an S-curve
+         * @see #motionProfile(double, double)
+         */
+        public Builder motionProfile(double maxVelocity, double maxAcceleration, double maxJerk) {
+            this.maxVelocity = maxVelocity;
+            this.maxAcceleration = maxAcceleration;
+            this.maxJerk = maxJerk;
+            return this;
+        }
+
+        public Builder driveVelocityCoefficients(PIDFCoefficients driveVelocityCoefficients) {
+            this.driveVelocityCoefficients = driveVelocityCoefficients;
+            return this;
+        }
+
         public RobotParameters build() {
             if (wheelBaseRadius <= 0)
                 throw new IllegalArgumentException("wheelBaseRadius must be > 0");
             if (wheelRadius <= 0)
                 throw new IllegalArgumentException("wheelRadius must be > 0");
-            return new RobotParameters(wheelBaseRadius, wheelRadius, driveGearRatio, gyroEnabled, encodersEnabled, leftDriveMotorDirection, rightDriveMotorDirection);
+            if (maxVelocity < 0 || maxAcceleration < 0 || maxJerk < 0)
+                throw new IllegalArgumentException("Motion profile limits must be >= 0");
+            if (maxVelocity > 0 && maxAcceleration == 0)
+                throw new IllegalArgumentException("maxAcceleration must be > 0 when maxVelocity is set");
+            if (maxVelocity > 0 && driveVelocityCoefficients == null)
+                throw new IllegalArgumentException("driveVelocityCoefficients must be set to use a motion profile");
+            return new RobotParameters(wheelBaseRadius, wheelRadius, driveGearRatio, gyroEnabled, encodersEnabled, leftDriveMotorDirection, rightDriveMotorDirection,
+                    maxVelocity, maxAcceleration, maxJerk, driveVelocityCoefficients);
         }
     }
 }
@@ -0,0 +1,25 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+/**
+ * {@link Odometry} for a drive with one encoder per side, which can't strafe.
+ */
+public class TankOdometry extends Odometry {
+
+    private final double trackWidth;
+
+    /**
+     * @param leftMotor  the index of the left drive motor in {@code motorSnapshot}
+     * @param rightMotor the index of the right drive motor
+     */
+    public TankOdometry(RobotParameters robotParameters, MotorSnapshot motorSnapshot, int leftMotor, int rightMotor) {
+        super(robotParameters, motorSnapshot, leftMotor, rightMotor);
+        this.trackWidth = 2 * robotParameters.getWheelBaseRadius();
+    }
+
+    @Override
+    protected void getBodyDelta(double[] wheelDeltas, double[] out) {
+        out[0] = (wheelDeltas[0] + wheelDeltas[1]) / 2;
+        out[1] = 0;
+        out[2] = (wheelDeltas[1] - wheelDeltas[0]) / trackWidth;
+    }
+}
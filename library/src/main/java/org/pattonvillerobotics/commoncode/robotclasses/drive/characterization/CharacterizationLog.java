@@ -0,0 +1,139 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.characterization;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * The samples from one characterization run, taken once a tick of the control loop, so they can be fitted by
+ * {@link DriveCharacterization} on the robot or saved and fitted again later off it.
+ * <p>
+ * Logs are plain text, one sample per line: {@code time,leftPower,rightPower,left,right,leftVelocity,rightVelocity,heading}
+ * in seconds, inches, inches per second and degrees counterclockwise, with the heading NaN if there wasn't one. Lines
+ * starting with {@code #} are comments.
+ * <p>
+ * Adding a sample doesn't allocate until the log outgrows its capacity. Not thread-safe.
+ */
+public class CharacterizationLog {
+
+    public static final String HEADER = "# drive characterization log v1";
+    private static final int COLUMNS = 8;
+    private static final int TIME = 0, LEFT_POWER = 1, RIGHT_POWER = 2, LEFT = 3, RIGHT = 4, LEFT_VELOCITY = 5, RIGHT_VELOCITY = 6, HEADING = 7;
+
+    private double[] samples;
+    private int size;
+
+    public CharacterizationLog() {
+        this(256);
+    }
+
+    /**
+     * @param capacity how many samples to make room for up front
+     */
+    public CharacterizationLog(int capacity) {
+        samples = new double[COLUMNS * Math.max(capacity, 1)];
+    }
+
+    /**
+     * Reads a log written by {@link #write(Writer)}.
+     *
+     * @throws IOException if a line is malformed
+     */
+    public static CharacterizationLog read(Reader reader) throws IOException {
+        CharacterizationLog log = new CharacterizationLog();
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            String[] fields = line.split(",");
+            if (fields.length != COLUMNS)
+                throw new IOException("Line " + lineNumber + " needs " + COLUMNS + " fields: " + line);
+            double[] values = new double[COLUMNS];
+            try {
+                for (int i = 0; i < COLUMNS; i++)
+                    values[i] = Double.parseDouble(fields[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + " is malformed: " + line, e);
+            }
+            log.add(values[TIME], values[LEFT_POWER], values[RIGHT_POWER], values[LEFT], values[RIGHT],
+                    values[LEFT_VELOCITY], values[RIGHT_VELOCITY], values[HEADING]);
+        }
+        return log;
+    }
+
+    /**
+     * @param time         seconds since the run started
+     * @param leftPower    the power the left side was driven at while the velocity was measured
+     * @param left         how far the left side has gone in inches
+     * @param leftVelocity in inches per second
+     * @param heading      degrees counterclockwise, NaN if unknown
+     */
+    public void add(double time, double leftPower, double rightPower, double left, double right,
+                    double leftVelocity, double rightVelocity, double heading) {
+        if (COLUMNS * (size + 1) > samples.length)
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        int offset = COLUMNS * size;
+        samples[offset + TIME] = time;
+        samples[offset + LEFT_POWER] = leftPower;
+        samples[offset + RIGHT_POWER] = rightPower;
+        samples[offset + LEFT] = left;
+        samples[offset + RIGHT] = right;
+        samples[offset + LEFT_VELOCITY] = leftVelocity;
+        samples[offset + RIGHT_VELOCITY] = rightVelocity;
+        samples[offset + HEADING] = heading;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getTime(int sample) {
+        return get(sample, TIME);
+    }
+
+    public double getPower(int sample, boolean left) {
+        return get(sample, left ? LEFT_POWER : RIGHT_POWER);
+    }
+
+    public double getPosition(int sample, boolean left) {
+        return get(sample, left ? LEFT : RIGHT);
+    }
+
+    public double getVelocity(int sample, boolean left) {
+        return get(sample, left ? LEFT_VELOCITY : RIGHT_VELOCITY);
+    }
+
+    public double getHeading(int sample) {
+        return get(sample, HEADING);
+    }
+
+    private double get(int sample, int column) {
+        if (sample < 0 || sample >= size)
+            throw new IndexOutOfBoundsException("sample " + sample + " of " + size);
+        return samples[COLUMNS * sample + column];
+    }
+
+    public void write(Writer writer) throws IOException {
+        writer.write(HEADER);
+        writer.write('\n');
+        writer.write("# time,leftPower,rightPower,left,right,leftVelocity,rightVelocity,heading\n");
+        StringBuilder line = new StringBuilder();
+        for (int sample = 0; sample < size; sample++) {
+            line.setLength(0);
+            // Double.toString round trips exactly and ignores the locale
+            for (int column = 0; column < COLUMNS; column++)
+                line.append(column == 0 ? "" : ",").append(Double.toString(samples[COLUMNS * sample + column]));
+            line.append('\n');
+            writer.write(line.toString());
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,138 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.characterization;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * What power to drive at during a characterization run. A quasistatic test ramps the power up slowly, so the robot
+ * is barely accelerating and the power only goes to friction and speed, which fits kS and kV. A step test jumps
+ * straight to a power, so the robot accelerates hard at the start, which fits kA. Either can turn in place instead,
+ * which with a heading fits the wheel base.
+ */
+public class CharacterizationTest {
+
+    private final double rampRate, stepPower, maxPower, duration, maxDistance;
+    private final boolean turning, reversed;
+
+    private CharacterizationTest(double rampRate, double stepPower, double maxPower, double duration, double maxDistance,
+                                 boolean turning, boolean reversed) {
+        this.rampRate = rampRate;
+        this.stepPower = stepPower;
+        this.maxPower = maxPower;
+        this.duration = duration;
+        this.maxDistance = maxDistance;
+        this.turning = turning;
+        this.reversed = reversed;
+    }
+
+    /**
+     * @param t seconds since the test started
+     * @return the power to drive at, negative when reversed. When turning the left side gets the opposite, so the robot
+     * turns counterclockwise.
+     */
+    public double getPower(double t) {
+        double power = rampRate > 0 ? FastMath.min(rampRate * t, maxPower) : stepPower;
+        return reversed ? -power : power;
+    }
+
+    /**
+     * @return how long the test runs in seconds
+     */
+    public double getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return how far either side can go in inches before the test stops early
+     */
+    public double getMaxDistance() {
+        return maxDistance;
+    }
+
+    public boolean isQuasistatic() {
+        return rampRate > 0;
+    }
+
+    /**
+     * @return whether the robot turns in place, counterclockwise unless reversed
+     */
+    public boolean isTurning() {
+        return turning;
+    }
+
+    public boolean isReversed() {
+        return reversed;
+    }
+
+    public static class Builder {
+        private double rampRate, stepPower, maxPower = 1, duration, maxDistance = Double.POSITIVE_INFINITY;
+        private boolean turning, reversed;
+
+        public Builder() {
+        }
+
+        /**
+         * Ramps the power up from 0, running until it reaches {@link #maxPower(double)} unless a duration is set.
+         *
+         * @param rampRate power per second, e.g. .05
+         */
+        public Builder quasistatic(double rampRate) {
+            this.rampRate = rampRate;
+            return this;
+        }
+
+        /**
+         * Drives at a constant power, needs a {@link #duration(double)}.
+         */
+        public Builder step(double stepPower) {
+            this.stepPower = stepPower;
+            return this;
+        }
+
+        /**
+         * @param maxPower where a quasistatic ramp stops, 1 unless set
+         */
+        public Builder maxPower(double maxPower) {
+            this.maxPower = maxPower;
+            return this;
+        }
+
+        /**
+         * @param duration in seconds
+         */
+        public Builder duration(double duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * @param maxDistance in inches, unlimited unless set. Keeps the robot off the walls.
+         */
+        public Builder maxDistance(double maxDistance) {
+            this.maxDistance = maxDistance;
+            return this;
+        }
+
+        public Builder turning(boolean turning) {
+            this.turning = turning;
+            return this;
+        }
+
+        public Builder reversed(boolean reversed) {
+            this.reversed = reversed;
+            return this;
+        }
+
+        public CharacterizationTest build() {
+            if ((rampRate > 0) == (stepPower > 0))
+                throw new IllegalArgumentException("A test needs either a ramp rate or a step power > 0, not both");
+            if (!(maxPower > 0 && maxPower <= 1) || stepPower > 1)
+                throw new IllegalArgumentException("Powers must be in (0, 1]");
+            if (duration < 0 || !(maxDistance > 0))
+                throw new IllegalArgumentException("duration must be >= 0 and maxDistance > 0");
+            if (stepPower > 0 && !(duration > 0))
+                throw new IllegalArgumentException("A step test needs a duration");
+            double testDuration = duration > 0 ? duration : maxPower / rampRate;
+            return new CharacterizationTest(rampRate, stepPower, maxPower, testDuration, maxDistance, turning, reversed);
+        }
+    }
+}
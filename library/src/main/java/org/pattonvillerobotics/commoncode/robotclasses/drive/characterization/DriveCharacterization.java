@@ -0,0 +1,186 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.characterization;
+
+import org.apache.commons.math3.linear.SingularMatrixException;
+import org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression;
+import org.apache.commons.math3.util.FastMath;
+import org.pattonvillerobotics.commoncode.robotclasses.control.PIDFCoefficients;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.RobotParameters;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Fits a drive's feedforward and wheel base to {@link CharacterizationLog}s, by least squares. Pure math, so recorded
+ * logs can be fitted again off the robot.
+ * <p>
+ * The model is {@code power = kS sign(v) + kV v + kA a} for each side, the same as {@link PIDFCoefficients}, with
+ * the acceleration worked out from the logged velocities. Quasistatic tests pin down kS and kV, step tests kA, so fit
+ * at least one of each, forwards and reversed.
+ */
+public final class DriveCharacterization {
+
+    /**
+     * Inches per second, samples slower than this are left out since static friction doesn't follow the model
+     */
+    public static final double DEFAULT_MIN_VELOCITY = .5;
+
+    private DriveCharacterization() {
+    }
+
+    public static Feedforward fitFeedforward(CharacterizationLog... logs) {
+        return fitFeedforward(DEFAULT_MIN_VELOCITY, logs);
+    }
+
+    /**
+     * @param minVelocity samples where a side is slower than this in inches per second are left out
+     * @throws IllegalArgumentException if the logs don't have enough moving samples, or never accelerate
+     */
+    public static Feedforward fitFeedforward(double minVelocity, CharacterizationLog... logs) {
+        int count = 0;
+        for (CharacterizationLog log : logs)
+            count += 2 * FastMath.max(log.size() - 2, 0);
+        double[] y = new double[count];
+        double[][] x = new double[count][];
+
+        int n = 0;
+        for (CharacterizationLog log : logs) {
+            for (int i = 1; i < log.size() - 1; i++) {
+                for (int side = 0; side < 2; side++) {
+                    boolean left = side == 0;
+                    double velocity = log.getVelocity(i, left);
+                    if (FastMath.abs(velocity) < minVelocity)
+                        continue;
+                    // Central difference, so the acceleration lines up with the sample
+                    double dt = log.getTime(i + 1) - log.getTime(i - 1);
+                    if (!(dt > 0))
+                        continue;
+                    double acceleration = (log.getVelocity(i + 1, left) - log.getVelocity(i - 1, left)) / dt;
+                    y[n] = log.getPower(i, left);
+                    x[n] = new double[]{FastMath.signum(velocity), velocity, acceleration};
+                    n++;
+                }
+            }
+        }
+        if (n < 10)
+            throw new IllegalArgumentException("Only " + n + " samples were moving faster than " + minVelocity + " in/s");
+
+        OLSMultipleLinearRegression regression = new OLSMultipleLinearRegression();
+        regression.setNoIntercept(true);
+        regression.newSampleData(Arrays.copyOf(y, n), Arrays.copyOf(x, n));
+        try {
+            double[] gains = regression.estimateRegressionParameters();
+            return new Feedforward(gains[0], gains[1], gains[2], regression.calculateRSquared(), n);
+        } catch (SingularMatrixException e) {
+            throw new IllegalArgumentException("The logs can't tell kS, kV and kA apart, fit a quasistatic and a step test together", e);
+        }
+    }
+
+    /**
+     * Fits how far the wheels are from the center of the turn from logs of turning in place: how far the sides go
+     * against how far the robot turns. Twice it is the effective track width, wider than the real one on a robot
+     * whose wheels scrub.
+     *
+     * @return the wheel base radius in inches
+     * @throws IllegalArgumentException if the logs have no headings or the robot didn't turn
+     */
+    public static double fitWheelBaseRadius(CharacterizationLog... logs) {
+        double turnedTravelled = 0, turnedSquared = 0;
+        for (CharacterizationLog log : logs) {
+            if (log.size() == 0)
+                continue;
+            double startHeading = log.getHeading(0);
+            double startTravel = (log.getPosition(0, false) - log.getPosition(0, true)) / 2;
+            for (int i = 1; i < log.size(); i++) {
+                double turned = FastMath.toRadians(log.getHeading(i) - startHeading);
+                if (Double.isNaN(turned))
+                    continue;
+                double travelled = (log.getPosition(i, false) - log.getPosition(i, true)) / 2 - startTravel;
+                turnedTravelled += turned * travelled;
+                turnedSquared += turned * turned;
+            }
+        }
+        if (!(turnedSquared > 0))
+            throw new IllegalArgumentException("The logs need headings from turning in place to fit the wheel base");
+        return turnedTravelled / turnedSquared;
+    }
+
+    /**
+     * @param wheelBaseRadius from {@link #fitWheelBaseRadius(CharacterizationLog...)}, or NaN to keep the current one
+     * @return {@code parameters} with the fitted feedforward, keeping the feedback gains, ready to
+     * {@link RobotParameters#write(java.io.File)}
+     */
+    public static RobotParameters apply(RobotParameters parameters, Feedforward feedforward, double wheelBaseRadius) {
+        RobotParameters.Builder builder = new RobotParameters.Builder(parameters)
+                .driveVelocityCoefficients(feedforward.apply(parameters.getDriveVelocityCoefficients()));
+        if (!Double.isNaN(wheelBaseRadius))
+            builder.wheelBaseRadius(wheelBaseRadius);
+        return builder.build();
+    }
+
+    /**
+     * A fitted feedforward, in power per inch per second like {@link RobotParameters#getDriveVelocityCoefficients()}.
+     */
+    public static class Feedforward {
+
+        private final double kS, kV, kA, rSquared;
+        private final int sampleCount;
+
+        Feedforward(double kS, double kV, double kA, double rSquared, int sampleCount) {
+            this.kS = kS;
+            this.kV = kV;
+            this.kA = kA;
+            this.rSquared = rSquared;
+            this.sampleCount = sampleCount;
+        }
+
+        public double getS() {
+            return kS;
+        }
+
+        public double getV() {
+            return kV;
+        }
+
+        public double getA() {
+            return kA;
+        }
+
+        /**
+         * @return how much of the power the model explains, close to 1 for a good fit
+         */
+        public double getRSquared() {
+            return rSquared;
+        }
+
+        public int getSampleCount() {
+            return sampleCount;
+        }
+
+        /**
+         * @return the fastest the drive can go at full power in inches per second, a ceiling for a motion profile's
+         * max velocity
+         */
+        public double getMaxVelocity() {
+            return (1 - kS) / kV;
+        }
+
+        /**
+         * @param feedback whose P, I and D gains to keep, or null for none
+         * @return coefficients with this feedforward, gains the noise made negative are 0
+         */
+        public PIDFCoefficients apply(PIDFCoefficients feedback) {
+            PIDFCoefficients.Builder builder = new PIDFCoefficients.Builder()
+                    .s(FastMath.max(kS, 0))
+                    .v(FastMath.max(kV, 0))
+                    .a(FastMath.max(kA, 0));
+            if (feedback != null)
+                builder.p(feedback.getP()).i(feedback.getI()).d(feedback.getD());
+            return builder.build();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Feedforward{kS=%g, kV=%g, kA=%g, rSquared=%.4f, n=%d}", kS, kV, kA, rSquared, sampleCount);
+        }
+    }
+}
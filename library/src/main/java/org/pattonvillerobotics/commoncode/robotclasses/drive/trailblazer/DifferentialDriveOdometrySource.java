@@ -0,0 +1,74 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.AbstractComplexDrive;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.RobotParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds raw left and right wheel speeds from the drive encoders into an {@link ExtendedKalmanFilter}, which works out
+ * the arc the robot drove itself.
+ */
+public class DifferentialDriveOdometrySource implements SensorSource {
+
+    public static final double DEFAULT_WHEEL_SPEED_NOISE = 2;
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private final AbstractComplexDrive drive;
+    private final MeasurementModel measurementModel;
+    private final long periodNanos;
+    private final int priority;
+    private final double[] measurement = new double[2];
+
+    private long lastTimeNS;
+    private int priorLeftEncoderReading, priorRightEncoderReading;
+    private boolean started;
+
+    public DifferentialDriveOdometrySource(AbstractComplexDrive drive, RobotParameters robotParameters) {
+        this(drive, robotParameters, DEFAULT_WHEEL_SPEED_NOISE, 5, TimeUnit.MILLISECONDS, 1);
+    }
+
+    /**
+     * @param wheelSpeedNoise the variance of each wheel speed, in (in/s)^2
+     * @param period          how often to read the encoders
+     * @param priority        see {@link SensorSource#getPriority()}
+     */
+    public DifferentialDriveOdometrySource(AbstractComplexDrive drive, RobotParameters robotParameters, double wheelSpeedNoise, long period, TimeUnit unit, int priority) {
+        this.drive = drive;
+        this.measurementModel = ExtendedKalmanFilter.getDifferentialDriveMeasurementModel(2 * robotParameters.getWheelBaseRadius(), wheelSpeedNoise);
+        this.periodNanos = unit.toNanos(period);
+        this.priority = priority;
+    }
+
+    @Override
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    @Override
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public void read(KalmanFilterRunner runner, long tickNanos) {
+        long readStartNS = System.nanoTime();
+        int currentLeftEncoderReading = drive.leftDriveMotor.getCurrentPosition();
+        int currentRightEncoderReading = drive.rightDriveMotor.getCurrentPosition();
+        long nowTimeNS = readStartNS + (System.nanoTime() - readStartNS) / 2;
+
+        if (started) {
+            // The average speed over the interval is the speed halfway through it
+            double elapsedTimeS = (nowTimeNS - lastTimeNS) / S_TO_NS;
+            measurement[0] = drive.inchesToTicksInverse(currentLeftEncoderReading - priorLeftEncoderReading) / elapsedTimeS;
+            measurement[1] = drive.inchesToTicksInverse(currentRightEncoderReading - priorRightEncoderReading) / elapsedTimeS;
+            runner.submit(MeasurementSource.ENCODER, measurementModel, lastTimeNS + (nowTimeNS - lastTimeNS) / 2, measurement, 2);
+        }
+
+        priorLeftEncoderReading = currentLeftEncoderReading;
+        priorRightEncoderReading = currentRightEncoderReading;
+        lastTimeNS = nowTimeNS;
+        started = true;
+    }
+}
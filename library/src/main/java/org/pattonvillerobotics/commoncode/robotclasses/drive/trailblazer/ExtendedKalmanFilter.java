@@ -0,0 +1,439 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.filter.DefaultMeasurementModel;
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
+import org.apache.commons.math3.linear.NonSymmetricMatrixException;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.util.FastMath;
+import org.apache.commons.math3.util.MathUtils;
+
+/**
+ * An extended Kalman filter over the body-frame state [x y θ v<sub>forward</sub> v<sub>strafe</sub> ω], which
+ * follows the robot through arcs instead of assuming it drives straight or turns in place.
+ * <p>
+ * x and y are field inches, θ is counterclockwise radians from the field x axis and is not wrapped, and the velocities
+ * are inches and radians per second in the robot's frame with strafe positive to the left. A differential drive just
+ * never strafes. The process model moves the robot along its body velocity rotated by the heading halfway through
+ * the step, and is linearized on every predict into a preallocated Jacobian.
+ * <p>
+ * Wheel speeds, gyro rate and pose are all linear in this state, so measurements use plain
+ * {@link MeasurementModel}s, see the factory methods. A measurement row that only reads θ is treated as an angle and
+ * its innovation is wrapped to [-π, π], so a Vuforia heading of -179° next to an estimate of 181° is a 2° error.
+ * Nothing allocates after construction.
+ * <p>
+ * Not thread-safe! Synchronize on the object for safety.
+ */
+public class ExtendedKalmanFilter implements KalmanFilterEngine {
+
+    public static final int STATE_DIMENSION = 6;
+    public static final int X = 0, Y = 1, HEADING = 2, FORWARD_VELOCITY = 3, STRAFE_VELOCITY = 4, ANGULAR_VELOCITY = 5;
+    private static final int N = STATE_DIMENSION;
+
+    private final double[] x = new double[N]; // Current state vector
+    private final double[] P = new double[N * N]; // error covariance matrix
+    private final double[] processNoise = new double[N * N];
+    private final double[] F = new double[N * N]; // Jacobian of the process model
+    private final double[] FP = new double[N * N];
+
+    // Measurement scratch, sized for the largest possible measurement
+    private final double[] H = new double[N * N];
+    private final double[] R = new double[N * N];
+    private final double[] z = new double[N];
+    private final double[] HP = new double[N * N];
+    private final double[] S = new double[N * N];
+    private final double[] Kt = new double[N * N];
+    private final double[] innovation = new double[N];
+
+    private final RealVector stateView = new ArrayRealVector(x, false);
+
+    public ExtendedKalmanFilter(RealMatrix processNoise, RealVector initialStateEstimate) {
+        if (processNoise.getRowDimension() != N)
+            throw new DimensionMismatchException(processNoise.getRowDimension(), N);
+        if (processNoise.getColumnDimension() != N)
+            throw new DimensionMismatchException(processNoise.getColumnDimension(), N);
+        if (initialStateEstimate.getDimension() != N)
+            throw new DimensionMismatchException(initialStateEstimate.getDimension(), N);
+
+        for (int i = 0; i < N; i++) {
+            x[i] = initialStateEstimate.getEntry(i);
+            for (int j = 0; j < N; j++)
+                this.processNoise[i * N + j] = processNoise.getEntry(i, j);
+        }
+    }
+
+    /**
+     * @return little noise on the pose itself, most of it on the velocities the drivers can change at will
+     */
+    public static RealMatrix getDefaultProcessNoise() {
+        /*                                            x    y    θ     vf  vs  ω */
+        return MatrixUtils.createRealDiagonalMatrix(new double[]{.01, .01, .001, 1, 1, .05});
+    }
+
+    public static RealVector getDefaultInitialState() {
+        return new ArrayRealVector(N);
+    }
+
+    /**
+     * @param noise the variance of each wheel speed, in (in/s)^2
+     * @return a model of the left and right wheel speeds, in in/s
+     */
+    public static MeasurementModel getDifferentialDriveMeasurementModel(double trackWidth, double noise) {
+        double turn = trackWidth / 2;
+        return new DefaultMeasurementModel(
+                new double[][]{
+                        {0, 0, 0, 1, 0, -turn},
+                        {0, 0, 0, 1, 0, turn}
+                },
+                diagonal(2, noise));
+    }
+
+    /**
+     * @param trackWidth the distance between the left and right wheels
+     * @param wheelBase  the distance between the front and back wheels
+     * @param noise      the variance of each wheel speed, in (in/s)^2
+     * @return a model of the front left, front right, back left and back right wheel speeds, in in/s along the
+     * direction each wheel drives the robot forward
+     */
+    public static MeasurementModel getMecanumMeasurementModel(double trackWidth, double wheelBase, double noise) {
+        double turn = (trackWidth + wheelBase) / 2;
+        return new DefaultMeasurementModel(
+                new double[][]{
+                        {0, 0, 0, 1, -1, -turn},
+                        {0, 0, 0, 1, 1, turn},
+                        {0, 0, 0, 1, 1, -turn},
+                        {0, 0, 0, 1, -1, turn}
+                },
+                diagonal(4, noise));
+    }
+
+    /**
+     * @param noise the variance of the rate, in (rad/s)^2
+     * @return a model of the angular velocity, in rad/s counterclockwise
+     */
+    public static MeasurementModel getGyroMeasurementModel(double noise) {
+        return new DefaultMeasurementModel(
+                new double[][]{{0, 0, 0, 0, 0, 1}},
+                new double[][]{{noise}});
+    }
+
+    /**
+     * @param positionNoise the variance of x and y, in in^2
+     * @param headingNoise  the variance of the heading, in rad^2
+     * @return a model of the field pose [x y θ], e.g. from Vuforia
+     */
+    public static MeasurementModel getPoseMeasurementModel(double positionNoise, double headingNoise) {
+        return new DefaultMeasurementModel(
+                new double[][]{
+                        {1, 0, 0, 0, 0, 0},
+                        {0, 1, 0, 0, 0, 0},
+                        {0, 0, 1, 0, 0, 0}
+                },
+                new double[][]{
+                        {positionNoise, 0, 0},
+                        {0, positionNoise, 0},
+                        {0, 0, headingNoise}
+                });
+    }
+
+    private static double[][] diagonal(int size, double value) {
+        double[][] matrix = new double[size][size];
+        for (int i = 0; i < size; i++)
+            matrix[i][i] = value;
+        return matrix;
+    }
+
+    /**
+     * Moves {@code state} along its body velocity for {@code dt}, using the heading halfway through the step.
+     */
+    private static void move(double[] state, double dt) {
+        double midHeading = state[HEADING] + state[ANGULAR_VELOCITY] * dt / 2;
+        double cos = FastMath.cos(midHeading);
+        double sin = FastMath.sin(midHeading);
+        state[X] += (state[FORWARD_VELOCITY] * cos - state[STRAFE_VELOCITY] * sin) * dt;
+        state[Y] += (state[FORWARD_VELOCITY] * sin + state[STRAFE_VELOCITY] * cos) * dt;
+        state[HEADING] += state[ANGULAR_VELOCITY] * dt;
+    }
+
+    @Override
+    public void extrapolateState(double[] state, double dt) {
+        move(state, dt);
+    }
+
+    @Override
+    public RealVector predictNextState(final double dt) {
+        predict(dt);
+        return stateView;
+    }
+
+    /**
+     * Same as {@link #predictNextState(double)}, without returning the state.
+     *
+     * @param dt the elapsed time in seconds
+     */
+    public void predict(final double dt) {
+        setJacobian(dt);
+        move(x, dt);
+        double processNoiseScale = dt / PROCESS_NOISE_PERIOD_S;
+
+        // FP = F * P, F has at most five entries per row
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                double sum = 0;
+                for (int k = 0; k < N; k++) {
+                    double f = F[i * N + k];
+                    if (f != 0)
+                        sum += f * P[k * N + j];
+                }
+                FP[i * N + j] = sum;
+            }
+        }
+
+        // P = FP * F' + Q, kept exactly symmetric
+        for (int i = 0; i < N; i++) {
+            for (int j = i; j < N; j++) {
+                double sum = 0;
+                for (int k = 0; k < N; k++) {
+                    double f = F[j * N + k];
+                    if (f != 0)
+                        sum += FP[i * N + k] * f;
+                }
+                double value = sum + processNoise[i * N + j] * processNoiseScale;
+                P[i * N + j] = value;
+                P[j * N + i] = value;
+            }
+        }
+    }
+
+    /**
+     * Fills {@code F} with the Jacobian of {@link #move(double[], double)} at the current state.
+     */
+    private void setJacobian(final double dt) {
+        double midHeading = x[HEADING] + x[ANGULAR_VELOCITY] * dt / 2;
+        double cos = FastMath.cos(midHeading);
+        double sin = FastMath.sin(midHeading);
+        double forward = x[FORWARD_VELOCITY], strafe = x[STRAFE_VELOCITY];
+        // Derivatives of the field x and y velocities with respect to the heading
+        double dxdHeading = (-forward * sin - strafe * cos) * dt;
+        double dydHeading = (forward * cos - strafe * sin) * dt;
+
+        for (int i = 0; i < N * N; i++)
+            F[i] = 0;
+        for (int i = 0; i < N; i++)
+            F[i * N + i] = 1;
+        F[X * N + HEADING] = dxdHeading;
+        F[X * N + FORWARD_VELOCITY] = cos * dt;
+        F[X * N + STRAFE_VELOCITY] = -sin * dt;
+        F[X * N + ANGULAR_VELOCITY] = dxdHeading * dt / 2;
+        F[Y * N + HEADING] = dydHeading;
+        F[Y * N + FORWARD_VELOCITY] = sin * dt;
+        F[Y * N + STRAFE_VELOCITY] = cos * dt;
+        F[Y * N + ANGULAR_VELOCITY] = dydHeading * dt / 2;
+        F[HEADING * N + ANGULAR_VELOCITY] = dt;
+    }
+
+    /**
+     * Reads the model into preallocated buffers. {@link DefaultMeasurementModel} returns its matrices without
+     * copying, so this does not allocate.
+     */
+    @Override
+    public RealVector measureAndGetState(MeasurementModel measurementModel, RealVector z) {
+        RealMatrix measurementMatrix = measurementModel.getMeasurementMatrix();
+        RealMatrix measurementNoise = measurementModel.getMeasurementNoise();
+        int m = measurementMatrix.getRowDimension();
+        if (m > N)
+            throw new DimensionMismatchException(m, N);
+        if (measurementMatrix.getColumnDimension() != N)
+            throw new DimensionMismatchException(measurementMatrix.getColumnDimension(), N);
+        if (z.getDimension() != m)
+            throw new DimensionMismatchException(z.getDimension(), m);
+
+        for (int r = 0; r < m; r++) {
+            this.z[r] = z.getEntry(r);
+            for (int k = 0; k < N; k++)
+                H[r * N + k] = measurementMatrix.getEntry(r, k);
+            for (int c = 0; c < m; c++)
+                R[r * m + c] = measurementNoise.getEntry(r, c);
+        }
+
+        update(m);
+        return stateView;
+    }
+
+    /**
+     * @return true if row {@code r} of {@code H} measures the heading and nothing else
+     */
+    private boolean isHeadingRow(int r) {
+        for (int k = 0; k < N; k++)
+            if ((H[r * N + k] != 0) != (k == HEADING))
+                return false;
+        return true;
+    }
+
+    private void update(int m) {
+        // HP = H * P
+        for (int r = 0; r < m; r++) {
+            for (int j = 0; j < N; j++) {
+                double sum = 0;
+                for (int k = 0; k < N; k++) {
+                    double h = H[r * N + k];
+                    if (h != 0)
+                        sum += h * P[k * N + j];
+                }
+                HP[r * N + j] = sum;
+            }
+        }
+
+        // S = HP * H' + R
+        for (int r = 0; r < m; r++) {
+            for (int c = 0; c < m; c++) {
+                double sum = 0;
+                for (int k = 0; k < N; k++) {
+                    double h = H[c * N + k];
+                    if (h != 0)
+                        sum += HP[r * N + k] * h;
+                }
+                S[r * m + c] = sum + R[r * m + c];
+            }
+        }
+
+        // Inn = z - H * x, with headings compared the short way around
+        for (int r = 0; r < m; r++) {
+            double sum = 0;
+            for (int k = 0; k < N; k++)
+                sum += H[r * N + k] * x[k];
+            innovation[r] = z[r] - sum;
+            if (isHeadingRow(r))
+                innovation[r] = MathUtils.normalizeAngle(innovation[r], 0);
+        }
+
+        // K' = S^-1 * HP, P is symmetric
+        System.arraycopy(HP, 0, Kt, 0, m * N);
+        choleskyDecompose(m);
+        choleskySolve(m);
+
+        // x = x + K * Inn
+        for (int i = 0; i < N; i++) {
+            double sum = 0;
+            for (int r = 0; r < m; r++)
+                sum += Kt[r * N + i] * innovation[r];
+            x[i] += sum;
+        }
+
+        // P = P - K * HP, kept exactly symmetric
+        for (int i = 0; i < N; i++) {
+            for (int j = i; j < N; j++) {
+                double sum = 0;
+                for (int r = 0; r < m; r++)
+                    sum += Kt[r * N + i] * HP[r * N + j];
+                double value = (P[i * N + j] + P[j * N + i]) / 2 - sum;
+                P[i * N + j] = value;
+                P[j * N + i] = value;
+            }
+        }
+    }
+
+    /**
+     * In-place version of {@link CholeskyDecomposition}, leaving L' in the upper triangle of {@code S}.
+     */
+    private void choleskyDecompose(int m) {
+        for (int i = 0; i < m; i++) {
+            for (int j = i + 1; j < m; j++) {
+                double sIJ = S[i * m + j];
+                double sJI = S[j * m + i];
+                double maxDelta = CholeskyDecomposition.DEFAULT_RELATIVE_SYMMETRY_THRESHOLD * FastMath.max(FastMath.abs(sIJ), FastMath.abs(sJI));
+                if (FastMath.abs(sIJ - sJI) > maxDelta)
+                    throw new NonSymmetricMatrixException(i, j, CholeskyDecomposition.DEFAULT_RELATIVE_SYMMETRY_THRESHOLD);
+                S[j * m + i] = 0;
+            }
+        }
+
+        for (int i = 0; i < m; i++) {
+            if (S[i * m + i] <= CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD)
+                throw new NonPositiveDefiniteMatrixException(S[i * m + i], i, CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD);
+
+            S[i * m + i] = FastMath.sqrt(S[i * m + i]);
+            double inverse = 1 / S[i * m + i];
+
+            for (int q = m - 1; q > i; q--) {
+                S[i * m + q] *= inverse;
+                for (int p = q; p < m; p++)
+                    S[q * m + p] -= S[i * m + q] * S[i * m + p];
+            }
+        }
+    }
+
+    /**
+     * Solves S * X = Kt in place using the factor from {@link #choleskyDecompose(int)}.
+     */
+    private void choleskySolve(int m) {
+        // L * Y = B
+        for (int j = 0; j < m; j++) {
+            double diagonal = S[j * m + j];
+            for (int k = 0; k < N; k++)
+                Kt[j * N + k] /= diagonal;
+            for (int i = j + 1; i < m; i++) {
+                double factor = S[j * m + i];
+                for (int k = 0; k < N; k++)
+                    Kt[i * N + k] -= Kt[j * N + k] * factor;
+            }
+        }
+
+        // L' * X = Y
+        for (int j = m - 1; j >= 0; j--) {
+            double diagonal = S[j * m + j];
+            for (int k = 0; k < N; k++)
+                Kt[j * N + k] /= diagonal;
+            for (int i = 0; i < j; i++) {
+                double factor = S[i * m + j];
+                for (int k = 0; k < N; k++)
+                    Kt[i * N + k] -= Kt[j * N + k] * factor;
+            }
+        }
+    }
+
+    /**
+     * @return a live view of the state, which changes with every prediction and measurement
+     */
+    @Override
+    public RealVector getCurrentState() {
+        return stateView;
+    }
+
+    /**
+     * @param out the array to copy the state into
+     */
+    public void getCurrentState(double[] out) {
+        System.arraycopy(x, 0, out, 0, N);
+    }
+
+    @Override
+    public void getState(double[] state, double[] covariance) {
+        System.arraycopy(x, 0, state, 0, N);
+        System.arraycopy(P, 0, covariance, 0, N * N);
+    }
+
+    @Override
+    public void setState(double[] state, double[] covariance) {
+        System.arraycopy(state, 0, x, 0, N);
+        System.arraycopy(covariance, 0, P, 0, N * N);
+    }
+
+    /**
+     * @return a copy of the error covariance matrix
+     */
+    @Override
+    public RealMatrix getErrorCovariance() {
+        Array2DRowRealMatrix covariance = new Array2DRowRealMatrix(N, N);
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                covariance.setEntry(i, j, P[i * N + j]);
+        return covariance;
+    }
+}
@@ -0,0 +1,368 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
+import org.apache.commons.math3.linear.NonSymmetricMatrixException;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * An allocation-free version of {@link KalmanFilter} specialized to the 8-state [x y vx vy ax ay θ ω] model.
+ * <p>
+ * All matrices are stored row-major in flat {@code double[]} buffers that are allocated once, so predicting and
+ * measuring produce no garbage. Results match {@link KalmanFilter} to within floating point rounding.
+ * <p>
+ * Not thread-safe! Synchronize on the object for safety.
+ */
+public class FastKalmanFilter implements KalmanFilterEngine {
+
+    public static final int STATE_DIMENSION = 8;
+    private static final int N = STATE_DIMENSION;
+
+    private final double[] x = new double[N]; // Current state vector
+    private final double[] P = new double[N * N]; // error covariance matrix
+    private final double[] processNoise = new double[N * N];
+    private final double[] F = new double[N * N]; // Current state transition matrix
+    private final double[] FP = new double[N * N];
+
+    // Measurement scratch, sized for the largest possible measurement
+    private final double[] H = new double[N * N];
+    private final double[] R = new double[N * N];
+    private final double[] z = new double[N];
+    private final double[] HP = new double[N * N];
+    private final double[] S = new double[N * N];
+    private final double[] Kt = new double[N * N];
+    private final double[] innovation = new double[N];
+
+    private final RealVector stateView = new ArrayRealVector(x, false);
+
+    public FastKalmanFilter(RealMatrix processNoise, RealVector initialStateEstimate) {
+        checkDimensions(processNoise.getRowDimension(), processNoise.getColumnDimension(), initialStateEstimate.getDimension());
+        for (int i = 0; i < N; i++) {
+            x[i] = initialStateEstimate.getEntry(i);
+            for (int j = 0; j < N; j++)
+                this.processNoise[i * N + j] = processNoise.getEntry(i, j);
+        }
+        setStateTransitionMatrix(0);
+    }
+
+    /**
+     * @param processNoise         the process noise matrix, row-major
+     * @param initialStateEstimate the initial state
+     */
+    public FastKalmanFilter(double[] processNoise, double[] initialStateEstimate) {
+        if (processNoise.length != N * N)
+            throw new DimensionMismatchException(processNoise.length, N * N);
+        checkDimensions(N, N, initialStateEstimate.length);
+        System.arraycopy(processNoise, 0, this.processNoise, 0, N * N);
+        System.arraycopy(initialStateEstimate, 0, x, 0, N);
+        setStateTransitionMatrix(0);
+    }
+
+    private static void checkDimensions(int processNoiseRows, int processNoiseColumns, int stateDimension) {
+        if (processNoiseRows != N)
+            throw new DimensionMismatchException(processNoiseRows, N);
+        if (processNoiseColumns != N)
+            throw new DimensionMismatchException(processNoiseColumns, N);
+        if (stateDimension != N)
+            throw new DimensionMismatchException(stateDimension, N);
+    }
+
+    /**
+     * Fills {@code F} in place, see {@link KalmanFilter#getStateTransitionMatrix(double)}.
+     */
+    private void setStateTransitionMatrix(final double dt) {
+        double dt2 = dt * dt / 2;
+        for (int i = 0; i < N * N; i++)
+            F[i] = 0;
+        for (int i = 0; i < N; i++)
+            F[i * N + i] = 1;
+        F[2] = dt;
+        F[4] = dt2;
+        F[N + 3] = dt;
+        F[N + 5] = dt2;
+        F[2 * N + 4] = dt;
+        F[3 * N + 5] = dt;
+        F[6 * N + 7] = dt;
+    }
+
+    /**
+     * Applies the state transition to a state without touching any filter, e.g. to extrapolate a published state.
+     *
+     * @param state the state to advance in place
+     * @param dt    the elapsed time in seconds
+     */
+    public static void predictState(double[] state, double dt) {
+        double dt2 = dt * dt / 2;
+        // x = F * x, rows in an order that only reads entries which have not been overwritten yet
+        state[0] += dt * state[2] + dt2 * state[4];
+        state[1] += dt * state[3] + dt2 * state[5];
+        state[2] += dt * state[4];
+        state[3] += dt * state[5];
+        state[6] += dt * state[7];
+    }
+
+    @Override
+    public void extrapolateState(double[] state, double dt) {
+        predictState(state, dt);
+    }
+
+    @Override
+    public RealVector predictNextState(final double dt) {
+        predict(dt);
+        return stateView;
+    }
+
+    /**
+     * Same as {@link #predictNextState(double)}, without returning the state.
+     *
+     * @param dt the elapsed time in seconds
+     */
+    public void predict(final double dt) {
+        setStateTransitionMatrix(dt);
+        predictState(x, dt);
+        double processNoiseScale = dt / PROCESS_NOISE_PERIOD_S;
+
+        // FP = F * P, F has at most three entries per row
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                double sum = 0;
+                for (int k = 0; k < N; k++) {
+                    double f = F[i * N + k];
+                    if (f != 0)
+                        sum += f * P[k * N + j];
+                }
+                FP[i * N + j] = sum;
+            }
+        }
+
+        // P = FP * F' + Q
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                double sum = 0;
+                for (int k = 0; k < N; k++) {
+                    double f = F[j * N + k];
+                    if (f != 0)
+                        sum += FP[i * N + k] * f;
+                }
+                P[i * N + j] = sum + processNoise[i * N + j] * processNoiseScale;
+            }
+        }
+    }
+
+    /**
+     * Reads the model into preallocated buffers. {@link org.apache.commons.math3.filter.DefaultMeasurementModel}
+     * returns its matrices without copying, so this does not allocate.
+     */
+    @Override
+    public RealVector measureAndGetState(MeasurementModel measurementModel, RealVector z) {
+        RealMatrix measurementMatrix = measurementModel.getMeasurementMatrix();
+        RealMatrix measurementNoise = measurementModel.getMeasurementNoise();
+        int m = measurementMatrix.getRowDimension();
+        if (measurementMatrix.getColumnDimension() != N)
+            throw new DimensionMismatchException(measurementMatrix.getColumnDimension(), N);
+        if (z.getDimension() != m)
+            throw new DimensionMismatchException(z.getDimension(), m);
+
+        for (int r = 0; r < m; r++) {
+            this.z[r] = z.getEntry(r);
+            for (int k = 0; k < N; k++)
+                H[r * N + k] = measurementMatrix.getEntry(r, k);
+            for (int c = 0; c < m; c++)
+                R[r * m + c] = measurementNoise.getEntry(r, c);
+        }
+
+        update(m);
+        return stateView;
+    }
+
+    /**
+     * Primitive version of {@link #measureAndGetState(MeasurementModel, RealVector)}.
+     *
+     * @param measurementMatrix the m x 8 measurement matrix, row-major
+     * @param measurementNoise  the m x m measurement noise matrix, row-major
+     * @param z                 the measurement of the state
+     * @param m                 the dimension of the measurement
+     */
+    public void measure(double[] measurementMatrix, double[] measurementNoise, double[] z, int m) {
+        if (m < 1 || m > N)
+            throw new DimensionMismatchException(m, N);
+        System.arraycopy(measurementMatrix, 0, H, 0, m * N);
+        System.arraycopy(measurementNoise, 0, R, 0, m * m);
+        System.arraycopy(z, 0, this.z, 0, m);
+
+        update(m);
+    }
+
+    private void update(int m) {
+        // HP = H * P
+        for (int r = 0; r < m; r++) {
+            for (int j = 0; j < N; j++) {
+                double sum = 0;
+                for (int k = 0; k < N; k++) {
+                    double h = H[r * N + k];
+                    if (h != 0)
+                        sum += h * P[k * N + j];
+                }
+                HP[r * N + j] = sum;
+            }
+        }
+
+        // S = HP * H' + R
+        for (int r = 0; r < m; r++) {
+            for (int c = 0; c < m; c++) {
+                double sum = 0;
+                for (int k = 0; k < N; k++) {
+                    double h = H[c * N + k];
+                    if (h != 0)
+                        sum += HP[r * N + k] * h;
+                }
+                S[r * m + c] = sum + R[r * m + c];
+            }
+        }
+
+        // Inn = z - H * x
+        for (int r = 0; r < m; r++) {
+            double sum = 0;
+            for (int k = 0; k < N; k++)
+                sum += H[r * N + k] * x[k];
+            innovation[r] = z[r] - sum;
+        }
+
+        // K' = S^-1 * (H * P'), solved the same way as KalmanFilter
+        for (int r = 0; r < m; r++) {
+            for (int i = 0; i < N; i++) {
+                double sum = 0;
+                for (int k = 0; k < N; k++) {
+                    double h = H[r * N + k];
+                    if (h != 0)
+                        sum += h * P[i * N + k];
+                }
+                Kt[r * N + i] = sum;
+            }
+        }
+        choleskyDecompose(m);
+        choleskySolve(m);
+
+        // x = x + K * Inn
+        for (int i = 0; i < N; i++) {
+            double sum = 0;
+            for (int r = 0; r < m; r++)
+                sum += Kt[r * N + i] * innovation[r];
+            x[i] += sum;
+        }
+
+        // P = (I - K * H) * P = P - K * HP
+        for (int i = 0; i < N; i++) {
+            for (int j = 0; j < N; j++) {
+                double sum = 0;
+                for (int r = 0; r < m; r++)
+                    sum += Kt[r * N + i] * HP[r * N + j];
+                P[i * N + j] -= sum;
+            }
+        }
+    }
+
+    /**
+     * In-place version of {@link CholeskyDecomposition}, leaving L' in the upper triangle of {@code S}.
+     */
+    private void choleskyDecompose(int m) {
+        for (int i = 0; i < m; i++) {
+            for (int j = i + 1; j < m; j++) {
+                double sIJ = S[i * m + j];
+                double sJI = S[j * m + i];
+                double maxDelta = CholeskyDecomposition.DEFAULT_RELATIVE_SYMMETRY_THRESHOLD * FastMath.max(FastMath.abs(sIJ), FastMath.abs(sJI));
+                if (FastMath.abs(sIJ - sJI) > maxDelta)
+                    throw new NonSymmetricMatrixException(i, j, CholeskyDecomposition.DEFAULT_RELATIVE_SYMMETRY_THRESHOLD);
+                S[j * m + i] = 0;
+            }
+        }
+
+        for (int i = 0; i < m; i++) {
+            if (S[i * m + i] <= CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD)
+                throw new NonPositiveDefiniteMatrixException(S[i * m + i], i, CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD);
+
+            S[i * m + i] = FastMath.sqrt(S[i * m + i]);
+            double inverse = 1 / S[i * m + i];
+
+            for (int q = m - 1; q > i; q--) {
+                S[i * m + q] *= inverse;
+                for (int p = q; p < m; p++)
+                    S[q * m + p] -= S[i * m + q] * S[i * m + p];
+            }
+        }
+    }
+
+    /**
+     * Solves S * X = Kt in place using the factor from {@link #choleskyDecompose(int)}.
+     */
+    private void choleskySolve(int m) {
+        // L * Y = B
+        for (int j = 0; j < m; j++) {
+            double diagonal = S[j * m + j];
+            for (int k = 0; k < N; k++)
+                Kt[j * N + k] /= diagonal;
+            for (int i = j + 1; i < m; i++) {
+                double factor = S[j * m + i];
+                for (int k = 0; k < N; k++)
+                    Kt[i * N + k] -= Kt[j * N + k] * factor;
+            }
+        }
+
+        // L' * X = Y
+        for (int j = m - 1; j >= 0; j--) {
+            double diagonal = S[j * m + j];
+            for (int k = 0; k < N; k++)
+                Kt[j * N + k] /= diagonal;
+            for (int i = 0; i < j; i++) {
+                double factor = S[i * m + j];
+                for (int k = 0; k < N; k++)
+                    Kt[i * N + k] -= Kt[j * N + k] * factor;
+            }
+        }
+    }
+
+    /**
+     * @return a live view of the state, which changes with every prediction and measurement
+     */
+    @Override
+    public RealVector getCurrentState() {
+        return stateView;
+    }
+
+    /**
+     * @param out the array to copy the state into
+     */
+    public void getCurrentState(double[] out) {
+        System.arraycopy(x, 0, out, 0, N);
+    }
+
+    @Override
+    public void getState(double[] state, double[] covariance) {
+        System.arraycopy(x, 0, state, 0, N);
+        System.arraycopy(P, 0, covariance, 0, N * N);
+    }
+
+    @Override
+    public void setState(double[] state, double[] covariance) {
+        System.arraycopy(state, 0, x, 0, N);
+        System.arraycopy(covariance, 0, P, 0, N * N);
+    }
+
+    /**
+     * @return a copy of the error covariance matrix
+     */
+    @Override
+    public RealMatrix getErrorCovariance() {
+        Array2DRowRealMatrix covariance = new Array2DRowRealMatrix(N, N);
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                covariance.setEntry(i, j, P[i * N + j]);
+        return covariance;
+    }
+}
@@ -0,0 +1,210 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.DefaultMeasurementModel;
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * The noise variances {@link KalmanFilterGuidance} tunes its 8-state filter with, and the measurement models built
+ * from them. Use the {@link Builder}, the defaults are the values the guidance has always used.
+ */
+public class FilterNoiseParameters {
+
+    private final double processNoise, encoderNoise, gyroNoise, accelerometerNoise, magnetometerNoise, vuforiaNoise;
+
+    /**
+     * Built once, the parameters never change
+     */
+    private final MeasurementModel encoderMeasurementModel, gyroMeasurementModel, accelerometerMeasurementModel,
+            magnetometerMeasurementModel, vuforiaMeasurementModel;
+
+    private FilterNoiseParameters(double processNoise, double encoderNoise, double gyroNoise, double accelerometerNoise, double magnetometerNoise, double vuforiaNoise) {
+        this.processNoise = processNoise;
+        this.encoderNoise = encoderNoise;
+        this.gyroNoise = gyroNoise;
+        this.accelerometerNoise = accelerometerNoise;
+        this.magnetometerNoise = magnetometerNoise;
+        this.vuforiaNoise = vuforiaNoise;
+
+        encoderMeasurementModel = measurementModel(encoderNoise, 2, 3);
+        gyroMeasurementModel = measurementModel(gyroNoise, 7);
+        accelerometerMeasurementModel = measurementModel(accelerometerNoise, 4, 5);
+        magnetometerMeasurementModel = measurementModel(magnetometerNoise, 6);
+        vuforiaMeasurementModel = measurementModel(vuforiaNoise, 0, 1, 6);
+    }
+
+    /**
+     * @return a model that reads each of {@code states} directly, each with variance {@code noise}
+     */
+    private static MeasurementModel measurementModel(double noise, int... states) {
+        double[][] measurementMatrix = new double[states.length][FastKalmanFilter.STATE_DIMENSION];
+        double[][] measurementNoise = new double[states.length][states.length];
+        for (int i = 0; i < states.length; i++) {
+            measurementMatrix[i][states[i]] = 1;
+            measurementNoise[i][i] = noise;
+        }
+        return new DefaultMeasurementModel(measurementMatrix, measurementNoise);
+    }
+
+    public double getProcessNoise() {
+        return processNoise;
+    }
+
+    public double getEncoderNoise() {
+        return encoderNoise;
+    }
+
+    public double getGyroNoise() {
+        return gyroNoise;
+    }
+
+    public double getAccelerometerNoise() {
+        return accelerometerNoise;
+    }
+
+    public double getMagnetometerNoise() {
+        return magnetometerNoise;
+    }
+
+    public double getVuforiaNoise() {
+        return vuforiaNoise;
+    }
+
+    /**
+     * @return the process noise matrix, per {@link KalmanFilterEngine#PROCESS_NOISE_PERIOD_S}
+     */
+    public RealMatrix getProcessNoiseMatrix() {
+        return MatrixUtils.createRealIdentityMatrix(FastKalmanFilter.STATE_DIMENSION).scalarMultiply(processNoise);
+    }
+
+    /**
+     * @return the model of the field x and y velocities in in/s
+     */
+    public MeasurementModel getEncoderMeasurementModel() {
+        return encoderMeasurementModel;
+    }
+
+    /**
+     * @return the model of the angular velocity in degrees/s
+     */
+    public MeasurementModel getGyroMeasurementModel() {
+        return gyroMeasurementModel;
+    }
+
+    /**
+     * @return the model of the field x and y accelerations in in/s^2
+     */
+    public MeasurementModel getAccelerometerMeasurementModel() {
+        return accelerometerMeasurementModel;
+    }
+
+    /**
+     * @return the model of the heading in degrees
+     */
+    public MeasurementModel getMagnetometerMeasurementModel() {
+        return magnetometerMeasurementModel;
+    }
+
+    /**
+     * @return the model of the field x and y in inches and the heading in degrees
+     */
+    public MeasurementModel getVuforiaMeasurementModel() {
+        return vuforiaMeasurementModel;
+    }
+
+    /**
+     * @return the model for measurements from {@code source}, or null for {@link MeasurementSource#EXTERNAL}
+     */
+    public MeasurementModel getMeasurementModel(MeasurementSource source) {
+        switch (source) {
+            case ENCODER:
+                return encoderMeasurementModel;
+            case GYRO:
+                return gyroMeasurementModel;
+            case ACCELEROMETER:
+                return accelerometerMeasurementModel;
+            case MAGNETOMETER:
+                return magnetometerMeasurementModel;
+            case VUFORIA:
+                return vuforiaMeasurementModel;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return a builder starting from these parameters
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .processNoise(processNoise)
+                .encoderNoise(encoderNoise)
+                .gyroNoise(gyroNoise)
+                .accelerometerNoise(accelerometerNoise)
+                .magnetometerNoise(magnetometerNoise)
+                .vuforiaNoise(vuforiaNoise);
+    }
+
+    @Override
+    public String toString() {
+        return "FilterNoiseParameters{" +
+                "processNoise=" + processNoise +
+                ", encoderNoise=" + encoderNoise +
+                ", gyroNoise=" + gyroNoise +
+                ", accelerometerNoise=" + accelerometerNoise +
+                ", magnetometerNoise=" + magnetometerNoise +
+                ", vuforiaNoise=" + vuforiaNoise +
+                '}';
+    }
+
+    public static class Builder {
+        private double processNoise = .1;
+        private double encoderNoise = 2;
+        private double gyroNoise = 100;
+        private double accelerometerNoise = .05;
+        private double magnetometerNoise = 25;
+        private double vuforiaNoise = 5;
+
+        public Builder() {
+        }
+
+        public Builder processNoise(double processNoise) {
+            this.processNoise = processNoise;
+            return this;
+        }
+
+        public Builder encoderNoise(double encoderNoise) {
+            this.encoderNoise = encoderNoise;
+            return this;
+        }
+
+        public Builder gyroNoise(double gyroNoise) {
+            this.gyroNoise = gyroNoise;
+            return this;
+        }
+
+        public Builder accelerometerNoise(double accelerometerNoise) {
+            this.accelerometerNoise = accelerometerNoise;
+            return this;
+        }
+
+        public Builder magnetometerNoise(double magnetometerNoise) {
+            this.magnetometerNoise = magnetometerNoise;
+            return this;
+        }
+
+        public Builder vuforiaNoise(double vuforiaNoise) {
+            this.vuforiaNoise = vuforiaNoise;
+            return this;
+        }
+
+        public FilterNoiseParameters build() {
+            if (processNoise < 0)
+                throw new IllegalArgumentException("processNoise must be >= 0");
+            if (encoderNoise <= 0 || gyroNoise <= 0 || accelerometerNoise <= 0 || magnetometerNoise <= 0 || vuforiaNoise <= 0)
+                throw new IllegalArgumentException("Measurement noise must be > 0");
+            return new FilterNoiseParameters(processNoise, encoderNoise, gyroNoise, accelerometerNoise, magnetometerNoise, vuforiaNoise);
+        }
+    }
+}
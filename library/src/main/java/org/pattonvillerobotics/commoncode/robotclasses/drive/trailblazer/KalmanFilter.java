@@ -2,8 +2,11 @@ package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
 
 import org.apache.commons.math3.filter.MeasurementModel;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.CholeskyDecomposition;
 import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
+import org.apache.commons.math3.linear.NonSymmetricMatrixException;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.util.FastMath;
@@ -12,16 +15,36 @@ import org.apache.commons.math3.util.FastMath;
  * Created by skaggsm on 10/25/16.
  */
 
-public class KalmanFilter {
+public class KalmanFilter implements KalmanFilterEngine {
 
     private RealMatrix F; // Current state transition matrix
     private RealMatrix Ft; //F transpose
     private RealVector x; // Current state vector
     private RealMatrix P; // error covariance matrix
     private RealMatrix processNoise;
+    private final boolean josephForm;
+
+    /**
+     * Scratch for the closed-form update of measurements that select one or two state entries
+     */
+    private final int[] selectedStates = new int[2];
+    private final double[][] gain, selectedRows, selectedColumns;
 
     public KalmanFilter(RealMatrix processNoise, RealVector initialStateEstimate) {
+        this(processNoise, initialStateEstimate, false);
+    }
+
+    /**
+     * @param josephForm whether to update the covariance with the Joseph form {@code (I - KH)P(I - KH)' + KRK'},
+     *                   which costs more but keeps P symmetric positive-definite over long runs
+     */
+    public KalmanFilter(RealMatrix processNoise, RealVector initialStateEstimate, boolean josephForm) {
         this.processNoise = processNoise;
+        this.josephForm = josephForm;
+        int n = initialStateEstimate.getDimension();
+        gain = new double[2][n];
+        selectedRows = new double[2][n];
+        selectedColumns = new double[2][n];
         setStateTransitionMatrix(0);
         x = initialStateEstimate;
         P = new Array2DRowRealMatrix(new double[][]{
@@ -50,11 +73,12 @@ public class KalmanFilter {
         });
     }
 
+    @Override
     public RealVector predictNextState(final double dt) {
         setStateTransitionMatrix(dt);
 
         x = F.operate(x); // B_t * u_t is ignored since no point to control data
-        P = F.multiply(P).multiply(Ft).add(processNoise);
+        P = F.multiply(P).multiply(Ft).add(processNoise.scalarMultiply(dt / PROCESS_NOISE_PERIOD_S));
 
         return x;
     }
@@ -64,19 +88,70 @@ public class KalmanFilter {
         Ft = F.transpose();
     }
 
+    @Override
     public RealVector getCurrentState() {
         return x;
     }
 
+    /**
+     * @return a copy of the error covariance matrix
+     */
+    @Override
+    public RealMatrix getErrorCovariance() {
+        return P.copy();
+    }
+
+    @Override
+    public void getState(double[] state, double[] covariance) {
+        int n = x.getDimension();
+        for (int i = 0; i < n; i++) {
+            state[i] = x.getEntry(i);
+            for (int j = 0; j < n; j++)
+                covariance[i * n + j] = P.getEntry(i, j);
+        }
+    }
+
+    @Override
+    public void setState(double[] state, double[] covariance) {
+        int n = x.getDimension();
+        double[][] newCovariance = new double[n][n];
+        for (int i = 0; i < n; i++)
+            System.arraycopy(covariance, i * n, newCovariance[i], 0, n);
+        x = new ArrayRealVector(state, 0, n);
+        P = new Array2DRowRealMatrix(newCovariance, false);
+    }
+
+    public boolean isJosephForm() {
+        return josephForm;
+    }
+
+    /**
+     * Applies this filter's process model to a copy of a state without touching the filter.
+     */
+    @Override
+    public void extrapolateState(double[] state, double dt) {
+        FastKalmanFilter.predictState(state, dt);
+    }
+
     /**
      * Not thread-safe! Synchronize on the object for safety.
+     * <p>
+     * Measurements of one or two state entries (every sensor in {@link KalmanFilterGuidance}) skip the matrix
+     * algebra and use a closed-form inverse of S instead.
      *
      * @param measurementModel contains the matrix that maps the state TO THE measurement of the state
      * @param z                the measurement of the state
      * @return The new state
      */
-
+    @Override
     public RealVector measureAndGetState(MeasurementModel measurementModel, RealVector z) {
+        RealMatrix measurementMatrix = measurementModel.getMeasurementMatrix();
+
+        if (selectsStates(measurementMatrix)) {
+            measureSelectedStates(measurementMatrix.getRowDimension(), measurementModel.getMeasurementNoise(), z);
+            return x;
+        }
+
         /*
         RealMatrix H = measurementModel.getMeasurementMatrix();
         RealMatrix Ht = H.transpose();
@@ -94,8 +169,6 @@ public class KalmanFilter {
         P = P.subtract(K.multiply(H).multiply(P));
         */
 
-        RealMatrix measurementMatrix = measurementModel.getMeasurementMatrix();
-
         // S = H * P(k) * H' + R
         RealMatrix innovationCovariance = measurementMatrix.multiply(P)
                 .multiply(measurementMatrix.transpose())
@@ -124,9 +197,152 @@ public class KalmanFilter {
         // update covariance of prediction error
         // P(k) = (I - K * H) * P(k)-
         RealMatrix identity = MatrixUtils.createRealIdentityMatrix(kalmanGain.getRowDimension());
-        P = identity.subtract(kalmanGain.multiply(measurementMatrix)).multiply(P);
+        RealMatrix IKH = identity.subtract(kalmanGain.multiply(measurementMatrix));
+        if (josephForm) {
+            // P(k) = (I - K * H) * P(k)- * (I - K * H)' + K * R * K'
+            P = IKH.multiply(P).multiply(IKH.transpose())
+                    .add(kalmanGain.multiply(measurementModel.getMeasurementNoise()).multiply(kalmanGain.transpose()));
+            symmetrize(getCovarianceData());
+        } else {
+            P = IKH.multiply(P);
+        }
 
         return x;
     }
 
+    /**
+     * @return whether H has one or two rows that each pick out a single, different state entry
+     */
+    private boolean selectsStates(RealMatrix measurementMatrix) {
+        int m = measurementMatrix.getRowDimension();
+        if (m > selectedStates.length || measurementMatrix.getColumnDimension() != x.getDimension())
+            return false;
+
+        for (int r = 0; r < m; r++) {
+            int selected = -1;
+            for (int c = 0; c < measurementMatrix.getColumnDimension(); c++) {
+                double h = measurementMatrix.getEntry(r, c);
+                if (h == 0)
+                    continue;
+                if (h != 1 || selected != -1)
+                    return false;
+                selected = c;
+            }
+            if (selected == -1 || (r > 0 && selected == selectedStates[0]))
+                return false;
+            selectedStates[r] = selected;
+        }
+        return true;
+    }
+
+    /**
+     * Same result as the general update for an H that selects {@code m} state entries, where H * P * H' is just
+     * the selected entries of P and S can be inverted directly.
+     */
+    private void measureSelectedStates(int m, RealMatrix measurementNoise, RealVector z) {
+        double[][] p = getCovarianceData();
+        int n = x.getDimension();
+        int i = selectedStates[0];
+        int j = selectedStates[1];
+
+        // S = H * P(k) * H' + R, checked the same way as CholeskyDecomposition
+        double s00 = p[i][i] + measurementNoise.getEntry(0, 0);
+        double s01 = 0, s10 = 0, s11 = 1;
+        if (m == 2) {
+            s01 = p[i][j] + measurementNoise.getEntry(0, 1);
+            s10 = p[j][i] + measurementNoise.getEntry(1, 0);
+            s11 = p[j][j] + measurementNoise.getEntry(1, 1);
+            if (FastMath.abs(s01 - s10) > CholeskyDecomposition.DEFAULT_RELATIVE_SYMMETRY_THRESHOLD * FastMath.max(FastMath.abs(s01), FastMath.abs(s10)))
+                throw new NonSymmetricMatrixException(0, 1, CholeskyDecomposition.DEFAULT_RELATIVE_SYMMETRY_THRESHOLD);
+        }
+        if (s00 <= CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD)
+            throw new NonPositiveDefiniteMatrixException(s00, 0, CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD);
+
+        // S^-1
+        double si00, si01, si10, si11;
+        if (m == 1) {
+            si00 = 1 / s00;
+            si01 = si10 = si11 = 0;
+        } else {
+            double l01 = s01 / FastMath.sqrt(s00);
+            double l11 = s11 - l01 * l01;
+            if (l11 <= CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD)
+                throw new NonPositiveDefiniteMatrixException(l11, 1, CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD);
+            double determinant = s00 * s11 - s01 * s10;
+            si00 = s11 / determinant;
+            si01 = -s01 / determinant;
+            si10 = -s10 / determinant;
+            si11 = s00 / determinant;
+        }
+
+        // Inn = z(k) - H * xHat(k)-
+        double innovation0 = z.getEntry(0) - x.getEntry(i);
+        double innovation1 = m == 2 ? z.getEntry(1) - x.getEntry(j) : 0;
+
+        // K(k) = P(k)- * H' * S^-1, where P * H' is just the selected columns of P
+        double[] newState = new double[n];
+        for (int k = 0; k < n; k++) {
+            selectedRows[0][k] = p[i][k];
+            selectedColumns[0][k] = p[k][i];
+            if (m == 2) {
+                selectedRows[1][k] = p[j][k];
+                selectedColumns[1][k] = p[k][j];
+                gain[0][k] = selectedColumns[0][k] * si00 + selectedColumns[1][k] * si10;
+                gain[1][k] = selectedColumns[0][k] * si01 + selectedColumns[1][k] * si11;
+            } else {
+                gain[0][k] = selectedColumns[0][k] * si00;
+                gain[1][k] = 0;
+            }
+            newState[k] = x.getEntry(k) + gain[0][k] * innovation0 + gain[1][k] * innovation1;
+        }
+        x = new ArrayRealVector(newState, false);
+
+        if (josephForm) {
+            // P(k) = P - K * H * P - P * H' * K' + K * S * K', symmetrized
+            for (int a = 0; a < n; a++) {
+                for (int b = a; b < n; b++) {
+                    double ab = josephEntry(p, a, b, m, s00, s01, s10, s11);
+                    double ba = a == b ? ab : josephEntry(p, b, a, m, s00, s01, s10, s11);
+                    p[a][b] = p[b][a] = (ab + ba) / 2;
+                }
+            }
+        } else {
+            // P(k) = P - K * H * P, where H * P is just the selected rows of P
+            for (int a = 0; a < n; a++)
+                for (int b = 0; b < n; b++)
+                    p[a][b] -= gain[0][a] * selectedRows[0][b] + gain[1][a] * selectedRows[1][b];
+        }
+    }
+
+    private double josephEntry(double[][] p, int a, int b, int m, double s00, double s01, double s10, double s11) {
+        double entry = p[a][b]
+                - gain[0][a] * selectedRows[0][b] - selectedColumns[0][a] * gain[0][b]
+                + gain[0][a] * s00 * gain[0][b];
+        if (m == 2) {
+            entry += -gain[1][a] * selectedRows[1][b] - selectedColumns[1][a] * gain[1][b]
+                    + gain[0][a] * s01 * gain[1][b]
+                    + gain[1][a] * s10 * gain[0][b]
+                    + gain[1][a] * s11 * gain[1][b];
+        }
+        return entry;
+    }
+
+    /**
+     * P may be edited in place, it is never handed out
+     */
+    private double[][] getCovarianceData() {
+        if (!(P instanceof Array2DRowRealMatrix))
+            P = new Array2DRowRealMatrix(P.getData(), false);
+        return ((Array2DRowRealMatrix) P).getDataRef();
+    }
+
+    private static void symmetrize(double[][] matrix) {
+        for (int a = 0; a < matrix.length; a++) {
+            for (int b = a + 1; b < matrix.length; b++) {
+                double average = (matrix[a][b] + matrix[b][a]) / 2;
+                matrix[a][b] = matrix[b][a] = average;
+            }
+        }
+    }
+
 }
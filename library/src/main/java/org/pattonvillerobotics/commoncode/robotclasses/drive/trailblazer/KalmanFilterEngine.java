@@ -0,0 +1,63 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+/**
+ * A Kalman filter, usually over the 8-state [x y vx vy ax ay θ ω] model used by {@link KalmanFilterGuidance}.
+ * <p>
+ * Implementations are not thread-safe! Synchronize on the object for safety.
+ *
+ * @see KalmanFilter
+ * @see FastKalmanFilter
+ * @see ExtendedKalmanFilter
+ */
+public interface KalmanFilterEngine {
+
+    /**
+     * Process noise is given per this many seconds and scaled by the elapsed time, so it does not depend on how
+     * often the filter happens to be predicted.
+     */
+    double PROCESS_NOISE_PERIOD_S = 0.005;
+
+    /**
+     * Advances the state estimate by {@code dt} seconds.
+     *
+     * @param dt the elapsed time in seconds
+     * @return The new state
+     */
+    RealVector predictNextState(double dt);
+
+    /**
+     * Applies this filter's process model to a copy of a state without touching the filter, e.g. to extrapolate a
+     * published state. Safe to call from any thread.
+     *
+     * @param state the state to advance in place
+     * @param dt    the elapsed time in seconds
+     */
+    void extrapolateState(double[] state, double dt);
+
+    /**
+     * @param measurementModel contains the matrix that maps the state TO THE measurement of the state
+     * @param z                the measurement of the state
+     * @return The new state
+     */
+    RealVector measureAndGetState(MeasurementModel measurementModel, RealVector z);
+
+    RealVector getCurrentState();
+
+    RealMatrix getErrorCovariance();
+
+    /**
+     * @param state      the array to copy the state into
+     * @param covariance the array to copy the error covariance into, row-major
+     */
+    void getState(double[] state, double[] covariance);
+
+    /**
+     * @param state      the new state
+     * @param covariance the new error covariance, row-major
+     */
+    void setState(double[] state, double[] covariance);
+}
@@ -7,16 +7,13 @@ import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.os.Handler;
 import android.os.HandlerThread;
-import android.util.Log;
+import android.os.SystemClock;
 
 import com.qualcomm.hardware.modernrobotics.ModernRoboticsI2cGyro;
 import com.qualcomm.robotcore.eventloop.opmode.LinearOpMode;
 
-import org.apache.commons.math3.filter.DefaultMeasurementModel;
 import org.apache.commons.math3.filter.MeasurementModel;
-import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.ArrayRealVector;
-import org.apache.commons.math3.linear.MatrixUtils;
 import org.apache.commons.math3.linear.RealMatrix;
 import org.apache.commons.math3.linear.RealVector;
 import org.apache.commons.math3.util.FastMath;
@@ -29,10 +26,13 @@ import org.firstinspires.ftc.robotcore.external.navigation.Orientation;
 import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackable;
 import org.firstinspires.ftc.robotcore.external.navigation.VuforiaTrackableDefaultListener;
 import org.pattonvillerobotics.commoncode.robotclasses.drive.AbstractComplexDrive;
+import org.pattonvillerobotics.commoncode.robotclasses.logging.Logger;
+import org.pattonvillerobotics.commoncode.robotclasses.recorder.FlightRecorder;
 import org.pattonvillerobotics.commoncode.robotclasses.vuforia.VuforiaNavigation;
 import org.pattonvillerobotics.commoncode.robotclasses.vuforia.VuforiaParameters;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by skaggsm on 10/20/16.
@@ -40,60 +40,28 @@ import java.util.concurrent.TimeUnit;
 
 public class KalmanFilterGuidance implements Runnable {
 
+    public static final long DEFAULT_VUFORIA_LATENCY_MS = 80;
+    private static final long ENCODER_PERIOD_MS = 5, GYRO_PERIOD_MS = 5, VUFORIA_PERIOD_MS = 10;
     private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
-    private static final MeasurementModel ENCODER_MEASUREMENT_MODEL = new DefaultMeasurementModel(
-            new Array2DRowRealMatrix(new double[][]{
-                    {0, 0, 1, 0, 0, 0, 0, 0},
-                    {0, 0, 0, 1, 0, 0, 0, 0}
-            }),
-            new Array2DRowRealMatrix(new double[][]{
-                    {2, 0},
-                    {0, 2}
-            })
-    );
-    private static final MeasurementModel GYRO_MEASUREMENT_MODEL = new DefaultMeasurementModel(
-            new Array2DRowRealMatrix(new double[][]{
-                    {0, 0, 0, 0, 0, 0, 0, 1}
-            }),
-            new Array2DRowRealMatrix(new double[][]{
-                    {100}
-            })
-    );
-    private static final MeasurementModel ACCELEROMETER_MEASUREMENT_MODEL = new DefaultMeasurementModel(
-            new Array2DRowRealMatrix(new double[][]{
-                    {0, 0, 0, 0, 1, 0, 0, 0},
-                    {0, 0, 0, 0, 0, 1, 0, 0}
-            }),
-            new Array2DRowRealMatrix(new double[][]{
-                    {.05, 0},
-                    {0, .05}
-            })
-    );
-    private static final MeasurementModel MAGNETOMETER_MEASUREMENT_MODEL = new DefaultMeasurementModel(
-            new Array2DRowRealMatrix(new double[][]{
-                    {0, 0, 0, 0, 0, 0, 1, 0}
-            }),
-            new Array2DRowRealMatrix(new double[][]{
-                    {25}
-            })
-    );
-    private static final MeasurementModel VUFORIA_MEASUREMENT_MODEL = new DefaultMeasurementModel(
-            new Array2DRowRealMatrix(new double[][]{
-                    {1, 0, 0, 0, 0, 0, 0, 0},
-                    {0, 1, 0, 0, 0, 0, 0, 0},
-                    {0, 0, 0, 0, 0, 0, 1, 0}
-            }),
-            new Array2DRowRealMatrix(new double[][]{
-                    {5, 0, 0},
-                    {0, 5, 0},
-                    {0, 0, 5}
-            })
-    );
-    public final KalmanFilter kalmanFilter;
-
-    private final Thread encoderThread, predictThread, gyroThread;
-
-    private final HandlerThread accelerometerThread, magnetometerThread;
+    /**
+     * Every measurement is logged at {@link Logger.Level#VERBOSE}, which is off unless turned on for the tag
+     */
+    private static final Logger VUFORIA_LOG = Logger.get("Vuforia"), ACCELEROMETER_LOG = Logger.get("Accelerometer"),
+            MAGNETOMETER_LOG = Logger.get("Magnetometer"), ENCODER_LOG = Logger.get("Encoder"), GYRO_LOG = Logger.get("Gyro");
+    /**
+     * Owned by the filter thread once {@link #run()} is called, only read it through {@link #getCurrentState()}
+     */
+    public final KalmanFilterEngine kalmanFilter;
+    private final KalmanFilterRunner kalmanFilterRunner;
+    private final FilterNoiseParameters noiseParameters;
+
+    private final Thread filterThread;
+    private final SensorScheduler sensorScheduler;
+
+    /**
+     * Android delivers accelerometer and magnetometer events to a looper, so they get one thread of their own
+     */
+    private final HandlerThread sensorThread;
     private final float[] currentAccelerometerData = new float[3];
     private final float[] currentMagnetometerData = new float[3];
 
@@ -102,38 +70,71 @@ public class KalmanFilterGuidance implements Runnable {
     private final SensorManager sensorManager;
     private final Sensor accelerometerSensor, magnetometerSensor;
 
+    private final AtomicBoolean stopped = new AtomicBoolean();
+
     private VuforiaNavigation vuforiaNav;
-    private Thread vuforiaNavThread;
+    private volatile long vuforiaLatencyNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_VUFORIA_LATENCY_MS);
 
     public KalmanFilterGuidance(final LinearOpMode linearOpMode, final AbstractComplexDrive complexDrive, final ModernRoboticsI2cGyro gyro, VuforiaParameters vuforiaParameters, double gyroDriftCalibration) {
+        this(linearOpMode, complexDrive, gyro, vuforiaParameters, gyroDriftCalibration, new FilterNoiseParameters.Builder().build());
+    }
+
+    /**
+     * @param noiseParameters the noise to tune the filter with, e.g. the result of a {@link NoiseParameterSweep}
+     */
+    public KalmanFilterGuidance(final LinearOpMode linearOpMode, final AbstractComplexDrive complexDrive, final ModernRoboticsI2cGyro gyro, VuforiaParameters vuforiaParameters, double gyroDriftCalibration, FilterNoiseParameters noiseParameters) {
+        this(linearOpMode, complexDrive, gyro, vuforiaParameters, gyroDriftCalibration, new KalmanFilter(noiseParameters.getProcessNoiseMatrix(), getDefaultInitialState()), noiseParameters);
+    }
+
+    /**
+     * @param kalmanFilter the filter to run, e.g. a {@link FastKalmanFilter} to avoid allocating on every update
+     */
+    public KalmanFilterGuidance(final LinearOpMode linearOpMode, final AbstractComplexDrive complexDrive, final ModernRoboticsI2cGyro gyro, VuforiaParameters vuforiaParameters, double gyroDriftCalibration, KalmanFilterEngine kalmanFilter) {
+        this(linearOpMode, complexDrive, gyro, vuforiaParameters, gyroDriftCalibration, kalmanFilter, new FilterNoiseParameters.Builder().build());
+    }
+
+    /**
+     * @param kalmanFilter    the filter to run, built with the process noise from {@code noiseParameters}
+     * @param noiseParameters the measurement noise for each sensor
+     */
+    public KalmanFilterGuidance(final LinearOpMode linearOpMode, final AbstractComplexDrive complexDrive, final ModernRoboticsI2cGyro gyro, VuforiaParameters vuforiaParameters, double gyroDriftCalibration, KalmanFilterEngine kalmanFilter, FilterNoiseParameters noiseParameters) {
+        this.kalmanFilter = kalmanFilter;
+        this.noiseParameters = noiseParameters;
+        kalmanFilterRunner = new KalmanFilterRunner(kalmanFilter);
         vuforiaNav = new VuforiaNavigation(vuforiaParameters);
-        vuforiaNavThread = new Thread(new Runnable() {
+        sensorScheduler = new SensorScheduler(kalmanFilterRunner);
+        sensorScheduler.addSource(new SensorSource() {
+            final double[] measurement = new double[3];
             long lastTimeNS = System.nanoTime();
 
             @Override
-            public void run() {
-                while (!linearOpMode.isStopRequested()) {
-                    long nowTimeNS = System.nanoTime();
-                    double elapsedTimeS = (nowTimeNS - lastTimeNS) / S_TO_NS;
-                    lastTimeNS = nowTimeNS;
+            public long getPeriodNanos() {
+                return TimeUnit.MILLISECONDS.toNanos(VUFORIA_PERIOD_MS);
+            }
 
-                    for (VuforiaTrackable trackable : vuforiaNav.getTrackables()) {
-                        VuforiaTrackableDefaultListener listener = ((VuforiaTrackableDefaultListener) trackable.getListener());
-                        OpenGLMatrix matrix = listener.getUpdatedRobotLocation();
-                        if (matrix != null) {
-                            synchronized (kalmanFilter) {
-                                VectorF translation = matrix.getTranslation();
-                                Orientation orientation = Orientation.getOrientation(matrix, AxesReference.EXTRINSIC, AxesOrder.XYZ, AngleUnit.DEGREES);
-                                RealVector measurement = new ArrayRealVector(new double[]{translation.get(0) / VuforiaNavigation.MM_PER_INCH, translation.get(1) / VuforiaNavigation.MM_PER_INCH, orientation.thirdAngle});
-                                Log.e("Vuforia", "Updating measurement of " + measurement + " in time " + elapsedTimeS);
-                                kalmanFilter.measureAndGetState(VUFORIA_MEASUREMENT_MODEL, measurement);
-                            }
-                        }
-                    }
-                    try {
-                        Thread.sleep(5);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
+            @Override
+            public int getPriority() {
+                return 0;
+            }
+
+            @Override
+            public void read(KalmanFilterRunner runner, long tickNanos) {
+                double elapsedTimeS = (tickNanos - lastTimeNS) / S_TO_NS;
+                lastTimeNS = tickNanos;
+
+                for (VuforiaTrackable trackable : vuforiaNav.getTrackables()) {
+                    VuforiaTrackableDefaultListener listener = ((VuforiaTrackableDefaultListener) trackable.getListener());
+                    OpenGLMatrix matrix = listener.getUpdatedRobotLocation();
+                    if (matrix != null) {
+                        // The pose is from a camera frame captured a while before it was handed to us
+                        long timestampNS = System.nanoTime() - vuforiaLatencyNanos;
+                        VectorF translation = matrix.getTranslation();
+                        Orientation orientation = Orientation.getOrientation(matrix, AxesReference.EXTRINSIC, AxesOrder.XYZ, AngleUnit.DEGREES);
+                        measurement[0] = translation.get(0) / VuforiaNavigation.MM_PER_INCH;
+                        measurement[1] = translation.get(1) / VuforiaNavigation.MM_PER_INCH;
+                        measurement[2] = orientation.thirdAngle;
+                        runner.submit(MeasurementSource.VUFORIA, noiseParameters.getVuforiaMeasurementModel(), timestampNS, measurement, 3);
+                        VUFORIA_LOG.log(Logger.Level.VERBOSE, "Updating measurement of [%.2f, %.2f, %.2f] in time %.4f", measurement[0], measurement[1], measurement[2], elapsedTimeS);
                     }
                 }
             }
@@ -142,6 +143,7 @@ public class KalmanFilterGuidance implements Runnable {
         accelerometerSensor = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE_UNCALIBRATED);
         magnetometerSensor = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
         accelerometerSensorEventListener = new SensorEventListener() {
+            final double[] measurement = new double[2];
             long lastTimeNS = System.nanoTime();
 
             @Override
@@ -149,25 +151,20 @@ public class KalmanFilterGuidance implements Runnable {
                 synchronized (currentAccelerometerData) {
                     System.arraycopy(event.values, 0, currentAccelerometerData, 0, 3);
                 }
-                synchronized (kalmanFilter) {
-                    long nowTimeNS = System.nanoTime();
-                    double elapsedTimeS = (nowTimeNS - lastTimeNS) / S_TO_NS;
-                    lastTimeNS = nowTimeNS;
-
-                    RealVector measurement;
-                    double currentHeading = kalmanFilter.getCurrentState().getEntry(6);
-                    double cos = FastMath.cos(FastMath.toRadians(currentHeading));
-                    double sin = FastMath.sin(FastMath.toRadians(currentHeading));
-                    double ax, ay;
-                    ax = cos * event.values[0] / 39.37; // Convert m/s^2 to in/s^2
-                    ay = sin * -event.values[2] / 39.37;
-
-                    measurement = new ArrayRealVector(new double[]{ax, ay});
-
-                    Log.e("Accelerometer", "Updating measurement of " + measurement + " in time " + elapsedTimeS);
-
-                    kalmanFilter.measureAndGetState(ACCELEROMETER_MEASUREMENT_MODEL, measurement);
-                }
+                long nowTimeNS = System.nanoTime();
+                double elapsedTimeS = (nowTimeNS - lastTimeNS) / S_TO_NS;
+                lastTimeNS = nowTimeNS;
+                // Sensor events are stamped on the elapsed realtime clock, which keeps counting in deep sleep
+                long timestampNS = event.timestamp + (nowTimeNS - SystemClock.elapsedRealtimeNanos());
+
+                double currentHeading = kalmanFilterRunner.getSnapshot().get(6);
+                double cos = FastMath.cos(FastMath.toRadians(currentHeading));
+                double sin = FastMath.sin(FastMath.toRadians(currentHeading));
+                measurement[0] = cos * event.values[0] / 39.37; // Convert m/s^2 to in/s^2
+                measurement[1] = sin * -event.values[2] / 39.37;
+
+                kalmanFilterRunner.submit(MeasurementSource.ACCELEROMETER, noiseParameters.getAccelerometerMeasurementModel(), timestampNS, measurement, 2);
+                ACCELEROMETER_LOG.log(Logger.Level.VERBOSE, "Updating measurement of [%.3f, %.3f] in time %.4f", measurement[0], measurement[1], elapsedTimeS);
             }
 
             @Override
@@ -175,6 +172,7 @@ public class KalmanFilterGuidance implements Runnable {
             }
         };
         magnetometerSensorEventListener = new SensorEventListener() {
+            final double[] measurement = new double[1];
             long lastTimeNS = System.nanoTime();
 
             @Override
@@ -193,18 +191,16 @@ public class KalmanFilterGuidance implements Runnable {
                 final float[] orientationAngles = new float[3];
                 SensorManager.getOrientation(rotationMatrix, orientationAngles);
 
-                synchronized (kalmanFilter) {
-                    long nowTimeNS = System.nanoTime();
-                    double elapsedTimeS = (nowTimeNS - lastTimeNS) / S_TO_NS;
-                    lastTimeNS = nowTimeNS;
+                long nowTimeNS = System.nanoTime();
+                double elapsedTimeS = (nowTimeNS - lastTimeNS) / S_TO_NS;
+                lastTimeNS = nowTimeNS;
 
-                    RealVector measurement = new ArrayRealVector(new double[]{orientationAngles[2]});
+                measurement[0] = orientationAngles[2];
 
-                    Log.e("Magnetometer", "Updating measurement of " + measurement + " in time " + elapsedTimeS);
+                MAGNETOMETER_LOG.log(Logger.Level.VERBOSE, "Updating measurement of [%.3f] in time %.4f", measurement[0], elapsedTimeS);
 
-                    //Disabled for the time being since it returns heading instead of angular displacement (Doesn't keep track of >360 degrees)
-                    //kalmanFilter.measureAndGetState(MAGNETOMETER_MEASUREMENT_MODEL, measurement);
-                }
+                //Disabled for the time being since it returns heading instead of angular displacement (Doesn't keep track of >360 degrees)
+                //kalmanFilterRunner.submit(MeasurementSource.MAGNETOMETER, noiseParameters.getMagnetometerMeasurementModel(), nowTimeNS, measurement, 1);
             }
 
             @Override
@@ -212,152 +208,219 @@ public class KalmanFilterGuidance implements Runnable {
             }
         };
 
-        predictThread = new Thread(new Runnable() {
-            long lastTimeNS = System.nanoTime();
+        filterThread = new Thread(kalmanFilterRunner, "Kalman Filter Thread");
+        sensorScheduler.addSource(new SensorSource() {
+            final double[] measurement = new double[2];
+            long lastTimeNS;
+            int priorLeftEncoderReading, priorRightEncoderReading;
+            boolean started;
 
             @Override
-            public void run() {
-                while (!linearOpMode.isStopRequested()) {
-                    synchronized (kalmanFilter) {
-                        long nowTimeNS = System.nanoTime();
-                        double elapsedTimeS = (nowTimeNS - lastTimeNS) / S_TO_NS;
-                        lastTimeNS = nowTimeNS;
-
-                        Log.e("Predict", "Elapsed time: " + elapsedTimeS);
+            public long getPeriodNanos() {
+                return TimeUnit.MILLISECONDS.toNanos(ENCODER_PERIOD_MS);
+            }
 
-                        kalmanFilter.predictNextState(elapsedTimeS);
-                    }
-                    try {
-                        Thread.sleep(5);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
+            @Override
+            public int getPriority() {
+                return 0;
             }
-        });
-        encoderThread = new Thread(new Runnable() {
-            long lastTimeNS = System.nanoTime();
-            int priorLeftEncoderReading, priorRightEncoderReading;
 
             /**
              * WARNING: This does NOT take into account anything except rotation on the spot and straight-line motion!
              */
             @Override
-            public void run() {
-                priorLeftEncoderReading = complexDrive.leftDriveMotor.getCurrentPosition();
-                priorRightEncoderReading = complexDrive.rightDriveMotor.getCurrentPosition();
-                while (!linearOpMode.isStopRequested()) {
-                    synchronized (kalmanFilter) {
-                        long nowTimeNS = System.nanoTime();
-                        double elapsedTimeS = (nowTimeNS - lastTimeNS) / S_TO_NS;
-                        lastTimeNS = nowTimeNS;
-
-                        double currentHeading = kalmanFilter.getCurrentState().getEntry(6);
-                        //Get new values
-                        int currentLeftEncoderReading = complexDrive.leftDriveMotor.getCurrentPosition();
-                        int currentRightEncoderReading = complexDrive.rightDriveMotor.getCurrentPosition();
-                        //Find difference
-                        int deltaLeftEncoderReading = currentLeftEncoderReading - priorLeftEncoderReading;
-                        int deltaRightEncoderReading = currentRightEncoderReading - priorRightEncoderReading;
-                        //Replace old values
-                        priorLeftEncoderReading = currentLeftEncoderReading;
-                        priorRightEncoderReading = currentRightEncoderReading;
-                        //Find real distance
-                        double deltaLeftInches = complexDrive.inchesToTicksInverse(deltaLeftEncoderReading);
-                        double deltaRightInches = complexDrive.inchesToTicksInverse(deltaRightEncoderReading);
-                        double averageSpeed = ((deltaLeftInches + deltaRightInches) / 2) / elapsedTimeS;
-
-                        double cos = FastMath.cos(FastMath.toRadians(currentHeading));
-                        double sin = FastMath.sin(FastMath.toRadians(currentHeading));
-                        double vx = cos * averageSpeed;
-                        double vy = sin * averageSpeed;
-                        //double approximateAngularVelocity = complexDrive.degreesToInchesInverse((deltaRightInches - deltaLeftInches) / 2) / elapsedTimeS;
-
-                        RealVector measurement = new ArrayRealVector(new double[]{vx, vy});//, approximateAngularVelocity});
-
-                        Log.e("Encoder", "Updating measurement of " + measurement + " in time " + elapsedTimeS);
-
-                        kalmanFilter.measureAndGetState(ENCODER_MEASUREMENT_MODEL, measurement);
-                    }
-                    try {
-                        Thread.sleep(5);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
+            public void read(KalmanFilterRunner runner, long tickNanos) {
+                //Get new values, stamped halfway through the reads
+                long readStartNS = System.nanoTime();
+                int currentLeftEncoderReading = complexDrive.leftDriveMotor.getCurrentPosition();
+                int currentRightEncoderReading = complexDrive.rightDriveMotor.getCurrentPosition();
+                long nowTimeNS = readStartNS + (System.nanoTime() - readStartNS) / 2;
+                if (!started) {
+                    priorLeftEncoderReading = currentLeftEncoderReading;
+                    priorRightEncoderReading = currentRightEncoderReading;
+                    lastTimeNS = nowTimeNS;
+                    started = true;
+                    return;
                 }
+
+                double elapsedTimeS = (nowTimeNS - lastTimeNS) / S_TO_NS;
+                lastTimeNS = nowTimeNS;
+
+                double currentHeading = runner.getSnapshot().get(6);
+                //Find difference
+                int deltaLeftEncoderReading = currentLeftEncoderReading - priorLeftEncoderReading;
+                int deltaRightEncoderReading = currentRightEncoderReading - priorRightEncoderReading;
+                //Replace old values
+                priorLeftEncoderReading = currentLeftEncoderReading;
+                priorRightEncoderReading = currentRightEncoderReading;
+                //Find real distance
+                double deltaLeftInches = complexDrive.inchesToTicksInverse(deltaLeftEncoderReading);
+                double deltaRightInches = complexDrive.inchesToTicksInverse(deltaRightEncoderReading);
+                double averageSpeed = ((deltaLeftInches + deltaRightInches) / 2) / elapsedTimeS;
+
+                double cos = FastMath.cos(FastMath.toRadians(currentHeading));
+                double sin = FastMath.sin(FastMath.toRadians(currentHeading));
+                measurement[0] = cos * averageSpeed;
+                measurement[1] = sin * averageSpeed;
+                //double approximateAngularVelocity = complexDrive.degreesToInchesInverse((deltaRightInches - deltaLeftInches) / 2) / elapsedTimeS;
+
+                runner.submit(MeasurementSource.ENCODER, noiseParameters.getEncoderMeasurementModel(), nowTimeNS, measurement, 2);
+                ENCODER_LOG.log(Logger.Level.VERBOSE, "Updating measurement of [%.2f, %.2f] in time %.4f", measurement[0], measurement[1], elapsedTimeS);
             }
         });
-        gyroThread = new Thread(new Runnable() {
+        sensorScheduler.addSource(new SensorSource() {
+            final double[] measurement = new double[1];
             long lastTimeNS = System.nanoTime();
 
             @Override
-            public void run() {
-                while (!linearOpMode.isStopRequested()) {
-                    synchronized (kalmanFilter) {
-                        long nowTimeNS = System.nanoTime();
-                        double elapsedTimeS = (nowTimeNS - lastTimeNS) / S_TO_NS;
-                        lastTimeNS = nowTimeNS;
-                        double angularVelocity = gyro.rawZ() / 52.416666667; //TODO find conversion from raw to true values
-                        RealVector measurement = new ArrayRealVector(new double[]{angularVelocity});
-
-                        Log.e("Gyro", "Updating measurement of " + measurement + " in time " + elapsedTimeS);
-
-                        kalmanFilter.measureAndGetState(GYRO_MEASUREMENT_MODEL, measurement);
-                    }
-                    try {
-                        Thread.sleep(5);
-                    } catch (InterruptedException e) {
-                        e.printStackTrace();
-                    }
-                }
+            public long getPeriodNanos() {
+                return TimeUnit.MILLISECONDS.toNanos(GYRO_PERIOD_MS);
+            }
+
+            @Override
+            public int getPriority() {
+                return 0;
+            }
+
+            @Override
+            public void read(KalmanFilterRunner runner, long tickNanos) {
+                long readStartNS = System.nanoTime();
+                measurement[0] = gyro.rawZ() / 52.416666667; //TODO find conversion from raw to true values
+                long nowTimeNS = readStartNS + (System.nanoTime() - readStartNS) / 2;
+
+                double elapsedTimeS = (nowTimeNS - lastTimeNS) / S_TO_NS;
+                lastTimeNS = nowTimeNS;
+
+                runner.submit(MeasurementSource.GYRO, noiseParameters.getGyroMeasurementModel(), nowTimeNS, measurement, 1);
+                GYRO_LOG.log(Logger.Level.VERBOSE, "Updating measurement of %.3f in time %.4f", measurement[0], elapsedTimeS);
             }
         });
-        accelerometerThread = new HandlerThread("Accelerometer Thread");
-        magnetometerThread = new HandlerThread("Magnetometer Thread");
+        sensorScheduler.addSource(new SensorSource() {
+            @Override
+            public long getPeriodNanos() {
+                return TimeUnit.MILLISECONDS.toNanos(SensorScheduler.DEFAULT_TICK_MS);
+            }
 
-        /*                                                   x  y  vx vy ax ay θ  ω*/
-        RealVector x = new ArrayRealVector(new double[]{0, 0, 0, 0, 0, 0, 0, 0});
-        RealMatrix processNoise = MatrixUtils.createRealIdentityMatrix(x.getDimension()).scalarMultiply(0.1);
+            @Override
+            public int getPriority() {
+                return Integer.MIN_VALUE;
+            }
 
-        kalmanFilter = new KalmanFilter(processNoise, x);
+            @Override
+            public void read(KalmanFilterRunner runner, long tickNanos) {
+                // Don't keep reading hardware after the op mode has ended if stop() was never called
+                if (linearOpMode.isStopRequested())
+                    stop();
+            }
+        });
+        sensorThread = new HandlerThread("Android Sensor Thread");
     }
 
-    public void measure(MeasurementModel measurementModel, RealVector measuredState) {
-        kalmanFilter.measureAndGetState(measurementModel, measuredState);
+    public static RealVector getDefaultInitialState() {
+        /*                                      x  y  vx vy ax ay θ  ω*/
+        return new ArrayRealVector(new double[]{0, 0, 0, 0, 0, 0, 0, 0});
     }
 
+    public static RealMatrix getDefaultProcessNoise() {
+        return new FilterNoiseParameters.Builder().build().getProcessNoiseMatrix();
+    }
+
+    /**
+     * Queues an extra measurement for the filter thread. Safe to call from any thread.
+     *
+     * @return false if the queue was full and the measurement was dropped
+     */
+    public boolean measure(MeasurementModel measurementModel, RealVector measuredState) {
+        return kalmanFilterRunner.submit(MeasurementSource.EXTERNAL, measurementModel, System.nanoTime(), measuredState.toArray(), measuredState.getDimension());
+    }
+
+    /**
+     * @return a copy of the latest state, extrapolated to now, safe to call from any thread
+     */
     public RealVector getCurrentState() {
-        return kalmanFilter.getCurrentState();
+        double[] state = new double[kalmanFilterRunner.getSnapshot().size()];
+        kalmanFilterRunner.getState(state, System.nanoTime());
+        return new ArrayRealVector(state, false);
     }
 
-    @Override
-    public void run() {
-        predictThread.start();
-        encoderThread.start();
-        gyroThread.start();
+    /**
+     * Has the filter thread hand {@code listener} the current state at a fixed rate. Call before {@link #run()}.
+     *
+     * @param outputRate how many times a second to call the listener
+     */
+    public void setStateListener(StateListener listener, double outputRate) {
+        kalmanFilterRunner.setStateListener(listener, outputRate);
+    }
+
+    /**
+     * Records every sensor measurement into {@code recorder}, write it out after the match to tune the filter with
+     * {@link NoiseParameterSweep}.
+     *
+     * @param recorder the trace to add to, or null to stop recording
+     */
+    public void setRecorder(MeasurementTrace recorder) {
+        kalmanFilterRunner.setRecorder(recorder);
+    }
+
+    /**
+     * Records the filter's state into {@code recorder} every time a measurement is fused, to look at after the match
+     * with {@link org.pattonvillerobotics.commoncode.robotclasses.recorder.FlightRecordDecoder}.
+     */
+    public void setFlightRecorder(FlightRecorder recorder) {
+        kalmanFilterRunner.setStateChannel(recorder.addChannel("filter", "x", "y", "vx", "vy", "ax", "ay", "heading", "omega"));
+    }
 
-        accelerometerThread.start();
-        //magnetometerThread.start();
+    /**
+     * Vuforia poses are stamped this long before they are read, so the filter fuses them at the time the camera
+     * frame was taken. Safe to call from any thread.
+     *
+     * @param latency how long Vuforia takes from capturing a frame to reporting a pose from it
+     */
+    public void setVuforiaLatency(long latency, TimeUnit unit) {
+        if (latency < 0)
+            throw new IllegalArgumentException("Vuforia latency must not be negative, was " + latency);
+        vuforiaLatencyNanos = unit.toNanos(latency);
+    }
 
-        sensorManager.registerListener(accelerometerSensorEventListener, accelerometerSensor, SensorManager.SENSOR_DELAY_FASTEST, new Handler(accelerometerThread.getLooper()));
-        //sensorManager.registerListener(magnetometerSensorEventListener, magnetometerSensor, SensorManager.SENSOR_DELAY_FASTEST, new Handler(magnetometerThread.getLooper()));
+    /**
+     * Adds another sensor to feed the filter, e.g. a BNO055 IMU or odometry pods. Call before {@link #run()}.
+     */
+    public void addSensorSource(SensorSource sensorSource) {
+        sensorScheduler.addSource(sensorSource);
+    }
+
+    /**
+     * @return the runner that owns the filter, for queue depth, drop counts and per-sensor latency
+     */
+    public KalmanFilterRunner getKalmanFilterRunner() {
+        return kalmanFilterRunner;
+    }
 
+    @Override
+    public void run() {
+        filterThread.start();
         vuforiaNav.activateTracking();
-        vuforiaNavThread.start();
+        sensorScheduler.start();
+
+        sensorThread.start();
+        Handler sensorHandler = new Handler(sensorThread.getLooper());
+        sensorManager.registerListener(accelerometerSensorEventListener, accelerometerSensor, SensorManager.SENSOR_DELAY_FASTEST, sensorHandler);
+        //sensorManager.registerListener(magnetometerSensorEventListener, magnetometerSensor, SensorManager.SENSOR_DELAY_FASTEST, sensorHandler);
     }
 
+    /**
+     * Stops every sensor and the filter. Returns once no sensor will be read again.
+     */
     public void stop() {
-        predictThread.interrupt();
-        encoderThread.interrupt();
-        gyroThread.interrupt();
-
-        accelerometerThread.interrupt();
-        //magnetometerThread.interrupt();
+        if (!stopped.compareAndSet(false, true))
+            return;
 
+        sensorScheduler.stop();
         sensorManager.unregisterListener(accelerometerSensorEventListener, accelerometerSensor);
         //sensorManager.unregisterListener(magnetometerSensorEventListener, magnetometerSensor);
+        sensorThread.quitSafely();
 
         vuforiaNav.deactivateTracking();
-        vuforiaNavThread.interrupt();
+        kalmanFilterRunner.stop();
     }
 }
@@ -0,0 +1,388 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.exception.MathIllegalArgumentException;
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+import org.pattonvillerobotics.commoncode.robotclasses.recorder.FlightRecorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Owns a {@link KalmanFilterEngine} and is the only thing that touches it.
+ * <p>
+ * Sensor threads {@link #submit(MeasurementSource, MeasurementModel, long, double[], int)} timestamped measurements
+ * into a lock-free {@link MeasurementQueue} and never wait on each other. The thread running this drains the queue,
+ * predicts up to each measurement's timestamp, applies it, and publishes the state to a {@link StateSnapshot} that
+ * any thread can read without locking.
+ * <p>
+ * Measurements are stamped with when they were taken, not when they arrive. One older than the filter, like a Vuforia
+ * fix that took 80 ms to compute, is inserted into a {@link MeasurementHistory} at its own time and every measurement
+ * after it is replayed, so the result is the same as if everything had arrived in order. Measurements older than the
+ * history reaches back are dropped and counted by {@link #getLateCount(MeasurementSource)}.
+ * <p>
+ * The filter thread sleeps until a measurement is submitted and only predicts up to measurement timestamps.
+ * Readers extrapolate the published state to the time they ask for it with {@link #getState(double[], long)}, and a
+ * {@link StateListener} can be given the state at a fixed rate.
+ */
+public class KalmanFilterRunner implements Runnable {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    public static final int DEFAULT_HISTORY_CAPACITY = 128;
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
+    private static final int SOURCE_COUNT = MeasurementSource.values().length;
+
+    private final KalmanFilterEngine kalmanFilter;
+    private final MeasurementQueue queue;
+    private final MeasurementHistory history;
+    private final StateSnapshot snapshot;
+    private final MeasurementEvent event = new MeasurementEvent();
+    private final RealVector[] measurementVectors = new RealVector[MeasurementEvent.MAX_DIMENSION + 1];
+    private final double[] state, covariance, outputState;
+
+    private final AtomicLongArray measurementCounts = new AtomicLongArray(SOURCE_COUNT);
+    private final AtomicLongArray rejectedCounts = new AtomicLongArray(SOURCE_COUNT);
+    private final AtomicLongArray totalLatenciesNanos = new AtomicLongArray(SOURCE_COUNT);
+    private final AtomicLongArray maxLatenciesNanos = new AtomicLongArray(SOURCE_COUNT);
+    private final AtomicLongArray lateCounts = new AtomicLongArray(SOURCE_COUNT);
+    private final AtomicLong replayCount = new AtomicLong();
+    private final AtomicBoolean parked = new AtomicBoolean();
+
+    private long filterTimeNanos;
+    private volatile boolean running;
+    /**
+     * Never reset, so a stop before the thread gets to {@link #run()} isn't lost
+     */
+    private volatile boolean stopped;
+    private volatile Thread filterThread;
+    private volatile StateListener stateListener;
+    private volatile long outputPeriodNanos;
+    private volatile MeasurementTrace recorder;
+    private volatile FlightRecorder.Channel stateChannel;
+
+    public KalmanFilterRunner(KalmanFilterEngine kalmanFilter) {
+        this(kalmanFilter, DEFAULT_QUEUE_CAPACITY, System.nanoTime());
+    }
+
+    public KalmanFilterRunner(KalmanFilterEngine kalmanFilter, int queueCapacity, long startTimeNanos) {
+        this(kalmanFilter, queueCapacity, DEFAULT_HISTORY_CAPACITY, startTimeNanos);
+    }
+
+    /**
+     * @param kalmanFilter    the filter to run, which should not be used by anything else afterwards
+     * @param queueCapacity   how many measurements can be waiting before new ones are dropped
+     * @param historyCapacity how many measurements to remember for fusing late ones, this many measurements at the
+     *                        combined sensor rate should cover the slowest sensor's latency
+     * @param startTimeNanos  the time of the filter's initial state, in {@link System#nanoTime()} time
+     */
+    public KalmanFilterRunner(KalmanFilterEngine kalmanFilter, int queueCapacity, int historyCapacity, long startTimeNanos) {
+        this.kalmanFilter = kalmanFilter;
+        this.queue = new MeasurementQueue(queueCapacity);
+        this.state = new double[kalmanFilter.getCurrentState().getDimension()];
+        this.covariance = new double[state.length * state.length];
+        this.outputState = new double[state.length];
+        this.history = new MeasurementHistory(historyCapacity, state.length);
+        this.snapshot = new StateSnapshot(state.length);
+        this.filterTimeNanos = startTimeNanos;
+
+        for (int i = 1; i < measurementVectors.length; i++)
+            measurementVectors[i] = new ArrayRealVector(i);
+
+        kalmanFilter.getState(state, covariance);
+        history.reset(state, covariance, startTimeNanos);
+        publish();
+    }
+
+    /**
+     * Queues a measurement for the filter. Never blocks, safe to call from any thread.
+     *
+     * @param source           the sensor the measurement came from
+     * @param measurementModel the model mapping the state to the measurement
+     * @param timestampNanos   when the sensor was read, in {@link System#nanoTime()} time
+     * @param values           the measurement, only read during this call
+     * @param dimension        how many entries of {@code values} to use
+     * @return false if the queue was full and the measurement was dropped
+     */
+    public boolean submit(MeasurementSource source, MeasurementModel measurementModel, long timestampNanos, double[] values, int dimension) {
+        boolean queued = queue.offer(source, measurementModel, timestampNanos, values, dimension);
+        wake();
+        MeasurementTrace recorder = this.recorder;
+        if (queued && recorder != null)
+            recorder.add(source, timestampNanos, System.nanoTime(), values, dimension);
+        return queued;
+    }
+
+    private void wake() {
+        if (parked.get() && parked.compareAndSet(true, false))
+            LockSupport.unpark(filterThread);
+    }
+
+    @Override
+    public void run() {
+        filterThread = Thread.currentThread();
+        running = true;
+        long nextOutputNanos = System.nanoTime();
+        while (!stopped && !Thread.currentThread().isInterrupted()) {
+            update();
+
+            long outputPeriod = outputPeriodNanos;
+            if (outputPeriod > 0) {
+                long nowNanos = System.nanoTime();
+                if (nowNanos - nextOutputNanos >= 0) {
+                    output(nowNanos);
+                    nextOutputNanos += outputPeriod;
+                    // Skip outputs we were too late for instead of firing them back to back
+                    if (nowNanos - nextOutputNanos >= 0)
+                        nextOutputNanos = nowNanos + outputPeriod;
+                }
+            }
+
+            // Set before checking the queue, so a submit in between unparks us instead of being missed
+            parked.set(true);
+            if (!stopped && queue.size() == 0) {
+                if (outputPeriod > 0)
+                    LockSupport.parkNanos(this, nextOutputNanos - System.nanoTime());
+                else
+                    LockSupport.park(this);
+            }
+            parked.set(false);
+        }
+        running = false;
+    }
+
+    /**
+     * Stops the filter thread, for good: a runner can't be run again once stopped, even if it hadn't started yet.
+     */
+    public void stop() {
+        stopped = true;
+        Thread thread = filterThread;
+        if (thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Fuses every queued measurement at its own timestamp and publishes the result. Only call this from the thread
+     * that owns the filter, {@link #run()} calls it whenever a measurement is submitted.
+     */
+    public void update() {
+        boolean fused = false;
+        while (queue.poll(event)) {
+            fuse(event);
+            fused = true;
+        }
+        if (fused)
+            publish();
+    }
+
+    private void fuse(MeasurementEvent event) {
+        if (history.isFull())
+            history.evictOldest();
+
+        if (event.timestampNanos >= filterTimeNanos) {
+            MeasurementHistory.Entry entry = history.insert(history.size(), event);
+            predictTo(event.timestampNanos);
+            apply(entry.event, true);
+            kalmanFilter.getState(entry.state, entry.covariance);
+            return;
+        }
+
+        if (event.timestampNanos < history.getBaseTimeNanos()) {
+            lateCounts.incrementAndGet(event.source.ordinal());
+            return;
+        }
+
+        int index = history.indexFor(event.timestampNanos);
+        history.insert(index, event);
+        rewindTo(index);
+        for (int i = index; i < history.size(); i++) {
+            MeasurementHistory.Entry entry = history.get(i);
+            predictTo(entry.event.timestampNanos);
+            apply(entry.event, i == index);
+            kalmanFilter.getState(entry.state, entry.covariance);
+        }
+        replayCount.incrementAndGet();
+    }
+
+    /**
+     * Puts the filter back to how it was just before the history entry at {@code index}.
+     */
+    private void rewindTo(int index) {
+        if (index == 0) {
+            kalmanFilter.setState(history.getBaseState(), history.getBaseCovariance());
+            filterTimeNanos = history.getBaseTimeNanos();
+        } else {
+            MeasurementHistory.Entry previous = history.get(index - 1);
+            kalmanFilter.setState(previous.state, previous.covariance);
+            filterTimeNanos = previous.event.timestampNanos;
+        }
+    }
+
+    private void predictTo(long timestampNanos) {
+        if (timestampNanos > filterTimeNanos) {
+            kalmanFilter.predictNextState((timestampNanos - filterTimeNanos) / S_TO_NS);
+            filterTimeNanos = timestampNanos;
+        }
+    }
+
+    /**
+     * @param firstTime false when replaying, so each measurement only counts towards the statistics once
+     */
+    private void apply(MeasurementEvent event, boolean firstTime) {
+        int source = event.source.ordinal();
+        RealVector z = measurementVectors[event.dimension];
+        for (int i = 0; i < event.dimension; i++)
+            z.setEntry(i, event.values[i]);
+
+        try {
+            kalmanFilter.measureAndGetState(event.measurementModel, z);
+        } catch (MathIllegalArgumentException e) {
+            // A bad measurement should not take down the whole filter
+            if (firstTime)
+                rejectedCounts.incrementAndGet(source);
+            return;
+        }
+        if (!firstTime)
+            return;
+
+        long latencyNanos = System.nanoTime() - event.timestampNanos;
+        measurementCounts.incrementAndGet(source);
+        totalLatenciesNanos.addAndGet(source, latencyNanos);
+        if (latencyNanos > maxLatenciesNanos.get(source))
+            maxLatenciesNanos.set(source, latencyNanos);
+    }
+
+    private void publish() {
+        kalmanFilter.getState(state, covariance);
+        snapshot.write(state, filterTimeNanos);
+
+        FlightRecorder.Channel stateChannel = this.stateChannel;
+        if (stateChannel != null)
+            stateChannel.recordAt(filterTimeNanos, state, state.length);
+    }
+
+    private void output(long nowNanos) {
+        StateListener listener = stateListener;
+        if (listener != null)
+            listener.onStateUpdate(outputState, getState(outputState, nowNanos));
+    }
+
+    /**
+     * The filter only advances to measurement timestamps, so this extrapolates the published state to
+     * {@code nowNanos} with the filter's process model alone. Safe to call from any thread, does not allocate.
+     *
+     * @param out      the array to copy the state into
+     * @param nowNanos the time to extrapolate to, in {@link System#nanoTime()} time
+     * @return the time the state describes, which is the published time if that is after {@code nowNanos}
+     */
+    public long getState(double[] out, long nowNanos) {
+        long timestampNanos = snapshot.read(out);
+        if (nowNanos <= timestampNanos)
+            return timestampNanos;
+        kalmanFilter.extrapolateState(out, (nowNanos - timestampNanos) / S_TO_NS);
+        return nowNanos;
+    }
+
+    /**
+     * @return the state as of the latest fused measurement, safe to read from any thread
+     */
+    public StateSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Has {@link #run()} hand {@code listener} the state, extrapolated to the current time, {@code outputRate} times
+     * a second whether or not measurements arrive. Set it before starting the runner.
+     *
+     * @param listener   the listener, or null for no fixed-rate output
+     * @param outputRate how many times a second to call the listener
+     */
+    public void setStateListener(StateListener listener, double outputRate) {
+        if (listener != null && !(outputRate > 0))
+            throw new IllegalArgumentException("Output rate must be positive, was " + outputRate);
+        stateListener = listener;
+        outputPeriodNanos = listener == null ? 0 : (long) (S_TO_NS / outputRate);
+        wake();
+    }
+
+    /**
+     * Records every queued measurement, with when it arrived, so the run can be replayed with {@link TraceReplay}.
+     *
+     * @param recorder the trace to add to, or null to stop recording
+     */
+    public void setRecorder(MeasurementTrace recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Records the state every time it is published, as many values of it as the channel has columns.
+     *
+     * @param channel the channel to record into, or null to stop recording
+     */
+    public void setStateChannel(FlightRecorder.Channel channel) {
+        this.stateChannel = channel;
+    }
+
+    public KalmanFilterEngine getKalmanFilter() {
+        return kalmanFilter;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getDroppedCount() {
+        return queue.getDroppedCount();
+    }
+
+    public long getDroppedCount(MeasurementSource source) {
+        return queue.getDroppedCount(source);
+    }
+
+    /**
+     * @return the number of measurements the filter threw out as numerically invalid
+     */
+    public long getRejectedCount(MeasurementSource source) {
+        return rejectedCounts.get(source.ordinal());
+    }
+
+    /**
+     * @return the number of measurements that arrived too late to be fused
+     */
+    public long getLateCount(MeasurementSource source) {
+        return lateCounts.get(source.ordinal());
+    }
+
+    /**
+     * @return the number of times a late measurement made the filter rewind and replay its history
+     */
+    public long getReplayCount() {
+        return replayCount.get();
+    }
+
+    public long getMeasurementCount(MeasurementSource source) {
+        return measurementCounts.get(source.ordinal());
+    }
+
+    /**
+     * @return the average time from reading the sensor to applying the measurement
+     */
+    public long getAverageLatencyNanos(MeasurementSource source) {
+        long count = measurementCounts.get(source.ordinal());
+        return count == 0 ? 0 : totalLatenciesNanos.get(source.ordinal()) / count;
+    }
+
+    /**
+     * @return the longest time from reading the sensor to applying the measurement
+     */
+    public long getMaxLatencyNanos(MeasurementSource source) {
+        return maxLatenciesNanos.get(source.ordinal());
+    }
+}
@@ -0,0 +1,59 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.MeasurementModel;
+
+/**
+ * A timestamped measurement. Instances are reused by {@link MeasurementQueue}, so copy anything that needs to
+ * outlive the next {@link MeasurementQueue#poll(MeasurementEvent)}.
+ */
+public class MeasurementEvent {
+
+    public static final int MAX_DIMENSION = 4;
+
+    final double[] values = new double[MAX_DIMENSION];
+    MeasurementSource source;
+    MeasurementModel measurementModel;
+    long timestampNanos, enqueueTimeNanos;
+    int dimension;
+
+    void copyFrom(MeasurementEvent other) {
+        source = other.source;
+        measurementModel = other.measurementModel;
+        timestampNanos = other.timestampNanos;
+        enqueueTimeNanos = other.enqueueTimeNanos;
+        dimension = other.dimension;
+        System.arraycopy(other.values, 0, values, 0, dimension);
+    }
+
+    public MeasurementSource getSource() {
+        return source;
+    }
+
+    public MeasurementModel getMeasurementModel() {
+        return measurementModel;
+    }
+
+    /**
+     * @return when the sensor was read, in {@link System#nanoTime()} time
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    /**
+     * @return when the measurement was put in the queue, in {@link System#nanoTime()} time
+     */
+    public long getEnqueueTimeNanos() {
+        return enqueueTimeNanos;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public double getValue(int index) {
+        if (index >= dimension)
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of a measurement of dimension " + dimension);
+        return values[index];
+    }
+}
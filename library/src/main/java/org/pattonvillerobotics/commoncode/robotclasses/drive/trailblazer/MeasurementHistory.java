@@ -0,0 +1,144 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+/**
+ * A bounded, time-ordered record of fused measurements and the filter state right after each one, so a measurement
+ * that arrives late can be slotted in at the time it was taken and everything after it replayed.
+ * <p>
+ * Once full, the oldest entry is folded into the base state, which is the furthest back the filter can be rewound.
+ * Everything is preallocated, nothing here allocates after construction.
+ */
+class MeasurementHistory {
+
+    private final Entry[] entries;
+    private final double[] baseState, baseCovariance;
+    private long baseTimeNanos;
+    private int start, size;
+
+    /**
+     * @param capacity        how many measurements to remember
+     * @param stateDimension  the length of the filter's state
+     */
+    MeasurementHistory(int capacity, int stateDimension) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least 1, was " + capacity);
+
+        entries = new Entry[capacity];
+        for (int i = 0; i < capacity; i++)
+            entries[i] = new Entry(stateDimension);
+        baseState = new double[stateDimension];
+        baseCovariance = new double[stateDimension * stateDimension];
+    }
+
+    /**
+     * Forgets every entry and makes the given state the base.
+     */
+    void reset(double[] state, double[] covariance, long timeNanos) {
+        System.arraycopy(state, 0, baseState, 0, baseState.length);
+        System.arraycopy(covariance, 0, baseCovariance, 0, baseCovariance.length);
+        baseTimeNanos = timeNanos;
+        start = 0;
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return entries.length;
+    }
+
+    boolean isFull() {
+        return size == entries.length;
+    }
+
+    /**
+     * @return the time of the base state, measurements before this can no longer be fused
+     */
+    long getBaseTimeNanos() {
+        return baseTimeNanos;
+    }
+
+    double[] getBaseState() {
+        return baseState;
+    }
+
+    double[] getBaseCovariance() {
+        return baseCovariance;
+    }
+
+    /**
+     * @param index 0 for the oldest entry
+     */
+    Entry get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of a history of size " + size);
+        return entries[(start + index) % entries.length];
+    }
+
+    /**
+     * @return the index a measurement taken at {@code timestampNanos} belongs at, after any with the same timestamp
+     */
+    int indexFor(long timestampNanos) {
+        int low = 0, high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (get(middle).event.timestampNanos <= timestampNanos)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Folds the oldest entry into the base state.
+     */
+    void evictOldest() {
+        if (size == 0)
+            throw new IllegalStateException("Cannot evict from an empty history");
+
+        Entry oldest = entries[start];
+        System.arraycopy(oldest.state, 0, baseState, 0, baseState.length);
+        System.arraycopy(oldest.covariance, 0, baseCovariance, 0, baseCovariance.length);
+        baseTimeNanos = oldest.event.timestampNanos;
+        start = (start + 1) % entries.length;
+        size--;
+    }
+
+    /**
+     * Opens a slot at {@code index}, shifting newer entries back. The history must not be full.
+     *
+     * @return the entry to fill in
+     */
+    Entry insert(int index, MeasurementEvent event) {
+        if (isFull())
+            throw new IllegalStateException("Cannot insert into a full history");
+        if (index < 0 || index > size)
+            throw new IndexOutOfBoundsException("Index " + index + " is outside of a history of size " + size);
+
+        // Rotate the free slot at the end down to index
+        Entry free = entries[(start + size) % entries.length];
+        for (int i = size; i > index; i--)
+            entries[(start + i) % entries.length] = entries[(start + i - 1) % entries.length];
+        entries[(start + index) % entries.length] = free;
+        size++;
+
+        free.event.copyFrom(event);
+        return free;
+    }
+
+    /**
+     * A measurement and the filter state after it was fused.
+     */
+    static class Entry {
+
+        final MeasurementEvent event = new MeasurementEvent();
+        final double[] state, covariance;
+
+        Entry(int stateDimension) {
+            state = new double[stateDimension];
+            covariance = new double[stateDimension * stateDimension];
+        }
+    }
+}
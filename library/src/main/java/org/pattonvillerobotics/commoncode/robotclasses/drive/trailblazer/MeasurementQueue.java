@@ -0,0 +1,123 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.MeasurementModel;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free ring buffer of {@link MeasurementEvent}s with any number of producers and a single consumer.
+ * <p>
+ * Every slot is allocated up front and carries a sequence number. A producer claims a slot by advancing the tail
+ * with a CAS, fills it in, then publishes it by bumping the slot's sequence. The consumer only reads slots whose
+ * sequence says they are published. Producers never wait: when the ring is full the measurement is dropped and
+ * counted.
+ */
+public class MeasurementQueue {
+
+    private final MeasurementEvent[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLongArray droppedCounts = new AtomicLongArray(MeasurementSource.values().length);
+    private volatile long head;
+
+    /**
+     * @param capacity the number of measurements that can be waiting at once, rounded up to a power of two
+     */
+    public MeasurementQueue(int capacity) {
+        if (capacity < 2)
+            throw new IllegalArgumentException("capacity must be >= 2");
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        slots = new MeasurementEvent[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            slots[i] = new MeasurementEvent();
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Never blocks. Safe to call from any thread.
+     *
+     * @param source           the sensor the measurement came from
+     * @param measurementModel the model mapping the state to the measurement
+     * @param timestampNanos   when the sensor was read, in {@link System#nanoTime()} time
+     * @param values           the measurement, only read during this call
+     * @param dimension        how many entries of {@code values} to use
+     * @return false if the queue was full and the measurement was dropped
+     */
+    public boolean offer(MeasurementSource source, MeasurementModel measurementModel, long timestampNanos, double[] values, int dimension) {
+        if (dimension > MeasurementEvent.MAX_DIMENSION)
+            throw new IllegalArgumentException("Measurements can have at most " + MeasurementEvent.MAX_DIMENSION + " entries");
+
+        long position;
+        while (true) {
+            position = tail.get();
+            long sequence = sequences.get((int) position & mask);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1))
+                    break;
+            } else if (sequence < position) {
+                droppedCounts.incrementAndGet(source.ordinal());
+                return false;
+            }
+        }
+
+        int index = (int) position & mask;
+        MeasurementEvent slot = slots[index];
+        slot.source = source;
+        slot.measurementModel = measurementModel;
+        slot.timestampNanos = timestampNanos;
+        slot.enqueueTimeNanos = System.nanoTime();
+        slot.dimension = dimension;
+        System.arraycopy(values, 0, slot.values, 0, dimension);
+
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Only one thread may poll.
+     *
+     * @param out the event to copy the oldest measurement into
+     * @return false if the queue was empty
+     */
+    public boolean poll(MeasurementEvent out) {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1)
+            return false;
+
+        MeasurementEvent slot = slots[index];
+        out.copyFrom(slot);
+        slot.measurementModel = null;
+
+        sequences.lazySet(index, position + slots.length);
+        head = position + 1;
+        return true;
+    }
+
+    /**
+     * @return the number of measurements waiting, possibly including ones that are still being written
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public long getDroppedCount(MeasurementSource source) {
+        return droppedCounts.get(source.ordinal());
+    }
+
+    public long getDroppedCount() {
+        long total = 0;
+        for (int i = 0; i < droppedCounts.length(); i++)
+            total += droppedCounts.get(i);
+        return total;
+    }
+}
@@ -0,0 +1,8 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+/**
+ * Where a measurement fed to a {@link KalmanFilterRunner} came from, used to keep statistics per sensor.
+ */
+public enum MeasurementSource {
+    ENCODER, GYRO, ACCELEROMETER, MAGNETOMETER, VUFORIA, EXTERNAL
+}
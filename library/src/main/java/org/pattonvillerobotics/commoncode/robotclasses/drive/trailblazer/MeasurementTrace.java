@@ -0,0 +1,163 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A recording of timestamped sensor measurements, and optionally where the robot really was, that can be replayed
+ * through a filter off the robot with {@link TraceReplay}.
+ * <p>
+ * Traces are plain text, one sample per line: {@code timestampNanos,arrivalNanos,SOURCE,value,...} where SOURCE is a
+ * {@link MeasurementSource} name, or {@code TRUTH} followed by the true x, y and heading. Lines starting with
+ * {@code #} are comments. Record on the robot with {@link KalmanFilterRunner#setRecorder(MeasurementTrace)}.
+ * <p>
+ * Thread-safe, any number of sensor threads can record at once.
+ */
+public class MeasurementTrace {
+
+    public static final String HEADER = "# trailblazer measurement trace v1";
+    public static final String TRUTH = "TRUTH";
+
+    private final List<Sample> samples = new ArrayList<>();
+
+    /**
+     * Reads a trace written by {@link #write(Writer)}.
+     *
+     * @throws IOException if a line is malformed
+     */
+    public static MeasurementTrace read(Reader reader) throws IOException {
+        MeasurementTrace trace = new MeasurementTrace();
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            String[] fields = line.split(",");
+            if (fields.length < 4)
+                throw new IOException("Line " + lineNumber + " has too few fields: " + line);
+            try {
+                long timestampNanos = Long.parseLong(fields[0].trim());
+                long arrivalNanos = Long.parseLong(fields[1].trim());
+                String kind = fields[2].trim();
+                double[] values = new double[fields.length - 3];
+                for (int i = 0; i < values.length; i++)
+                    values[i] = Double.parseDouble(fields[i + 3].trim());
+
+                if (kind.equals(TRUTH)) {
+                    if (values.length != 3)
+                        throw new IOException("Line " + lineNumber + " needs x, y and heading for the truth: " + line);
+                    trace.samples.add(new Sample(null, timestampNanos, arrivalNanos, values));
+                } else {
+                    trace.samples.add(new Sample(MeasurementSource.valueOf(kind), timestampNanos, arrivalNanos, values));
+                }
+            } catch (IllegalArgumentException e) {
+                // Includes NumberFormatException and unknown sources
+                throw new IOException("Line " + lineNumber + " is malformed: " + line, e);
+            }
+        }
+        return trace;
+    }
+
+    /**
+     * Records a measurement.
+     *
+     * @param timestampNanos when the sensor was read
+     * @param arrivalNanos   when the measurement reached the filter
+     * @param values         the measurement, copied
+     * @param dimension      how many entries of {@code values} to use
+     */
+    public synchronized void add(MeasurementSource source, long timestampNanos, long arrivalNanos, double[] values, int dimension) {
+        samples.add(new Sample(source, timestampNanos, arrivalNanos, Arrays.copyOf(values, dimension)));
+    }
+
+    /**
+     * Records where the robot really was, e.g. measured on the field or from a simulation.
+     *
+     * @param heading in degrees, like the filter's heading
+     */
+    public synchronized void addTruth(long timestampNanos, double x, double y, double heading) {
+        samples.add(new Sample(null, timestampNanos, timestampNanos, new double[]{x, y, heading}));
+    }
+
+    /**
+     * @return a copy of the samples in the order they were recorded
+     */
+    public synchronized List<Sample> getSamples() {
+        return new ArrayList<>(samples);
+    }
+
+    public synchronized int size() {
+        return samples.size();
+    }
+
+    public synchronized void write(Writer writer) throws IOException {
+        writer.write(HEADER);
+        writer.write('\n');
+        writer.write("# timestampNanos,arrivalNanos,source,values...\n");
+        StringBuilder line = new StringBuilder();
+        for (Sample sample : samples) {
+            line.setLength(0);
+            line.append(sample.timestampNanos).append(',')
+                    .append(sample.arrivalNanos).append(',')
+                    .append(sample.isTruth() ? TRUTH : sample.source.name());
+            // Double.toString round trips exactly and ignores the locale
+            for (double value : sample.values)
+                line.append(',').append(Double.toString(value));
+            line.append('\n');
+            writer.write(line.toString());
+        }
+        writer.flush();
+    }
+
+    /**
+     * One measurement or ground truth.
+     */
+    public static class Sample {
+
+        private final MeasurementSource source;
+        private final long timestampNanos, arrivalNanos;
+        private final double[] values;
+
+        Sample(MeasurementSource source, long timestampNanos, long arrivalNanos, double[] values) {
+            this.source = source;
+            this.timestampNanos = timestampNanos;
+            this.arrivalNanos = arrivalNanos;
+            this.values = values;
+        }
+
+        /**
+         * @return the source, or null for ground truth
+         */
+        public MeasurementSource getSource() {
+            return source;
+        }
+
+        public boolean isTruth() {
+            return source == null;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public long getArrivalNanos() {
+            return arrivalNanos;
+        }
+
+        /**
+         * @return the values, which must not be modified
+         */
+        public double[] getValues() {
+            return values;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tunes {@link FilterNoiseParameters} against a recorded {@link MeasurementTrace} by replaying it with every
+ * combination of scaled noise values, spread across all cores.
+ * <p>
+ * Each swept value is the base value times one of the multipliers. Only the process noise and the noise of sources
+ * that appear in the trace are swept, so there are {@code multipliers.length ^ (1 + sources)} candidates.
+ */
+@RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+public class NoiseParameterSweep {
+
+    public static final double DEFAULT_HEADING_WEIGHT = .1;
+
+    private static final int PROCESS = 0, ENCODER = 1, GYRO = 2, ACCELEROMETER = 3, MAGNETOMETER = 4, VUFORIA = 5;
+    private static final int PARAMETER_COUNT = 6;
+
+    private final List<MeasurementTrace.Sample> samples;
+    private final FilterNoiseParameters baseParameters;
+    private final double[] multipliers;
+    private final int[] sweptParameters;
+    private double headingWeight = DEFAULT_HEADING_WEIGHT;
+
+    /**
+     * @param baseParameters the values the multipliers scale
+     * @param multipliers    the factors to try on each value, include 1 to keep the base value as a candidate
+     */
+    public NoiseParameterSweep(MeasurementTrace trace, FilterNoiseParameters baseParameters, double... multipliers) {
+        if (multipliers.length == 0)
+            throw new IllegalArgumentException("At least one multiplier is needed");
+        for (double multiplier : multipliers)
+            if (!(multiplier > 0))
+                throw new IllegalArgumentException("Multipliers must be > 0, was " + multiplier);
+
+        this.samples = TraceReplay.sortByArrival(trace.getSamples());
+        this.baseParameters = baseParameters;
+        this.multipliers = multipliers.clone();
+
+        boolean[] present = new boolean[PARAMETER_COUNT];
+        present[PROCESS] = true;
+        for (MeasurementTrace.Sample sample : samples)
+            if (!sample.isTruth() && parameterFor(sample.getSource()) >= 0)
+                present[parameterFor(sample.getSource())] = true;
+        int count = 0;
+        int[] swept = new int[PARAMETER_COUNT];
+        for (int i = 0; i < PARAMETER_COUNT; i++)
+            if (present[i])
+                swept[count++] = i;
+        this.sweptParameters = Arrays.copyOf(swept, count);
+    }
+
+    private static int parameterFor(MeasurementSource source) {
+        switch (source) {
+            case ENCODER:
+                return ENCODER;
+            case GYRO:
+                return GYRO;
+            case ACCELEROMETER:
+                return ACCELEROMETER;
+            case MAGNETOMETER:
+                return MAGNETOMETER;
+            case VUFORIA:
+                return VUFORIA;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @param headingWeight how many inches of position error one degree of heading error is worth
+     */
+    public void setHeadingWeight(double headingWeight) {
+        this.headingWeight = headingWeight;
+    }
+
+    public int getCandidateCount() {
+        int count = 1;
+        for (int i = 0; i < sweptParameters.length; i++)
+            count *= multipliers.length;
+        return count;
+    }
+
+    /**
+     * @param index in [0, {@link #getCandidateCount()}), read as a number with one digit per swept parameter
+     */
+    FilterNoiseParameters getCandidate(int index) {
+        double[] values = {baseParameters.getProcessNoise(), baseParameters.getEncoderNoise(), baseParameters.getGyroNoise(),
+                baseParameters.getAccelerometerNoise(), baseParameters.getMagnetometerNoise(), baseParameters.getVuforiaNoise()};
+        for (int parameter : sweptParameters) {
+            values[parameter] *= multipliers[index % multipliers.length];
+            index /= multipliers.length;
+        }
+        return new FilterNoiseParameters.Builder()
+                .processNoise(values[PROCESS])
+                .encoderNoise(values[ENCODER])
+                .gyroNoise(values[GYRO])
+                .accelerometerNoise(values[ACCELEROMETER])
+                .magnetometerNoise(values[MAGNETOMETER])
+                .vuforiaNoise(values[VUFORIA])
+                .build();
+    }
+
+    /**
+     * Runs the sweep on a new pool with one thread per core.
+     *
+     * @return every candidate's result, best first
+     */
+    public List<TraceReplay.Result> run() {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            return run(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * @return every candidate's result, best first
+     */
+    public List<TraceReplay.Result> run(ForkJoinPool pool) {
+        TraceReplay.Result[] results = new TraceReplay.Result[getCandidateCount()];
+        pool.invoke(new SweepTask(results, 0, results.length));
+
+        List<TraceReplay.Result> sorted = new ArrayList<>(Arrays.asList(results));
+        final double headingWeight = this.headingWeight;
+        Collections.sort(sorted, new Comparator<TraceReplay.Result>() {
+            @Override
+            public int compare(TraceReplay.Result a, TraceReplay.Result b) {
+                // NaN scores, from traces without truth, sort last
+                return Double.compare(a.getScore(headingWeight), b.getScore(headingWeight));
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * Splits the candidates in half until each task replays a single one, a replay is long enough to be worth it.
+     */
+    private class SweepTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TraceReplay.Result[] results;
+        private final int from, to;
+
+        SweepTask(TraceReplay.Result[] results, int from, int to) {
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                results[from] = TraceReplay.replay(samples, getCandidate(from));
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new SweepTask(results, from, middle), new SweepTask(results, middle, to));
+            }
+        }
+    }
+}
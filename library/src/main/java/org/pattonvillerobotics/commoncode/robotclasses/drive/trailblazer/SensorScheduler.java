@@ -0,0 +1,160 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads every {@link SensorSource} on one shared thread instead of a thread per sensor.
+ * <p>
+ * The thread wakes once a tick and reads, in priority order, every source whose period has elapsed, so sources
+ * whose reads land in the same tick are batched into one wake-up. A source that falls behind skips the reads it
+ * missed instead of reading back to back, and a source that throws is counted and read again next period.
+ */
+public class SensorScheduler {
+
+    public static final long DEFAULT_TICK_MS = 5;
+    private static final long STOP_TIMEOUT_MS = 1000;
+
+    private final KalmanFilterRunner runner;
+    private final long tickNanos;
+    private final List<SensorSource> sources = new ArrayList<>();
+    private final AtomicLong readCount = new AtomicLong(), errorCount = new AtomicLong();
+
+    private long[] nextReadNanos = new long[0];
+    private ScheduledExecutorService executor;
+    private volatile Thread schedulerThread;
+    private volatile RuntimeException lastError;
+
+    public SensorScheduler(KalmanFilterRunner runner) {
+        this(runner, DEFAULT_TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param runner the runner every source submits to
+     * @param tick   how often to check for sources that are due, the finest rate any source can be read at
+     */
+    public SensorScheduler(KalmanFilterRunner runner, long tick, TimeUnit unit) {
+        if (tick <= 0)
+            throw new IllegalArgumentException("Tick must be positive, was " + tick);
+        this.runner = runner;
+        this.tickNanos = unit.toNanos(tick);
+    }
+
+    /**
+     * Adds a source to read. Sources can only be added before {@link #start()}.
+     */
+    public synchronized void addSource(SensorSource source) {
+        if (executor != null)
+            throw new IllegalStateException("Sources must be added before the scheduler is started");
+        if (source.getPeriodNanos() <= 0)
+            throw new IllegalArgumentException("Sensor source period must be positive, was " + source.getPeriodNanos());
+
+        int index = 0;
+        while (index < sources.size() && sources.get(index).getPriority() >= source.getPriority())
+            index++;
+        sources.add(index, source);
+    }
+
+    public synchronized void start() {
+        if (executor != null)
+            throw new IllegalStateException("The scheduler can only be started once");
+
+        reset(System.nanoTime());
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Sensor Scheduler Thread");
+                thread.setDaemon(true);
+                schedulerThread = thread;
+                return thread;
+            }
+        });
+        executor.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                tick(System.nanoTime());
+            }
+        }, 0, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops reading and waits for a read in progress to finish, so no source is touched after this returns. Reads
+     * are not interrupted, since interrupting a hardware read can leave the bus in a bad state.
+     */
+    public synchronized void stop() {
+        if (executor == null || executor.isShutdown())
+            return;
+
+        executor.shutdown();
+        // A source stopping the scheduler from its own read cannot wait for itself
+        if (Thread.currentThread() == schedulerThread)
+            return;
+        try {
+            if (!executor.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return executor != null && !executor.isTerminated();
+    }
+
+    /**
+     * Makes every source due at {@code nowNanos}.
+     */
+    synchronized void reset(long nowNanos) {
+        nextReadNanos = new long[sources.size()];
+        for (int i = 0; i < nextReadNanos.length; i++)
+            nextReadNanos[i] = nowNanos;
+    }
+
+    /**
+     * Reads every source that is due. Only called from one thread at a time.
+     */
+    void tick(long nowNanos) {
+        for (int i = 0; i < nextReadNanos.length; i++) {
+            if (nowNanos - nextReadNanos[i] < 0)
+                continue;
+
+            SensorSource source = sources.get(i);
+            try {
+                source.read(runner, nowNanos);
+                readCount.incrementAndGet();
+            } catch (RuntimeException e) {
+                // An exception escaping would silently cancel every future tick
+                errorCount.incrementAndGet();
+                lastError = e;
+            }
+
+            nextReadNanos[i] += source.getPeriodNanos();
+            if (nowNanos - nextReadNanos[i] >= 0)
+                nextReadNanos[i] = nowNanos + source.getPeriodNanos();
+        }
+    }
+
+    public long getReadCount() {
+        return readCount.get();
+    }
+
+    /**
+     * @return the number of reads that threw an exception
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * @return the last exception a source threw, or null
+     */
+    public RuntimeException getLastError() {
+        return lastError;
+    }
+}
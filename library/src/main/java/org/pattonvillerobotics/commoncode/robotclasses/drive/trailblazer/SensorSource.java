@@ -0,0 +1,29 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+/**
+ * A sensor that {@link SensorScheduler} reads at a fixed rate and feeds into a {@link KalmanFilterRunner}.
+ * <p>
+ * Sources are read one after another on the scheduler's thread, so a read should not block for long. Each source
+ * stamps its own measurements with when the sensor was actually read, e.g. halfway through a slow I2C read.
+ */
+public interface SensorSource {
+
+    /**
+     * @return how long to wait between reads, in nanoseconds
+     */
+    long getPeriodNanos();
+
+    /**
+     * Sources due in the same tick are read highest priority first, and ones with the same priority in the order they
+     * were added.
+     */
+    int getPriority();
+
+    /**
+     * Reads the sensor and submits any measurement to {@code runner}.
+     *
+     * @param runner    the runner to submit measurements to
+     * @param tickNanos when the tick this read is part of started, in {@link System#nanoTime()} time
+     */
+    void read(KalmanFilterRunner runner, long tickNanos);
+}
@@ -0,0 +1,15 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+/**
+ * Receives the filter's state at a fixed rate, see {@link KalmanFilterRunner#setStateListener(StateListener, double)}.
+ */
+public interface StateListener {
+
+    /**
+     * Called on the filter thread, so return quickly.
+     *
+     * @param state          the state extrapolated to {@code timestampNanos}, only valid during this call
+     * @param timestampNanos the time the state describes, in {@link System#nanoTime()} time
+     */
+    void onStateUpdate(double[] state, long timestampNanos);
+}
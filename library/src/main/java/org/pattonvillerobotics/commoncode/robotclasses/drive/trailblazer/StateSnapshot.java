@@ -0,0 +1,71 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size array of doubles written by one thread and read by any number of threads without locking.
+ * <p>
+ * The writer makes the version odd while it writes and even when it is done, and readers retry until they see the
+ * same even version before and after copying. Neither side allocates.
+ */
+public class StateSnapshot {
+
+    private final AtomicLongArray values;
+    private volatile long version;
+    private volatile long timestampNanos;
+
+    public StateSnapshot(int size) {
+        values = new AtomicLongArray(size);
+    }
+
+    public int size() {
+        return values.length();
+    }
+
+    /**
+     * Only one thread may write.
+     *
+     * @param source         the values to publish
+     * @param timestampNanos the time the values describe, in {@link System#nanoTime()} time
+     */
+    public void write(double[] source, long timestampNanos) {
+        long nextVersion = version + 1;
+        version = nextVersion;
+        for (int i = 0; i < values.length(); i++)
+            values.set(i, Double.doubleToRawLongBits(source[i]));
+        this.timestampNanos = timestampNanos;
+        version = nextVersion + 1;
+    }
+
+    /**
+     * @param out the array to copy a consistent set of values into
+     * @return the time the values describe, in {@link System#nanoTime()} time
+     */
+    public long read(double[] out) {
+        while (true) {
+            long before = version;
+            if ((before & 1) == 0) {
+                for (int i = 0; i < values.length(); i++)
+                    out[i] = Double.longBitsToDouble(values.get(i));
+                long timestamp = timestampNanos;
+                if (version == before)
+                    return timestamp;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * @return a single value from the latest write, which is always consistent on its own
+     */
+    public double get(int index) {
+        return Double.longBitsToDouble(values.get(index));
+    }
+
+    /**
+     * @return the number of completed writes
+     */
+    public long getVersion() {
+        return version / 2;
+    }
+}
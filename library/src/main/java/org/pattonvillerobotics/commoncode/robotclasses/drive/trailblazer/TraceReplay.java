@@ -0,0 +1,175 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Pushes a {@link MeasurementTrace} through the same {@link KalmanFilterRunner} the robot uses, as fast as it will
+ * go, and scores the estimate against the trace's ground truth.
+ * <p>
+ * Measurements are submitted in the order they arrived, so late ones are fused exactly as they were on the robot.
+ * Each ground truth sample is compared with the estimate the robot would have had at that moment.
+ */
+public class TraceReplay {
+
+    private static final int STATE_X = 0, STATE_Y = 1, STATE_HEADING = 6;
+
+    private TraceReplay() {
+    }
+
+    /**
+     * @param parameters the noise to build a {@link FastKalmanFilter} and the measurement models with
+     */
+    public static Result replay(MeasurementTrace trace, FilterNoiseParameters parameters) {
+        return replay(sortByArrival(trace.getSamples()), parameters);
+    }
+
+    static List<MeasurementTrace.Sample> sortByArrival(List<MeasurementTrace.Sample> samples) {
+        List<MeasurementTrace.Sample> sorted = new ArrayList<>(samples);
+        // Stable, so samples that arrived together keep their recorded order
+        Collections.sort(sorted, new Comparator<MeasurementTrace.Sample>() {
+            @Override
+            public int compare(MeasurementTrace.Sample a, MeasurementTrace.Sample b) {
+                long difference = a.getArrivalNanos() - b.getArrivalNanos();
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+        return sorted;
+    }
+
+    /**
+     * @param samplesByArrival samples sorted by {@link #sortByArrival(List)}, only read
+     */
+    static Result replay(List<MeasurementTrace.Sample> samplesByArrival, FilterNoiseParameters parameters) {
+        long startTimeNanos = Long.MAX_VALUE;
+        for (MeasurementTrace.Sample sample : samplesByArrival)
+            startTimeNanos = FastMath.min(startTimeNanos, sample.getTimestampNanos());
+        if (samplesByArrival.isEmpty())
+            startTimeNanos = 0;
+
+        FastKalmanFilter filter = new FastKalmanFilter(parameters.getProcessNoiseMatrix(), KalmanFilterGuidance.getDefaultInitialState());
+        KalmanFilterRunner runner = new KalmanFilterRunner(filter, KalmanFilterRunner.DEFAULT_QUEUE_CAPACITY, startTimeNanos);
+        double[] state = new double[FastKalmanFilter.STATE_DIMENSION];
+
+        double positionSquaredError = 0, headingSquaredError = 0;
+        int truthCount = 0, measurementCount = 0, skippedCount = 0;
+        for (MeasurementTrace.Sample sample : samplesByArrival) {
+            double[] values = sample.getValues();
+            if (sample.isTruth()) {
+                runner.getState(state, sample.getTimestampNanos());
+                double dx = state[STATE_X] - values[0];
+                double dy = state[STATE_Y] - values[1];
+                double dHeading = state[STATE_HEADING] - values[2];
+                dHeading -= 360 * FastMath.rint(dHeading / 360);
+                positionSquaredError += dx * dx + dy * dy;
+                headingSquaredError += dHeading * dHeading;
+                truthCount++;
+                continue;
+            }
+
+            MeasurementModel measurementModel = parameters.getMeasurementModel(sample.getSource());
+            if (measurementModel == null || measurementModel.getMeasurementMatrix().getRowDimension() != values.length) {
+                // External measurements carry no model, and anything else is from a different filter layout
+                skippedCount++;
+                continue;
+            }
+            runner.submit(sample.getSource(), measurementModel, sample.getTimestampNanos(), values, values.length);
+            runner.update();
+            measurementCount++;
+        }
+
+        long rejectedCount = 0;
+        for (MeasurementSource source : MeasurementSource.values())
+            rejectedCount += runner.getRejectedCount(source) + runner.getLateCount(source);
+
+        return new Result(parameters,
+                truthCount == 0 ? Double.NaN : FastMath.sqrt(positionSquaredError / truthCount),
+                truthCount == 0 ? Double.NaN : FastMath.sqrt(headingSquaredError / truthCount),
+                truthCount, measurementCount, skippedCount, rejectedCount);
+    }
+
+    /**
+     * How well a set of parameters did on a trace.
+     */
+    public static class Result {
+
+        private final FilterNoiseParameters parameters;
+        private final double positionRmse, headingRmse;
+        private final int truthCount, measurementCount, skippedCount;
+        private final long rejectedCount;
+
+        Result(FilterNoiseParameters parameters, double positionRmse, double headingRmse, int truthCount, int measurementCount, int skippedCount, long rejectedCount) {
+            this.parameters = parameters;
+            this.positionRmse = positionRmse;
+            this.headingRmse = headingRmse;
+            this.truthCount = truthCount;
+            this.measurementCount = measurementCount;
+            this.skippedCount = skippedCount;
+            this.rejectedCount = rejectedCount;
+        }
+
+        public FilterNoiseParameters getParameters() {
+            return parameters;
+        }
+
+        /**
+         * @return the root mean square distance from the truth in inches, or NaN without any truth
+         */
+        public double getPositionRmse() {
+            return positionRmse;
+        }
+
+        /**
+         * @return the root mean square heading error in degrees, or NaN without any truth
+         */
+        public double getHeadingRmse() {
+            return headingRmse;
+        }
+
+        /**
+         * @param headingWeight how many inches of position error one degree of heading error is worth
+         * @return the error to minimize, lower is better
+         */
+        public double getScore(double headingWeight) {
+            return positionRmse + headingWeight * headingRmse;
+        }
+
+        public int getTruthCount() {
+            return truthCount;
+        }
+
+        public int getMeasurementCount() {
+            return measurementCount;
+        }
+
+        /**
+         * @return the number of measurements without a model in {@link FilterNoiseParameters}
+         */
+        public int getSkippedCount() {
+            return skippedCount;
+        }
+
+        /**
+         * @return the number of measurements the filter rejected or that arrived too late to fuse
+         */
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Result{" +
+                    "positionRmse=" + positionRmse +
+                    ", headingRmse=" + headingRmse +
+                    ", truthCount=" + truthCount +
+                    ", measurementCount=" + measurementCount +
+                    ", parameters=" + parameters +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.exception.DimensionMismatchException;
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
+import org.apache.commons.math3.linear.NonSymmetricMatrixException;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * A {@link FastKalmanFilter} that never stores P, only its factors P = U * D * U' with U unit upper triangular and D
+ * diagonal.
+ * <p>
+ * P built back from the factors is symmetric by construction and stays positive semi-definite as long as D does,
+ * which both updates guarantee, so long runs cannot drift into a covariance that {@link CholeskyDecomposition}
+ * rejects. Measurements use Bierman's scalar update, with correlated measurement noise whitened first, and
+ * predictions use Thornton's modified weighted Gram-Schmidt update. Nothing allocates after construction.
+ * <p>
+ * Not thread-safe! Synchronize on the object for safety.
+ */
+public class UDKalmanFilter implements KalmanFilterEngine {
+
+    private static final int N = FastKalmanFilter.STATE_DIMENSION;
+
+    private final double[] x = new double[N]; // Current state vector
+    private final double[] U = new double[N * N]; // unit upper triangular factor of P
+    private final double[] D = new double[N]; // diagonal factor of P
+    private final double[] processNoiseU = new double[N * N];
+    private final double[] processNoiseD = new double[N];
+
+    // Time update scratch, W = [F * U | Uq] weighted by [D | Dq]
+    private final double[] W = new double[N * 2 * N];
+    private final double[] weights = new double[2 * N];
+    private final double[] weightedRow = new double[2 * N];
+
+    // Measurement scratch, sized for the largest possible measurement
+    private final double[] H = new double[N * N];
+    private final double[] R = new double[N * N];
+    private final double[] z = new double[N];
+    private final double[] a = new double[N];
+    private final double[] b = new double[N];
+
+    private final RealVector stateView = new ArrayRealVector(x, false);
+
+    public UDKalmanFilter(RealMatrix processNoise, RealVector initialStateEstimate) {
+        if (processNoise.getRowDimension() != N)
+            throw new DimensionMismatchException(processNoise.getRowDimension(), N);
+        if (processNoise.getColumnDimension() != N)
+            throw new DimensionMismatchException(processNoise.getColumnDimension(), N);
+        if (initialStateEstimate.getDimension() != N)
+            throw new DimensionMismatchException(initialStateEstimate.getDimension(), N);
+
+        double[] flatProcessNoise = new double[N * N];
+        for (int i = 0; i < N; i++) {
+            x[i] = initialStateEstimate.getEntry(i);
+            for (int j = 0; j < N; j++)
+                flatProcessNoise[i * N + j] = processNoise.getEntry(i, j);
+        }
+        decompose(flatProcessNoise, processNoiseU, processNoiseD);
+        // Same zero initial covariance as the other filters
+        decompose(new double[N * N], U, D);
+    }
+
+    /**
+     * Factors a symmetric positive semi-definite matrix into P = U * D * U'.
+     *
+     * @throws NonSymmetricMatrixException        if {@code P} is not symmetric
+     * @throws NonPositiveDefiniteMatrixException if {@code P} has a negative direction
+     */
+    private static void decompose(double[] P, double[] U, double[] D) {
+        for (int i = 0; i < N; i++) {
+            for (int j = i + 1; j < N; j++) {
+                double pIJ = P[i * N + j];
+                double pJI = P[j * N + i];
+                double maxDelta = CholeskyDecomposition.DEFAULT_RELATIVE_SYMMETRY_THRESHOLD * FastMath.max(FastMath.abs(pIJ), FastMath.abs(pJI));
+                if (FastMath.abs(pIJ - pJI) > maxDelta)
+                    throw new NonSymmetricMatrixException(i, j, CholeskyDecomposition.DEFAULT_RELATIVE_SYMMETRY_THRESHOLD);
+            }
+        }
+
+        for (int i = 0; i < N * N; i++)
+            U[i] = 0;
+        for (int j = N - 1; j >= 0; j--) {
+            double d = P[j * N + j];
+            for (int k = j + 1; k < N; k++)
+                d -= D[k] * U[j * N + k] * U[j * N + k];
+            if (d < -CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD)
+                throw new NonPositiveDefiniteMatrixException(d, j, CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD);
+            D[j] = FastMath.max(d, 0);
+            U[j * N + j] = 1;
+
+            for (int i = 0; i < j; i++) {
+                double u = P[i * N + j];
+                for (int k = j + 1; k < N; k++)
+                    u -= D[k] * U[i * N + k] * U[j * N + k];
+                // A zero direction leaves nothing to correlate with
+                U[i * N + j] = D[j] > 0 ? u / D[j] : 0;
+            }
+        }
+    }
+
+    @Override
+    public void extrapolateState(double[] state, double dt) {
+        FastKalmanFilter.predictState(state, dt);
+    }
+
+    @Override
+    public RealVector predictNextState(final double dt) {
+        predict(dt);
+        return stateView;
+    }
+
+    /**
+     * Same as {@link #predictNextState(double)}, without returning the state.
+     *
+     * @param dt the elapsed time in seconds
+     */
+    public void predict(final double dt) {
+        FastKalmanFilter.predictState(x, dt);
+        double dt2 = dt * dt / 2;
+        double processNoiseScale = dt / PROCESS_NOISE_PERIOD_S;
+
+        // W = [F * U | Uq], F only adds dt and dt^2/2 multiples of later rows
+        int w = 2 * N;
+        for (int i = 0; i < N; i++) {
+            System.arraycopy(U, i * N, W, i * w, N);
+            System.arraycopy(processNoiseU, i * N, W, i * w + N, N);
+        }
+        for (int k = 0; k < N; k++) {
+            W[k] += dt * U[2 * N + k] + dt2 * U[4 * N + k];
+            W[w + k] += dt * U[3 * N + k] + dt2 * U[5 * N + k];
+            W[2 * w + k] += dt * U[4 * N + k];
+            W[3 * w + k] += dt * U[5 * N + k];
+            W[6 * w + k] += dt * U[7 * N + k];
+        }
+        for (int k = 0; k < N; k++) {
+            weights[k] = D[k];
+            weights[N + k] = processNoiseD[k] * processNoiseScale;
+        }
+
+        // Modified weighted Gram-Schmidt, from the last row up
+        for (int j = N - 1; j >= 0; j--) {
+            double d = 0;
+            for (int k = 0; k < w; k++) {
+                weightedRow[k] = weights[k] * W[j * w + k];
+                d += W[j * w + k] * weightedRow[k];
+            }
+            D[j] = d;
+
+            for (int i = 0; i < j; i++) {
+                double u = 0;
+                if (d > 0) {
+                    for (int k = 0; k < w; k++)
+                        u += W[i * w + k] * weightedRow[k];
+                    u /= d;
+                    for (int k = 0; k < w; k++)
+                        W[i * w + k] -= u * W[j * w + k];
+                }
+                U[i * N + j] = u;
+            }
+        }
+    }
+
+    /**
+     * Reads the model into preallocated buffers. {@link org.apache.commons.math3.filter.DefaultMeasurementModel}
+     * returns its matrices without copying, so this does not allocate.
+     */
+    @Override
+    public RealVector measureAndGetState(MeasurementModel measurementModel, RealVector z) {
+        RealMatrix measurementMatrix = measurementModel.getMeasurementMatrix();
+        RealMatrix measurementNoise = measurementModel.getMeasurementNoise();
+        int m = measurementMatrix.getRowDimension();
+        if (m > N)
+            throw new DimensionMismatchException(m, N);
+        if (measurementMatrix.getColumnDimension() != N)
+            throw new DimensionMismatchException(measurementMatrix.getColumnDimension(), N);
+        if (z.getDimension() != m)
+            throw new DimensionMismatchException(z.getDimension(), m);
+
+        for (int r = 0; r < m; r++) {
+            this.z[r] = z.getEntry(r);
+            for (int k = 0; k < N; k++)
+                H[r * N + k] = measurementMatrix.getEntry(r, k);
+            for (int c = 0; c < m; c++)
+                R[r * m + c] = measurementNoise.getEntry(r, c);
+        }
+
+        update(m);
+        return stateView;
+    }
+
+    /**
+     * Primitive version of {@link #measureAndGetState(MeasurementModel, RealVector)}.
+     *
+     * @param measurementMatrix the m x 8 measurement matrix, row-major
+     * @param measurementNoise  the m x m measurement noise matrix, row-major
+     * @param z                 the measurement of the state
+     * @param m                 the dimension of the measurement
+     */
+    public void measure(double[] measurementMatrix, double[] measurementNoise, double[] z, int m) {
+        if (m < 1 || m > N)
+            throw new DimensionMismatchException(m, N);
+        System.arraycopy(measurementMatrix, 0, H, 0, m * N);
+        System.arraycopy(measurementNoise, 0, R, 0, m * m);
+        System.arraycopy(z, 0, this.z, 0, m);
+
+        update(m);
+    }
+
+    private void update(int m) {
+        // Throws before anything changes if R is invalid
+        whiten(m);
+        for (int r = 0; r < m; r++)
+            updateScalar(r);
+    }
+
+    /**
+     * Factors R = L * L' and replaces H and z with L^-1 * H and L^-1 * z, so the rows become independent
+     * measurements with unit noise. Uncorrelated noise just scales each row.
+     */
+    private void whiten(int m) {
+        for (int i = 0; i < m; i++) {
+            for (int j = i + 1; j < m; j++) {
+                double rIJ = R[i * m + j];
+                double rJI = R[j * m + i];
+                double maxDelta = CholeskyDecomposition.DEFAULT_RELATIVE_SYMMETRY_THRESHOLD * FastMath.max(FastMath.abs(rIJ), FastMath.abs(rJI));
+                if (FastMath.abs(rIJ - rJI) > maxDelta)
+                    throw new NonSymmetricMatrixException(i, j, CholeskyDecomposition.DEFAULT_RELATIVE_SYMMETRY_THRESHOLD);
+            }
+        }
+
+        // L in the lower triangle of R
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = R[i * m + j];
+                for (int k = 0; k < j; k++)
+                    sum -= R[i * m + k] * R[j * m + k];
+                if (i == j) {
+                    if (sum <= CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD)
+                        throw new NonPositiveDefiniteMatrixException(sum, i, CholeskyDecomposition.DEFAULT_ABSOLUTE_POSITIVITY_THRESHOLD);
+                    R[i * m + i] = FastMath.sqrt(sum);
+                } else {
+                    R[i * m + j] = sum / R[j * m + j];
+                }
+            }
+        }
+
+        // Forward substitution
+        for (int i = 0; i < m; i++) {
+            for (int k = 0; k < i; k++) {
+                double l = R[i * m + k];
+                if (l != 0) {
+                    z[i] -= l * z[k];
+                    for (int c = 0; c < N; c++)
+                        H[i * N + c] -= l * H[k * N + c];
+                }
+            }
+            double inverse = 1 / R[i * m + i];
+            z[i] *= inverse;
+            for (int c = 0; c < N; c++)
+                H[i * N + c] *= inverse;
+        }
+    }
+
+    /**
+     * Bierman's update for row {@code r} of the whitened measurement, which has unit noise.
+     */
+    private void updateScalar(int r) {
+        double innovation = z[r];
+        for (int k = 0; k < N; k++)
+            innovation -= H[r * N + k] * x[k];
+
+        // a = U' * h, b = D * a
+        for (int j = 0; j < N; j++) {
+            double sum = H[r * N + j];
+            for (int i = 0; i < j; i++)
+                sum += U[i * N + j] * H[r * N + i];
+            a[j] = sum;
+            b[j] = D[j] * sum;
+        }
+
+        double alpha = 1, gamma = 1;
+        for (int j = 0; j < N; j++) {
+            double beta = alpha;
+            alpha += a[j] * b[j];
+            double lambda = -a[j] * gamma;
+            gamma = 1 / alpha;
+            D[j] *= beta * gamma;
+            for (int i = 0; i < j; i++) {
+                double u = U[i * N + j];
+                U[i * N + j] = u + b[i] * lambda;
+                b[i] += b[j] * u;
+            }
+        }
+
+        // b is now the unnormalized gain
+        double scale = innovation * gamma;
+        for (int i = 0; i < N; i++)
+            x[i] += b[i] * scale;
+    }
+
+    /**
+     * @return a live view of the state, which changes with every prediction and measurement
+     */
+    @Override
+    public RealVector getCurrentState() {
+        return stateView;
+    }
+
+    /**
+     * @param out the array to copy the state into
+     */
+    public void getCurrentState(double[] out) {
+        System.arraycopy(x, 0, out, 0, N);
+    }
+
+    /**
+     * @param out the array to copy D of P = U * D * U' into, never negative
+     */
+    public void getDiagonalFactor(double[] out) {
+        System.arraycopy(D, 0, out, 0, N);
+    }
+
+    @Override
+    public void getState(double[] state, double[] covariance) {
+        System.arraycopy(x, 0, state, 0, N);
+        for (int i = 0; i < N; i++) {
+            for (int j = i; j < N; j++) {
+                // U is upper triangular, so only k >= j contributes
+                double sum = 0;
+                for (int k = j; k < N; k++)
+                    sum += U[i * N + k] * D[k] * U[j * N + k];
+                covariance[i * N + j] = sum;
+                covariance[j * N + i] = sum;
+            }
+        }
+    }
+
+    /**
+     * @throws NonSymmetricMatrixException        if {@code covariance} is not symmetric
+     * @throws NonPositiveDefiniteMatrixException if {@code covariance} has a negative direction
+     */
+    @Override
+    public void setState(double[] state, double[] covariance) {
+        decompose(covariance, U, D);
+        System.arraycopy(state, 0, x, 0, N);
+    }
+
+    /**
+     * @return the error covariance matrix, built from its factors
+     */
+    @Override
+    public RealMatrix getErrorCovariance() {
+        double[] state = new double[N], covariance = new double[N * N];
+        getState(state, covariance);
+        Array2DRowRealMatrix matrix = new Array2DRowRealMatrix(N, N);
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                matrix.setEntry(i, j, covariance[i * N + j]);
+        return matrix;
+    }
+}
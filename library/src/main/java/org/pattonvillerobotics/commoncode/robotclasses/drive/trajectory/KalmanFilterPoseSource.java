@@ -0,0 +1,45 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory;
+
+import org.apache.commons.math3.util.FastMath;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.ExtendedKalmanFilter;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.KalmanFilterRunner;
+
+/**
+ * Reads the pose from a running filter, extrapolated to now. Works with the 8 state filters, whose heading is in
+ * degrees, and with the {@link ExtendedKalmanFilter}, whose heading is in radians.
+ */
+public class KalmanFilterPoseSource implements PoseSource {
+
+    private static final int X = 0, Y = 1, HEADING = 6;
+
+    private final KalmanFilterRunner runner;
+    private final boolean extended;
+    private final ThreadLocal<double[]> state;
+
+    public KalmanFilterPoseSource(KalmanFilterRunner runner) {
+        this.runner = runner;
+        final int size = runner.getSnapshot().size();
+        this.extended = size == ExtendedKalmanFilter.STATE_DIMENSION;
+        this.state = new ThreadLocal<double[]>() {
+            @Override
+            protected double[] initialValue() {
+                return new double[size];
+            }
+        };
+    }
+
+    @Override
+    public void getPose(double[] out) {
+        double[] state = this.state.get();
+        runner.getState(state, System.nanoTime());
+        if (extended) {
+            out[0] = state[ExtendedKalmanFilter.X];
+            out[1] = state[ExtendedKalmanFilter.Y];
+            out[2] = state[ExtendedKalmanFilter.HEADING];
+        } else {
+            out[0] = state[X];
+            out[1] = state[Y];
+            out[2] = FastMath.toRadians(state[HEADING]);
+        }
+    }
+}
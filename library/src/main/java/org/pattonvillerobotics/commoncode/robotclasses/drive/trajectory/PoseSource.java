@@ -0,0 +1,14 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory;
+
+/**
+ * Where the robot is, for a {@link RamseteFollower}.
+ */
+public interface PoseSource {
+
+    /**
+     * Safe to call from any thread.
+     *
+     * @param out set to x and y in field inches, and the heading in radians counterclockwise from the field x axis
+     */
+    void getPose(double[] out);
+}
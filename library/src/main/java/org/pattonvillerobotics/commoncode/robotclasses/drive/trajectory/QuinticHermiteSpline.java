@@ -0,0 +1,74 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * A curve between two {@link Waypoint}s, x and y each a quintic polynomial in a parameter t from 0 to 1. It leaves
+ * and arrives along the waypoints' headings with no curvature at either end, so curves joined at a waypoint are
+ * smooth through it.
+ */
+public class QuinticHermiteSpline {
+
+    private final double[] x, y;
+
+    public QuinticHermiteSpline(Waypoint start, Waypoint end) {
+        // Tangents as long as the chord keep the curve from looping or flattening out
+        double length = FastMath.hypot(end.getX() - start.getX(), end.getY() - start.getY());
+        double startCos = FastMath.cos(start.getHeadingRadians()), startSin = FastMath.sin(start.getHeadingRadians());
+        double endCos = FastMath.cos(end.getHeadingRadians()), endSin = FastMath.sin(end.getHeadingRadians());
+        this.x = coefficients(start.getX(), length * startCos, 0, end.getX(), length * endCos, 0);
+        this.y = coefficients(start.getY(), length * startSin, 0, end.getY(), length * endSin, 0);
+    }
+
+    /**
+     * @return the polynomial's coefficients, constant term first, for the given value, first and second derivative
+     * at each end
+     */
+    static double[] coefficients(double p0, double v0, double a0, double p1, double v1, double a1) {
+        return new double[]{
+                p0,
+                v0,
+                a0 / 2,
+                -10 * p0 - 6 * v0 - 1.5 * a0 + .5 * a1 - 4 * v1 + 10 * p1,
+                15 * p0 + 8 * v0 + 1.5 * a0 - a1 + 7 * v1 - 15 * p1,
+                -6 * p0 - 3 * v0 - .5 * a0 + .5 * a1 - 3 * v1 + 6 * p1
+        };
+    }
+
+    private static double value(double[] c, double t) {
+        return c[0] + t * (c[1] + t * (c[2] + t * (c[3] + t * (c[4] + t * c[5]))));
+    }
+
+    private static double derivative(double[] c, double t) {
+        return c[1] + t * (2 * c[2] + t * (3 * c[3] + t * (4 * c[4] + t * 5 * c[5])));
+    }
+
+    private static double secondDerivative(double[] c, double t) {
+        return 2 * c[2] + t * (6 * c[3] + t * (12 * c[4] + t * 20 * c[5]));
+    }
+
+    public double getX(double t) {
+        return value(x, t);
+    }
+
+    public double getY(double t) {
+        return value(y, t);
+    }
+
+    /**
+     * @return the direction of travel at {@code t} in radians, in (-π, π]
+     */
+    public double getHeading(double t) {
+        return FastMath.atan2(derivative(y, t), derivative(x, t));
+    }
+
+    /**
+     * @return one over the turning radius in inches, positive turning counterclockwise
+     */
+    public double getCurvature(double t) {
+        double dx = derivative(x, t), dy = derivative(y, t);
+        double ddx = secondDerivative(x, t), ddy = secondDerivative(y, t);
+        double speedSquared = dx * dx + dy * dy;
+        return (dx * ddy - dy * ddx) / (speedSquared * FastMath.sqrt(speedSquared));
+    }
+}
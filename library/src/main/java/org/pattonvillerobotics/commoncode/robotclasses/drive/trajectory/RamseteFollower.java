@@ -0,0 +1,59 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * Works out the forward and turning speed that bring a non-strafing robot back onto a {@link Trajectory}, the
+ * Ramsete controller. Errors along the path are fixed by the forward speed, errors across it and in heading by
+ * turning, more firmly the faster the robot goes.
+ * <p>
+ * Stateless, one follower can serve any number of trajectories.
+ */
+public class RamseteFollower {
+
+    /**
+     * 2 and 0.7 in meters, the values the controller was published with, converted to inches
+     */
+    public static final double DEFAULT_B = 2 * .0254 * .0254, DEFAULT_ZETA = .7;
+
+    private final double b, zeta;
+
+    public RamseteFollower() {
+        this(DEFAULT_B, DEFAULT_ZETA);
+    }
+
+    /**
+     * @param b    how hard to correct, in rad²/in², larger pulls onto the path faster
+     * @param zeta damping in (0, 1), larger overshoots less
+     */
+    public RamseteFollower(double b, double zeta) {
+        if (!(b > 0))
+            throw new IllegalArgumentException("b must be > 0, was " + b);
+        if (!(zeta > 0 && zeta < 1))
+            throw new IllegalArgumentException("zeta must be in (0, 1), was " + zeta);
+        this.b = b;
+        this.zeta = zeta;
+    }
+
+    /**
+     * @param pose      x, y and heading from a {@link PoseSource}
+     * @param reference where the robot should be
+     * @param out       set to the forward speed in inches per second and turn rate in radians per second
+     */
+    public void update(double[] pose, TrajectoryState reference, double[] out) {
+        double cos = FastMath.cos(pose[2]), sin = FastMath.sin(pose[2]);
+        double dx = reference.getX() - pose[0], dy = reference.getY() - pose[1];
+        // The error in the robot's frame
+        double alongError = cos * dx + sin * dy;
+        double acrossError = -sin * dx + cos * dy;
+        double headingError = reference.getHeading() - pose[2];
+        headingError -= 2 * FastMath.PI * FastMath.rint(headingError / (2 * FastMath.PI));
+
+        double velocity = reference.getVelocity(), angularVelocity = reference.getAngularVelocity();
+        double k = 2 * zeta * FastMath.sqrt(angularVelocity * angularVelocity + b * velocity * velocity);
+        double sinc = FastMath.abs(headingError) < 1e-9 ? 1 : FastMath.sin(headingError) / headingError;
+
+        out[0] = velocity * FastMath.cos(headingError) + k * alongError;
+        out[1] = angularVelocity + k * headingError + b * velocity * sinc * acrossError;
+    }
+}
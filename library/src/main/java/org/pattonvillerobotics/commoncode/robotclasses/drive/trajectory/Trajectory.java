@@ -0,0 +1,302 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory;
+
+import org.apache.commons.math3.util.FastMath;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.RobotParameters;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A smooth path through a list of {@link Waypoint}s with a speed for every point on it, ready to be followed. Built
+ * with {@link Builder} from {@link QuinticHermiteSpline}s, which is slow enough that it should happen during init or
+ * before the match with {@link #write(DataOutput)}, see {@link TrajectoryLibrary}.
+ * <p>
+ * The path is sampled every {@link Builder#resolution(double)} inches and stored as parallel arrays. The speed at each
+ * sample is the fastest allowed by the max velocity, by the centripetal acceleration and by the outside wheel on
+ * curves, that can still be reached from the start and stopped from before the end at the max acceleration. Between
+ * samples the acceleration is constant.
+ * <p>
+ * Immutable, so one trajectory can be followed from any thread.
+ */
+public class Trajectory {
+
+    private static final int MAGIC = 0x54524a31; // "TRJ1"
+
+    private final double[] time, distance, x, y, heading, velocity, acceleration, curvature;
+
+    private Trajectory(double[] time, double[] distance, double[] x, double[] y, double[] heading, double[] velocity, double[] acceleration, double[] curvature) {
+        this.time = time;
+        this.distance = distance;
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        this.velocity = velocity;
+        this.acceleration = acceleration;
+        this.curvature = curvature;
+    }
+
+    /**
+     * Reads a trajectory written by {@link #write(DataOutput)}.
+     *
+     * @throws IOException if it isn't a trajectory
+     */
+    public static Trajectory read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a trajectory");
+        int size = in.readInt();
+        if (size < 1)
+            throw new IOException("Trajectory has " + size + " samples");
+        double[][] arrays = new double[8][size];
+        for (double[] array : arrays)
+            for (int i = 0; i < size; i++)
+                array[i] = in.readDouble();
+        return new Trajectory(arrays[0], arrays[1], arrays[2], arrays[3], arrays[4], arrays[5], arrays[6], arrays[7]);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(time.length);
+        for (double[] array : new double[][]{time, distance, x, y, heading, velocity, acceleration, curvature})
+            for (double value : array)
+                out.writeDouble(value);
+    }
+
+    /**
+     * @return how long the trajectory takes to drive, in seconds
+     */
+    public double getDuration() {
+        return time[time.length - 1];
+    }
+
+    /**
+     * @return the length of the path in inches
+     */
+    public double getLength() {
+        return distance[distance.length - 1];
+    }
+
+    public int getSampleCount() {
+        return time.length;
+    }
+
+    /**
+     * @param t   seconds since the start, clamped to the trajectory
+     * @param out set to where the robot should be at {@code t}
+     * @return {@code out}
+     */
+    public TrajectoryState getState(double t, TrajectoryState out) {
+        int last = time.length - 1;
+        if (t <= 0 || last == 0) {
+            set(out, 0, 0, 0, velocity[0]);
+            return out;
+        }
+        if (t >= time[last]) {
+            set(out, time[last], last, 0, velocity[last]);
+            return out;
+        }
+
+        int i = Arrays.binarySearch(time, t);
+        if (i < 0)
+            i = -i - 2;
+
+        // Constant acceleration from sample i
+        double tau = t - time[i];
+        double travelled = velocity[i] * tau + acceleration[i] * tau * tau / 2;
+        double length = distance[i + 1] - distance[i];
+        set(out, t, i, length > 0 ? FastMath.min(1, travelled / length) : 0, velocity[i] + acceleration[i] * tau);
+        return out;
+    }
+
+    /**
+     * @param fraction how far from sample i to the next to interpolate the pose
+     */
+    private void set(TrajectoryState out, double t, int i, double fraction, double v) {
+        if (fraction == 0)
+            out.set(t, x[i], y[i], heading[i], v, acceleration[i], curvature[i]);
+        else
+            out.set(t, lerp(x, i, fraction), lerp(y, i, fraction), lerp(heading, i, fraction), v, acceleration[i], lerp(curvature, i, fraction));
+    }
+
+    private static double lerp(double[] values, int i, double fraction) {
+        return values[i] + (values[i + 1] - values[i]) * fraction;
+    }
+
+    public static class Builder {
+
+        public static final double DEFAULT_RESOLUTION = .5;
+
+        private final List<Waypoint> waypoints = new ArrayList<>();
+        private double maxVelocity, maxAcceleration, maxCentripetalAcceleration, trackWidth;
+        private double resolution = DEFAULT_RESOLUTION;
+
+        public Builder() {
+        }
+
+        /**
+         * Takes the max velocity and acceleration from {@link RobotParameters#motionProfile(double, double)}, and
+         * the track width from the wheel base radius.
+         */
+        public Builder(RobotParameters robotParameters) {
+            this.maxVelocity = robotParameters.getMaxVelocity();
+            this.maxAcceleration = robotParameters.getMaxAcceleration();
+            this.trackWidth = 2 * robotParameters.getWheelBaseRadius();
+        }
+
+        /**
+         * @param heading the direction of travel in degrees counterclockwise from the field x axis
+         */
+        public Builder addWaypoint(double x, double y, double heading) {
+            return addWaypoint(new Waypoint(x, y, heading));
+        }
+
+        public Builder addWaypoint(Waypoint waypoint) {
+            waypoints.add(waypoint);
+            return this;
+        }
+
+        /**
+         * @param maxVelocity in inches per second, along the path
+         */
+        public Builder maxVelocity(double maxVelocity) {
+            this.maxVelocity = maxVelocity;
+            return this;
+        }
+
+        /**
+         * @param maxAcceleration in inches per second squared, along the path
+         */
+        public Builder maxAcceleration(double maxAcceleration) {
+            this.maxAcceleration = maxAcceleration;
+            return this;
+        }
+
+        /**
+         * @param maxCentripetalAcceleration in inches per second squared, what the wheels can take sideways without
+         *                                   sliding, 0 for no limit
+         */
+        public Builder maxCentripetalAcceleration(double maxCentripetalAcceleration) {
+            this.maxCentripetalAcceleration = maxCentripetalAcceleration;
+            return this;
+        }
+
+        /**
+         * @param trackWidth the distance between the left and right wheels in inches, keeps the outside wheel under
+         *                   the max velocity on curves, 0 to ignore
+         */
+        public Builder trackWidth(double trackWidth) {
+            this.trackWidth = trackWidth;
+            return this;
+        }
+
+        /**
+         * @param resolution the distance between samples in inches
+         */
+        public Builder resolution(double resolution) {
+            this.resolution = resolution;
+            return this;
+        }
+
+        public Trajectory build() {
+            if (waypoints.size() < 2)
+                throw new IllegalArgumentException("A trajectory needs at least 2 waypoints");
+            if (!(maxVelocity > 0))
+                throw new IllegalArgumentException("maxVelocity must be > 0");
+            if (!(maxAcceleration > 0))
+                throw new IllegalArgumentException("maxAcceleration must be > 0");
+            if (maxCentripetalAcceleration < 0 || trackWidth < 0)
+                throw new IllegalArgumentException("maxCentripetalAcceleration and trackWidth must be >= 0");
+            if (!(resolution > 0))
+                throw new IllegalArgumentException("resolution must be > 0");
+            for (int i = 1; i < waypoints.size(); i++)
+                if (waypoints.get(i).getX() == waypoints.get(i - 1).getX() && waypoints.get(i).getY() == waypoints.get(i - 1).getY())
+                    throw new IllegalArgumentException("Waypoints " + (i - 1) + " and " + i + " are in the same place");
+
+            Samples samples = new Samples();
+            for (int i = 1; i < waypoints.size(); i++)
+                sampleSpline(new QuinticHermiteSpline(waypoints.get(i - 1), waypoints.get(i)), samples, i == 1);
+            return parameterize(samples);
+        }
+
+        /**
+         * Samples the spline about every {@link #resolution} inches, measuring the distance along it in finer steps.
+         */
+        private void sampleSpline(QuinticHermiteSpline spline, Samples samples, boolean first) {
+            int steps = 64;
+            double estimatedLength = 0;
+            for (int i = 1; i <= steps; i++)
+                estimatedLength += FastMath.hypot(spline.getX(i / (double) steps) - spline.getX((i - 1) / (double) steps),
+                        spline.getY(i / (double) steps) - spline.getY((i - 1) / (double) steps));
+            int count = FastMath.max(2, (int) FastMath.ceil(estimatedLength / resolution));
+
+            // The previous spline's last sample is this one's first
+            for (int i = first ? 0 : 1; i <= count; i++) {
+                double t = i / (double) count;
+                samples.add(spline.getX(t), spline.getY(t), spline.getHeading(t), spline.getCurvature(t));
+            }
+        }
+
+        private Trajectory parameterize(Samples samples) {
+            int n = samples.size;
+            double[] x = Arrays.copyOf(samples.x, n), y = Arrays.copyOf(samples.y, n);
+            double[] heading = Arrays.copyOf(samples.heading, n), curvature = Arrays.copyOf(samples.curvature, n);
+            double[] distance = new double[n], velocity = new double[n], acceleration = new double[n], time = new double[n];
+
+            for (int i = 1; i < n; i++) {
+                distance[i] = distance[i - 1] + FastMath.hypot(x[i] - x[i - 1], y[i] - y[i - 1]);
+                // Unwrap, so the follower never sees the heading jump by a full turn
+                heading[i] -= 2 * FastMath.PI * FastMath.rint((heading[i] - heading[i - 1]) / (2 * FastMath.PI));
+            }
+
+            for (int i = 0; i < n; i++) {
+                double limit = maxVelocity;
+                double k = FastMath.abs(curvature[i]);
+                if (maxCentripetalAcceleration > 0 && k > 0)
+                    limit = FastMath.min(limit, FastMath.sqrt(maxCentripetalAcceleration / k));
+                limit = FastMath.min(limit, maxVelocity / (1 + k * trackWidth / 2));
+                velocity[i] = limit;
+            }
+
+            // Start and end at rest, and only speed up and slow down as fast as allowed
+            velocity[0] = 0;
+            velocity[n - 1] = 0;
+            for (int i = 1; i < n; i++)
+                velocity[i] = FastMath.min(velocity[i], FastMath.sqrt(velocity[i - 1] * velocity[i - 1] + 2 * maxAcceleration * (distance[i] - distance[i - 1])));
+            for (int i = n - 2; i >= 0; i--)
+                velocity[i] = FastMath.min(velocity[i], FastMath.sqrt(velocity[i + 1] * velocity[i + 1] + 2 * maxAcceleration * (distance[i + 1] - distance[i])));
+
+            for (int i = 1; i < n; i++) {
+                double ds = distance[i] - distance[i - 1];
+                double averageVelocity = (velocity[i - 1] + velocity[i]) / 2;
+                time[i] = time[i - 1] + (averageVelocity > 0 ? ds / averageVelocity : 0);
+                acceleration[i - 1] = ds > 0 ? (velocity[i] * velocity[i] - velocity[i - 1] * velocity[i - 1]) / (2 * ds) : 0;
+            }
+            return new Trajectory(time, distance, x, y, heading, velocity, acceleration, curvature);
+        }
+    }
+
+    /**
+     * Growable arrays of the sampled path.
+     */
+    private static class Samples {
+        double[] x = new double[256], y = new double[256], heading = new double[256], curvature = new double[256];
+        int size;
+
+        void add(double x, double y, double heading, double curvature) {
+            if (size == this.x.length) {
+                this.x = Arrays.copyOf(this.x, size * 2);
+                this.y = Arrays.copyOf(this.y, size * 2);
+                this.heading = Arrays.copyOf(this.heading, size * 2);
+                this.curvature = Arrays.copyOf(this.curvature, size * 2);
+            }
+            this.x[size] = x;
+            this.y[size] = y;
+            this.heading[size] = heading;
+            this.curvature[size] = curvature;
+            size++;
+        }
+    }
+}
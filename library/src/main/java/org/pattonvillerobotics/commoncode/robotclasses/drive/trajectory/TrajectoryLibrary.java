@@ -0,0 +1,105 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Named {@link Trajectory}s saved to one file, so an autonomous can build its paths on a laptop or during init once
+ * and load them in milliseconds after that.
+ * <p>
+ * Not thread-safe, fill it in before handing trajectories to drives.
+ */
+public class TrajectoryLibrary {
+
+    private static final int MAGIC = 0x54524c31; // "TRL1"
+
+    private final Map<String, Trajectory> trajectories = new LinkedHashMap<>();
+
+    /**
+     * Reads a library written by {@link #write(OutputStream)}.
+     *
+     * @throws IOException if it isn't a trajectory library
+     */
+    public static TrajectoryLibrary read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a trajectory library");
+        TrajectoryLibrary library = new TrajectoryLibrary();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            library.put(name, Trajectory.read(in));
+        }
+        return library;
+    }
+
+    public static TrajectoryLibrary read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * @return the library in {@code file}, or an empty one if the file doesn't exist yet
+     */
+    public static TrajectoryLibrary readIfExists(File file) throws IOException {
+        return file.exists() ? read(file) : new TrajectoryLibrary();
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        out.writeInt(trajectories.size());
+        for (Map.Entry<String, Trajectory> entry : trajectories.entrySet()) {
+            out.writeUTF(entry.getKey());
+            entry.getValue().write(out);
+        }
+        out.flush();
+    }
+
+    public void write(File file) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            write(out);
+        }
+    }
+
+    /**
+     * Replaces any trajectory already saved as {@code name}.
+     */
+    public void put(String name, Trajectory trajectory) {
+        trajectories.put(name, trajectory);
+    }
+
+    /**
+     * @throws IllegalArgumentException if there's no trajectory called {@code name}
+     */
+    public Trajectory get(String name) {
+        Trajectory trajectory = trajectories.get(name);
+        if (trajectory == null)
+            throw new IllegalArgumentException("No trajectory called " + name + ", have " + trajectories.keySet());
+        return trajectory;
+    }
+
+    public boolean contains(String name) {
+        return trajectories.containsKey(name);
+    }
+
+    public Set<String> getNames() {
+        return trajectories.keySet();
+    }
+
+    public int size() {
+        return trajectories.size();
+    }
+}
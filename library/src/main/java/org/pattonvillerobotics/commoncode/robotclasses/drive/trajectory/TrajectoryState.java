@@ -0,0 +1,68 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory;
+
+import java.util.Locale;
+
+/**
+ * Where a {@link Trajectory} has the robot at one moment. Mutable so a control loop can reuse one.
+ */
+public class TrajectoryState {
+
+    private double time, x, y, heading, velocity, acceleration, curvature;
+
+    void set(double time, double x, double y, double heading, double velocity, double acceleration, double curvature) {
+        this.time = time;
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        this.velocity = velocity;
+        this.acceleration = acceleration;
+        this.curvature = curvature;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return in radians counterclockwise from the field x axis, not wrapped
+     */
+    public double getHeading() {
+        return heading;
+    }
+
+    /**
+     * @return in inches per second along the path
+     */
+    public double getVelocity() {
+        return velocity;
+    }
+
+    public double getAcceleration() {
+        return acceleration;
+    }
+
+    public double getCurvature() {
+        return curvature;
+    }
+
+    /**
+     * @return the turn rate in radians per second
+     */
+    public double getAngularVelocity() {
+        return velocity * curvature;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "TrajectoryState{t=%.3f, x=%.2f, y=%.2f, heading=%.3f, v=%.2f, a=%.2f, curvature=%.4f}",
+                time, x, y, heading, velocity, acceleration, curvature);
+    }
+}
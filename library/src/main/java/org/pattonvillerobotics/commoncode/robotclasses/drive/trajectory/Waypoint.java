@@ -0,0 +1,46 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ * A pose a {@link Trajectory} passes through: field inches, and the direction of travel in degrees counterclockwise
+ * from the field x axis.
+ */
+public class Waypoint {
+
+    private final double x, y, heading;
+
+    public Waypoint(double x, double y, double heading) {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * @return in degrees
+     */
+    public double getHeading() {
+        return heading;
+    }
+
+    double getHeadingRadians() {
+        return FastMath.toRadians(heading);
+    }
+
+    @Override
+    public String toString() {
+        return "Waypoint{" +
+                "x=" + x +
+                ", y=" + y +
+                ", heading=" + heading +
+                '}';
+    }
+}
@@ -0,0 +1,19 @@
+package org.pattonvillerobotics.commoncode.robotclasses.logging;
+
+import java.io.IOException;
+
+/**
+ * Where a {@link LogWriter} sends formatted messages. Only ever called on one thread at a time.
+ */
+public interface LogSink {
+
+    /**
+     * @param timestampNanos {@link System#nanoTime()} when the message was logged
+     */
+    void write(long timestampNanos, Logger.Level level, String tag, String message) throws IOException;
+
+    /**
+     * Called after each batch of writes.
+     */
+    void flush() throws IOException;
+}
@@ -0,0 +1,262 @@
+package org.pattonvillerobotics.commoncode.robotclasses.logging;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Buffers what {@link Logger}s log and writes it to a {@link LogSink} in batches on a thread of its own. Logging
+ * copies the message and its numbers into a preallocated buffer, and the writer thread formats them. When the buffer
+ * is full new messages are dropped and counted rather than making the logging thread wait.
+ * <p>
+ * The default writer logs to logcat on the robot and to standard error anywhere else, so code that logs can run in
+ * unit tests.
+ */
+public class LogWriter {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final long DEFAULT_FLUSH_PERIOD_MS = 100;
+    public static final Logger.Level DEFAULT_LEVEL = Logger.Level.INFO;
+    private static final long STOP_TIMEOUT_MS = 1000;
+
+    private static LogWriter defaultWriter;
+
+    private final Record[] buffer, batch;
+    private final long flushPeriodNanos;
+    private final ConcurrentHashMap<String, Logger> loggers = new ConcurrentHashMap<>();
+    private final AtomicLong writtenCount = new AtomicLong(), droppedCount = new AtomicLong(), errorCount = new AtomicLong();
+    private final Object drainLock = new Object();
+
+    /**
+     * Guarded by {@link #buffer}
+     */
+    private long head, tail;
+    private volatile LogSink sink;
+    private volatile Logger.Level level = DEFAULT_LEVEL;
+    private volatile Exception lastError;
+    private volatile boolean running;
+    private volatile Thread thread;
+
+    public LogWriter(LogSink sink) {
+        this(sink, DEFAULT_CAPACITY, DEFAULT_FLUSH_PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param capacity    how many messages can wait to be written
+     * @param flushPeriod how long the writer thread waits between batches
+     */
+    public LogWriter(LogSink sink, int capacity, long flushPeriod, TimeUnit unit) {
+        if (capacity < 1 || flushPeriod <= 0)
+            throw new IllegalArgumentException("capacity and flushPeriod must be positive");
+        this.sink = sink;
+        this.flushPeriodNanos = unit.toNanos(flushPeriod);
+        this.buffer = new Record[capacity];
+        this.batch = new Record[capacity];
+        for (int i = 0; i < capacity; i++) {
+            buffer[i] = new Record();
+            batch[i] = new Record();
+        }
+    }
+
+    /**
+     * @return the writer {@link Logger#get(String)} uses, started on first use
+     */
+    public static synchronized LogWriter getDefault() {
+        if (defaultWriter == null) {
+            // ART still calls itself Dalvik
+            boolean android = "Dalvik".equals(System.getProperty("java.vm.name"));
+            defaultWriter = new LogWriter(android ? new LogcatSink() : new StreamSink(System.err));
+            defaultWriter.start();
+        }
+        return defaultWriter;
+    }
+
+    public Logger getLogger(String tag) {
+        Logger logger = loggers.get(tag);
+        if (logger == null) {
+            Logger created = new Logger(this, tag);
+            logger = loggers.putIfAbsent(tag, created);
+            if (logger == null)
+                logger = created;
+        }
+        return logger;
+    }
+
+    public Logger.Level getLevel() {
+        return level;
+    }
+
+    /**
+     * @param level the least level to log, for every logger without a level of its own
+     */
+    public void setLevel(Logger.Level level) {
+        this.level = level;
+    }
+
+    /**
+     * @param sink where the next batch goes, e.g. a {@link StreamSink} on a file
+     */
+    public void setSink(LogSink sink) {
+        this.sink = sink;
+    }
+
+    public synchronized void start() {
+        if (thread != null)
+            throw new IllegalStateException("The writer can only be started once");
+
+        running = true;
+        thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (running) {
+                    LockSupport.parkNanos(LogWriter.this, flushPeriodNanos);
+                    flush();
+                }
+                flush();
+            }
+        }, "Log Writer Thread");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Stops the writer thread after it writes what is left.
+     */
+    public void stop() {
+        running = false;
+        Thread thread = this.thread;
+        if (thread == null || thread == Thread.currentThread())
+            return;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void enqueue(Logger.Level level, String tag, String message, String format, int argCount,
+                 double arg0, double arg1, double arg2, double arg3) {
+        long timestampNanos = System.nanoTime();
+        boolean wake;
+        synchronized (buffer) {
+            if (tail - head == buffer.length) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+            buffer[(int) (tail % buffer.length)].set(timestampNanos, level, tag, message, format, argCount, arg0, arg1, arg2, arg3);
+            tail++;
+            // Write early rather than drop a burst
+            wake = tail - head == buffer.length / 2;
+        }
+        Thread thread = this.thread;
+        if (wake && thread != null)
+            LockSupport.unpark(thread);
+    }
+
+    /**
+     * Formats and writes everything logged so far, on the calling thread.
+     */
+    public void flush() {
+        synchronized (drainLock) {
+            int count;
+            synchronized (buffer) {
+                count = (int) (tail - head);
+                for (int i = 0; i < count; i++)
+                    batch[i].copy(buffer[(int) ((head + i) % buffer.length)]);
+                head = tail;
+            }
+            if (count == 0)
+                return;
+
+            LogSink sink = this.sink;
+            for (int i = 0; i < count; i++) {
+                try {
+                    batch[i].write(sink);
+                } catch (IOException | RuntimeException e) {
+                    // E.g. a bad format, the rest of the batch still gets written
+                    failed(e);
+                }
+            }
+            try {
+                sink.flush();
+            } catch (IOException | RuntimeException e) {
+                failed(e);
+            }
+            writtenCount.addAndGet(count);
+        }
+    }
+
+    private void failed(Exception e) {
+        errorCount.incrementAndGet();
+        lastError = e;
+    }
+
+    /**
+     * @return how many messages have been taken out of the buffer to write
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * @return how many messages were dropped because the buffer was full
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return how many messages or flushes the sink failed on
+     */
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    private static class Record {
+        long timestampNanos;
+        Logger.Level level;
+        String tag, message, format;
+        int argCount;
+        double arg0, arg1, arg2, arg3;
+
+        void set(long timestampNanos, Logger.Level level, String tag, String message, String format, int argCount,
+                 double arg0, double arg1, double arg2, double arg3) {
+            this.timestampNanos = timestampNanos;
+            this.level = level;
+            this.tag = tag;
+            this.message = message;
+            this.format = format;
+            this.argCount = argCount;
+            this.arg0 = arg0;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+            this.arg3 = arg3;
+        }
+
+        void copy(Record other) {
+            set(other.timestampNanos, other.level, other.tag, other.message, other.format, other.argCount,
+                    other.arg0, other.arg1, other.arg2, other.arg3);
+        }
+
+        void write(LogSink sink) throws IOException {
+            String text = message;
+            if (format != null) {
+                Object[] args = new Object[argCount];
+                double[] values = {arg0, arg1, arg2, arg3};
+                for (int i = 0; i < argCount; i++)
+                    args[i] = values[i];
+                text = String.format(Locale.US, format, args);
+            }
+            sink.write(timestampNanos, level, tag, text);
+        }
+    }
+}
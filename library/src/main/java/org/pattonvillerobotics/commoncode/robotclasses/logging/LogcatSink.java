@@ -0,0 +1,18 @@
+package org.pattonvillerobotics.commoncode.robotclasses.logging;
+
+import android.util.Log;
+
+/**
+ * Writes to logcat, what {@link LogWriter#getDefault()} uses on the robot.
+ */
+public class LogcatSink implements LogSink {
+
+    @Override
+    public void write(long timestampNanos, Logger.Level level, String tag, String message) {
+        Log.println(level.getPriority(), tag, message);
+    }
+
+    @Override
+    public void flush() {
+    }
+}
@@ -0,0 +1,102 @@
+package org.pattonvillerobotics.commoncode.robotclasses.logging;
+
+import com.annimon.stream.function.Supplier;
+
+/**
+ * Logs under one tag through a {@link LogWriter}. A message below the level costs one check. Otherwise it is copied
+ * into the writer's buffer, numbers and all, and the writer's thread formats and writes it, so logging from a control
+ * loop or while holding a lock doesn't wait on logcat or a file.
+ * <p>
+ * Pass numbers as arguments to a constant format rather than building the string, that way nothing is allocated.
+ * A {@link Supplier} is only called when the level is enabled, for messages that can't be put that way.
+ */
+public class Logger {
+
+    private final LogWriter writer;
+    private final String tag;
+    private volatile Level level;
+
+    Logger(LogWriter writer, String tag) {
+        this.writer = writer;
+        this.tag = tag;
+    }
+
+    /**
+     * @return a logger for {@code tag} on the {@link LogWriter#getDefault()} writer
+     */
+    public static Logger get(String tag) {
+        return LogWriter.getDefault().getLogger(tag);
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /**
+     * @param level the least level to log under this tag, or null to follow the writer's
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    public boolean isEnabled(Level level) {
+        Level threshold = this.level;
+        return level.compareTo(threshold == null ? writer.getLevel() : threshold) >= 0;
+    }
+
+    public void log(Level level, String message) {
+        if (isEnabled(level))
+            writer.enqueue(level, tag, message, null, 0, 0, 0, 0, 0);
+    }
+
+    public void log(Level level, Supplier<String> message) {
+        if (isEnabled(level))
+            writer.enqueue(level, tag, message.get(), null, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * @param format a {@link String#format(String, Object...)} format taking the doubles after it
+     */
+    public void log(Level level, String format, double arg0) {
+        if (isEnabled(level))
+            writer.enqueue(level, tag, null, format, 1, arg0, 0, 0, 0);
+    }
+
+    public void log(Level level, String format, double arg0, double arg1) {
+        if (isEnabled(level))
+            writer.enqueue(level, tag, null, format, 2, arg0, arg1, 0, 0);
+    }
+
+    public void log(Level level, String format, double arg0, double arg1, double arg2) {
+        if (isEnabled(level))
+            writer.enqueue(level, tag, null, format, 3, arg0, arg1, arg2, 0);
+    }
+
+    public void log(Level level, String format, double arg0, double arg1, double arg2, double arg3) {
+        if (isEnabled(level))
+            writer.enqueue(level, tag, null, format, 4, arg0, arg1, arg2, arg3);
+    }
+
+    public enum Level {
+        VERBOSE(2, 'V'), DEBUG(3, 'D'), INFO(4, 'I'), WARN(5, 'W'), ERROR(6, 'E');
+
+        private final int priority;
+        private final char letter;
+
+        Level(int priority, char letter) {
+            this.priority = priority;
+            this.letter = letter;
+        }
+
+        /**
+         * @return the matching {@code android.util.Log} priority
+         */
+        public int getPriority() {
+            return priority;
+        }
+
+        public char getLetter() {
+            return letter;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.pattonvillerobotics.commoncode.robotclasses.logging;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes one line per message, stamped with the seconds since the sink was made, e.g. to a file on the phone or to
+ * standard error off the robot.
+ */
+public class StreamSink implements LogSink {
+
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Writer writer;
+    private final long startNanos = System.nanoTime();
+    private final StringBuilder line = new StringBuilder();
+
+    public StreamSink(OutputStream stream) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(stream, Charset.forName("UTF-8")));
+    }
+
+    /**
+     * Appends to {@code file}.
+     */
+    public StreamSink(File file) throws IOException {
+        this(new FileOutputStream(file, true));
+    }
+
+    @Override
+    public void write(long timestampNanos, Logger.Level level, String tag, String message) throws IOException {
+        line.setLength(0);
+        line.append(String.format(Locale.US, "%10.3f ", (timestampNanos - startNanos) / S_TO_NS))
+                .append(level.getLetter()).append('/').append(tag).append(": ").append(message).append('\n');
+        writer.append(line);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        writer.flush();
+    }
+}
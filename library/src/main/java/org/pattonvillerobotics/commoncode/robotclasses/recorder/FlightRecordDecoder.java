@@ -0,0 +1,260 @@
+package org.pattonvillerobotics.commoncode.robotclasses.recorder;
+
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a {@link FlightRecorder} file off the robot and turns each channel into a table with a column per value, in
+ * the order the records were written. Records still being written when the recording stopped are skipped, and values
+ * a record didn't have are NaN.
+ * <p>
+ * From the command line, {@code FlightRecordDecoder recording.bin outputDirectory} writes a CSV file per channel.
+ */
+public class FlightRecordDecoder {
+
+    private static final double S_TO_NS = TimeUnit.SECONDS.toNanos(1);
+
+    private final long startNanos, startMillis;
+    private final Map<String, Table> tables = new LinkedHashMap<>();
+
+    private FlightRecordDecoder(long startNanos, long startMillis) {
+        this.startNanos = startNanos;
+        this.startMillis = startMillis;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: FlightRecordDecoder <recording> <output directory>");
+            System.exit(1);
+        }
+        File directory = new File(args[1]);
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Can't make " + directory);
+        read(new File(args[0])).writeCsv(directory);
+    }
+
+    public static FlightRecordDecoder read(File file) throws IOException {
+        InputStream stream = new FileInputStream(file);
+        try {
+            return read(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * @throws IOException if it isn't a recording
+     */
+    public static FlightRecordDecoder read(InputStream stream) throws IOException {
+        DataInputStream input = new DataInputStream(stream);
+        byte[] header = new byte[FlightRecorder.HEADER_SIZE];
+        try {
+            input.readFully(header);
+        } catch (EOFException e) {
+            throw new IOException("Too short for a recording", e);
+        }
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        if (headerBuffer.getInt(0) != FlightRecorder.MAGIC)
+            throw new IOException("Not a recording");
+        if (headerBuffer.getInt(4) != FlightRecorder.VERSION)
+            throw new IOException("Unknown recording version " + headerBuffer.getInt(4));
+        int recordSize = headerBuffer.getInt(8), capacity = headerBuffer.getInt(12);
+        if (recordSize != FlightRecorder.RECORD_SIZE)
+            throw new IOException("Unexpected record size " + recordSize);
+
+        FlightRecordDecoder decoder = new FlightRecordDecoder(headerBuffer.getLong(FlightRecorder.START_NANOS_OFFSET),
+                headerBuffer.getLong(FlightRecorder.START_MILLIS_OFFSET));
+        int tableLength = headerBuffer.getInt(FlightRecorder.CHANNEL_TABLE_OFFSET);
+        String channelTable = new String(header, FlightRecorder.CHANNEL_TABLE_OFFSET + 4, tableLength, FlightRecorder.UTF_8);
+        List<Table> byId = new ArrayList<>();
+        for (String line : channelTable.split("\n")) {
+            if (line.isEmpty())
+                continue;
+            String[] fields = line.split("\t");
+            Table table = new Table(fields[1], fields[2].split(","));
+            byId.add(table);
+            decoder.tables.put(table.name, table);
+        }
+
+        List<Record> records = new ArrayList<>();
+        byte[] bytes = new byte[recordSize];
+        ByteBuffer recordBuffer = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < capacity; i++) {
+            try {
+                input.readFully(bytes);
+            } catch (EOFException e) {
+                break;
+            }
+            long sequence = recordBuffer.getLong(FlightRecorder.SEQUENCE_OFFSET);
+            int channel = recordBuffer.getShort(FlightRecorder.CHANNEL_OFFSET);
+            if (sequence == 0 || channel < 0 || channel >= byId.size())
+                continue;
+            Table table = byId.get(channel);
+            double[] values = new double[table.columns.length];
+            int count = Math.min(recordBuffer.getShort(FlightRecorder.COUNT_OFFSET), values.length);
+            Arrays.fill(values, Double.NaN);
+            for (int j = 0; j < count; j++)
+                values[j] = recordBuffer.getDouble(FlightRecorder.VALUES_OFFSET + 8 * j);
+            records.add(new Record(sequence, recordBuffer.getLong(FlightRecorder.TIMESTAMP_OFFSET), table, values));
+        }
+
+        Collections.sort(records);
+        for (Record record : records)
+            record.table.add(record.timestampNanos, record.values);
+        return decoder;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when recording started, what the timestamps count from
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return the wall clock time when recording started
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public List<String> getChannelNames() {
+        return new ArrayList<>(tables.keySet());
+    }
+
+    /**
+     * @return the channel's records, or null if there is no such channel
+     */
+    public Table getTable(String channel) {
+        return tables.get(channel);
+    }
+
+    /**
+     * Writes {@code <channel>.csv} in {@code directory} for each channel.
+     */
+    public void writeCsv(File directory) throws IOException {
+        for (Table table : tables.values()) {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(directory, table.name + ".csv")), FlightRecorder.UTF_8));
+            try {
+                writeCsv(table.name, writer);
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a header line, then a line per record with the seconds since recording started and the values.
+     */
+    public void writeCsv(String channel, Writer writer) throws IOException {
+        Table table = tables.get(channel);
+        if (table == null)
+            throw new IllegalArgumentException("No channel named " + channel);
+        writer.write("time");
+        for (String column : table.columns)
+            writer.write("," + column);
+        writer.write('\n');
+        for (int row = 0; row < table.getRowCount(); row++) {
+            writer.write(String.format(Locale.US, "%.6f", (table.timestamps[row] - startNanos) / S_TO_NS));
+            for (int column = 0; column < table.columns.length; column++) {
+                double value = table.values[column][row];
+                writer.write(Double.isNaN(value) ? "," : "," + value);
+            }
+            writer.write('\n');
+        }
+    }
+
+    /**
+     * One channel's records, a column per value.
+     */
+    public static class Table {
+
+        private final String name;
+        private final String[] columns;
+        private long[] timestamps = new long[16];
+        private double[][] values;
+        private int rowCount;
+
+        Table(String name, String[] columns) {
+            this.name = name;
+            this.columns = columns;
+            this.values = new double[columns.length][timestamps.length];
+        }
+
+        void add(long timestampNanos, double[] row) {
+            if (rowCount == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, rowCount * 2);
+                for (int i = 0; i < values.length; i++)
+                    values[i] = Arrays.copyOf(values[i], rowCount * 2);
+            }
+            timestamps[rowCount] = timestampNanos;
+            for (int i = 0; i < values.length; i++)
+                values[i][rowCount] = row[i];
+            rowCount++;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getColumnNames() {
+            return Collections.unmodifiableList(Arrays.asList(columns));
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return each record's {@link System#nanoTime()} timestamp
+         */
+        public long[] getTimestamps() {
+            return Arrays.copyOf(timestamps, rowCount);
+        }
+
+        /**
+         * @throws IllegalArgumentException if the channel has no such column
+         */
+        public double[] getColumn(String column) {
+            for (int i = 0; i < columns.length; i++)
+                if (columns[i].equals(column))
+                    return Arrays.copyOf(values[i], rowCount);
+            throw new IllegalArgumentException(name + " has no column " + column);
+        }
+    }
+
+    private static class Record implements Comparable<Record> {
+        final long sequence, timestampNanos;
+        final Table table;
+        final double[] values;
+
+        Record(long sequence, long timestampNanos, Table table, double[] values) {
+            this.sequence = sequence;
+            this.timestampNanos = timestampNanos;
+            this.table = table;
+            this.values = values;
+        }
+
+        @Override
+        public int compareTo(Record other) {
+            return sequence < other.sequence ? -1 : sequence == other.sequence ? 0 : 1;
+        }
+    }
+}
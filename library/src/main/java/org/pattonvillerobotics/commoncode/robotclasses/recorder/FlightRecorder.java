@@ -0,0 +1,238 @@
+package org.pattonvillerobotics.commoncode.robotclasses.recorder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records what the robot did, many times a second, into a file of fixed-size binary records, so a match can be looked
+ * at afterwards with {@link FlightRecordDecoder}. The file is made its full size up front and mapped into memory, and
+ * records go around it as a ring, so the file always holds the latest {@link #getCapacity()} records. Recording is a
+ * handful of writes to memory, it doesn't allocate, lock or wait on the storage, and any number of threads can record
+ * at once. The data is in the file even if the app dies, {@link #force()} also writes it to the storage.
+ * <p>
+ * Each source adds a {@link Channel} with the names of the up to {@link #MAX_VALUES} numbers it records, e.g.
+ * {@code addChannel("power", "left", "right")}. The file's header lists the channels, so the decoder needs nothing
+ * else.
+ * <p>
+ * The file starts with a {@link #HEADER_SIZE} byte header: the magic number, the version, the record size, the
+ * capacity, the {@link System#nanoTime()} and wall clock time when recording started, and the channel table as UTF-8
+ * lines of {@code id\tname\tcolumn,column}. Each record is the sequence number, 0 while it is being written, the
+ * timestamp, the channel id, how many values it has and the values as doubles. Numbers are big-endian.
+ */
+public class FlightRecorder implements Closeable {
+
+    public static final int MAX_VALUES = 8;
+    public static final int HEADER_SIZE = 4096;
+    public static final int RECORD_SIZE = 24 + 8 * MAX_VALUES;
+    /**
+     * About three minutes of the drive, its IMU and the filter
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+    static final int MAGIC = 0x46524543, VERSION = 1;
+    static final int START_NANOS_OFFSET = 16, START_MILLIS_OFFSET = 24, CHANNEL_TABLE_OFFSET = 32;
+    static final int SEQUENCE_OFFSET = 0, TIMESTAMP_OFFSET = 8, CHANNEL_OFFSET = 16, COUNT_OFFSET = 18, VALUES_OFFSET = 24;
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final AtomicLong nextSequence = new AtomicLong(1);
+    private final List<Channel> channels = new ArrayList<>();
+    private volatile boolean closed;
+
+    public FlightRecorder(File file) throws IOException {
+        this(file, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Starts a new recording in {@code file}, overwriting what was there.
+     *
+     * @param capacity how many records the file holds
+     */
+    public FlightRecorder(File file, int capacity) throws IOException {
+        if (capacity < 1 || capacity > (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE)
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        this.capacity = capacity;
+
+        long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(size);
+            buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            // The mapping stays valid after the file is closed
+            randomAccessFile.close();
+        }
+
+        // Records left from an earlier recording would look like this one's
+        for (int i = 0; i < capacity; i++)
+            buffer.putLong(HEADER_SIZE + i * RECORD_SIZE + SEQUENCE_OFFSET, 0);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, RECORD_SIZE);
+        buffer.putInt(12, capacity);
+        buffer.putLong(START_NANOS_OFFSET, System.nanoTime());
+        buffer.putLong(START_MILLIS_OFFSET, System.currentTimeMillis());
+        writeChannelTable();
+    }
+
+    /**
+     * @param name    what the numbers are from, e.g. {@code "encoders"}
+     * @param columns what each number is, at most {@link #MAX_VALUES}
+     * @throws IllegalStateException if the header has no room left for the channel
+     */
+    public synchronized Channel addChannel(String name, String... columns) {
+        if (columns.length < 1 || columns.length > MAX_VALUES)
+            throw new IllegalArgumentException("A channel needs 1 to " + MAX_VALUES + " columns, had " + columns.length);
+        checkName(name);
+        for (String column : columns)
+            checkName(column);
+
+        Channel channel = new Channel(channels.size(), name, columns.clone());
+        channels.add(channel);
+        try {
+            writeChannelTable();
+        } catch (IllegalStateException e) {
+            channels.remove(channel);
+            throw e;
+        }
+        return channel;
+    }
+
+    private static void checkName(String name) {
+        if (name.isEmpty() || name.indexOf('\t') >= 0 || name.indexOf('\n') >= 0 || name.indexOf(',') >= 0)
+            throw new IllegalArgumentException("Names can't be empty or have tabs, newlines or commas: \"" + name + "\"");
+    }
+
+    private void writeChannelTable() {
+        StringBuilder table = new StringBuilder();
+        for (Channel channel : channels) {
+            table.append(channel.id).append('\t').append(channel.name).append('\t');
+            for (int i = 0; i < channel.columns.length; i++)
+                table.append(i == 0 ? "" : ",").append(channel.columns[i]);
+            table.append('\n');
+        }
+        byte[] bytes = table.toString().getBytes(UTF_8);
+        if (CHANNEL_TABLE_OFFSET + 4 + bytes.length > HEADER_SIZE)
+            throw new IllegalStateException("Too many channels for the header");
+        for (int i = 0; i < bytes.length; i++)
+            buffer.put(CHANNEL_TABLE_OFFSET + 4 + i, bytes[i]);
+        buffer.putInt(CHANNEL_TABLE_OFFSET, bytes.length);
+    }
+
+    /**
+     * @param values only used when not null, otherwise {@code value0} to {@code value3}
+     */
+    private void write(Channel channel, long timestampNanos, int count, double[] values,
+                       double value0, double value1, double value2, double value3) {
+        if (closed)
+            return;
+        count = Math.min(count, channel.columns.length);
+        long sequence = nextSequence.getAndIncrement();
+        int offset = HEADER_SIZE + (int) ((sequence - 1) % capacity) * RECORD_SIZE;
+
+        buffer.putLong(offset + SEQUENCE_OFFSET, 0);
+        buffer.putLong(offset + TIMESTAMP_OFFSET, timestampNanos);
+        buffer.putShort(offset + CHANNEL_OFFSET, (short) channel.id);
+        buffer.putShort(offset + COUNT_OFFSET, (short) count);
+        if (values != null) {
+            for (int i = 0; i < count; i++)
+                buffer.putDouble(offset + VALUES_OFFSET + 8 * i, values[i]);
+        } else {
+            buffer.putDouble(offset + VALUES_OFFSET, value0);
+            buffer.putDouble(offset + VALUES_OFFSET + 8, value1);
+            buffer.putDouble(offset + VALUES_OFFSET + 16, value2);
+            buffer.putDouble(offset + VALUES_OFFSET + 24, value3);
+        }
+        // Written last, so a record cut off by a crash or overwritten mid-write is skipped by the decoder
+        buffer.putLong(offset + SEQUENCE_OFFSET, sequence);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return how many records have been written, including ones since overwritten
+     */
+    public long getRecordCount() {
+        return nextSequence.get() - 1;
+    }
+
+    /**
+     * Writes what has been recorded to the storage. Slow, so not from a control loop.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Stops recording and writes the file out, records after this are ignored.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        force();
+    }
+
+    /**
+     * A source of records, see {@link #addChannel(String, String...)}.
+     */
+    public class Channel {
+
+        private final int id;
+        private final String name;
+        private final String[] columns;
+
+        Channel(int id, String name, String[] columns) {
+            this.id = id;
+            this.name = name;
+            this.columns = columns;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        public void record(double value0) {
+            write(this, System.nanoTime(), 1, null, value0, 0, 0, 0);
+        }
+
+        public void record(double value0, double value1) {
+            write(this, System.nanoTime(), 2, null, value0, value1, 0, 0);
+        }
+
+        public void record(double value0, double value1, double value2) {
+            write(this, System.nanoTime(), 3, null, value0, value1, value2, 0);
+        }
+
+        public void record(double value0, double value1, double value2, double value3) {
+            write(this, System.nanoTime(), 4, null, value0, value1, value2, value3);
+        }
+
+        /**
+         * @param count how many of {@code values} to record, extra ones past the channel's columns are left out
+         */
+        public void record(double[] values, int count) {
+            write(this, System.nanoTime(), count, values, 0, 0, 0, 0);
+        }
+
+        /**
+         * @param timestampNanos when the values are from, in {@link System#nanoTime()} time
+         */
+        public void recordAt(long timestampNanos, double[] values, int count) {
+            write(this, timestampNanos, count, values, 0, 0, 0, 0);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package org.pattonvillerobotics.commoncode.robotclasses.telemetry;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.StateSnapshot;
+
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Gets numbers from the control loop to the Driver Station without slowing the loop down. The loop writes numbers
+ * into {@link Slot}s, which only copies them, and a background thread formats the slots that changed into retained
+ * {@link Telemetry.Item}s at a capped rate.
+ * <p>
+ * The background thread never calls {@link Telemetry#update()}, since that would send and clear the lines the op mode
+ * is still adding. The slots go out with the op mode's next update, or with {@link #flush()} from the op mode's
+ * thread while it waits on the drive.
+ * <p>
+ * Publishing starts on the first write and stops by itself once nothing has been written for
+ * {@link #IDLE_STOP_MS}, so a pipeline left behind by an op mode doesn't keep running. Every pipeline publishes on
+ * one shared thread.
+ */
+public class TelemetryPipeline {
+
+    public static final double DEFAULT_RATE_HZ = 5, MAX_RATE_HZ = 20;
+    public static final long IDLE_STOP_MS = 5000;
+
+    private static ScheduledExecutorService publisher;
+
+    private final Telemetry telemetry;
+    private final long periodNanos;
+    private final boolean automatic;
+    private final CopyOnWriteArrayList<Slot> slots = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean publishing = new AtomicBoolean();
+    private final Runnable publishTask = new Runnable() {
+        @Override
+        public void run() {
+            publishOrStop();
+        }
+    };
+
+    private volatile long lastWriteNanos;
+    private volatile long publishCount;
+    private ScheduledFuture<?> future;
+
+    public TelemetryPipeline(Telemetry telemetry) {
+        this(telemetry, DEFAULT_RATE_HZ);
+    }
+
+    /**
+     * @param rateHz how many times a second to send to the Driver Station, at most {@link #MAX_RATE_HZ}
+     */
+    public TelemetryPipeline(Telemetry telemetry, double rateHz) {
+        this(telemetry, rateHz, true);
+    }
+
+    /**
+     * @param automatic false to only publish when {@link #publish()} is called
+     */
+    TelemetryPipeline(Telemetry telemetry, double rateHz, boolean automatic) {
+        if (!(rateHz > 0) || rateHz > MAX_RATE_HZ)
+            throw new IllegalArgumentException("rateHz must be in (0, " + MAX_RATE_HZ + "], was " + rateHz);
+        this.telemetry = telemetry;
+        this.periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rateHz);
+        this.automatic = automatic;
+    }
+
+    private static synchronized ScheduledExecutorService getPublisher() {
+        if (publisher == null) {
+            publisher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Telemetry Publisher Thread");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return publisher;
+    }
+
+    /**
+     * @param caption    shown before the value
+     * @param format     a {@link String#format(String, Object...)} format taking {@code valueCount} doubles
+     * @param valueCount how many numbers the slot holds
+     */
+    public Slot addSlot(String caption, String format, int valueCount) {
+        if (valueCount < 1)
+            throw new IllegalArgumentException("A slot needs at least one value");
+        Slot slot = new Slot(caption, format, valueCount);
+        slots.add(slot);
+        return slot;
+    }
+
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * @return how many times the pipeline has formatted slots that changed
+     */
+    public long getPublishCount() {
+        return publishCount;
+    }
+
+    public boolean isPublishing() {
+        return publishing.get();
+    }
+
+    /**
+     * Stops publishing until the next write.
+     */
+    public synchronized void stop() {
+        publishing.set(false);
+        if (future != null) {
+            future.cancel(false);
+            future = null;
+        }
+    }
+
+    /**
+     * Called on every write, schedules publishing if it had stopped.
+     */
+    private void written() {
+        lastWriteNanos = System.nanoTime();
+        if (automatic && !publishing.get() && publishing.compareAndSet(false, true))
+            schedule();
+    }
+
+    private synchronized void schedule() {
+        if (future == null)
+            future = getPublisher().scheduleAtFixedRate(publishTask, 0, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void publishOrStop() {
+        if (System.nanoTime() - lastWriteNanos > TimeUnit.MILLISECONDS.toNanos(IDLE_STOP_MS)) {
+            // A write from now on reschedules, and this last pass sends anything written before it
+            stop();
+        }
+        publish();
+    }
+
+    /**
+     * Formats the slots that changed since the last publish into their items, without sending them. Runs on the
+     * publisher thread, and can be called directly.
+     */
+    public synchronized void publish() {
+        boolean changed = false;
+        for (Slot slot : slots)
+            changed |= slot.publish(telemetry);
+        if (changed)
+            publishCount++;
+    }
+
+    /**
+     * Formats the slots and sends the telemetry with {@link Telemetry#update()}. Only call it from the op mode's
+     * thread, e.g. while it is blocked on a move, since the update also sends and clears the op mode's own lines.
+     */
+    public void flush() {
+        publish();
+        telemetry.update();
+    }
+
+    /**
+     * A line of numbers on the Driver Station, written by one thread, e.g. the control loop, without locking or
+     * allocating.
+     */
+    public class Slot {
+
+        private final String caption, format;
+        private final StateSnapshot snapshot;
+        /**
+         * Only touched by the writer
+         */
+        private final double[] writeBuffer;
+        private volatile boolean visible;
+
+        /**
+         * Only touched on the publisher thread
+         */
+        private final double[] readBuffer;
+        private final Object[] arguments;
+        private long publishedVersion = -1;
+        private Telemetry.Item item;
+
+        Slot(String caption, String format, int valueCount) {
+            this.caption = caption;
+            this.format = format;
+            this.snapshot = new StateSnapshot(valueCount);
+            this.writeBuffer = new double[valueCount];
+            this.readBuffer = new double[valueCount];
+            this.arguments = new Object[valueCount];
+        }
+
+        public String getCaption() {
+            return caption;
+        }
+
+        public void set(double value) {
+            writeBuffer[0] = value;
+            write();
+        }
+
+        public void set(double value0, double value1) {
+            writeBuffer[0] = value0;
+            writeBuffer[1] = value1;
+            write();
+        }
+
+        public void set(double value0, double value1, double value2) {
+            writeBuffer[0] = value0;
+            writeBuffer[1] = value1;
+            writeBuffer[2] = value2;
+            write();
+        }
+
+        public void set(double value0, double value1, double value2, double value3) {
+            writeBuffer[0] = value0;
+            writeBuffer[1] = value1;
+            writeBuffer[2] = value2;
+            writeBuffer[3] = value3;
+            write();
+        }
+
+        private void write() {
+            snapshot.write(writeBuffer, 0);
+            visible = true;
+            written();
+        }
+
+        /**
+         * Takes the line off the Driver Station until the next write.
+         */
+        public void clear() {
+            visible = false;
+            written();
+        }
+
+        /**
+         * @return whether the line changed
+         */
+        boolean publish(Telemetry telemetry) {
+            if (!visible) {
+                if (item == null)
+                    return false;
+                telemetry.removeItem(item);
+                item = null;
+                return true;
+            }
+
+            long version = snapshot.getVersion();
+            if (item != null && version == publishedVersion)
+                return false;
+            snapshot.read(readBuffer);
+            for (int i = 0; i < readBuffer.length; i++)
+                arguments[i] = readBuffer[i];
+            String value = String.format(Locale.US, format, arguments);
+            if (item == null)
+                item = telemetry.addData(caption, value).setRetained(true);
+            else
+                item.setValue(value);
+            publishedVersion = version;
+            return true;
+        }
+    }
+}
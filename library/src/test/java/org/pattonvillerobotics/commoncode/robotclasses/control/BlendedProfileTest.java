@@ -0,0 +1,88 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class BlendedProfileTest {
+
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Walks the profile in small steps, checking the limits and that the path length is the integral of velocity
+     * across every boundary.
+     */
+    private static void checkProfile(BlendedProfile profile, double maxAcceleration) {
+        int steps = 20000;
+        double dt = profile.getDuration() / steps, total = 0;
+        double previousPathLength = 0, previousVelocity = 0;
+        MotionState state = new MotionState();
+        for (int i = 1; i <= steps; i++) {
+            int segment = profile.getState(i * dt, state);
+            double pathLength = state.getPosition();
+            for (int j = 0; j < segment; j++)
+                pathLength += profile.getLength(j);
+            assertTrue(state.toString(), FastMath.abs(state.getAcceleration()) <= maxAcceleration + EPSILON);
+            assertTrue(state.toString(), state.getVelocity() >= -EPSILON);
+            assertEquals(previousPathLength + (previousVelocity + state.getVelocity()) / 2 * dt, pathLength, 1e-3);
+            previousPathLength = pathLength;
+            previousVelocity = state.getVelocity();
+        }
+        for (int j = 0; j < profile.getSegmentCount(); j++)
+            total += profile.getLength(j);
+        assertEquals(total, previousPathLength, 1e-6);
+        assertEquals(0, previousVelocity, EPSILON);
+    }
+
+    @Test
+    public void singleSegmentMatchesTrapezoid() {
+        BlendedProfile profile = new BlendedProfile(new double[]{72}, new double[]{24}, null, 24);
+        assertEquals(new TrapezoidProfile(72, 24, 24).getDuration(), profile.getDuration(), EPSILON);
+        checkProfile(profile, 24);
+    }
+
+    @Test
+    public void equalSegmentsBlendIntoOneMove() {
+        BlendedProfile blended = new BlendedProfile(new double[]{24, 48}, new double[]{24, 24}, null, 24);
+        assertEquals(new TrapezoidProfile(72, 24, 24).getDuration(), blended.getDuration(), EPSILON);
+        assertEquals(24, blended.getBoundaryVelocity(1), EPSILON);
+        checkProfile(blended, 24);
+    }
+
+    @Test
+    public void boundarySlowsToTheNextSegmentsLimit() {
+        BlendedProfile profile = new BlendedProfile(new double[]{48, 48}, new double[]{24, 12}, null, 24);
+        assertEquals(12, profile.getBoundaryVelocity(1), EPSILON);
+        checkProfile(profile, 24);
+
+        // Too short a segment to slow down in pulls the boundary down further
+        profile = new BlendedProfile(new double[]{48, 1, 48}, new double[]{24, 24, 24}, new boolean[]{false, true}, 24);
+        assertEquals(FastMath.sqrt(2 * 24), profile.getBoundaryVelocity(1), EPSILON);
+        assertEquals(0, profile.getBoundaryVelocity(2), EPSILON);
+        checkProfile(profile, 24);
+    }
+
+    @Test
+    public void stopsWhenAsked() {
+        BlendedProfile stopping = new BlendedProfile(new double[]{24, 48}, new double[]{24, 24}, new boolean[]{true}, 24);
+        BlendedProfile blended = new BlendedProfile(new double[]{24, 48}, new double[]{24, 24}, null, 24);
+        assertEquals(0, stopping.getBoundaryVelocity(1), EPSILON);
+        assertEquals(new TrapezoidProfile(24, 24, 24).getDuration() + new TrapezoidProfile(48, 24, 24).getDuration(),
+                stopping.getDuration(), EPSILON);
+        assertTrue(blended.getDuration() < stopping.getDuration());
+
+        MotionState state = new MotionState();
+        assertThat(stopping.getState(stopping.getStartTime(1) + EPSILON, state), is(1));
+        assertEquals(0, state.getVelocity(), 1e-6);
+        checkProfile(stopping, 24);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptySegments() {
+        new BlendedProfile(new double[]{24, 0}, new double[]{24, 24}, null, 24);
+    }
+}
@@ -0,0 +1,139 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ControlSchedulerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Time that only moves when a task says it took some, or the scheduler sleeps.
+     */
+    private static class FakeClock implements Clock {
+        long nowNanos;
+
+        @Override
+        public long nanoTime() {
+            return nowNanos;
+        }
+
+        @Override
+        public void sleepUntil(long deadlineNanos) {
+            nowNanos = Math.max(nowNanos, deadlineNanos);
+        }
+    }
+
+    /**
+     * A motor whose speed follows its power with a 50 ms time constant, at up to 100 in/s.
+     */
+    static class SimulatedMotor {
+        static final double MAX_SPEED = 100, TIME_CONSTANT = .05;
+        double power, speed;
+
+        void step(double dt) {
+            speed += (power * MAX_SPEED - speed) * dt / TIME_CONSTANT;
+        }
+    }
+
+    @Test
+    public void testOverrunsSkipTicksWithoutDrifting() {
+        final FakeClock clock = new FakeClock();
+        final long[] costs = {1 * MS, 1 * MS, 12 * MS, 1 * MS};
+        final List<Long> ticks = new ArrayList<>();
+        final List<Double> dts = new ArrayList<>();
+        ControlScheduler scheduler = new ControlScheduler(5 * MS, clock);
+        scheduler.addTask(new ControlTask() {
+            @Override
+            public void update(long tickNanos, double dt) {
+                clock.nowNanos += costs[ticks.size()];
+                ticks.add(tickNanos);
+                dts.add(dt);
+            }
+        });
+
+        long deadline = 0;
+        for (int i = 0; i < costs.length; i++) {
+            clock.sleepUntil(deadline);
+            deadline = scheduler.runTick(deadline);
+        }
+
+        // The 12 ms tick runs over the ticks due at 15 and 20 ms, and the schedule picks up at 25 ms
+        assertThat(ticks, is(Arrays.asList(0L, 5 * MS, 10 * MS, 25 * MS)));
+        assertEquals(.015, dts.get(3), 1e-12);
+        assertThat(scheduler.getOverrunCount(), is(1L));
+        assertThat(scheduler.getMissedTickCount(), is(2L));
+        assertThat(scheduler.getMaxExecutionNanos(), is(12 * MS));
+        assertThat(scheduler.getAverageExecutionNanos(), is(15 * MS / 4));
+    }
+
+    @Test
+    public void testFailingTaskDoesNotStopOthers() {
+        FakeClock clock = new FakeClock();
+        final int[] updates = new int[1];
+        ControlScheduler scheduler = new ControlScheduler(5 * MS, clock);
+        scheduler.addTask(new ControlTask() {
+            @Override
+            public void update(long tickNanos, double dt) {
+                throw new IllegalStateException("unplugged");
+            }
+        });
+        scheduler.addTask(new ControlTask() {
+            @Override
+            public void update(long tickNanos, double dt) {
+                updates[0]++;
+            }
+        });
+
+        scheduler.runTick(0);
+        scheduler.runTick(5 * MS);
+
+        assertThat(updates[0], is(2));
+        assertThat(scheduler.getErrorCount(), is(2L));
+        assertThat(scheduler.getLastError().getMessage(), is("unplugged"));
+    }
+
+    /**
+     * Holds a simulated motor at 50 in/s at 200 Hz in real time.
+     */
+    @Test
+    public void testRunsSimulatedMotorAtFixedRate() throws InterruptedException {
+        final SimulatedMotor motor = new SimulatedMotor();
+        final List<Double> dts = new ArrayList<>();
+        ControlScheduler scheduler = new ControlScheduler(5, TimeUnit.MILLISECONDS);
+        scheduler.addTask(new ControlTask() {
+            @Override
+            public void update(long tickNanos, double dt) {
+                motor.step(dt);
+                motor.power = .5 + .02 * (50 - motor.speed);
+                synchronized (dts) {
+                    dts.add(dt);
+                }
+            }
+        });
+
+        scheduler.start();
+        Thread.sleep(500);
+        scheduler.stop();
+
+        assertThat(scheduler.isRunning(), is(false));
+        // Generous bounds, this runs on loaded build machines
+        long ticks = scheduler.getTickCount();
+        assertTrue("ticks " + ticks, ticks >= 80 && ticks <= 102);
+        assertEquals(50, motor.speed, 1);
+        synchronized (dts) {
+            // Every dt is a whole number of periods, whatever the sleep jitter was
+            for (double dt : dts)
+                assertEquals(0, dt / .005 - Math.rint(dt / .005), 1e-6);
+        }
+    }
+}
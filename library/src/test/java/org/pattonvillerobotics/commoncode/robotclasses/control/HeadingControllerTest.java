@@ -0,0 +1,141 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Turns a simulated robot, the same way {@code GyroEncoderDrive} does, to tune a {@link HeadingController} off the
+ * robot.
+ */
+public class HeadingControllerTest {
+
+    private static final double DT = .005;
+    private static final PIDFCoefficients COEFFICIENTS = new PIDFCoefficients.Builder()
+            .p(.03)
+            .i(.02)
+            .d(.002)
+            .s(.05)
+            .build();
+
+    /**
+     * Runs the turn on the control loop's period until the controller is done.
+     *
+     * @return how long it took in seconds
+     */
+    private static double turn(HeadingController controller, SimulatedTurn robot, double targetHeading) {
+        double heading = robot.readHeading(0);
+        controller.start(heading, targetHeading);
+        double time = 0;
+        while (!controller.isDone()) {
+            time += DT;
+            heading = robot.readHeading(time);
+            robot.power = controller.update(heading, robot.rate, DT);
+            robot.step(DT);
+            assertTrue("Ran past the time limit", time <= controller.getTimeLimit() + DT);
+        }
+        return time;
+    }
+
+    @Test
+    public void settlesWithinTolerance() {
+        HeadingController controller = new HeadingController(COEFFICIENTS);
+        controller.setMaxPower(.8);
+        SimulatedTurn robot = new SimulatedTurn(0);
+
+        double time = turn(controller, robot, 90);
+        assertThat(controller.isSettled(), is(true));
+        assertEquals(90, robot.heading, HeadingController.DEFAULT_TOLERANCE);
+        assertTrue("Took " + time + " s", time < 1.5);
+    }
+
+    @Test
+    public void turnsAcrossTheWrap() {
+        HeadingController controller = new HeadingController(COEFFICIENTS);
+        SimulatedTurn robot = new SimulatedTurn(170);
+
+        // 170 + 45 reads as -145 on the gyro
+        turn(controller, robot, HeadingController.unwrapDegrees(170, -145));
+        assertThat(controller.isSettled(), is(true));
+        assertEquals(-145, HeadingController.wrapDegrees(robot.heading), HeadingController.DEFAULT_TOLERANCE);
+    }
+
+    @Test
+    public void followsTurnProfile() {
+        HeadingController controller = new HeadingController(new PIDFCoefficients.Builder()
+                .p(.03)
+                .i(.02)
+                .d(.002)
+                .s(.05)
+                .v(1 / SimulatedTurn.MAX_RATE)
+                .build());
+        controller.setTurnProfile(180, 720);
+        SimulatedTurn robot = new SimulatedTurn(0);
+
+        double time = turn(controller, robot, -270);
+        assertThat(controller.isSettled(), is(true));
+        assertEquals(-270, robot.heading, HeadingController.DEFAULT_TOLERANCE);
+        assertTrue("Took " + time + " s", time < new TrapezoidProfile(270, 180, 720).getDuration() + .5);
+    }
+
+    @Test
+    public void timesOutWhenStuck() {
+        HeadingController controller = new HeadingController(COEFFICIENTS);
+        controller.setMaxPower(SimulatedTurn.STATIC_POWER / 2);
+        controller.setSettleTime(.1, .5);
+        SimulatedTurn robot = new SimulatedTurn(0);
+
+        double time = turn(controller, robot, 90);
+        assertThat(controller.isSettled(), is(false));
+        assertThat(controller.isTimedOut(), is(true));
+        assertEquals(.5, time, 2 * DT);
+    }
+
+    @Test
+    public void wrapsAngles() {
+        assertEquals(-180, HeadingController.wrapDegrees(180), 1e-9);
+        assertEquals(-90, HeadingController.wrapDegrees(270), 1e-9);
+        assertEquals(10, HeadingController.wrapDegrees(-710), 1e-9);
+        assertEquals(181, HeadingController.unwrapDegrees(179, -179), 1e-9);
+        assertEquals(-350, HeadingController.unwrapDegrees(-345, 10), 1e-9);
+    }
+
+    /**
+     * A drive turning in place: the turn rate lags the power, nothing moves below the static friction, and the gyro
+     * reads at 100 Hz, in sixteenths of a degree, wrapped to [-180, 180).
+     */
+    static class SimulatedTurn {
+        static final double MAX_RATE = 360, TIME_CONSTANT = .08, STATIC_POWER = .06;
+        static final double IMU_PERIOD = .01, IMU_RESOLUTION = 1 / 16.0;
+
+        double power, heading, rate;
+        private double reading, lastReadTime = Double.NEGATIVE_INFINITY, unwrapped;
+
+        SimulatedTurn(double heading) {
+            this.heading = heading;
+            this.unwrapped = heading;
+        }
+
+        void step(double dt) {
+            double drive = FastMath.abs(power) < STATIC_POWER ? 0 : power - FastMath.signum(power) * STATIC_POWER;
+            rate += (drive * MAX_RATE - rate) * dt / TIME_CONSTANT;
+            heading += rate * dt;
+        }
+
+        /**
+         * @return the unwrapped heading, the gyro's reading only changes every {@link #IMU_PERIOD}
+         */
+        double readHeading(double time) {
+            if (time - lastReadTime >= IMU_PERIOD - 1e-9) {
+                reading = HeadingController.wrapDegrees(FastMath.rint(heading / IMU_RESOLUTION) * IMU_RESOLUTION);
+                unwrapped = HeadingController.unwrapDegrees(unwrapped, reading);
+                lastReadTime = time;
+            }
+            return unwrapped;
+        }
+    }
+}
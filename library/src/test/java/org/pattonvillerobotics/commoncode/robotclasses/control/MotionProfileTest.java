@@ -0,0 +1,118 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MotionProfileTest {
+
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Walks the profile in small steps, checking it stays within the limits and its position and velocity are the
+     * integrals of its velocity and acceleration.
+     */
+    private static void checkProfile(MotionProfile profile, double maxVelocity, double maxAcceleration, double maxJerk) {
+        double dt = profile.getDuration() / 20000;
+        MotionState state = new MotionState(), previous = new MotionState();
+        profile.getState(0, previous);
+        assertEquals(0, previous.getPosition(), EPSILON);
+        assertEquals(0, previous.getVelocity(), EPSILON);
+
+        for (int i = 1; i <= 20000; i++) {
+            profile.getState(i * dt, state);
+            assertTrue(state.toString(), FastMath.abs(state.getVelocity()) <= maxVelocity + EPSILON);
+            assertTrue(state.toString(), FastMath.abs(state.getAcceleration()) <= maxAcceleration + EPSILON);
+            assertTrue(state.toString(), FastMath.abs(state.getJerk()) <= maxJerk + EPSILON);
+            assertEquals(previous.getPosition() + (previous.getVelocity() + state.getVelocity()) / 2 * dt, state.getPosition(), 1e-3);
+            if (maxJerk != Double.MAX_VALUE)
+                assertEquals(previous.getVelocity() + (previous.getAcceleration() + state.getAcceleration()) / 2 * dt, state.getVelocity(), 1e-3);
+            MotionState swap = previous;
+            previous = state;
+            state = swap;
+        }
+
+        profile.getState(profile.getDuration() + 1, state);
+        assertEquals(profile.getDistance(), state.getPosition(), EPSILON);
+        assertEquals(0, state.getVelocity(), EPSILON);
+    }
+
+    @Test
+    public void testTrapezoidReachesMaxVelocity() {
+        TrapezoidProfile profile = new TrapezoidProfile(72, 24, 12);
+
+        // 2 s up and down covering 24 in each, 24 in of cruising at 24 in/s
+        assertEquals(24, profile.getPeakVelocity(), EPSILON);
+        assertEquals(5, profile.getDuration(), EPSILON);
+        checkProfile(profile, 24, 12, Double.MAX_VALUE);
+    }
+
+    @Test
+    public void testShortTrapezoidIsTriangle() {
+        TrapezoidProfile profile = new TrapezoidProfile(12, 24, 12);
+
+        assertEquals(12, profile.getPeakVelocity(), EPSILON);
+        assertEquals(2, profile.getDuration(), EPSILON);
+        checkProfile(profile, 24, 12, Double.MAX_VALUE);
+    }
+
+    @Test
+    public void testSCurveReachesEveryLimit() {
+        SCurveProfile profile = new SCurveProfile(60, 24, 24, 48);
+
+        // Speeding up takes 0.5 s of jerk each way and 0.5 s at 24 in/s^2, 1.5 s covering 18 in
+        assertEquals(24, profile.getPeakVelocity(), EPSILON);
+        assertEquals(3 + 24.0 / 24, profile.getDuration(), EPSILON);
+        checkProfile(profile, 24, 24, 48);
+    }
+
+    @Test
+    public void testSCurveBelowMaxVelocity() {
+        SCurveProfile profile = new SCurveProfile(20, 24, 24, 48);
+
+        assertTrue(profile.getPeakVelocity() < 24);
+        checkProfile(profile, 24, 24, 48);
+    }
+
+    @Test
+    public void testSCurveBelowMaxAcceleration() {
+        SCurveProfile profile = new SCurveProfile(2, 24, 24, 48);
+
+        // Too short to reach 24 in/s^2 at 48 in/s^3, so there is no constant acceleration phase
+        assertTrue(profile.getPeakVelocity() < 24.0 * 24 / 48);
+        checkProfile(profile, 24, 24, 48);
+    }
+
+    @Test
+    public void testSCurveIsSlowerThanTrapezoid() {
+        assertTrue(new SCurveProfile(48, 24, 12, 24).getDuration() > new TrapezoidProfile(48, 24, 12).getDuration());
+    }
+
+    @Test
+    public void testNegativeDistanceIsMirrored() {
+        MotionProfile profile = MotionProfile.create(-30, 24, 24, 48);
+        MotionState state = profile.getState(profile.getDuration() / 4, new MotionState());
+
+        assertThat(profile, instanceOf(SCurveProfile.class));
+        assertTrue(state.getPosition() < 0 && state.getVelocity() < 0);
+        checkProfile(profile, 24, 24, 48);
+    }
+
+    @Test
+    public void testZeroDistance() {
+        for (MotionProfile profile : new MotionProfile[]{new TrapezoidProfile(0, 24, 12), new SCurveProfile(0, 24, 12, 24)}) {
+            assertThat(profile.getDuration(), is(0.0));
+            assertThat(profile.getState(0, new MotionState()).getPosition(), is(0.0));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsZeroAcceleration() {
+        new TrapezoidProfile(10, 24, 0);
+    }
+}
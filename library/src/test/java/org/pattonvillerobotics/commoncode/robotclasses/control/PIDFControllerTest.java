@@ -0,0 +1,88 @@
+package org.pattonvillerobotics.commoncode.robotclasses.control;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class PIDFControllerTest {
+
+    @Test
+    public void testFeedforward() {
+        PIDFController controller = new PIDFController(new PIDFCoefficients.Builder().s(.05).v(.01).a(.002).build());
+
+        assertEquals(.05 + .2 + .02, controller.update(20, 20, 20, 10, .005), 1e-12);
+        assertEquals(-.05 - .2, controller.update(-20, -20, -20, 0, .005), 1e-12);
+        assertThat(controller.update(0, 0, 0, 0, .005), is(0.0));
+    }
+
+    @Test
+    public void testIntegralDoesNotWindUp() {
+        PIDFController controller = new PIDFController(new PIDFCoefficients.Builder().p(.1).i(1).build());
+
+        // Stalled against the limit for a second
+        for (int i = 0; i < 200; i++)
+            assertThat(controller.update(20, 0, .005), is(1.0));
+        assertTrue(controller.getIntegral() < 1);
+
+        // Once past the setpoint the output backs off right away
+        assertTrue(controller.update(20, 21, .005) < 1);
+    }
+
+    @Test
+    public void testDerivativeIgnoresSetpointJumps() {
+        PIDFController controller = new PIDFController(new PIDFCoefficients.Builder().d(1).build());
+
+        controller.update(0, 5, .005);
+        assertThat(controller.update(100, 5, .005), is(0.0));
+        assertEquals(-.2, controller.update(100, 5.001, .005), 1e-9);
+    }
+
+    @Test
+    public void testIntegralZone() {
+        PIDFController controller = new PIDFController(new PIDFCoefficients.Builder().i(.1).build());
+        controller.setIntegralZone(5);
+
+        controller.update(10, 0, .5);
+        assertThat(controller.getIntegral(), is(0.0));
+        controller.update(10, 6, .5);
+        assertEquals(2, controller.getIntegral(), 1e-12);
+        controller.update(10, 0, .5);
+        assertThat(controller.getIntegral(), is(0.0));
+    }
+
+    @Test
+    public void testMeasuredRateForDerivative() {
+        PIDFController controller = new PIDFController(new PIDFCoefficients.Builder().d(.5).build());
+
+        assertEquals(-1, controller.update(0, 0, 2, 0, 0, .005), 1e-12);
+        // The same measurement twice would read as stopped if differenced
+        assertEquals(-1, controller.update(0, 0, 2, 0, 0, .005), 1e-12);
+    }
+
+    /**
+     * Follows a profile with a simulated drive side whose speed lags its power, and ends up on the target.
+     */
+    @Test
+    public void testTracksProfileOnSimulatedMotor() {
+        ControlSchedulerTest.SimulatedMotor motor = new ControlSchedulerTest.SimulatedMotor();
+        // A deliberately wrong feedforward, the feedback has to make up the difference
+        PIDFController controller = new PIDFController(new PIDFCoefficients.Builder().p(.02).i(.1).v(.009).a(.0005).build());
+        MotionProfile profile = new SCurveProfile(48, 50, 100, 400);
+        MotionState state = new MotionState();
+
+        double dt = .005, position = 0, maxLag = 0;
+        for (double t = 0; t < profile.getDuration() + .5; t += dt) {
+            profile.getState(t, state);
+            motor.power = controller.update(state.getVelocity(), motor.speed, state.getVelocity(), state.getAcceleration(), dt);
+            motor.step(dt);
+            position += motor.speed * dt;
+            maxLag = Math.max(maxLag, Math.abs(state.getPosition() - position));
+        }
+
+        assertEquals(48, position, .25);
+        assertTrue("lagged " + maxLag, maxLag < 2);
+    }
+}
@@ -0,0 +1,33 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import com.qualcomm.robotcore.hardware.DcMotor;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * A motor that reports whatever position and busy flag the test sets, and counts how often it is read.
+ */
+class FakeMotor implements InvocationHandler {
+    int position, reads;
+    boolean busy;
+
+    DcMotor motor() {
+        return (DcMotor) Proxy.newProxyInstance(DcMotor.class.getClassLoader(), new Class<?>[]{DcMotor.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        switch (method.getName()) {
+            case "getCurrentPosition":
+                reads++;
+                return position;
+            case "isBusy":
+                reads++;
+                return busy;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+}
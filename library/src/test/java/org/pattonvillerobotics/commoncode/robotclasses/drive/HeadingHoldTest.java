@@ -0,0 +1,80 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import org.pattonvillerobotics.commoncode.robotclasses.control.HeadingController;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory.PoseSource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HeadingHoldTest {
+
+    @Test
+    public void steersBackToTheHeldHeading() {
+        FakeHeading source = new FakeHeading();
+        source.heading = 30;
+        HeadingHold hold = new HeadingHold(source);
+        hold.start();
+
+        source.heading = 35;
+        assertTrue(hold.update(.005) < 0);
+        source.heading = 25;
+        assertTrue(hold.update(.005) > 0);
+        assertEquals(-5, hold.getError(), 1e-9);
+    }
+
+    @Test
+    public void holdsAcrossTheWrap() {
+        FakeHeading source = new FakeHeading();
+        source.heading = 179;
+        HeadingHold hold = new HeadingHold(source);
+        hold.start();
+
+        // A gyro reading in [-180, 180) that has just turned 2 degrees counterclockwise
+        source.heading = -179;
+        assertTrue(hold.update(.005) < 0);
+        assertEquals(2, hold.getError(), 1e-9);
+    }
+
+    /**
+     * A drive that pulls to the right at a constant rate stays close to its heading with the correction mixed in.
+     */
+    @Test
+    public void cancelsDrift() {
+        FakeHeading source = new FakeHeading();
+        HeadingHold hold = new HeadingHold(source);
+        hold.start();
+
+        double dt = .005, drift = -10, turnRatePerPower = 300, maxError = 0;
+        for (int i = 0; i < 600; i++) {
+            double correction = hold.update(dt);
+            source.heading += (drift + correction * turnRatePerPower) * dt;
+            if (i > 200)
+                maxError = FastMath.max(maxError, FastMath.abs(source.heading));
+        }
+        assertTrue("Drifted " + maxError, maxError < HeadingController.DEFAULT_TOLERANCE);
+    }
+
+    @Test
+    public void readsPoseHeadingInDegrees() {
+        HeadingSource source = HeadingHold.fromPose(new PoseSource() {
+            @Override
+            public void getPose(double[] out) {
+                out[0] = 1;
+                out[1] = 2;
+                out[2] = FastMath.PI / 2;
+            }
+        });
+        assertEquals(90, source.getHeading(), 1e-9);
+    }
+
+    private static class FakeHeading implements HeadingSource {
+        volatile double heading;
+
+        @Override
+        public double getHeading() {
+            return heading;
+        }
+    }
+}
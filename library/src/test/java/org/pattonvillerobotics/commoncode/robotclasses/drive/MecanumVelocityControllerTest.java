@@ -0,0 +1,74 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import org.pattonvillerobotics.commoncode.robotclasses.control.PIDFCoefficients;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MecanumVelocityControllerTest {
+
+    private static final RobotParameters PARAMETERS = new RobotParameters.Builder()
+            .wheelRadius(2)
+            .wheelBaseRadius(8)
+            .build();
+
+    @Test
+    public void testWheelVelocitiesAreTheInverseOfOdometry() {
+        double[] wheels = new double[4], body = new double[3];
+        MecanumKinematics.wheelVelocities(12, -5, .7, 8, wheels);
+        new MecanumOdometry(PARAMETERS, new MotorSnapshot(), 0, 1, 2, 3).getBodyDelta(wheels, body);
+
+        assertEquals(12, body[0], 1e-12);
+        assertEquals(-5, body[1], 1e-12);
+        assertEquals(.7, body[2], 1e-12);
+    }
+
+    @Test
+    public void testWheelVelocitiesMatchWheelPowers() {
+        double[] velocities = new double[4], powers = new double[4];
+        // Strafing left, and turning counterclockwise
+        MecanumKinematics.wheelVelocities(0, 1, 0, 8, velocities);
+        MecanumKinematics.wheelPowers(FastMath.PI, 1, 0, powers);
+        for (int i = 0; i < 4; i++)
+            assertEquals(FastMath.signum(powers[i]), FastMath.signum(velocities[i]), 0);
+
+        MecanumKinematics.wheelVelocities(0, 0, 1, 8, velocities);
+        MecanumKinematics.wheelPowers(0, 0, 1, powers);
+        for (int i = 0; i < 4; i++)
+            assertEquals(FastMath.signum(powers[i]), FastMath.signum(velocities[i]), 0);
+    }
+
+    @Test
+    public void testFeedforwardDrivesEachWheelAtItsShare() {
+        MecanumVelocityController controller = new MecanumVelocityController(
+                new PIDFCoefficients.Builder().s(.05).v(.02).a(.001).build(), 8);
+        double[] powers = new double[4];
+        controller.setTarget(0, 20, 0, 0, 10, 0);
+        controller.update(new double[4], .005, powers);
+
+        // Strafing left turns the front left and rear right wheels backwards
+        assertEquals(-(.05 + .02 * 20 + .001 * 10), powers[MecanumKinematics.FRONT_LEFT], 1e-12);
+        assertEquals(.05 + .02 * 20 + .001 * 10, powers[MecanumKinematics.FRONT_RIGHT], 1e-12);
+        assertEquals(.05 + .02 * 20 + .001 * 10, powers[MecanumKinematics.REAR_LEFT], 1e-12);
+        assertEquals(-(.05 + .02 * 20 + .001 * 10), powers[MecanumKinematics.REAR_RIGHT], 1e-12);
+    }
+
+    @Test
+    public void testSlowWheelIsPushedHarder() {
+        MecanumVelocityController controller = new MecanumVelocityController(
+                new PIDFCoefficients.Builder().p(.01).v(.02).build(), 8);
+        double[] powers = new double[4];
+        controller.setTarget(30, 0, 0);
+        controller.update(new double[]{30, 30, 20, 30}, .005, powers);
+
+        assertEquals(.6, powers[MecanumKinematics.FRONT_LEFT], 1e-12);
+        assertTrue(powers[MecanumKinematics.REAR_LEFT] > powers[MecanumKinematics.FRONT_LEFT]);
+        assertEquals(10, controller.getLastError(MecanumKinematics.REAR_LEFT), 1e-12);
+
+        controller.reset();
+        controller.update(new double[4], .005, powers);
+        assertEquals(0, powers[MecanumKinematics.FRONT_LEFT], 0);
+    }
+}
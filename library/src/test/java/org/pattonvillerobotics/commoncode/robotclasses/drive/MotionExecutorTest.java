@@ -0,0 +1,129 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pattonvillerobotics.commoncode.robotclasses.control.ControlScheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MotionExecutorTest {
+
+    private final ControlScheduler scheduler = new ControlScheduler(1, TimeUnit.MILLISECONDS);
+    private final MotionExecutor executor = new MotionExecutor(scheduler);
+    private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() {
+        scheduler.start();
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+    }
+
+    private void waitFor(String event) throws InterruptedException {
+        while (!events.contains(event))
+            Thread.sleep(1);
+    }
+
+    /**
+     * A motion that records its steps and finishes after {@code updates} updates, or never if negative.
+     */
+    private Motion motion(final String name, final int updates) {
+        return new Motion() {
+            private int count;
+
+            @Override
+            protected void start() {
+                events.add(name + " start");
+            }
+
+            @Override
+            protected boolean update() {
+                return ++count == updates;
+            }
+
+            @Override
+            protected void end(boolean interrupted) {
+                events.add(name + (interrupted ? " interrupted" : " end"));
+            }
+        };
+    }
+
+    @Test
+    public void testMotionRunsToCompletion() throws InterruptedException {
+        MotionHandle handle = executor.submit(motion("a", 5));
+
+        assertThat(handle.await(1, TimeUnit.SECONDS), is(true));
+        assertThat(handle.isDone(), is(true));
+        assertThat(handle.isCancelled(), is(false));
+        assertThat(events, is(Arrays.asList("a start", "a end")));
+    }
+
+    @Test
+    public void testCancelStopsTheMotion() throws InterruptedException {
+        MotionHandle handle = executor.submit(motion("a", -1));
+        waitFor("a start");
+
+        assertThat(handle.cancel(), is(true));
+        handle.await();
+        assertThat(handle.isCancelled(), is(true));
+        assertThat(handle.cancel(), is(false));
+        assertThat(events, is(Arrays.asList("a start", "a interrupted")));
+    }
+
+    @Test
+    public void testNextMotionWaitsForThePreviousToEnd() throws InterruptedException {
+        MotionHandle first = executor.submit(motion("a", -1));
+        waitFor("a start");
+        first.cancel();
+        MotionHandle second = executor.submit(motion("b", 3), first);
+
+        second.await();
+        assertThat(events, is(Arrays.asList("a start", "a interrupted", "b start", "b end")));
+    }
+
+    @Test
+    public void testFailureEndsTheMotion() throws InterruptedException {
+        final RuntimeException failure = new IllegalStateException("motor unplugged");
+        MotionHandle handle = executor.submit(new Motion() {
+            @Override
+            protected void start() {
+            }
+
+            @Override
+            protected boolean update() {
+                throw failure;
+            }
+
+            @Override
+            protected void end(boolean interrupted) {
+                events.add(interrupted ? "interrupted" : "end");
+            }
+        });
+
+        handle.await();
+        assertThat(handle.getFailure(), is(failure));
+        assertThat(events, is(Collections.singletonList("interrupted")));
+    }
+
+    @Test
+    public void testUnregistersWhenIdle() throws InterruptedException {
+        executor.submit(motion("a", 2)).await();
+        // Let the tick that ended the motion finish
+        Thread.sleep(10);
+        long ticks = scheduler.getTickCount();
+        Thread.sleep(20);
+
+        assertThat(scheduler.getTickCount(), is(ticks));
+    }
+}
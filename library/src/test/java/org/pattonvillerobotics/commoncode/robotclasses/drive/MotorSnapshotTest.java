@@ -0,0 +1,110 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import org.junit.Test;
+import org.pattonvillerobotics.commoncode.robotclasses.recorder.FlightRecordDecoder;
+import org.pattonvillerobotics.commoncode.robotclasses.recorder.FlightRecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MotorSnapshotTest {
+
+    @Test
+    public void testPerCycleReadsEachValueOncePerCycle() {
+        FakeMotor left = new FakeMotor(), right = new FakeMotor();
+        MotorSnapshot snapshot = new MotorSnapshot();
+        int leftIndex = snapshot.addMotor(left.motor());
+        int rightIndex = snapshot.addMotor(right.motor());
+
+        for (int cycle = 0; cycle < 10; cycle++) {
+            snapshot.nextCycle();
+            left.position = cycle;
+            for (int i = 0; i < 3; i++) {
+                assertThat(snapshot.getPosition(leftIndex), is(cycle));
+                snapshot.getPosition(rightIndex);
+                snapshot.isBusy(leftIndex);
+                snapshot.isBusy(rightIndex);
+            }
+        }
+
+        // One position and one busy read per motor per cycle, instead of 12
+        assertThat(left.reads, is(20));
+        assertThat(right.reads, is(20));
+        assertThat(snapshot.getReadCount(), is(20L));
+    }
+
+    @Test
+    public void testOffReadsThrough() {
+        FakeMotor motor = new FakeMotor();
+        MotorSnapshot snapshot = new MotorSnapshot(MotorSnapshot.CachePolicy.OFF);
+        int index = snapshot.addMotor(motor.motor());
+
+        snapshot.getPosition(index);
+        motor.position = 5;
+        assertThat(snapshot.getPosition(index), is(5));
+        assertThat(motor.reads, is(2));
+    }
+
+    @Test
+    public void testOffWorksOutVelocities() throws InterruptedException {
+        FakeMotor motor = new FakeMotor();
+        MotorSnapshot snapshot = new MotorSnapshot(MotorSnapshot.CachePolicy.OFF);
+        int index = snapshot.addMotor(motor.motor());
+
+        assertThat(snapshot.getPosition(index), is(0));
+        Thread.sleep(20);
+        motor.position = 100;
+        double velocity = snapshot.getVelocity(index);
+        assertTrue("velocity " + velocity, velocity > 0 && velocity <= 5000);
+        assertThat(snapshot.getReadCount(), is(2L));
+    }
+
+    @Test
+    public void testVelocityFromPositionChanges() throws InterruptedException {
+        FakeMotor motor = new FakeMotor();
+        MotorSnapshot snapshot = new MotorSnapshot();
+        int index = snapshot.addMotor(motor.motor());
+
+        assertThat(snapshot.getVelocity(index), is(0.0));
+        Thread.sleep(20);
+        motor.position = 100;
+        snapshot.nextCycle();
+        double velocity = snapshot.getVelocity(index);
+        // 100 ticks in at least 20 ms
+        assertTrue("velocity " + velocity, velocity > 0 && velocity <= 5000);
+
+        snapshot.reset();
+        motor.position = 0;
+        assertThat(snapshot.getVelocity(index), is(0.0));
+    }
+
+    @Test
+    public void testRecordsPositionsWhenRead() throws IOException {
+        FakeMotor left = new FakeMotor(), right = new FakeMotor();
+        MotorSnapshot snapshot = new MotorSnapshot();
+        int leftIndex = snapshot.addMotor(left.motor());
+        snapshot.addMotor(right.motor());
+        File file = File.createTempFile("encoders", ".bin");
+        FlightRecorder recorder = new FlightRecorder(file, 16);
+        snapshot.setRecorderChannel(recorder.addChannel("encoders", "left", "right"));
+
+        for (int cycle = 0; cycle < 3; cycle++) {
+            snapshot.nextCycle();
+            left.position = cycle;
+            right.position = -cycle;
+            snapshot.getPosition(leftIndex);
+            snapshot.getPosition(leftIndex);
+        }
+        recorder.close();
+
+        FlightRecordDecoder.Table table = FlightRecordDecoder.read(file).getTable("encoders");
+        assertTrue(Arrays.equals(table.getColumn("left"), new double[]{0, 1, 2}));
+        assertTrue(Arrays.equals(table.getColumn("right"), new double[]{0, -1, -2}));
+        assertTrue(file.delete());
+    }
+}
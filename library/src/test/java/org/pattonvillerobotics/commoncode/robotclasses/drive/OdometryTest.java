@@ -0,0 +1,170 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive;
+
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class OdometryTest {
+
+    private static final long TICK_NANOS = 5000000;
+
+    /**
+     * 1440 ticks per revolution of a wheel 4π inches around, so 1 inch is 360 / π ticks, on a 16 inch track.
+     */
+    private static final RobotParameters PARAMETERS = new RobotParameters.Builder()
+            .wheelRadius(2)
+            .wheelBaseRadius(8)
+            .encodersEnabled(true)
+            .build();
+
+    /**
+     * Sets the motor's encoder to {@code inches} of wheel travel.
+     */
+    private static void setInches(FakeMotor motor, double inches) {
+        motor.position = (int) FastMath.round(inches * 360 / FastMath.PI);
+    }
+
+    /**
+     * Runs a tick of the odometry at {@code timeNanos}.
+     */
+    private static void update(Odometry odometry, TestSnapshot snapshot, long timeNanos) {
+        snapshot.timeNanos = timeNanos;
+        odometry.update(timeNanos, TICK_NANOS / 1e9);
+    }
+
+    @Test
+    public void testArcIsExact() {
+        // A full circle of radius 10 in four quarter turns ends where it started
+        double[] pose = {0, 0, 0};
+        for (int i = 0; i < 4; i++)
+            Odometry.integrate(pose, 10 * FastMath.PI / 2, 0, FastMath.PI / 2);
+
+        assertEquals(0, pose[0], 1e-9);
+        assertEquals(0, pose[1], 1e-9);
+        assertEquals(2 * FastMath.PI, pose[2], 1e-12);
+
+        Odometry.integrate(pose, 10 * FastMath.PI / 2, 0, FastMath.PI / 2);
+        assertEquals(10, pose[0], 1e-9);
+        assertEquals(10, pose[1], 1e-9);
+    }
+
+    @Test
+    public void testTankCarriesPoseAcrossEncoderResets() {
+        final FakeMotor left = new FakeMotor(), right = new FakeMotor();
+        TestSnapshot snapshot = new TestSnapshot(left, right);
+        Odometry odometry = new TankOdometry(PARAMETERS, snapshot, 0, 1);
+        long time = 0;
+        update(odometry, snapshot, time);
+
+        // 24 inches forward over a second
+        for (int i = 1; i <= 200; i++) {
+            setInches(left, 24 * i / 200.0);
+            setInches(right, 24 * i / 200.0);
+            update(odometry, snapshot, time += TICK_NANOS);
+        }
+        odometry.resetEncoders(new Runnable() {
+            @Override
+            public void run() {
+                left.position = right.position = 0;
+            }
+        });
+
+        // A quarter turn counterclockwise in place, 4π inches for each wheel on a 16 inch track
+        for (int i = 1; i <= 200; i++) {
+            setInches(left, -4 * FastMath.PI * i / 200);
+            setInches(right, 4 * FastMath.PI * i / 200);
+            update(odometry, snapshot, time += TICK_NANOS);
+        }
+        double[] state = new double[Odometry.STATE_DIMENSION];
+        odometry.getState(state);
+        assertEquals(FastMath.PI / 2, state[Odometry.ANGULAR_VELOCITY], .05);
+
+        // Then 12 inches, now along y
+        for (int i = 1; i <= 100; i++) {
+            setInches(left, -4 * FastMath.PI + 12 * i / 100.0);
+            setInches(right, 4 * FastMath.PI + 12 * i / 100.0);
+            update(odometry, snapshot, time += TICK_NANOS);
+        }
+
+        double[] pose = new double[3];
+        odometry.getPose(pose);
+        // Within the rounding of whole encoder ticks
+        assertEquals(24, pose[0], .05);
+        assertEquals(12, pose[1], .05);
+        assertEquals(90, odometry.getHeadingDegrees(), .5);
+        odometry.getState(state);
+        assertEquals(24, state[Odometry.FORWARD_VELOCITY], .5);
+    }
+
+    @Test
+    public void testMecanumStrafe() {
+        FakeMotor frontLeft = new FakeMotor(), frontRight = new FakeMotor(), rearLeft = new FakeMotor(), rearRight = new FakeMotor();
+        TestSnapshot snapshot = new TestSnapshot(frontLeft, frontRight, rearLeft, rearRight);
+        Odometry odometry = new MecanumOdometry(PARAMETERS, snapshot, 0, 1, 2, 3);
+        odometry.setPose(10, 0, FastMath.PI / 2);
+        update(odometry, snapshot, 0);
+
+        // Strafing left, facing along y
+        for (int i = 1; i <= 100; i++) {
+            setInches(frontLeft, -18 * i / 100.0);
+            setInches(rearRight, -18 * i / 100.0);
+            setInches(frontRight, 18 * i / 100.0);
+            setInches(rearLeft, 18 * i / 100.0);
+            update(odometry, snapshot, i * TICK_NANOS);
+        }
+
+        double[] pose = new double[3];
+        odometry.getPose(pose);
+        assertEquals(-8, pose[0], .05);
+        assertEquals(0, pose[1], .05);
+        assertEquals(FastMath.PI / 2, pose[2], 1e-9);
+    }
+
+    @Test
+    public void testUsesTheReadsOfTheDrivesMotions() {
+        FakeMotor left = new FakeMotor(), right = new FakeMotor();
+        MotorSnapshot snapshot = new MotorSnapshot();
+        snapshot.addMotor(left.motor());
+        snapshot.addMotor(right.motor());
+        Odometry odometry = new TankOdometry(PARAMETERS, snapshot, 0, 1);
+
+        // With no motion running the odometry reads the encoders itself
+        odometry.update(0, .005);
+        odometry.update(TICK_NANOS, .005);
+        assertThat(snapshot.getReadCount(), is(2L));
+
+        // A motion reads them at the start of its tick, and the odometry uses that
+        snapshot.nextCycle();
+        setInches(left, 1);
+        setInches(right, 1);
+        snapshot.getPosition(0);
+        odometry.update(2 * TICK_NANOS, .005);
+        assertThat(snapshot.getReadCount(), is(3L));
+        assertThat(left.reads, is(3));
+
+        double[] pose = new double[3];
+        odometry.getPose(pose);
+        assertEquals(1, pose[0], .01);
+    }
+
+    /**
+     * Reads the motors on every call, and says it read them at the test's time rather than the clock's.
+     */
+    private static class TestSnapshot extends MotorSnapshot {
+        long timeNanos;
+
+        TestSnapshot(FakeMotor... motors) {
+            super(CachePolicy.OFF);
+            for (FakeMotor motor : motors)
+                addMotor(motor.motor());
+        }
+
+        @Override
+        public long getPositionsTimeNanos() {
+            return timeNanos;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.characterization;
+
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+import org.pattonvillerobotics.commoncode.robotclasses.control.PIDFCoefficients;
+import org.pattonvillerobotics.commoncode.robotclasses.drive.RobotParameters;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DriveCharacterizationTest {
+
+    private static final double KS = .06, KV = .018, KA = .004, DT = .005;
+
+    /**
+     * Runs {@code test} on a drive that follows the feedforward model exactly, logging like the drive does.
+     */
+    private static CharacterizationLog simulate(CharacterizationTest test) {
+        CharacterizationLog log = new CharacterizationLog();
+        double velocity = 0, position = 0, power = 0;
+        for (double t = 0; t < test.getDuration(); t += DT) {
+            log.add(t, power, power, position, position, velocity, velocity, Double.NaN);
+            power = test.getPower(t);
+            for (int i = 0; i < 10; i++) {
+                double friction = velocity != 0 ? KS * FastMath.signum(velocity) : FastMath.abs(power) > KS ? KS * FastMath.signum(power) : power;
+                velocity += (power - friction - KV * velocity) / KA * DT / 10;
+                position += velocity * DT / 10;
+            }
+        }
+        return log;
+    }
+
+    @Test
+    public void testFitsTheFeedforward() {
+        CharacterizationLog quasistatic = simulate(new CharacterizationTest.Builder().quasistatic(.1).maxPower(.8).build());
+        CharacterizationLog reversed = simulate(new CharacterizationTest.Builder().quasistatic(.1).maxPower(.8).reversed(true).build());
+        CharacterizationLog step = simulate(new CharacterizationTest.Builder().step(.6).duration(2).build());
+
+        DriveCharacterization.Feedforward feedforward = DriveCharacterization.fitFeedforward(quasistatic, reversed, step);
+        assertEquals(KS, feedforward.getS(), KS * .03);
+        assertEquals(KV, feedforward.getV(), KV * .03);
+        assertEquals(KA, feedforward.getA(), KA * .03);
+        assertTrue(feedforward.toString(), feedforward.getRSquared() > .99);
+        assertEquals((1 - KS) / KV, feedforward.getMaxVelocity(), 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStandingStillCantBeFitted() {
+        DriveCharacterization.fitFeedforward(simulate(new CharacterizationTest.Builder().step(KS / 2).duration(1).build()));
+    }
+
+    @Test
+    public void testFitsTheWheelBase() {
+        CharacterizationLog log = new CharacterizationLog();
+        // Turning counterclockwise on a 7.5 inch radius, with a little noise on the heading
+        for (int i = 0; i < 200; i++) {
+            double travel = .1 * i;
+            log.add(i * DT, -.3, .3, -travel, travel, -20, 20, FastMath.toDegrees(travel / 7.5) + (i % 2 == 0 ? .2 : -.2));
+        }
+        assertEquals(7.5, DriveCharacterization.fitWheelBaseRadius(log), .05);
+    }
+
+    @Test
+    public void testLogRoundTrips() throws IOException {
+        CharacterizationLog log = simulate(new CharacterizationTest.Builder().step(.5).duration(.1).build());
+        StringWriter writer = new StringWriter();
+        log.write(writer);
+
+        CharacterizationLog read = CharacterizationLog.read(new StringReader(writer.toString()));
+        assertThat(read.size(), is(log.size()));
+        for (int i = 0; i < log.size(); i++) {
+            assertThat(read.getVelocity(i, true), is(log.getVelocity(i, true)));
+            assertThat(read.getPower(i, false), is(log.getPower(i, false)));
+            assertTrue(Double.isNaN(read.getHeading(i)));
+        }
+    }
+
+    @Test
+    public void testResultsPersistInTheRobotParameters() throws IOException {
+        RobotParameters parameters = new RobotParameters.Builder()
+                .wheelRadius(2)
+                .wheelBaseRadius(8)
+                .driveVelocityCoefficients(new PIDFCoefficients.Builder().p(.01).v(.02).build())
+                .build();
+        DriveCharacterization.Feedforward feedforward = DriveCharacterization.fitFeedforward(
+                simulate(new CharacterizationTest.Builder().quasistatic(.1).maxPower(.8).build()),
+                simulate(new CharacterizationTest.Builder().step(.6).duration(2).build()));
+        RobotParameters tuned = DriveCharacterization.apply(parameters, feedforward, 7.25);
+
+        StringWriter writer = new StringWriter();
+        tuned.write(writer);
+        RobotParameters read = RobotParameters.read(new StringReader(writer.toString()));
+        assertThat(read.getWheelBaseRadius(), is(7.25));
+        assertThat(read.getWheelRadius(), is(2.0));
+        assertThat(read.getDriveVelocityCoefficients().getP(), is(.01));
+        assertThat(read.getDriveVelocityCoefficients().getS(), is(feedforward.getS()));
+        assertThat(read.getDriveVelocityCoefficients().getV(), is(feedforward.getV()));
+        assertThat(read.getDriveVelocityCoefficients().getA(), is(feedforward.getA()));
+    }
+
+    @Test(expected = IOException.class)
+    public void testBadParametersThrow() throws IOException {
+        RobotParameters.read(new StringReader("wheelRadius=2\nwheelBaseRadius=eight\n"));
+    }
+}
@@ -0,0 +1,115 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExtendedKalmanFilterTest {
+
+    private static final int N = ExtendedKalmanFilter.STATE_DIMENSION;
+    private static final double TRACK_WIDTH = 15;
+
+    @Test
+    public void testJacobianMatchesFiniteDifferences() {
+        double[] state = {10, -5, 2.5, 20, -3, .8};
+        double dt = .05;
+        ExtendedKalmanFilter filter = new ExtendedKalmanFilter(new Array2DRowRealMatrix(N, N), new ArrayRealVector(state));
+        double[] identity = new double[N * N];
+        for (int i = 0; i < N; i++)
+            identity[i * N + i] = 1;
+        filter.setState(state, identity);
+        filter.predict(dt);
+
+        // With P = I and no process noise, the predicted P is F * F'
+        double[][] numeric = new double[N][N];
+        double h = 1e-6;
+        for (int j = 0; j < N; j++) {
+            double[] plus = state.clone(), minus = state.clone();
+            plus[j] += h;
+            minus[j] -= h;
+            filter.extrapolateState(plus, dt);
+            filter.extrapolateState(minus, dt);
+            for (int i = 0; i < N; i++)
+                numeric[i][j] = (plus[i] - minus[i]) / (2 * h);
+        }
+        RealMatrix F = MatrixUtils.createRealMatrix(numeric);
+        RealMatrix expected = F.multiply(F.transpose());
+        RealMatrix actual = filter.getErrorCovariance();
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                assertEquals("P[" + i + "][" + j + "]", expected.getEntry(i, j), actual.getEntry(i, j), 1e-6);
+    }
+
+    /**
+     * Dead reckoning through a long arc from wheel speeds and gyro rate alone.
+     */
+    @Test
+    public void testTracksArcsFromWheelSpeeds() {
+        Random random = new Random(99);
+        MeasurementModel wheels = ExtendedKalmanFilter.getDifferentialDriveMeasurementModel(TRACK_WIDTH, 1);
+        MeasurementModel gyro = ExtendedKalmanFilter.getGyroMeasurementModel(.001);
+        ExtendedKalmanFilter filter = new ExtendedKalmanFilter(ExtendedKalmanFilter.getDefaultProcessNoise(), ExtendedKalmanFilter.getDefaultInitialState());
+
+        double forward = 24, angularVelocity = .6, dt = .005;
+        double left = forward - angularVelocity * TRACK_WIDTH / 2, right = forward + angularVelocity * TRACK_WIDTH / 2;
+        double time = 0;
+        for (int step = 1; step <= 1000; step++) {
+            filter.predict(dt);
+            time += dt;
+            filter.measureAndGetState(gyro, new ArrayRealVector(new double[]{angularVelocity + random.nextGaussian() * .03}));
+            if (step % 2 == 0)
+                filter.measureAndGetState(wheels, new ArrayRealVector(new double[]{left + random.nextGaussian(), right + random.nextGaussian()}));
+        }
+
+        // Exact position on a circle of radius v / ω
+        double radius = forward / angularVelocity;
+        double heading = angularVelocity * time;
+        double[] state = new double[N];
+        filter.getCurrentState(state);
+        assertEquals(radius * Math.sin(heading), state[ExtendedKalmanFilter.X], 1);
+        assertEquals(radius * (1 - Math.cos(heading)), state[ExtendedKalmanFilter.Y], 1);
+        assertEquals(heading, state[ExtendedKalmanFilter.HEADING], .05);
+        // The velocities are free to wander by about the wheel speed noise
+        assertEquals(forward, state[ExtendedKalmanFilter.FORWARD_VELOCITY], 2.5);
+        assertEquals(0, state[ExtendedKalmanFilter.STRAFE_VELOCITY], 2.5);
+    }
+
+    @Test
+    public void testHeadingMeasurementsWrapAround() {
+        double[] state = {0, 0, Math.PI - .01, 0, 0, 0};
+        double[] covariance = new double[N * N];
+        for (int i = 0; i < N; i++)
+            covariance[i * N + i] = 1;
+        ExtendedKalmanFilter filter = new ExtendedKalmanFilter(ExtendedKalmanFilter.getDefaultProcessNoise(), new ArrayRealVector(state));
+        filter.setState(state, covariance);
+
+        filter.measureAndGetState(ExtendedKalmanFilter.getPoseMeasurementModel(1, 1), new ArrayRealVector(new double[]{0, 0, -Math.PI + .01}));
+
+        // Halfway between the two, the short way around through π
+        assertEquals(Math.PI, filter.getCurrentState().getEntry(ExtendedKalmanFilter.HEADING), 1e-9);
+    }
+
+    @Test
+    public void testMecanumModelSeparatesStrafing() {
+        MeasurementModel wheels = ExtendedKalmanFilter.getMecanumMeasurementModel(14, 12, .5);
+        ExtendedKalmanFilter filter = new ExtendedKalmanFilter(ExtendedKalmanFilter.getDefaultProcessNoise(), ExtendedKalmanFilter.getDefaultInitialState());
+
+        // Strafing left at 10 in/s: front left and back right turn backwards
+        for (int step = 0; step < 200; step++) {
+            filter.predict(.01);
+            filter.measureAndGetState(wheels, new ArrayRealVector(new double[]{-10, 10, 10, -10}));
+        }
+
+        assertEquals(0, filter.getCurrentState().getEntry(ExtendedKalmanFilter.FORWARD_VELOCITY), .01);
+        assertEquals(10, filter.getCurrentState().getEntry(ExtendedKalmanFilter.STRAFE_VELOCITY), .01);
+        assertEquals(0, filter.getCurrentState().getEntry(ExtendedKalmanFilter.ANGULAR_VELOCITY), .01);
+        assertEquals(20, filter.getCurrentState().getEntry(ExtendedKalmanFilter.Y), .5);
+    }
+}
@@ -0,0 +1,121 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealVector;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertSame;
+import static org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterTestSupport.DENSE_MEASUREMENT_MODEL;
+import static org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterTestSupport.GUIDANCE_MEASUREMENT_MODELS;
+import static org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterTestSupport.assertSameEstimate;
+import static org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterTestSupport.randomMeasurement;
+
+public class FastKalmanFilterTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+
+    private KalmanFilter reference;
+    private FastKalmanFilter fast;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        reference = new KalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), KalmanFilterGuidance.getDefaultInitialState());
+        fast = new FastKalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), KalmanFilterGuidance.getDefaultInitialState());
+        random = new Random(42);
+    }
+
+    @Test
+    public void testPredictMatchesReference() {
+        RealVector state = new ArrayRealVector(new double[]{1, -2, 3, -4, .5, -.25, 90, 10});
+        reference = new KalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), state);
+        fast = new FastKalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), state);
+
+        for (int i = 0; i < 100; i++) {
+            double dt = random.nextDouble() * .02;
+            reference.predictNextState(dt);
+            fast.predictNextState(dt);
+            assertSameEstimate(reference, fast, TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testEachMeasurementModelMatchesReference() {
+        for (MeasurementModel model : GUIDANCE_MEASUREMENT_MODELS) {
+            setUp();
+            for (int i = 0; i < 50; i++) {
+                double dt = .005;
+                reference.predictNextState(dt);
+                fast.predictNextState(dt);
+
+                RealVector z = randomMeasurement(random, model);
+                reference.measureAndGetState(model, z);
+                fast.measureAndGetState(model, z);
+                assertSameEstimate(reference, fast, TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void testDenseMeasurementModelMatchesReference() {
+        for (int i = 0; i < 50; i++) {
+            reference.predictNextState(.005);
+            fast.predictNextState(.005);
+
+            RealVector z = randomMeasurement(random, DENSE_MEASUREMENT_MODEL);
+            reference.measureAndGetState(DENSE_MEASUREMENT_MODEL, z);
+            fast.measureAndGetState(DENSE_MEASUREMENT_MODEL, z);
+            assertSameEstimate(reference, fast, TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testInterleavedSensorTraceMatchesReference() {
+        for (int i = 0; i < 2000; i++) {
+            double dt = .001 + random.nextDouble() * .01;
+            reference.predictNextState(dt);
+            fast.predictNextState(dt);
+
+            MeasurementModel model = GUIDANCE_MEASUREMENT_MODELS[random.nextInt(GUIDANCE_MEASUREMENT_MODELS.length)];
+            RealVector z = randomMeasurement(random, model);
+            reference.measureAndGetState(model, z);
+            fast.measureAndGetState(model, z);
+        }
+        assertSameEstimate(reference, fast, TOLERANCE);
+    }
+
+    @Test
+    public void testPrimitiveMeasureMatchesModel() {
+        FastKalmanFilter other = new FastKalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), KalmanFilterGuidance.getDefaultInitialState());
+        MeasurementModel model = GUIDANCE_MEASUREMENT_MODELS[4];
+        double[] h = new double[3 * FastKalmanFilter.STATE_DIMENSION];
+        double[] r = new double[3 * 3];
+        for (int row = 0; row < 3; row++) {
+            for (int k = 0; k < FastKalmanFilter.STATE_DIMENSION; k++)
+                h[row * FastKalmanFilter.STATE_DIMENSION + k] = model.getMeasurementMatrix().getEntry(row, k);
+            for (int c = 0; c < 3; c++)
+                r[row * 3 + c] = model.getMeasurementNoise().getEntry(row, c);
+        }
+
+        for (int i = 0; i < 20; i++) {
+            fast.predict(.01);
+            other.predict(.01);
+            RealVector z = randomMeasurement(random, model);
+            fast.measureAndGetState(model, z);
+            other.measure(h, r, z.toArray(), 3);
+        }
+        assertSameEstimate(fast, other, TOLERANCE);
+    }
+
+    @Test
+    public void testStateIsALiveView() {
+        RealVector state = fast.getCurrentState();
+        assertSame(state, fast.predictNextState(.01));
+        assertSame(state, fast.measureAndGetState(GUIDANCE_MEASUREMENT_MODELS[1], new ArrayRealVector(new double[]{5})));
+    }
+}
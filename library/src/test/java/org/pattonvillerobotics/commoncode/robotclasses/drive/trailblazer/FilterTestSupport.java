@@ -0,0 +1,71 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.DefaultMeasurementModel;
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measurement models and checks the filter engine tests share.
+ */
+final class FilterTestSupport {
+
+    static final int N = FastKalmanFilter.STATE_DIMENSION;
+
+    /**
+     * The models {@link KalmanFilterGuidance} measures with, from the default {@link FilterNoiseParameters}, in
+     * {@link MeasurementSource} order
+     */
+    static final MeasurementModel[] GUIDANCE_MEASUREMENT_MODELS = guidanceMeasurementModels();
+
+    /**
+     * A dense, correlated model to exercise the general path
+     */
+    static final MeasurementModel DENSE_MEASUREMENT_MODEL = new DefaultMeasurementModel(
+            new double[][]{{1, 0, .5, 0, 0, 0, .1, 0}, {0, 1, 0, .5, 0, 0, 0, -.2}},
+            new double[][]{{3, .5}, {.5, 2}});
+
+    private FilterTestSupport() {
+    }
+
+    private static MeasurementModel[] guidanceMeasurementModels() {
+        FilterNoiseParameters noiseParameters = new FilterNoiseParameters.Builder().build();
+        MeasurementSource[] sources = {MeasurementSource.ENCODER, MeasurementSource.GYRO, MeasurementSource.ACCELEROMETER,
+                MeasurementSource.MAGNETOMETER, MeasurementSource.VUFORIA};
+        MeasurementModel[] models = new MeasurementModel[sources.length];
+        for (int i = 0; i < sources.length; i++)
+            models[i] = noiseParameters.getMeasurementModel(sources[i]);
+        return models;
+    }
+
+    /**
+     * Checks the state and covariance match, relative to {@code tolerance}.
+     */
+    static void assertSameEstimate(KalmanFilterEngine expected, KalmanFilterEngine actual, double tolerance) {
+        RealVector expectedState = expected.getCurrentState();
+        RealVector actualState = actual.getCurrentState();
+        for (int i = 0; i < N; i++)
+            assertEquals("x[" + i + "]", expectedState.getEntry(i), actualState.getEntry(i), tolerance * (1 + Math.abs(expectedState.getEntry(i))));
+
+        RealMatrix expectedCovariance = expected.getErrorCovariance();
+        RealMatrix actualCovariance = actual.getErrorCovariance();
+        for (int i = 0; i < N; i++)
+            for (int j = 0; j < N; j++)
+                assertEquals("P[" + i + "][" + j + "]", expectedCovariance.getEntry(i, j), actualCovariance.getEntry(i, j), tolerance * (1 + Math.abs(expectedCovariance.getEntry(i, j))));
+    }
+
+    /**
+     * @return a measurement for {@code model} with entries around 0, standard deviation 10
+     */
+    static RealVector randomMeasurement(Random random, MeasurementModel model) {
+        double[] z = new double[model.getMeasurementMatrix().getRowDimension()];
+        for (int i = 0; i < z.length; i++)
+            z[i] = random.nextGaussian() * 10;
+        return new ArrayRealVector(z);
+    }
+}
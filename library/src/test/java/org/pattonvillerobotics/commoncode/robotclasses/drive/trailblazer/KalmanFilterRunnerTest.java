@@ -0,0 +1,138 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.DefaultMeasurementModel;
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+public class KalmanFilterRunnerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final MeasurementModel GYRO_MEASUREMENT_MODEL = new DefaultMeasurementModel(
+            new double[][]{{0, 0, 0, 0, 0, 0, 0, 1}},
+            new double[][]{{100}});
+    private static final MeasurementModel ENCODER_MEASUREMENT_MODEL = new DefaultMeasurementModel(
+            new double[][]{{0, 0, 1, 0, 0, 0, 0, 0}, {0, 0, 0, 1, 0, 0, 0, 0}},
+            new double[][]{{2, 0}, {0, 2}});
+    private static final MeasurementModel BAD_MEASUREMENT_MODEL = new DefaultMeasurementModel(
+            new double[][]{{0, 0, 0, 0, 0, 0, 0, 1}},
+            new double[][]{{-1000}});
+
+    private static FastKalmanFilter newFilter() {
+        return new FastKalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), KalmanFilterGuidance.getDefaultInitialState());
+    }
+
+    @Test
+    public void testMatchesFilterUsedDirectly() {
+        FastKalmanFilter direct = newFilter();
+        KalmanFilterRunner runner = new KalmanFilterRunner(newFilter(), 16, 0);
+
+        runner.submit(MeasurementSource.GYRO, GYRO_MEASUREMENT_MODEL, 5 * MS, new double[]{90}, 1);
+        runner.submit(MeasurementSource.ENCODER, ENCODER_MEASUREMENT_MODEL, 8 * MS, new double[]{3, 4}, 2);
+        runner.update();
+
+        direct.predictNextState(.005);
+        direct.measureAndGetState(GYRO_MEASUREMENT_MODEL, new ArrayRealVector(new double[]{90}));
+        direct.predictNextState(.003);
+        direct.measureAndGetState(ENCODER_MEASUREMENT_MODEL, new ArrayRealVector(new double[]{3, 4}));
+        direct.predictNextState(.002);
+
+        double[] state = new double[FastKalmanFilter.STATE_DIMENSION];
+        assertThat(runner.getSnapshot().read(state), is(8 * MS));
+        assertThat(runner.getState(state, 10 * MS), is(10 * MS));
+        for (int i = 0; i < state.length; i++)
+            assertEquals(direct.getCurrentState().getEntry(i), state[i], 1e-12);
+
+        assertThat(runner.getMeasurementCount(MeasurementSource.GYRO), is(1L));
+        assertThat(runner.getMeasurementCount(MeasurementSource.ENCODER), is(1L));
+        assertThat(runner.getQueueDepth(), is(0));
+    }
+
+    @Test
+    public void testRejectsInvalidMeasurementsAndKeepsRunning() {
+        KalmanFilterRunner runner = new KalmanFilterRunner(newFilter(), 16, 0);
+
+        runner.submit(MeasurementSource.EXTERNAL, BAD_MEASUREMENT_MODEL, MS, new double[]{1}, 1);
+        runner.submit(MeasurementSource.GYRO, GYRO_MEASUREMENT_MODEL, 2 * MS, new double[]{1}, 1);
+        runner.update();
+
+        assertThat(runner.getRejectedCount(MeasurementSource.EXTERNAL), is(1L));
+        assertThat(runner.getMeasurementCount(MeasurementSource.GYRO), is(1L));
+        assertThat(runner.getSnapshot().getVersion() > 0, is(true));
+    }
+
+    @Test
+    public void testRunsOnItsOwnThread() throws InterruptedException {
+        KalmanFilterRunner runner = new KalmanFilterRunner(newFilter());
+        Thread thread = new Thread(runner);
+        thread.start();
+
+        for (int i = 0; i < 10; i++)
+            runner.submit(MeasurementSource.GYRO, GYRO_MEASUREMENT_MODEL, System.nanoTime(), new double[]{45}, 1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (runner.getMeasurementCount(MeasurementSource.GYRO) < 10 && System.nanoTime() < deadline)
+            Thread.sleep(1);
+
+        runner.stop();
+        thread.join(1000);
+        assertThat(thread.isAlive(), is(false));
+        assertThat(runner.getMeasurementCount(MeasurementSource.GYRO), is(10L));
+        assertThat(runner.getMaxLatencyNanos(MeasurementSource.GYRO) > 0, is(true));
+        assertThat(runner.getSnapshot().get(7) > 0, is(true));
+    }
+
+    @Test
+    public void testStopBeforeTheThreadRunsIsKept() throws InterruptedException {
+        KalmanFilterRunner runner = new KalmanFilterRunner(newFilter());
+        Thread thread = new Thread(runner);
+        runner.stop();
+        thread.start();
+
+        thread.join(1000);
+        assertThat(thread.isAlive(), is(false));
+        assertThat(runner.isRunning(), is(false));
+    }
+
+    @Test
+    public void testCallsStateListenerAtOutputRate() throws InterruptedException {
+        KalmanFilterRunner runner = new KalmanFilterRunner(newFilter());
+        final AtomicInteger updates = new AtomicInteger();
+        final AtomicLong lastTimestamp = new AtomicLong();
+        runner.setStateListener(new StateListener() {
+            @Override
+            public void onStateUpdate(double[] state, long timestampNanos) {
+                updates.incrementAndGet();
+                lastTimestamp.set(timestampNanos);
+            }
+        }, 100);
+        Thread thread = new Thread(runner);
+        thread.start();
+
+        // No measurements at all, the listener should still be called
+        Thread.sleep(300);
+        runner.stop();
+        thread.join(1000);
+
+        assertThat(thread.isAlive(), is(false));
+        assertThat(updates.get() >= 10, is(true));
+        assertThat(updates.get() <= 40, is(true));
+        assertThat(lastTimestamp.get() > runner.getSnapshot().read(new double[FastKalmanFilter.STATE_DIMENSION]), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveOutputRate() {
+        new KalmanFilterRunner(newFilter()).setStateListener(new StateListener() {
+            @Override
+            public void onStateUpdate(double[] state, long timestampNanos) {
+            }
+        }, 0);
+    }
+}
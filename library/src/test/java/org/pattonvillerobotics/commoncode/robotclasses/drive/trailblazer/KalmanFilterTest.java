@@ -0,0 +1,139 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.DefaultMeasurementModel;
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterTestSupport.GUIDANCE_MEASUREMENT_MODELS;
+import static org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterTestSupport.randomMeasurement;
+
+public class KalmanFilterTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    // Out of order rows with correlated noise
+    private static final MeasurementModel OUT_OF_ORDER_MEASUREMENT_MODEL = new DefaultMeasurementModel(
+            new double[][]{{0, 0, 0, 0, 0, 0, 1, 0}, {1, 0, 0, 0, 0, 0, 0, 0}},
+            new double[][]{{4, 1}, {1, 3}});
+
+    private static final MeasurementModel[] SELECTOR_MEASUREMENT_MODELS = selectorMeasurementModels();
+
+    private Random random;
+
+    private static MeasurementModel[] selectorMeasurementModels() {
+        MeasurementModel[] models = Arrays.copyOf(GUIDANCE_MEASUREMENT_MODELS, GUIDANCE_MEASUREMENT_MODELS.length + 1);
+        models[GUIDANCE_MEASUREMENT_MODELS.length] = OUT_OF_ORDER_MEASUREMENT_MODEL;
+        return models;
+    }
+
+    private static void assertMatrixEquals(RealMatrix expected, RealMatrix actual) {
+        for (int i = 0; i < expected.getRowDimension(); i++)
+            for (int j = 0; j < expected.getColumnDimension(); j++)
+                assertEquals("[" + i + "][" + j + "]", expected.getEntry(i, j), actual.getEntry(i, j), TOLERANCE * (1 + Math.abs(expected.getEntry(i, j))));
+    }
+
+    private static void assertVectorEquals(RealVector expected, RealVector actual) {
+        for (int i = 0; i < expected.getDimension(); i++)
+            assertEquals("[" + i + "]", expected.getEntry(i), actual.getEntry(i), TOLERANCE * (1 + Math.abs(expected.getEntry(i))));
+    }
+
+    @Before
+    public void setUp() {
+        random = new Random(7);
+    }
+
+    private KalmanFilter warmedUpFilter(boolean josephForm) {
+        KalmanFilter kalmanFilter = new KalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), new ArrayRealVector(new double[]{1, 2, 3, 4, 5, 6, 7, 8}), josephForm);
+        for (int i = 0; i < 10; i++)
+            kalmanFilter.predictNextState(.01);
+        return kalmanFilter;
+    }
+
+    @Test
+    public void testSelectorMeasurementMatchesTextbookUpdate() {
+        for (MeasurementModel model : SELECTOR_MEASUREMENT_MODELS) {
+            KalmanFilter kalmanFilter = warmedUpFilter(false);
+            for (int step = 0; step < 20; step++) {
+                kalmanFilter.predictNextState(.005);
+                RealVector x = kalmanFilter.getCurrentState();
+                RealMatrix P = kalmanFilter.getErrorCovariance();
+                RealVector z = randomMeasurement(random, model);
+
+                RealMatrix H = model.getMeasurementMatrix();
+                RealMatrix S = H.multiply(P).multiply(H.transpose()).add(model.getMeasurementNoise());
+                RealMatrix K = P.multiply(H.transpose()).multiply(new LUDecomposition(S).getSolver().getInverse());
+                RealVector expectedState = x.add(K.operate(z.subtract(H.operate(x))));
+                RealMatrix expectedCovariance = P.subtract(K.multiply(H).multiply(P));
+
+                assertVectorEquals(expectedState, kalmanFilter.measureAndGetState(model, z));
+                assertMatrixEquals(expectedCovariance, kalmanFilter.getErrorCovariance());
+            }
+        }
+    }
+
+    @Test
+    public void testJosephFormMatchesTextbookUpdate() {
+        for (MeasurementModel model : SELECTOR_MEASUREMENT_MODELS) {
+            KalmanFilter kalmanFilter = warmedUpFilter(true);
+            for (int step = 0; step < 20; step++) {
+                kalmanFilter.predictNextState(.005);
+                RealVector x = kalmanFilter.getCurrentState();
+                RealMatrix P = kalmanFilter.getErrorCovariance();
+                RealVector z = randomMeasurement(random, model);
+
+                RealMatrix H = model.getMeasurementMatrix();
+                RealMatrix R = model.getMeasurementNoise();
+                RealMatrix S = H.multiply(P).multiply(H.transpose()).add(R);
+                RealMatrix K = P.multiply(H.transpose()).multiply(new LUDecomposition(S).getSolver().getInverse());
+                RealMatrix IKH = MatrixUtils.createRealIdentityMatrix(8).subtract(K.multiply(H));
+                RealMatrix expectedCovariance = IKH.multiply(P).multiply(IKH.transpose()).add(K.multiply(R).multiply(K.transpose()));
+
+                kalmanFilter.measureAndGetState(model, z);
+                assertMatrixEquals(expectedCovariance, kalmanFilter.getErrorCovariance());
+            }
+        }
+    }
+
+    @Test
+    public void testJosephFormKeepsCovarianceSymmetric() {
+        MeasurementModel dense = new DefaultMeasurementModel(
+                new double[][]{{1, 0, .5, 0, 0, 0, .1, 0}, {0, 1, 0, .5, 0, 0, 0, -.2}, {0, 0, 0, 0, 0, 0, 1, 0}},
+                new double[][]{{3, .5, 0}, {.5, 2, 0}, {0, 0, 1}});
+        for (MeasurementModel model : new MeasurementModel[]{OUT_OF_ORDER_MEASUREMENT_MODEL, dense}) {
+            KalmanFilter kalmanFilter = warmedUpFilter(true);
+            for (int step = 0; step < 100; step++) {
+                kalmanFilter.measureAndGetState(model, randomMeasurement(random, model));
+                RealMatrix P = kalmanFilter.getErrorCovariance();
+                for (int i = 0; i < 8; i++)
+                    for (int j = 0; j < 8; j++)
+                        assertEquals(P.getEntry(i, j), P.getEntry(j, i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testJosephFormMatchesStandardForm() {
+        KalmanFilter standard = warmedUpFilter(false);
+        KalmanFilter joseph = warmedUpFilter(true);
+        for (int step = 0; step < 200; step++) {
+            standard.predictNextState(.005);
+            joseph.predictNextState(.005);
+            MeasurementModel model = GUIDANCE_MEASUREMENT_MODELS[random.nextInt(GUIDANCE_MEASUREMENT_MODELS.length)];
+            RealVector z = randomMeasurement(random, model);
+            standard.measureAndGetState(model, z);
+            joseph.measureAndGetState(model, z);
+        }
+        assertVectorEquals(standard.getCurrentState(), joseph.getCurrentState());
+        assertMatrixEquals(standard.getErrorCovariance(), joseph.getErrorCovariance());
+    }
+}
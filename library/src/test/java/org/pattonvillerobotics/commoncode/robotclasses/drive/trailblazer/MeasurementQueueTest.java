@@ -0,0 +1,108 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.DefaultMeasurementModel;
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MeasurementQueueTest {
+
+    private static final MeasurementModel GYRO_MEASUREMENT_MODEL = new DefaultMeasurementModel(
+            new double[][]{{0, 0, 0, 0, 0, 0, 0, 1}},
+            new double[][]{{100}});
+
+    @Test
+    public void testFifoOrder() {
+        MeasurementQueue queue = new MeasurementQueue(8);
+        MeasurementEvent event = new MeasurementEvent();
+        for (int i = 0; i < 5; i++)
+            assertThat(queue.offer(MeasurementSource.GYRO, GYRO_MEASUREMENT_MODEL, i, new double[]{i * 2}, 1), is(true));
+        assertThat(queue.size(), is(5));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(queue.poll(event), is(true));
+            assertThat(event.getTimestampNanos(), is((long) i));
+            assertThat(event.getValue(0), is(i * 2.0));
+            assertThat(event.getSource(), is(MeasurementSource.GYRO));
+        }
+        assertThat(queue.poll(event), is(false));
+        assertThat(queue.size(), is(0));
+    }
+
+    @Test
+    public void testDropsWhenFull() {
+        MeasurementQueue queue = new MeasurementQueue(5);
+        assertThat(queue.capacity(), is(8));
+        double[] values = {1};
+        for (int i = 0; i < 8; i++)
+            assertThat(queue.offer(MeasurementSource.ENCODER, GYRO_MEASUREMENT_MODEL, i, values, 1), is(true));
+        assertThat(queue.offer(MeasurementSource.VUFORIA, GYRO_MEASUREMENT_MODEL, 8, values, 1), is(false));
+        assertThat(queue.offer(MeasurementSource.VUFORIA, GYRO_MEASUREMENT_MODEL, 9, values, 1), is(false));
+
+        assertThat(queue.getDroppedCount(), is(2L));
+        assertThat(queue.getDroppedCount(MeasurementSource.VUFORIA), is(2L));
+        assertThat(queue.getDroppedCount(MeasurementSource.ENCODER), is(0L));
+
+        assertThat(queue.poll(new MeasurementEvent()), is(true));
+        assertThat(queue.offer(MeasurementSource.VUFORIA, GYRO_MEASUREMENT_MODEL, 10, values, 1), is(true));
+    }
+
+    @Test
+    public void testConcurrentProducersLoseNothing() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 100000;
+        final MeasurementQueue queue = new MeasurementQueue(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    double[] values = new double[2];
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        values[0] = producer;
+                        values[1] = i;
+                        while (!queue.offer(MeasurementSource.values()[producer], GYRO_MEASUREMENT_MODEL, i, values, 2))
+                            Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        start.countDown();
+        int[] next = new int[producers];
+        MeasurementEvent event = new MeasurementEvent();
+        int received = 0;
+        while (received < producers * perProducer) {
+            if (!queue.poll(event)) {
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) event.getValue(0);
+            // Each producer's measurements arrive whole and in order
+            assertThat(event.getValue(1), is((double) next[producer]));
+            assertThat(event.getTimestampNanos(), is((long) next[producer]));
+            assertThat(event.getSource().ordinal(), is(producer));
+            next[producer]++;
+            received++;
+        }
+
+        for (Thread thread : threads)
+            thread.join();
+        for (int p = 0; p < producers; p++)
+            assertThat(next[p], is(perProducer));
+        assertThat(queue.poll(event), is(false));
+    }
+}
@@ -0,0 +1,170 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.DefaultMeasurementModel;
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Drives {@link KalmanFilterRunner} with synthetic sensor traces: a 200 Hz gyro, a 100 Hz encoder and a 10 Hz
+ * Vuforia pose that shows up 80 ms after it was taken.
+ */
+public class MeasurementReplayTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long VUFORIA_LATENCY = 80 * MS;
+    private static final MeasurementModel GYRO_MEASUREMENT_MODEL = new DefaultMeasurementModel(
+            new double[][]{{0, 0, 0, 0, 0, 0, 0, 1}},
+            new double[][]{{100}});
+    private static final MeasurementModel ENCODER_MEASUREMENT_MODEL = new DefaultMeasurementModel(
+            new double[][]{{0, 0, 1, 0, 0, 0, 0, 0}, {0, 0, 0, 1, 0, 0, 0, 0}},
+            new double[][]{{2, 0}, {0, 2}});
+    private static final MeasurementModel VUFORIA_MEASUREMENT_MODEL = new DefaultMeasurementModel(
+            new double[][]{{1, 0, 0, 0, 0, 0, 0, 0}, {0, 1, 0, 0, 0, 0, 0, 0}, {0, 0, 0, 0, 0, 0, 1, 0}},
+            new double[][]{{5, 0, 0}, {0, 5, 0}, {0, 0, 5}});
+
+    private static List<Sample> trace(long durationNanos) {
+        Random random = new Random(4174);
+        List<Sample> samples = new ArrayList<>();
+        for (long t = 5 * MS; t <= durationNanos; t += 5 * MS) {
+            double seconds = t / 1e9;
+            samples.add(new Sample(MeasurementSource.GYRO, GYRO_MEASUREMENT_MODEL, t, t,
+                    30 + random.nextGaussian()));
+            if (t % (10 * MS) == 0)
+                samples.add(new Sample(MeasurementSource.ENCODER, ENCODER_MEASUREMENT_MODEL, t, t,
+                        12 * Math.cos(seconds) + random.nextGaussian(), 12 * Math.sin(seconds) + random.nextGaussian()));
+            if (t % (100 * MS) == 0 && t + VUFORIA_LATENCY <= durationNanos)
+                samples.add(new Sample(MeasurementSource.VUFORIA, VUFORIA_MEASUREMENT_MODEL, t, t + VUFORIA_LATENCY,
+                        12 * Math.sin(seconds) + random.nextGaussian(), 12 - 12 * Math.cos(seconds) + random.nextGaussian(), 30 * seconds));
+        }
+        return samples;
+    }
+
+    /**
+     * Submits the samples in the given order, updating after each one like the filter thread would.
+     */
+    private static void feed(KalmanFilterRunner runner, List<Sample> samples) {
+        for (Sample sample : samples) {
+            runner.submit(sample.source, sample.model, sample.timestampNanos, sample.values, sample.values.length);
+            runner.update();
+        }
+    }
+
+    private static List<Sample> sortedBy(List<Sample> samples, final boolean byArrival) {
+        List<Sample> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted, new Comparator<Sample>() {
+            @Override
+            public int compare(Sample a, Sample b) {
+                long difference = byArrival ? a.arrivalNanos - b.arrivalNanos : a.timestampNanos - b.timestampNanos;
+                return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+            }
+        });
+        return sorted;
+    }
+
+    private static void assertSameState(KalmanFilterEngine expected, KalmanFilterEngine actual) {
+        int n = expected.getCurrentState().getDimension();
+        double[] expectedState = new double[n], expectedCovariance = new double[n * n];
+        double[] actualState = new double[n], actualCovariance = new double[n * n];
+        expected.getState(expectedState, expectedCovariance);
+        actual.getState(actualState, actualCovariance);
+        for (int i = 0; i < n; i++)
+            assertEquals(expectedState[i], actualState[i], 1e-9);
+        for (int i = 0; i < n * n; i++)
+            assertEquals(expectedCovariance[i], actualCovariance[i], 1e-9);
+    }
+
+    private static void assertLateArrivalsMatchInOrder(KalmanFilterEngine inOrderFilter, KalmanFilterEngine lateFilter, long durationNanos) {
+        List<Sample> samples = trace(durationNanos);
+        KalmanFilterRunner inOrder = new KalmanFilterRunner(inOrderFilter, 16, 0);
+        KalmanFilterRunner late = new KalmanFilterRunner(lateFilter, 16, 0);
+
+        // The in-order runner sees every sample at the time it was taken
+        List<Sample> byTimestamp = new ArrayList<>();
+        for (Sample sample : sortedBy(samples, false))
+            byTimestamp.add(new Sample(sample.source, sample.model, sample.timestampNanos, sample.timestampNanos, sample.values));
+        feed(inOrder, byTimestamp);
+        feed(late, sortedBy(samples, true));
+
+        assertSameState(inOrderFilter, lateFilter);
+        assertThat(inOrder.getReplayCount(), is(0L));
+        // Every Vuforia pose except the one at the very end arrives after newer gyro readings
+        long vuforiaPoses = durationNanos / (100 * MS) - 1;
+        assertThat(late.getReplayCount(), is(vuforiaPoses));
+        assertThat(late.getLateCount(MeasurementSource.VUFORIA), is(0L));
+        assertThat(late.getMeasurementCount(MeasurementSource.VUFORIA), is(vuforiaPoses));
+        assertThat(late.getMeasurementCount(MeasurementSource.GYRO), is(inOrder.getMeasurementCount(MeasurementSource.GYRO)));
+    }
+
+    @Test
+    public void testLateMeasurementsMatchInOrderFusion() {
+        assertLateArrivalsMatchInOrder(newFastFilter(), newFastFilter(), TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void testLateMeasurementsMatchInOrderFusionWithCommonsMath() {
+        assertLateArrivalsMatchInOrder(newFilter(), newFilter(), TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testDropsMeasurementsOlderThanHistory() {
+        KalmanFilterRunner runner = new KalmanFilterRunner(newFastFilter(), 16, 8, 0);
+        for (int i = 1; i <= 20; i++) {
+            runner.submit(MeasurementSource.GYRO, GYRO_MEASUREMENT_MODEL, i * 5 * MS, new double[]{30}, 1);
+            runner.update();
+        }
+        double[] before = new double[FastKalmanFilter.STATE_DIMENSION];
+        runner.getSnapshot().read(before);
+
+        // 8 gyro readings at 5 ms only reach back to 60 ms
+        runner.submit(MeasurementSource.VUFORIA, VUFORIA_MEASUREMENT_MODEL, 50 * MS, new double[]{10, 10, 10}, 3);
+        runner.update();
+
+        double[] after = new double[FastKalmanFilter.STATE_DIMENSION];
+        runner.getSnapshot().read(after);
+        assertThat(runner.getLateCount(MeasurementSource.VUFORIA), is(1L));
+        assertThat(runner.getMeasurementCount(MeasurementSource.VUFORIA), is(0L));
+        assertThat(runner.getReplayCount(), is(0L));
+        for (int i = 0; i < before.length; i++)
+            assertEquals(before[i], after[i], 0);
+
+        runner.submit(MeasurementSource.VUFORIA, VUFORIA_MEASUREMENT_MODEL, 70 * MS, new double[]{10, 10, 10}, 3);
+        runner.update();
+        assertThat(runner.getMeasurementCount(MeasurementSource.VUFORIA), is(1L));
+        assertThat(runner.getReplayCount(), is(1L));
+    }
+
+    private static FastKalmanFilter newFastFilter() {
+        return new FastKalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), KalmanFilterGuidance.getDefaultInitialState());
+    }
+
+    private static KalmanFilter newFilter() {
+        return new KalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), KalmanFilterGuidance.getDefaultInitialState());
+    }
+
+    private static class Sample {
+
+        final MeasurementSource source;
+        final MeasurementModel model;
+        final long timestampNanos, arrivalNanos;
+        final double[] values;
+
+        Sample(MeasurementSource source, MeasurementModel model, long timestampNanos, long arrivalNanos, double... values) {
+            this.source = source;
+            this.model = model;
+            this.timestampNanos = timestampNanos;
+            this.arrivalNanos = arrivalNanos;
+            this.values = values;
+        }
+    }
+}
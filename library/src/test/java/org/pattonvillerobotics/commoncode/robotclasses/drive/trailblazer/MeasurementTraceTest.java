@@ -0,0 +1,45 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MeasurementTraceTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        MeasurementTrace trace = new MeasurementTrace();
+        trace.add(MeasurementSource.ENCODER, 5000000, 5100000, new double[]{.1, 1.0 / 3, 99}, 2);
+        trace.add(MeasurementSource.VUFORIA, 1000000, 81000000, new double[]{12.5, -3, 359.99}, 3);
+        trace.addTruth(6000000, 1, 2, 45);
+
+        StringWriter writer = new StringWriter();
+        trace.write(writer);
+        List<MeasurementTrace.Sample> samples = MeasurementTrace.read(new StringReader(writer.toString())).getSamples();
+
+        assertThat(samples.size(), is(3));
+        assertThat(samples.get(0).getSource(), is(MeasurementSource.ENCODER));
+        assertThat(samples.get(0).getTimestampNanos(), is(5000000L));
+        assertThat(samples.get(0).getArrivalNanos(), is(5100000L));
+        assertThat(samples.get(0).getValues(), is(new double[]{.1, 1.0 / 3}));
+        assertThat(samples.get(1).getValues(), is(new double[]{12.5, -3, 359.99}));
+        assertThat(samples.get(2).isTruth(), is(true));
+        assertThat(samples.get(2).getValues(), is(new double[]{1, 2, 45}));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnknownSourceIsRejected() throws IOException {
+        MeasurementTrace.read(new StringReader(MeasurementTrace.HEADER + "\n5,5,SONAR,1\n"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testIncompleteTruthIsRejected() throws IOException {
+        MeasurementTrace.read(new StringReader("5,5,TRUTH,1,2\n"));
+    }
+}
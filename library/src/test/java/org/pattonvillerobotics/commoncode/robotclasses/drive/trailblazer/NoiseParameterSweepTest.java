@@ -0,0 +1,52 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class NoiseParameterSweepTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void testSweepsOnlyRecordedSources() {
+        NoiseParameterSweep sweep = new NoiseParameterSweep(TraceReplayTest.trace(200 * MS), new FilterNoiseParameters.Builder().build(), .5, 1, 2);
+
+        // Process noise, gyro, encoder and Vuforia, but not the accelerometer or magnetometer
+        assertThat(sweep.getCandidateCount(), is(81));
+        assertThat(sweep.getCandidate(80).getAccelerometerNoise(), is(.05));
+        assertThat(sweep.getCandidate(80).getVuforiaNoise(), is(10.0));
+    }
+
+    @Test
+    public void testBestIsNoWorseThanBase() {
+        MeasurementTrace trace = TraceReplayTest.trace(2000 * MS);
+        FilterNoiseParameters base = new FilterNoiseParameters.Builder().build();
+        List<TraceReplay.Result> results = new NoiseParameterSweep(trace, base, .25, 1, 4).run();
+
+        double baseScore = TraceReplay.replay(trace, base).getScore(NoiseParameterSweep.DEFAULT_HEADING_WEIGHT);
+        assertThat(results.size(), is(81));
+        assertTrue(results.get(0).getScore(NoiseParameterSweep.DEFAULT_HEADING_WEIGHT) <= baseScore);
+    }
+
+    @Test
+    public void testParallelMatchesSequential() {
+        NoiseParameterSweep sweep = new NoiseParameterSweep(TraceReplayTest.trace(500 * MS), new FilterNoiseParameters.Builder().build(), .5, 2);
+        ForkJoinPool sequential = new ForkJoinPool(1), parallel = new ForkJoinPool(4);
+        List<TraceReplay.Result> expected = sweep.run(sequential);
+        List<TraceReplay.Result> actual = sweep.run(parallel);
+        sequential.shutdown();
+        parallel.shutdown();
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(actual.get(i).getParameters().toString(), is(expected.get(i).getParameters().toString()));
+            assertThat(actual.get(i).getPositionRmse(), is(expected.get(i).getPositionRmse()));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SensorSchedulerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static KalmanFilterRunner newRunner() {
+        return new KalmanFilterRunner(new FastKalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), KalmanFilterGuidance.getDefaultInitialState()));
+    }
+
+    private static SensorSource newSource(final String name, final long periodNanos, final int priority, final List<String> reads) {
+        return new SensorSource() {
+            @Override
+            public long getPeriodNanos() {
+                return periodNanos;
+            }
+
+            @Override
+            public int getPriority() {
+                return priority;
+            }
+
+            @Override
+            public void read(KalmanFilterRunner runner, long tickNanos) {
+                reads.add(name + "@" + tickNanos / MS);
+            }
+        };
+    }
+
+    @Test
+    public void testReadsDueSourcesInPriorityOrder() {
+        List<String> reads = new ArrayList<>();
+        SensorScheduler scheduler = new SensorScheduler(newRunner());
+        scheduler.addSource(newSource("vuforia", 10 * MS, 0, reads));
+        scheduler.addSource(newSource("gyro", 5 * MS, 2, reads));
+        scheduler.addSource(newSource("encoder", 5 * MS, 1, reads));
+
+        scheduler.reset(0);
+        for (long t = 0; t <= 10 * MS; t += 5 * MS)
+            scheduler.tick(t);
+
+        assertThat(reads.toString(), is("[gyro@0, encoder@0, vuforia@0, gyro@5, encoder@5, gyro@10, encoder@10, vuforia@10]"));
+        assertThat(scheduler.getReadCount(), is(8L));
+    }
+
+    @Test
+    public void testSkipsMissedReadsInsteadOfCatchingUp() {
+        List<String> reads = new ArrayList<>();
+        SensorScheduler scheduler = new SensorScheduler(newRunner());
+        scheduler.addSource(newSource("gyro", 5 * MS, 0, reads));
+
+        scheduler.reset(0);
+        scheduler.tick(0);
+        scheduler.tick(23 * MS);
+        scheduler.tick(25 * MS);
+        scheduler.tick(28 * MS);
+
+        assertThat(reads.toString(), is("[gyro@0, gyro@23, gyro@28]"));
+    }
+
+    @Test
+    public void testKeepsReadingAfterASourceThrows() {
+        List<String> reads = new ArrayList<>();
+        SensorScheduler scheduler = new SensorScheduler(newRunner());
+        scheduler.addSource(new SensorSource() {
+            @Override
+            public long getPeriodNanos() {
+                return 5 * MS;
+            }
+
+            @Override
+            public int getPriority() {
+                return 1;
+            }
+
+            @Override
+            public void read(KalmanFilterRunner runner, long tickNanos) {
+                throw new IllegalStateException("I2C read failed");
+            }
+        });
+        scheduler.addSource(newSource("gyro", 5 * MS, 0, reads));
+
+        scheduler.reset(0);
+        scheduler.tick(0);
+        scheduler.tick(5 * MS);
+
+        assertThat(reads.size(), is(2));
+        assertThat(scheduler.getErrorCount(), is(2L));
+        assertThat(scheduler.getLastError().getMessage(), is("I2C read failed"));
+    }
+
+    @Test
+    public void testStopsCleanly() throws InterruptedException {
+        final AtomicInteger reads = new AtomicInteger();
+        SensorScheduler scheduler = new SensorScheduler(newRunner(), 1, TimeUnit.MILLISECONDS);
+        scheduler.addSource(new SensorSource() {
+            @Override
+            public long getPeriodNanos() {
+                return MS;
+            }
+
+            @Override
+            public int getPriority() {
+                return 0;
+            }
+
+            @Override
+            public void read(KalmanFilterRunner runner, long tickNanos) {
+                reads.incrementAndGet();
+            }
+        });
+
+        scheduler.start();
+        Thread.sleep(50);
+        scheduler.stop();
+        int readsAtStop = reads.get();
+        Thread.sleep(20);
+
+        assertThat(scheduler.isRunning(), is(false));
+        assertThat(readsAtStop > 0, is(true));
+        assertThat(reads.get(), is(readsAtStop));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRejectsSourcesAfterStart() {
+        List<String> reads = new ArrayList<>();
+        SensorScheduler scheduler = new SensorScheduler(newRunner());
+        scheduler.start();
+        try {
+            scheduler.addSource(newSource("gyro", 5 * MS, 0, reads));
+        } finally {
+            scheduler.stop();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays a synthetic recording of the robot driving a 12 inch circle at 30 degrees/s, with a 200 Hz gyro, a 100 Hz
+ * encoder, a 10 Hz Vuforia pose 80 ms late and the true pose every 50 ms.
+ */
+public class TraceReplayTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    static MeasurementTrace trace(long durationNanos) {
+        Random random = new Random(2018);
+        MeasurementTrace trace = new MeasurementTrace();
+        for (long t = 5 * MS; t <= durationNanos; t += 5 * MS) {
+            double seconds = t / 1e9;
+            trace.add(MeasurementSource.GYRO, t, t, new double[]{30 + random.nextGaussian()}, 1);
+            if (t % (10 * MS) == 0)
+                trace.add(MeasurementSource.ENCODER, t, t, new double[]{
+                        12 * Math.cos(seconds) + random.nextGaussian(), 12 * Math.sin(seconds) + random.nextGaussian()}, 2);
+            if (t % (100 * MS) == 0)
+                trace.add(MeasurementSource.VUFORIA, t, t + 80 * MS, new double[]{
+                        12 * Math.sin(seconds) + random.nextGaussian(), 12 - 12 * Math.cos(seconds) + random.nextGaussian(), 30 * seconds + random.nextGaussian()}, 3);
+            if (t % (50 * MS) == 0)
+                trace.addTruth(t, 12 * Math.sin(seconds), 12 - 12 * Math.cos(seconds), 30 * seconds);
+        }
+        return trace;
+    }
+
+    @Test
+    public void testReplayTracksTruth() {
+        TraceReplay.Result result = TraceReplay.replay(trace(5000 * MS), new FilterNoiseParameters.Builder().build());
+
+        assertThat(result.getTruthCount(), is(100));
+        assertThat(result.getMeasurementCount(), is(1000 + 500 + 50));
+        assertThat(result.getRejectedCount(), is(0L));
+        assertTrue("position RMSE " + result.getPositionRmse(), result.getPositionRmse() < 1);
+        // Heading past 180 degrees is compared the short way around
+        assertTrue("heading RMSE " + result.getHeadingRmse(), result.getHeadingRmse() < 2);
+    }
+
+    @Test
+    public void testExternalMeasurementsAreSkipped() {
+        MeasurementTrace trace = trace(100 * MS);
+        trace.add(MeasurementSource.EXTERNAL, 50 * MS, 50 * MS, new double[]{1}, 1);
+
+        assertThat(TraceReplay.replay(trace, new FilterNoiseParameters.Builder().build()).getSkippedCount(), is(1));
+    }
+}
@@ -0,0 +1,160 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer;
+
+import org.apache.commons.math3.filter.DefaultMeasurementModel;
+import org.apache.commons.math3.filter.MeasurementModel;
+import org.apache.commons.math3.linear.EigenDecomposition;
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterTestSupport.DENSE_MEASUREMENT_MODEL;
+import static org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterTestSupport.GUIDANCE_MEASUREMENT_MODELS;
+import static org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterTestSupport.N;
+import static org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterTestSupport.assertSameEstimate;
+import static org.pattonvillerobotics.commoncode.robotclasses.drive.trailblazer.FilterTestSupport.randomMeasurement;
+
+public class UDKalmanFilterTest {
+
+    private static final double TOLERANCE = 1e-8;
+
+    // Very precise and very noisy sensors together make the covariance badly conditioned
+    private static final MeasurementModel[] ILL_CONDITIONED_MEASUREMENT_MODELS = {
+            new DefaultMeasurementModel(
+                    new double[][]{{1, 0, 0, 0, 0, 0, 0, 0}, {0, 1, 0, 0, 0, 0, 0, 0}, {0, 0, 0, 0, 0, 0, 1, 0}},
+                    new double[][]{{1e-6, 0, 0}, {0, 1e-6, 0}, {0, 0, 1e-6}}),
+            new DefaultMeasurementModel(
+                    new double[][]{{0, 0, 1, 0, 0, 0, 0, 0}, {0, 0, 0, 1, 0, 0, 0, 0}},
+                    new double[][]{{1e6, 0}, {0, 1e6}}),
+    };
+
+    private FastKalmanFilter fast;
+    private UDKalmanFilter ud;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        fast = new FastKalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), KalmanFilterGuidance.getDefaultInitialState());
+        ud = new UDKalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), KalmanFilterGuidance.getDefaultInitialState());
+        random = new Random(1717);
+    }
+
+    @Test
+    public void testMatchesFastFilterOverGuidanceModels() {
+        for (int step = 0; step < 2000; step++) {
+            double dt = random.nextDouble() * .02;
+            fast.predictNextState(dt);
+            ud.predictNextState(dt);
+
+            MeasurementModel model = GUIDANCE_MEASUREMENT_MODELS[random.nextInt(GUIDANCE_MEASUREMENT_MODELS.length)];
+            RealVector z = randomMeasurement(random, model);
+            fast.measureAndGetState(model, z);
+            ud.measureAndGetState(model, z);
+            assertSameEstimate(fast, ud, TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testMatchesFastFilterWithCorrelatedNoise() {
+        for (int step = 0; step < 50; step++) {
+            double dt = random.nextDouble() * .02;
+            fast.predictNextState(dt);
+            ud.predictNextState(dt);
+
+            RealVector z = randomMeasurement(random, DENSE_MEASUREMENT_MODEL);
+            fast.measureAndGetState(DENSE_MEASUREMENT_MODEL, z);
+            ud.measureAndGetState(DENSE_MEASUREMENT_MODEL, z);
+            assertSameEstimate(fast, ud, TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testRejectsInvalidNoiseWithoutChangingState() {
+        ud.predictNextState(.01);
+        ud.measureAndGetState(GUIDANCE_MEASUREMENT_MODELS[0], randomMeasurement(random, GUIDANCE_MEASUREMENT_MODELS[0]));
+        double[] stateBefore = new double[N], covarianceBefore = new double[N * N];
+        ud.getState(stateBefore, covarianceBefore);
+
+        MeasurementModel bad = new DefaultMeasurementModel(
+                new double[][]{{0, 0, 1, 0, 0, 0, 0, 0}, {0, 0, 0, 0, 0, 0, 0, 1}},
+                new double[][]{{1, 0}, {0, -1000}});
+        try {
+            ud.measureAndGetState(bad, randomMeasurement(random, bad));
+            fail("Expected negative measurement noise to be rejected");
+        } catch (NonPositiveDefiniteMatrixException e) {
+            // expected
+        }
+
+        double[] stateAfter = new double[N], covarianceAfter = new double[N * N];
+        ud.getState(stateAfter, covarianceAfter);
+        for (int i = 0; i < N; i++)
+            assertEquals(stateBefore[i], stateAfter[i], 0);
+        for (int i = 0; i < N * N; i++)
+            assertEquals(covarianceBefore[i], covarianceAfter[i], 0);
+    }
+
+    @Test
+    public void testSetStateRoundTrips() {
+        for (int step = 0; step < 20; step++) {
+            ud.predictNextState(.01);
+            MeasurementModel model = GUIDANCE_MEASUREMENT_MODELS[step % GUIDANCE_MEASUREMENT_MODELS.length];
+            ud.measureAndGetState(model, randomMeasurement(random, model));
+        }
+        double[] state = new double[N], covariance = new double[N * N];
+        ud.getState(state, covariance);
+
+        UDKalmanFilter copy = new UDKalmanFilter(KalmanFilterGuidance.getDefaultProcessNoise(), KalmanFilterGuidance.getDefaultInitialState());
+        copy.setState(state, covariance);
+        assertSameEstimate(ud, copy, TOLERANCE);
+    }
+
+    /**
+     * Millions of updates with badly conditioned sensors, the covariance must stay symmetric positive semi-definite
+     * the whole way.
+     */
+    @Test
+    public void testCovarianceStaysValidOverLongRuns() {
+        double[] diagonal = new double[N];
+        double[] state = new double[N];
+        for (int step = 0; step < 1000000; step++) {
+            ud.predict(random.nextDouble() * .02);
+
+            MeasurementModel model;
+            int choice = random.nextInt(10);
+            if (choice < 5)
+                model = GUIDANCE_MEASUREMENT_MODELS[choice];
+            else if (choice < 7)
+                model = ILL_CONDITIONED_MEASUREMENT_MODELS[choice - 5];
+            else if (choice < 8)
+                model = DENSE_MEASUREMENT_MODEL;
+            else
+                continue;
+            ud.measureAndGetState(model, randomMeasurement(random, model));
+
+            if (step % 1000 == 0) {
+                ud.getDiagonalFactor(diagonal);
+                ud.getCurrentState(state);
+                for (int i = 0; i < N; i++) {
+                    assertThat("D[" + i + "] at step " + step, diagonal[i] >= 0 && !Double.isInfinite(diagonal[i]), is(true));
+                    assertThat("x[" + i + "] at step " + step, Double.isNaN(state[i]) || Double.isInfinite(state[i]), is(false));
+                }
+            }
+        }
+
+        RealMatrix covariance = ud.getErrorCovariance();
+        double[] eigenvalues = new EigenDecomposition(covariance).getRealEigenvalues();
+        double largest = 0;
+        for (double eigenvalue : eigenvalues)
+            largest = Math.max(largest, Math.abs(eigenvalue));
+        for (double eigenvalue : eigenvalues)
+            assertThat("eigenvalue " + eigenvalue, eigenvalue >= -1e-12 * largest, is(true));
+        assertThat(covariance.equals(covariance.transpose()), is(true));
+    }
+}
@@ -0,0 +1,49 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory;
+
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RamseteFollowerTest {
+
+    /**
+     * Drives a simulated robot that does exactly what it's told, starting off the path, and checks it ends up on it.
+     */
+    @Test
+    public void testConvergesFromOffset() {
+        Trajectory trajectory = TrajectoryTest.sCurve();
+        RamseteFollower follower = new RamseteFollower();
+        TrajectoryState reference = new TrajectoryState();
+        double[] pose = {-3, 4, FastMath.toRadians(-15)}, command = new double[2];
+
+        double dt = .005, lateError = 0;
+        for (double t = 0; t < trajectory.getDuration(); t += dt) {
+            trajectory.getState(t, reference);
+            follower.update(pose, reference, command);
+            pose[2] += command[1] * dt / 2;
+            pose[0] += command[0] * FastMath.cos(pose[2]) * dt;
+            pose[1] += command[0] * FastMath.sin(pose[2]) * dt;
+            pose[2] += command[1] * dt / 2;
+            if (t > trajectory.getDuration() / 2)
+                lateError = FastMath.max(lateError, FastMath.hypot(reference.getX() - pose[0], reference.getY() - pose[1]));
+        }
+
+        assertTrue("error " + lateError, lateError < 1);
+        assertEquals(72, pose[0], 1);
+        assertEquals(24, pose[1], 1);
+    }
+
+    @Test
+    public void testOnPathPassesReferenceThrough() {
+        Trajectory trajectory = TrajectoryTest.sCurve();
+        TrajectoryState reference = trajectory.getState(1, new TrajectoryState());
+        double[] pose = {reference.getX(), reference.getY(), reference.getHeading() + 2 * FastMath.PI}, command = new double[2];
+
+        new RamseteFollower().update(pose, reference, command);
+
+        assertEquals(reference.getVelocity(), command[0], 1e-9);
+        assertEquals(reference.getAngularVelocity(), command[1], 1e-9);
+    }
+}
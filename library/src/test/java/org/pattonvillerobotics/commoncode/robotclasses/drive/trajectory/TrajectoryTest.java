@@ -0,0 +1,107 @@
+package org.pattonvillerobotics.commoncode.robotclasses.drive.trajectory;
+
+import org.apache.commons.math3.util.FastMath;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TrajectoryTest {
+
+    static Trajectory sCurve() {
+        return new Trajectory.Builder()
+                .addWaypoint(0, 0, 0)
+                .addWaypoint(36, 24, 45)
+                .addWaypoint(72, 24, 0)
+                .maxVelocity(30)
+                .maxAcceleration(40)
+                .maxCentripetalAcceleration(60)
+                .trackWidth(14)
+                .build();
+    }
+
+    @Test
+    public void testSplineMatchesWaypoints() {
+        QuinticHermiteSpline spline = new QuinticHermiteSpline(new Waypoint(0, 0, 90), new Waypoint(24, 24, 0));
+
+        assertEquals(0, spline.getX(0), 1e-9);
+        assertEquals(24, spline.getY(1), 1e-9);
+        assertEquals(FastMath.PI / 2, spline.getHeading(0), 1e-9);
+        assertEquals(0, spline.getHeading(1), 1e-9);
+        assertEquals(0, spline.getCurvature(0), 1e-9);
+        assertTrue(spline.getCurvature(.5) < 0);
+    }
+
+    @Test
+    public void testFollowsLimits() {
+        Trajectory trajectory = sCurve();
+        TrajectoryState state = new TrajectoryState(), previous = new TrajectoryState();
+        trajectory.getState(0, previous);
+
+        double dt = .001;
+        for (double t = dt; t <= trajectory.getDuration(); t += dt) {
+            trajectory.getState(t, state);
+            assertTrue(state.toString(), state.getVelocity() <= 30 + 1e-9);
+            assertTrue(state.toString(), FastMath.abs(state.getAcceleration()) <= 40 + 1e-6);
+            assertTrue(state.toString(), state.getVelocity() * state.getVelocity() * FastMath.abs(state.getCurvature()) <= 60 * 1.05);
+            // Consecutive states are about a velocity apart
+            double moved = FastMath.hypot(state.getX() - previous.getX(), state.getY() - previous.getY());
+            assertEquals(state.toString(), (state.getVelocity() + previous.getVelocity()) / 2 * dt, moved, .01);
+            TrajectoryState swap = previous;
+            previous = state;
+            state = swap;
+        }
+
+        trajectory.getState(trajectory.getDuration(), state);
+        assertEquals(72, state.getX(), 1e-9);
+        assertEquals(24, state.getY(), 1e-9);
+        assertThat(state.getVelocity(), is(0.0));
+        assertTrue(trajectory.getLength() > FastMath.hypot(72, 24));
+    }
+
+    @Test
+    public void testStraightLineIsTrapezoid() {
+        Trajectory trajectory = new Trajectory.Builder().addWaypoint(0, 0, 0).addWaypoint(60, 0, 0).maxVelocity(30).maxAcceleration(30).build();
+
+        assertEquals(60, trajectory.getLength(), 1e-9);
+        // 1 s up to speed, 1 s cruising, 1 s to stop
+        assertEquals(3, trajectory.getDuration(), .02);
+        assertEquals(30, trajectory.getState(1.5, new TrajectoryState()).getVelocity(), 1e-9);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Trajectory trajectory = sCurve();
+        TrajectoryLibrary library = new TrajectoryLibrary();
+        library.put("s curve", trajectory);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        library.write(out);
+        Trajectory read = TrajectoryLibrary.read(new ByteArrayInputStream(out.toByteArray())).get("s curve");
+
+        assertThat(read.getSampleCount(), is(trajectory.getSampleCount()));
+        assertThat(read.getDuration(), is(trajectory.getDuration()));
+        TrajectoryState expected = new TrajectoryState(), actual = new TrajectoryState();
+        for (double t = 0; t < trajectory.getDuration(); t += .1) {
+            trajectory.getState(t, expected);
+            read.getState(t, actual);
+            assertThat(actual.toString(), is(expected.toString()));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        TrajectoryLibrary.read(new ByteArrayInputStream("# trailblazer measurement trace v1\n".getBytes("UTF-8")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsRepeatedWaypoint() {
+        new Trajectory.Builder().addWaypoint(0, 0, 0).addWaypoint(0, 0, 90).maxVelocity(30).maxAcceleration(30).build();
+    }
+}
@@ -0,0 +1,147 @@
+package org.pattonvillerobotics.commoncode.robotclasses.logging;
+
+import com.annimon.stream.function.Supplier;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class LogWriterTest {
+
+    /**
+     * Keeps what it is given, and which thread gave it.
+     */
+    private static class RecordingSink implements LogSink {
+        final List<String> lines = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        int flushes;
+
+        @Override
+        public synchronized void write(long timestampNanos, Logger.Level level, String tag, String message) {
+            lines.add(level.getLetter() + "/" + tag + ": " + message);
+            threads.add(Thread.currentThread());
+        }
+
+        @Override
+        public synchronized void flush() {
+            flushes++;
+        }
+
+        synchronized int size() {
+            return lines.size();
+        }
+    }
+
+    @Test
+    public void testFormatsWhenWritten() {
+        RecordingSink sink = new RecordingSink();
+        LogWriter writer = new LogWriter(sink);
+        Logger logger = writer.getLogger("Drive");
+
+        logger.log(Logger.Level.INFO, "Moving");
+        logger.log(Logger.Level.WARN, "%.1f off %.2f", 1.25, -90);
+        assertThat(sink.size(), is(0));
+
+        writer.flush();
+        assertThat(sink.lines.get(0), is("I/Drive: Moving"));
+        assertThat(sink.lines.get(1), is("W/Drive: 1.3 off -90.00"));
+        assertThat(sink.flushes, is(1));
+        assertThat(writer.getWrittenCount(), is(2L));
+    }
+
+    @Test
+    public void testDisabledLevelsCostNothing() {
+        RecordingSink sink = new RecordingSink();
+        LogWriter writer = new LogWriter(sink);
+        Logger logger = writer.getLogger("Gyro");
+        final int[] calls = new int[1];
+        Supplier<String> message = new Supplier<String>() {
+            @Override
+            public String get() {
+                calls[0]++;
+                return "expensive";
+            }
+        };
+
+        logger.log(Logger.Level.VERBOSE, message);
+        logger.log(Logger.Level.DEBUG, "%.3f", 1);
+        writer.flush();
+        assertThat(calls[0], is(0));
+        assertThat(sink.size(), is(0));
+        assertThat(sink.flushes, is(0));
+
+        logger.setLevel(Logger.Level.VERBOSE);
+        logger.log(Logger.Level.VERBOSE, message);
+        assertTrue(!writer.getLogger("Encoder").isEnabled(Logger.Level.VERBOSE));
+        writer.flush();
+        assertThat(calls[0], is(1));
+        assertThat(sink.lines.get(0), is("V/Gyro: expensive"));
+    }
+
+    @Test
+    public void testDropsWhenFull() {
+        RecordingSink sink = new RecordingSink();
+        LogWriter writer = new LogWriter(sink, 4, 1, TimeUnit.SECONDS);
+        Logger logger = writer.getLogger("Encoder");
+
+        for (int i = 0; i < 6; i++)
+            logger.log(Logger.Level.ERROR, "%.0f", i);
+        writer.flush();
+
+        assertThat(sink.size(), is(4));
+        assertThat(sink.lines.get(3), is("E/Encoder: 3"));
+        assertThat(writer.getDroppedCount(), is(2L));
+    }
+
+    @Test
+    public void testBadFormatDoesNotLoseTheBatch() {
+        RecordingSink sink = new RecordingSink();
+        LogWriter writer = new LogWriter(sink);
+        Logger logger = writer.getLogger("Vuforia");
+
+        logger.log(Logger.Level.INFO, "%d", 1);
+        logger.log(Logger.Level.INFO, "fine");
+        writer.flush();
+
+        assertThat(sink.lines, is(Collections.singletonList("I/Vuforia: fine")));
+        assertThat(writer.getErrorCount(), is(1L));
+    }
+
+    @Test
+    public void testWritesOnItsOwnThread() {
+        RecordingSink sink = new RecordingSink();
+        LogWriter writer = new LogWriter(sink, 64, 10, TimeUnit.MILLISECONDS);
+        writer.start();
+        Logger logger = writer.getLogger("Accelerometer");
+
+        for (int i = 0; i < 10; i++)
+            logger.log(Logger.Level.INFO, "%.0f", i);
+        writer.stop();
+
+        assertThat(sink.size(), is(10));
+        for (Thread thread : sink.threads)
+            assertTrue(thread != Thread.currentThread());
+    }
+
+    @Test
+    public void testStreamSinkWritesLines() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LogWriter writer = new LogWriter(new StreamSink(out));
+        writer.getLogger("Drive").log(Logger.Level.DEBUG, "Heading %.1f", 45);
+        writer.getLogger("Drive").log(Logger.Level.INFO, "Heading %.1f", 90);
+        writer.flush();
+
+        String text = new String(out.toByteArray(), Charset.forName("UTF-8"));
+        assertTrue(text, text.endsWith(" I/Drive: Heading 90.0\n"));
+        assertThat(text.split("\n").length, is(1));
+    }
+}
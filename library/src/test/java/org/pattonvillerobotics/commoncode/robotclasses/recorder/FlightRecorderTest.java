@@ -0,0 +1,153 @@
+package org.pattonvillerobotics.commoncode.robotclasses.recorder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class FlightRecorderTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("flight", ".bin");
+    }
+
+    @After
+    public void tearDown() {
+        assertTrue(file.delete());
+    }
+
+    @Test
+    public void testDecodesChannelsIntoColumns() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(file, 64);
+        FlightRecorder.Channel power = recorder.addChannel("power", "left", "right");
+        FlightRecorder.Channel imu = recorder.addChannel("imu", "heading");
+        power.record(.5, -.5);
+        imu.record(90);
+        power.record(1, 1);
+        imu.recordAt(123, new double[]{45, 99}, 2);
+        recorder.close();
+
+        FlightRecordDecoder decoder = FlightRecordDecoder.read(file);
+        assertThat(decoder.getChannelNames(), is(Arrays.asList("power", "imu")));
+        FlightRecordDecoder.Table powerTable = decoder.getTable("power");
+        assertThat(powerTable.getColumnNames(), is(Arrays.asList("left", "right")));
+        assertTrue(Arrays.equals(powerTable.getColumn("left"), new double[]{.5, 1}));
+        assertTrue(Arrays.equals(powerTable.getColumn("right"), new double[]{-.5, 1}));
+        FlightRecordDecoder.Table imuTable = decoder.getTable("imu");
+        assertTrue(Arrays.equals(imuTable.getColumn("heading"), new double[]{90, 45}));
+        assertThat(imuTable.getTimestamps()[1], is(123L));
+    }
+
+    @Test
+    public void testKeepsTheLatestRecordsInOrder() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(file, 8);
+        FlightRecorder.Channel channel = recorder.addChannel("count", "i");
+        for (int i = 0; i < 21; i++)
+            channel.record(i);
+        recorder.close();
+        assertThat(recorder.getRecordCount(), is(21L));
+
+        double[] column = FlightRecordDecoder.read(file).getTable("count").getColumn("i");
+        assertTrue(Arrays.toString(column), Arrays.equals(column, new double[]{13, 14, 15, 16, 17, 18, 19, 20}));
+    }
+
+    @Test
+    public void testSkipsRecordsCutOffMidWrite() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(file, 8);
+        FlightRecorder.Channel channel = recorder.addChannel("count", "i");
+        for (int i = 0; i < 3; i++)
+            channel.record(i);
+        recorder.close();
+
+        // Like the app dying before the second record's sequence number was written
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.seek(FlightRecorder.HEADER_SIZE + FlightRecorder.RECORD_SIZE);
+        randomAccessFile.writeLong(0);
+        randomAccessFile.close();
+
+        double[] column = FlightRecordDecoder.read(file).getTable("count").getColumn("i");
+        assertTrue(Arrays.equals(column, new double[]{0, 2}));
+    }
+
+    @Test
+    public void testNewRecordingForgetsTheOldOne() throws IOException {
+        FlightRecorder first = new FlightRecorder(file, 8);
+        FlightRecorder.Channel channel = first.addChannel("count", "i");
+        for (int i = 0; i < 5; i++)
+            channel.record(i);
+        first.close();
+
+        FlightRecorder second = new FlightRecorder(file, 8);
+        second.addChannel("count", "i").record(7);
+        second.close();
+
+        assertTrue(Arrays.equals(FlightRecordDecoder.read(file).getTable("count").getColumn("i"), new double[]{7}));
+    }
+
+    @Test
+    public void testWritesCsv() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(file, 8);
+        FlightRecorder.Channel channel = recorder.addChannel("loop", "period", "duration");
+        channel.record(.005);
+        channel.record(.005, .001);
+        recorder.close();
+
+        StringWriter writer = new StringWriter();
+        FlightRecordDecoder.read(file).writeCsv("loop", writer);
+        String[] lines = writer.toString().split("\n");
+        assertThat(lines.length, is(3));
+        assertThat(lines[0], is("time,period,duration"));
+        assertTrue(lines[1], lines[1].endsWith(",0.005,"));
+        assertTrue(lines[2], lines[2].endsWith(",0.005,0.001"));
+    }
+
+    @Test
+    public void testRecordsFromManyThreads() throws Exception {
+        final FlightRecorder recorder = new FlightRecorder(file, 4096);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final FlightRecorder.Channel channel = recorder.addChannel("thread" + t, "i");
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 1000; i++)
+                        channel.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+        recorder.close();
+
+        FlightRecordDecoder decoder = FlightRecordDecoder.read(file);
+        for (int t = 0; t < threads.length; t++) {
+            double[] column = decoder.getTable("thread" + t).getColumn("i");
+            assertThat(column.length, is(1000));
+            for (int i = 0; i < column.length; i++)
+                assertThat(column[i], is((double) i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyColumnsThrows() throws IOException {
+        FlightRecorder recorder = new FlightRecorder(file, 8);
+        try {
+            recorder.addChannel("wide", "a", "b", "c", "d", "e", "f", "g", "h", "i");
+        } finally {
+            recorder.close();
+        }
+    }
+}
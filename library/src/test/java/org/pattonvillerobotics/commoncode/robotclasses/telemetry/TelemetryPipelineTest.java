@@ -0,0 +1,214 @@
+package org.pattonvillerobotics.commoncode.robotclasses.telemetry;
+
+import org.firstinspires.ftc.robotcore.external.Telemetry;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TelemetryPipelineTest {
+
+    /**
+     * Telemetry that keeps the lines it would show, and on an update sends them and clears the ones not retained.
+     */
+    private static class FakeTelemetry implements InvocationHandler {
+        final Map<String, String> lines = new LinkedHashMap<>();
+        final Set<String> retained = new HashSet<>();
+        final List<Map<String, String>> sent = new ArrayList<>();
+        final List<Thread> updateThreads = new ArrayList<>();
+        int updates;
+
+        Telemetry telemetry() {
+            return (Telemetry) Proxy.newProxyInstance(Telemetry.class.getClassLoader(), new Class<?>[]{Telemetry.class}, this);
+        }
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "addData":
+                    lines.put((String) args[0], String.valueOf(args[1]));
+                    return new FakeItem((String) args[0]).item();
+                case "removeItem":
+                    retained.remove(((Telemetry.Item) args[0]).getCaption());
+                    return lines.remove(((Telemetry.Item) args[0]).getCaption()) != null;
+                case "update":
+                    updates++;
+                    updateThreads.add(Thread.currentThread());
+                    sent.add(new LinkedHashMap<>(lines));
+                    lines.keySet().retainAll(retained);
+                    return true;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+
+        synchronized String line(String caption) {
+            return lines.get(caption);
+        }
+
+        synchronized int updates() {
+            return updates;
+        }
+
+        private class FakeItem implements InvocationHandler {
+            final String caption;
+
+            FakeItem(String caption) {
+                this.caption = caption;
+            }
+
+            Telemetry.Item item() {
+                return (Telemetry.Item) Proxy.newProxyInstance(Telemetry.Item.class.getClassLoader(), new Class<?>[]{Telemetry.Item.class}, this);
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                switch (method.getName()) {
+                    case "setValue":
+                        synchronized (FakeTelemetry.this) {
+                            lines.put(caption, String.valueOf(args[0]));
+                        }
+                        return proxy;
+                    case "setRetained":
+                        synchronized (FakeTelemetry.this) {
+                            if ((Boolean) args[0])
+                                retained.add(caption);
+                            else
+                                retained.remove(caption);
+                        }
+                        return proxy;
+                    case "getCaption":
+                        return caption;
+                    default:
+                        throw new UnsupportedOperationException(method.getName());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPublishesOnlyWhatChanged() {
+        FakeTelemetry fake = new FakeTelemetry();
+        TelemetryPipeline pipeline = new TelemetryPipeline(fake.telemetry(), TelemetryPipeline.DEFAULT_RATE_HZ, false);
+        TelemetryPipeline.Slot distance = pipeline.addSlot("Distance", "L: %.0f R: %.0f", 2);
+        TelemetryPipeline.Slot heading = pipeline.addSlot("Heading", "%.1f", 1);
+
+        distance.set(10, 12);
+        pipeline.publish();
+        assertThat(fake.line("Distance"), is("L: 10 R: 12"));
+        assertThat(fake.line("Heading") == null, is(true));
+        assertThat(pipeline.getPublishCount(), is(1L));
+
+        // Nothing new, nothing formatted
+        pipeline.publish();
+        assertThat(pipeline.getPublishCount(), is(1L));
+
+        heading.set(-45.25);
+        distance.set(20, 22);
+        pipeline.publish();
+        assertThat(fake.line("Distance"), is("L: 20 R: 22"));
+        assertThat(fake.line("Heading"), is("-45.3"));
+        assertThat(pipeline.getPublishCount(), is(2L));
+        assertThat(fake.updates(), is(0));
+    }
+
+    @Test
+    public void testClearRemovesTheLine() {
+        FakeTelemetry fake = new FakeTelemetry();
+        TelemetryPipeline pipeline = new TelemetryPipeline(fake.telemetry(), TelemetryPipeline.DEFAULT_RATE_HZ, false);
+        TelemetryPipeline.Slot slot = pipeline.addSlot("Error", "%.1f in", 1);
+
+        slot.set(1.5);
+        pipeline.publish();
+        assertThat(fake.line("Error"), is("1.5 in"));
+
+        slot.clear();
+        pipeline.publish();
+        assertThat(fake.line("Error") == null, is(true));
+        assertThat(pipeline.getPublishCount(), is(2L));
+
+        slot.set(.5);
+        pipeline.publish();
+        assertThat(fake.line("Error"), is("0.5 in"));
+    }
+
+    @Test
+    public void testWritesArePublishedAtTheCappedRate() throws InterruptedException {
+        FakeTelemetry fake = new FakeTelemetry();
+        TelemetryPipeline pipeline = new TelemetryPipeline(fake.telemetry(), 10);
+        TelemetryPipeline.Slot slot = pipeline.addSlot("Count", "%.0f", 1);
+
+        // A 200 Hz loop for half a second
+        for (int i = 1; i <= 100; i++) {
+            slot.set(i);
+            Thread.sleep(5);
+        }
+        assertTrue(pipeline.isPublishing());
+        Thread.sleep(250);
+
+        assertThat(fake.line("Count"), is("100"));
+        long publishCount = pipeline.getPublishCount();
+        assertTrue("publishCount " + publishCount, publishCount >= 3 && publishCount <= 8);
+        // Sending is left to the op mode
+        assertThat(fake.updates(), is(0));
+        pipeline.stop();
+    }
+
+    @Test
+    public void testOpModeLinesSurvivePublishing() throws InterruptedException {
+        FakeTelemetry fake = new FakeTelemetry();
+        final TelemetryPipeline pipeline = new TelemetryPipeline(fake.telemetry(), TelemetryPipeline.MAX_RATE_HZ);
+        final TelemetryPipeline.Slot slot = pipeline.addSlot("Count", "%.0f", 1);
+        Telemetry telemetry = fake.telemetry();
+
+        Thread controlLoop = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= 200; i++) {
+                    slot.set(i);
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        controlLoop.start();
+
+        // The op mode's loop, adding its own line and sending while the pipeline publishes
+        for (int i = 0; i < 40; i++) {
+            telemetry.addData("Op", i);
+            Thread.sleep(3);
+            if (i % 2 == 0)
+                telemetry.update();
+            else
+                pipeline.flush();
+        }
+        controlLoop.join();
+        pipeline.stop();
+
+        assertThat(fake.sent.size(), is(40));
+        for (int i = 0; i < 40; i++)
+            assertThat(fake.sent.get(i).get("Op"), is(String.valueOf(i)));
+        assertThat(fake.sent.get(39).get("Count") != null, is(true));
+        for (Thread thread : fake.updateThreads)
+            assertTrue(thread == Thread.currentThread());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRateOverTheCapThrows() {
+        new TelemetryPipeline(new FakeTelemetry().telemetry(), TelemetryPipeline.MAX_RATE_HZ * 2);
+    }
+}